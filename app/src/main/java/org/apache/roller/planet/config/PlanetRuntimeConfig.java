@@ -23,8 +23,7 @@ import java.io.InputStreamReader;
 import java.io.StringWriter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.roller.weblogger.business.PropertiesManager;
-import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.config.runtime.RuntimeConfigDefs;
 import org.apache.roller.weblogger.config.runtime.RuntimeConfigDefsParser;
 import org.apache.roller.weblogger.planet.ui.PlanetConfig;
@@ -50,17 +49,13 @@ public class PlanetRuntimeConfig {
      **/
     public static String getProperty(String name) {
 
-        String value = null;
+        // planet properties live alongside the weblogger ones
+        String value = WebloggerRuntimeConfig.getProperty(name);
 
-        try {
-            PropertiesManager pmgr = WebloggerFactory.getWeblogger().getPropertiesManager();
-            value = pmgr.getProperty(name).getValue();
-        } catch(Exception e) {
-            log.warn("Trouble accessing property: "+name, e);
+        if (log.isDebugEnabled()) {
+            log.debug("fetched property ["+name+"="+value+"]");
         }
 
-        log.debug("fetched property ["+name+"="+value+"]");
-
         return value;
     }
 
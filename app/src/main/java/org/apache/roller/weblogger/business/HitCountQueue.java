@@ -18,9 +18,10 @@
 
 package org.apache.roller.weblogger.business;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -35,8 +36,11 @@ import org.apache.roller.weblogger.pojos.Weblog;
  * Queue's up incoming hit counts so that they can be recorded to the db in
  * an asynchronous manner at give intervals.
  *
- * We also start up a single thread which runs continously to take the queued
- * hit counts, tally them, and record them into the db.
+ * Hits are tallied as they come in, in a LongAdder per weblog id, so a hit
+ * costs an increment no matter how busy the site is or how long since the
+ * last flush.  We also start up a single thread which runs continously to
+ * drain the tallies and record them into the db, and the last tallies are
+ * recorded at shutdown.
  *
  * TODO: we may want to make this an interface that is pluggable if there is
  *   some indication that users want to override this implementation.
@@ -48,7 +52,7 @@ public final class HitCountQueue {
     private static HitCountQueue instance = null;
     
     private WorkerThread worker = null;
-    private List<String> queue = null;
+    private final Map<String, LongAdder> hits = new ConcurrentHashMap<>();
     
     
     static {
@@ -68,9 +72,6 @@ public final class HitCountQueue {
             log.warn("Invalid sleep time ["+sleep+"], using default");
         }
         
-        // create the hits queue
-        this.queue = Collections.synchronizedList(new ArrayList<String>());
-        
         // start up a worker to process the hits at intervals
         HitCountProcessingJob job = new HitCountProcessingJob();
         worker = new ContinuousWorkerThread("HitCountQueueProcessor", job, sleepTime);
@@ -85,24 +86,43 @@ public final class HitCountQueue {
     
     public void processHit(Weblog weblog) {
         
-        // if the weblog isn't null then just drop its handle in the queue
-        // each entry in the queue is a weblog handle and indicates a single hit
+        // if the weblog isn't null then count a hit for it
         if(weblog != null) {
-            this.queue.add(weblog.getHandle());
+            LongAdder count = this.hits.get(weblog.getId());
+            if(count == null) {
+                count = this.hits.computeIfAbsent(weblog.getId(), id -> new LongAdder());
+            }
+            count.increment();
         }
     }
     
     
-    public List<String> getHits() {
-        return new ArrayList<>(this.queue);
+    /**
+     * Take the hits counted so far, keyed by weblog id.
+     *
+     * Only what was taken is subtracted from each tally, so hits counted
+     * while draining are left for the next time rather than lost.
+     */
+    public Map<String, Long> drainHits() {
+        Map<String, Long> drained = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : this.hits.entrySet()) {
+            long count = entry.getValue().sum();
+            if(count > 0) {
+                entry.getValue().add(-count);
+                drained.put(entry.getKey(), count);
+            }
+        }
+        return drained;
     }
     
     
     /**
-     * Reset the queued hits.
+     * Put back hits which were drained but could not be recorded.
      */
-    public synchronized void resetHits() {
-        this.queue = Collections.synchronizedList(new ArrayList<String>());
+    public void restoreHits(Map<String, Long> drained) {
+        for (Map.Entry<String, Long> entry : drained.entrySet()) {
+            this.hits.computeIfAbsent(entry.getKey(), id -> new LongAdder()).add(entry.getValue());
+        }
     }
     
     
@@ -121,6 +141,8 @@ public final class HitCountQueue {
             }
         }
         
+        // record whatever came in since the last run
+        new HitCountProcessingJob().execute();
     }
     
 }
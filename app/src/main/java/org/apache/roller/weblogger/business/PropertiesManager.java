@@ -20,6 +20,7 @@ package org.apache.roller.weblogger.business;
 
 import java.util.Map;
 import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.config.RuntimeConfigSnapshot;
 import org.apache.roller.weblogger.pojos.RuntimeConfigProperty;
 
 
@@ -42,6 +43,12 @@ public interface PropertiesManager {
     void release();
     
     
+    /**
+     * Shutdown to be called on application shutdown.
+     */
+    void shutdown();
+    
+    
     /**
      * Save a single property
      */
@@ -65,4 +72,11 @@ public interface PropertiesManager {
      */
     Map<String, RuntimeConfigProperty> getProperties() throws WebloggerException;
     
+    
+    /**
+     * Get an immutable copy of all properties, replaced whenever they are
+     * saved, or null if the properties are not initialized yet
+     */
+    RuntimeConfigSnapshot getSnapshot();
+    
 }
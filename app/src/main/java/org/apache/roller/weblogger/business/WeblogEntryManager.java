@@ -357,6 +357,17 @@ public interface WeblogEntryManager {
         throws WebloggerException;
     
     
+    /**
+     * Add hits to the hit counts of many weblogs at once, creating the
+     * counts of weblogs which don't have one yet.  The counts are added in
+     * their own transaction, either all of them or none.
+     *
+     * @param hits How much to increment by, keyed by weblog id.
+     * @throws WebloggerException If there was a problem with the backend.
+     */
+    void incrementHitCounts(Map<String, Long> hits) throws WebloggerException;
+    
+    
     /**
      * Reset the hit counts for all weblogs.  This sets the counts back to 0.
      *
@@ -397,5 +408,17 @@ public interface WeblogEntryManager {
      */    
     long getEntryCount(Weblog websiteData) throws WebloggerException;
 
+    
+    /**
+     * Get ids of published entries in id order, a page at a time, for
+     * walking through all of them without loading them all at once.
+     * 
+     * @param weblog  Weblog of the entries, or null for all weblogs
+     * @param afterId Only ids after this one, or null to start at the first
+     * @param max     Maximum number of ids to return
+     */
+    List<String> getPublishedEntryIds(Weblog weblog, String afterId, int max)
+            throws WebloggerException;
+
 }
 
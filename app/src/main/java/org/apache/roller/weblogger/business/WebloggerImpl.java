@@ -415,6 +415,9 @@ public abstract class WebloggerImpl implements Weblogger {
     public void shutdown() {
         try {
             HitCountQueue.getInstance().shutdown();
+            if (propertiesManager != null) {
+                propertiesManager.shutdown();
+            }
             if (indexManager != null) {
                 indexManager.shutdown();
             }
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import java.util.ArrayList;
+import java.util.List;
+import jakarta.persistence.TypedQuery;
+import org.apache.roller.weblogger.WebloggerException;
+
+
+/**
+ * A JPQL query assembled from the filters a search asked for.
+ *
+ * Values are always bound as parameters, numbered in the order they are
+ * added, and never written into the query text.  The text so only depends
+ * on which filters are used, which makes it the query's shape, and the
+ * persistence strategy compiles each shape once.
+ */
+final class DynamicQuery<T> {
+
+    private final Class<T> resultClass;
+    private final StringBuilder jpql;
+    private final List<Object> params = new ArrayList<>();
+
+    private boolean where = false;
+    private int offset = 0;
+    private int length = -1;
+
+
+    DynamicQuery(Class<T> resultClass, String select) {
+        this.resultClass = resultClass;
+        this.jpql = new StringBuilder(select);
+    }
+
+
+    /**
+     * Add query text, which must not contain any values.
+     */
+    DynamicQuery<T> append(String text) {
+        jpql.append(text);
+        return this;
+    }
+
+
+    /**
+     * Add a condition, after WHERE if it is the first one and after AND if not.
+     */
+    DynamicQuery<T> where(String condition) {
+        jpql.append(where ? " AND " : " WHERE ").append(condition);
+        where = true;
+        return this;
+    }
+
+
+    /**
+     * Add a parameter bound to the value.
+     */
+    DynamicQuery<T> param(Object value) {
+        params.add(value);
+        jpql.append('?').append(params.size());
+        return this;
+    }
+
+
+    /**
+     * Refer to the last added parameter again.
+     */
+    DynamicQuery<T> sameParam() {
+        jpql.append('?').append(params.size());
+        return this;
+    }
+
+
+    /**
+     * Page through the results, a length of -1 for all of them.
+     */
+    DynamicQuery<T> page(int offset, int length) {
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+
+    String getShape() {
+        return jpql.toString();
+    }
+
+
+    List<T> getResultList(JPAPersistenceStrategy strategy) throws WebloggerException {
+
+        String shape = getShape();
+        TypedQuery<T> query = strategy.getShapedQuery(shape, resultClass);
+        for (int i = 0; i < params.size(); i++) {
+            query.setParameter(i + 1, params.get(i));
+        }
+        if (offset > 0) {
+            query.setFirstResult(offset);
+        }
+        if (length != -1) {
+            query.setMaxResults(length);
+        }
+
+        long start = System.nanoTime();
+        try {
+            return query.getResultList();
+        } finally {
+            strategy.getQueryShapes().executed(shape, System.nanoTime() - start);
+        }
+    }
+
+}
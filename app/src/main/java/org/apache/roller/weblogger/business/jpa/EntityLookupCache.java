@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogPermission;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheHandler;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Cross request cache of the lookups every page request makes: weblogs by
+ * handle, templates by action, name or link, users by user name and weblog
+ * permissions by weblog and user.
+ *
+ * Only ids are cached, entities can't be shared between entity managers.
+ * The managers load entities back by id, which the persistence provider
+ * answers from its shared cache without a query, and check the loaded
+ * entity still matches the lookup before using it.  Template lookups also
+ * remember templates which don't exist, since most weblogs lack most of the
+ * templates a request may ask for.
+ *
+ * Template and permission lookups are kept per weblog handle, which is all
+ * invalidations from other nodes of a cluster carry, so that they all go
+ * away together.
+ */
+@com.google.inject.Singleton
+public class EntityLookupCache implements CacheHandler {
+
+    private static final Log log = LogFactory.getLog(EntityLookupCache.class);
+
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.entity";
+
+    // cached template id of a template known not to exist
+    public static final String NO_TEMPLATE = "";
+
+    private boolean cacheEnabled = true;
+    private Cache lookupCache = null;
+
+
+    @com.google.inject.Inject
+    protected EntityLookupCache() {
+
+        cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+
+        Map<String, String> cacheProps = new HashMap<>();
+        cacheProps.put("id", CACHE_ID);
+
+        Enumeration<Object> allProps = WebloggerConfig.keys();
+        String prop;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1),
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+
+        log.info(cacheProps);
+
+        if(cacheEnabled) {
+            lookupCache = CacheManager.constructCache(this, cacheProps);
+        } else {
+            log.warn("Caching has been DISABLED");
+        }
+    }
+
+
+    public String getWeblogId(String handle) {
+        return get("weblog:"+handle);
+    }
+
+
+    public void putWeblogId(String handle, String weblogId) {
+        put("weblog:"+handle, weblogId);
+    }
+
+
+    public void removeWeblogId(String handle) {
+        remove("weblog:"+handle);
+    }
+
+
+    public String getUserId(String userName) {
+        return get("user:"+userName);
+    }
+
+
+    public void putUserId(String userName, String userId) {
+        put("user:"+userName, userId);
+    }
+
+
+    public void removeUserId(String userName) {
+        remove("user:"+userName);
+    }
+
+
+    public String getPermissionId(String weblogHandle, String userName) {
+        Map<String, String> permissionIds = getGroup("permissions", weblogHandle, false);
+        return permissionIds == null ? null : permissionIds.get(userName);
+    }
+
+
+    public void putPermissionId(String weblogHandle, String userName, String permissionId) {
+        Map<String, String> permissionIds = getGroup("permissions", weblogHandle, true);
+        if (permissionIds != null && permissionId != null) {
+            permissionIds.put(userName, permissionId);
+        }
+    }
+
+
+    public void removePermissionIds(String weblogHandle) {
+        removeGroup("permissions", weblogHandle);
+    }
+
+
+    /**
+     * Lookup the id of a weblog template, NO_TEMPLATE if the template is
+     * known not to exist and null if the lookup isn't cached.
+     *
+     * @param lookup what the template is looked up by, e.g. "name"
+     */
+    public String getTemplateId(String weblogHandle, String lookup, String value) {
+        Map<String, String> templateIds = getGroup("templates", weblogHandle, false);
+        return templateIds == null ? null : templateIds.get(lookup+":"+value);
+    }
+
+
+    /**
+     * Cache the id of a weblog template, or a null id for a template which
+     * doesn't exist.
+     */
+    public void putTemplateId(String weblogHandle, String lookup, String value, String templateId) {
+        Map<String, String> templateIds = getGroup("templates", weblogHandle, true);
+        if (templateIds != null) {
+            templateIds.put(lookup+":"+value, templateId == null ? NO_TEMPLATE : templateId);
+        }
+    }
+
+
+    public void removeTemplateIds(String weblogHandle) {
+        removeGroup("templates", weblogHandle);
+    }
+
+
+    public boolean isEnabled() {
+        return cacheEnabled;
+    }
+
+
+    @Override
+    public void invalidate(Weblog website) {
+        removeWeblogId(website.getHandle());
+        removeTemplateIds(website.getHandle());
+        removePermissionIds(website.getHandle());
+    }
+
+
+    @Override
+    public void invalidate(WeblogTemplate template) {
+        if (template.getWeblog() != null) {
+            removeTemplateIds(template.getWeblog().getHandle());
+        }
+    }
+
+
+    @Override
+    public void invalidate(User user) {
+        removeUserId(user.getUserName());
+    }
+
+
+    @Override
+    public void invalidate(WeblogPermission perm) {
+        removePermissionIds(perm.getObjectId());
+    }
+
+
+    /**
+     * Get the template or permission lookups of one weblog, optionally
+     * creating them.  Creating and removing them happens under one lock, so
+     * two threads can't both create them and have one's entries lost.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getGroup(String kind, String weblogHandle, boolean create) {
+
+        if (!cacheEnabled || weblogHandle == null) {
+            return null;
+        }
+
+        String key = kind+":"+weblogHandle;
+        Map<String, String> group = (Map<String, String>) lookupCache.get(key);
+        if (group != null || !create) {
+            return group;
+        }
+        synchronized (this) {
+            group = (Map<String, String>) lookupCache.get(key);
+            if (group == null) {
+                group = new ConcurrentHashMap<>();
+                lookupCache.put(key, group);
+            }
+            return group;
+        }
+    }
+
+
+    private synchronized void removeGroup(String kind, String weblogHandle) {
+        remove(kind+":"+weblogHandle);
+    }
+
+
+    private String get(String key) {
+
+        if (!cacheEnabled) {
+            return null;
+        }
+
+        String id = (String) lookupCache.get(key);
+        if (log.isDebugEnabled()) {
+            log.debug((id == null ? "MISS " : "HIT ")+key);
+        }
+        return id;
+    }
+
+
+    private void put(String key, String id) {
+
+        if (!cacheEnabled || id == null) {
+            return;
+        }
+
+        lookupCache.put(key, id);
+    }
+
+
+    private void remove(String key) {
+
+        if (!cacheEnabled) {
+            return;
+        }
+
+        lookupCache.remove(key);
+    }
+
+}
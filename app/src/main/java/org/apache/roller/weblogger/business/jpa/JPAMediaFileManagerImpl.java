@@ -17,29 +17,55 @@
  */
 package org.apache.roller.weblogger.business.jpa;
 
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 
+import javax.imageio.ImageIO;
+import jakarta.persistence.NoResultException;
+import jakarta.persistence.TypedQuery;
+
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.FileContentManager;
+import org.apache.roller.weblogger.business.FileIOException;
 import org.apache.roller.weblogger.business.MediaFileManager;
 import org.apache.roller.weblogger.business.WeblogManager;
 import org.apache.roller.weblogger.business.Weblogger;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.FileContent;
 import org.apache.roller.weblogger.pojos.MediaFile;
 import org.apache.roller.weblogger.pojos.MediaFileDirectory;
+import org.apache.roller.weblogger.pojos.MediaFileFilter;
+import org.apache.roller.weblogger.pojos.MediaFileTag;
+import org.apache.roller.weblogger.pojos.MediaFileType;
+import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.util.RollerMessages;
+import org.apache.roller.weblogger.util.Utilities;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
+
 @Singleton
 public class JPAMediaFileManagerImpl implements MediaFileManager {
 
@@ -218,36 +244,6 @@ public class JPAMediaFileManagerImpl implements MediaFileManager {
         FileContentManager cmgr = WebloggerFactory.getWeblogger().getFileContentManager();
         saveMediaFileInternal(weblog, mediaFile, cmgr);
     }
-}
-
-    private void updateThumbnail(MediaFile mediaFile) {
-        try {
-            FileContentManager cmgr = WebloggerFactory.getWeblogger()
-                    .getFileContentManager();
-            FileContent fc = cmgr.getFileContent(mediaFile.getWeblog(),
-                    mediaFile.getId());
-            BufferedImage img;
-
-            img = ImageIO.read(fc.getInputStream());
-
-            // determine and save width and height
-            mediaFile.setWidth(img.getWidth());
-            mediaFile.setHeight(img.getHeight());
-            strategy.store(mediaFile);
-
-            int newWidth = mediaFile.getThumbnailWidth();
-            int newHeight = mediaFile.getThumbnailHeight();
-
-// update weblog last modified date. date updated by saveWeblog()
-        roller.getWeblogManager().saveWeblog(weblog);
-
-        cmgr.saveFileContent(weblog, mediaFile.getId(),
-            mediaFile.getInputStream());
-
-        if (mediaFile.isImageFile()) {
-            updateThumbnail(mediaFile);
-        }
-    }
 
     private void updateThumbnail(MediaFile mediaFile) {
         try {
@@ -478,7 +474,9 @@ public class JPAMediaFileManagerImpl implements MediaFileManager {
 
     /**
      * {@inheritDoc}
-public List<MediaFileDirectory> getMediaFileDirectories(Weblog weblog)
+     */
+    @Override
+    public List<MediaFileDirectory> getMediaFileDirectories(Weblog weblog)
             throws WebloggerException {
 
         TypedQuery<MediaFileDirectory> q = this.strategy.getNamedQuery("MediaFileDirectory.getByWeblog",
@@ -487,6 +485,7 @@ public List<MediaFileDirectory> getMediaFileDirectories(Weblog weblog)
         return q.getResultList();
     }
 
+
     /**
      * {@inheritDoc}
      */
@@ -534,45 +533,35 @@ public List<MediaFileDirectory> getMediaFileDirectories(Weblog weblog)
     public List<MediaFile> searchMediaFiles(Weblog weblog,
             MediaFileFilter filter) throws WebloggerException {
 
-        List<Object> params = new ArrayList<>();
-        AtomicInteger paramIndex = new AtomicInteger(0);
-        StringBuilder whereClause = new StringBuilder("m.directory.weblog = ?");
-        
-        params.add(paramIndex.get(), weblog);
-        whereClause.append(paramIndex.incrementAndGet());
-
-        appendNameFilterClause(whereClause, params, paramIndex, filter.getName());
-        appendSizeFilterClause(whereClause, params, paramIndex, filter);
-        appendTagsFilterClause(whereClause, params, paramIndex, filter);
-        appendTypeFilterClause(whereClause, params, paramIndex, filter);
+        DynamicQuery<MediaFile> query = new DynamicQuery<>(MediaFile.class,
+                "SELECT m FROM MediaFile m WHERE ");
+        query.append("m.directory.weblog = ").param(weblog);
 
-        String orderByClause = buildOrderByClause(filter);
+        appendNameFilterClause(query, filter.getName());
+        appendSizeFilterClause(query, filter);
+        appendTagsFilterClause(query, filter);
+        appendTypeFilterClause(query, filter);
 
-        String queryString = "SELECT m FROM MediaFile m WHERE " + whereClause.toString() + orderByClause;
-        TypedQuery<MediaFile> query = strategy.getDynamicQuery(queryString, MediaFile.class);
-
-        setQueryParams(query, params);
+        query.append(buildOrderByClause(filter));
         applyPagination(query, filter);
 
-        return query.getResultList();
+        return query.getResultList(strategy);
     }
 
-    private void appendNameFilterClause(StringBuilder whereClause, List<Object> params, AtomicInteger paramIndex, String nameFilter) {
+    private void appendNameFilterClause(DynamicQuery<MediaFile> query, String nameFilter) {
         if (!StringUtils.isEmpty(nameFilter)) {
             String trimmedNameFilter = nameFilter.trim();
             if (!trimmedNameFilter.endsWith("%")) {
                 trimmedNameFilter += "%";
             }
-            params.add(paramIndex.get(), trimmedNameFilter);
-            whereClause.append(" AND m.name like ?").append(paramIndex.incrementAndGet());
+            query.append(" AND m.name like ").param(trimmedNameFilter);
         }
     }
 
-    private void appendSizeFilterClause(StringBuilder whereClause, List<Object> params, AtomicInteger paramIndex, MediaFileFilter filter) {
+    private void appendSizeFilterClause(DynamicQuery<MediaFile> query, MediaFileFilter filter) {
         if (filter.getSize() > 0) {
-            params.add(paramIndex.get(), filter.getSize());
-            whereClause.append(" AND m.length ").append(getSizeOperator(filter.getSizeFilterType()));
-            whereClause.append(" ?").append(paramIndex.incrementAndGet());
+            query.append(" AND m.length ").append(getSizeOperator(filter.getSizeFilterType()));
+            query.append(" ").param(filter.getSize());
         }
     }
 
@@ -587,38 +576,36 @@ public List<MediaFileDirectory> getMediaFileDirectories(Weblog weblog)
         }
     }
 
-    private void appendTagsFilterClause(StringBuilder whereClause, List<Object> params, AtomicInteger paramIndex, MediaFileFilter filter) {
+    private void appendTagsFilterClause(DynamicQuery<MediaFile> query, MediaFileFilter filter) {
         List<String> tags = filter.getTags();
         if (tags != null && !tags.isEmpty()) {
             if (tags.size() > 1) {
-                whereClause.append(" AND EXISTS (SELECT t FROM MediaFileTag t WHERE t.mediaFile = m and t.name IN (");
-                for (String tag : tags) {
-                    params.add(paramIndex.get(), tag);
-                    whereClause.append("?").append(paramIndex.incrementAndGet()).append(",");
+                query.append(" AND EXISTS (SELECT t FROM MediaFileTag t WHERE t.mediaFile = m and t.name IN (");
+                for (int i = 0; i < tags.size(); i++) {
+                    if (i != 0) {
+                        query.append(",");
+                    }
+                    query.param(tags.get(i));
                 }
-                whereClause.deleteCharAt(whereClause.lastIndexOf(","));
-                whereClause.append("))");
+                query.append("))");
             } else { // tags.size() == 1
-                params.add(paramIndex.get(), tags.get(0));
-                whereClause.append(" AND EXISTS (SELECT t FROM MediaFileTag t WHERE t.mediaFile = m and t.name = ?")
-                        .append(paramIndex.incrementAndGet()).append(")");
+                query.append(" AND EXISTS (SELECT t FROM MediaFileTag t WHERE t.mediaFile = m and t.name = ")
+                        .param(tags.get(0)).append(")");
             }
         }
     }
 
-    private void appendTypeFilterClause(StringBuilder whereClause, List<Object> params, AtomicInteger paramIndex, MediaFileFilter filter) {
+    private void appendTypeFilterClause(DynamicQuery<MediaFile> query, MediaFileFilter filter) {
         MediaFileType type = filter.getType();
         if (type != null) {
             if (type == MediaFileType.OTHERS) {
                 for (MediaFileType otherType : MediaFileType.values()) {
                     if (otherType != MediaFileType.OTHERS) {
-                        params.add(paramIndex.get(), otherType.getContentTypePrefix() + "%");
-                        whereClause.append(" AND m.contentType not like ?").append(paramIndex.incrementAndGet());
+                        query.append(" AND m.contentType not like ").param(otherType.getContentTypePrefix() + "%");
                     }
                 }
             } else {
-                params.add(paramIndex.get(), type.getContentTypePrefix() + "%");
-                whereClause.append(" AND m.contentType like ?").append(paramIndex.incrementAndGet());
+                query.append(" AND m.contentType like ").param(type.getContentTypePrefix() + "%");
             }
         }
     }
@@ -638,87 +625,90 @@ public List<MediaFileDirectory> getMediaFileDirectories(Weblog weblog)
         return orderBy.toString();
     }
 
-    private void setQueryParams(TypedQuery<MediaFile> query, List<Object> params) {
-        for (int i = 0; i < params.size(); i++) {
-            query.setParameter(i + 1, params.get(i));
+    private void applyPagination(DynamicQuery<MediaFile> query, MediaFileFilter filter) {
+        if (filter.getStartIndex() >= 0) {
+            query.page(filter.getStartIndex(), filter.getLength());
         }
     }
 
-    private void applyPagination(TypedQuery<MediaFile> query,
-
-                    } else {
-                        // need to create a new mediafile directory
-                        MediaFileDirectory secondDir = null;
-                        try {
-                            secondDir = new MediaFileDirectory(weblog, file.getName(), null);
-                            roller.getMediaFileManager().createMediaFileDirectory(secondDir);
-                            roller.flush();
-                            dirCount++;
-                        } catch (WebloggerException ex) {
-                            log.error("ERROR creating directory: "
-                                    + newDir.getName() + "/" + file.getName());
-                        }
-                        upgradeUploadsDir(weblog, user, file, secondDir);
-                    }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MediaFileDirectory getDefaultMediaFileDirectory(Weblog weblog)
+            throws WebloggerException {
+        return getMediaFileDirectoryByName(weblog, "default");
+    }
 
-                } else {
-                    // a file: create a database record for it
-                    // check to make sure that file does not already exist
-                    if (newDir.hasMediaFile(file.getName())) {
-                        log.debug("    Skipping file that already exists: "
-                                + file.getName());
-
-                    } else {
-
-                        String originalPath = "/" + newDir.getName() + "/" + file.getName();
-                        log.debug("Upgrade file with original path: " + originalPath);
-
-                        MediaFile mf = new MediaFile();
-                        try {
-                            mf.setName(file.getName());
-                            mf.setDescription(file.getName());
-                            mf.setOriginalPath(originalPath);
-
-                            mf.setDateUploaded(new Timestamp(file
-                                    .lastModified()));
-                            mf.setLastUpdated(new Timestamp(file.lastModified()));
-
-                            mf.setDirectory(newDir);
-                            mf.setWeblog(weblog);
-                            mf.setCreatorUserName(user.getUserName());
-                            mf.setSharedForGallery(Boolean.FALSE);
-
-                            mf.setLength(file.length());
-                            mf.setInputStream(new FileInputStream(file));
-                            mf.setContentType(Utilities
-                                    .getContentTypeFromFileName(file.getName()));
-
-                            // Create
-                            this.roller.getMediaFileManager().createMediaFile(
-                                    weblog, mf, messages);
-                            newDir.getMediaFiles().add(mf);
-
-                            log.info(messages.toString());
-
-                            fileCount++;
-
-                        } catch (WebloggerException ex) {
-                            log.error("ERROR writing file to new storage system: "
-                                    + file.getAbsolutePath(), ex);
-
-                        } catch (java.io.FileNotFoundException ex) {
-                            log.error(
-                                    "ERROR reading file from old storage system: "
-                                            + file.getAbsolutePath(), ex);
-                        }
-                    }
+    /**
+     * Does mediafile storage require any upgrading; checks for existence of
+     * migration status file.
+     */
+    public boolean isFileStorageUpgradeRequired() {
+        String uploadsDirName = WebloggerConfig.getProperty("uploads.dir");
+        if (uploadsDirName != null) {
+            File uploadsDir = new File(uploadsDirName);
+            if (uploadsDir.exists() && uploadsDir.isDirectory()) {
+                Properties props = new Properties();
+                try (FileInputStream in = new FileInputStream(uploadsDirName
+                        + File.separator + MIGRATION_STATUS_FILENAME)) {
+                    props.load(in);
+                } catch (IOException ex) {
+                    return true;
+                }
+                if (props.getProperty("complete") != null) {
+                    return false;
                 }
             }
         }
+        return false;
+    }
 
-        try {
-            // flush changes to this directory
-chosenUser,
+    /**
+     * Run mediafile storage upgrade, copying files to new storage system;
+     * creates migration status file only when work is complete.
+     */
+    public List<String> upgradeFileStorage() {
+        List<String> msgs = new ArrayList<>();
+        String oldDirName = WebloggerConfig.getProperty("uploads.dir");
+        String FS = File.separator;
+
+        if (oldDirName != null) {
+            try {
+
+                // loop through weblogs found in uploads directory
+                File uploadsDir = new File(oldDirName);
+                File[] dirs = uploadsDir.listFiles();
+                if (null != dirs) {
+                    for (File dir : dirs) {
+
+                        if (dir.isDirectory()) {
+                            WeblogManager wmgr = this.roller.getWeblogManager();
+                            Weblog weblog = wmgr.getWeblogByHandle(dir.getName(), null);
+                            if (weblog != null) {
+
+                                log.info("Migrating weblog: " + weblog.getHandle());
+
+                                // use 1st admin user found as file creator
+                                List<User> users = wmgr.getWeblogUsers(weblog, true);
+                                User chosenUser = users.get(0);
+                                for (User user : users) {
+                                    chosenUser = user;
+                                    if (user.hasGlobalPermission("admin")) {
+                                        break;
+                                    }
+                                }
+
+                                try {
+                                    // create weblog's mediafile directory if needed
+                                    MediaFileDirectory root = this.getDefaultMediaFileDirectory(weblog);
+                                    if (root == null) {
+                                        root = this.createDefaultMediaFileDirectory(weblog);
+                                        roller.flush();
+                                    }
+
+                                    // upgrade!
+                                    upgradeUploadsDir(weblog, chosenUser,
                                             new File(oldDirName + FS
                                                     + dir.getName()), root);
 
@@ -906,6 +896,3 @@ chosenUser,
         }
     }
 }
-        }
-    }
-}
\ No newline at end of file
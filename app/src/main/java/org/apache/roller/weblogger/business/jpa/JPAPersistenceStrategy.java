@@ -18,6 +18,7 @@
 
 package org.apache.roller.weblogger.business.jpa;
 
+import java.lang.management.ManagementFactory;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Properties;
@@ -31,6 +32,9 @@ import jakarta.persistence.FlushModeType;
 import jakarta.persistence.Persistence;
 import jakarta.persistence.PersistenceException;
 import jakarta.persistence.Query;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import jakarta.persistence.TypedQuery;
@@ -56,6 +60,12 @@ public class JPAPersistenceStrategy {
      * The EntityManagerFactory for this Roller instance.
      */
     private EntityManagerFactory emf = null;
+
+    /**
+     * The compiled shapes of dynamic queries.
+     */
+    private final QueryShapeCache queryShapes =
+            new QueryShapeCache(WebloggerConfig.getIntProperty("jpa.queryShapes.max", 500));
     
             
     /**
@@ -108,7 +118,26 @@ public class JPAPersistenceStrategy {
                 throw new WebloggerException(pe);
             }
         }
+        registerQueryShapes();
+    }
+
+    private static ObjectName getQueryShapesName() throws JMException {
+        return new ObjectName("org.apache.roller.weblogger:type=QueryShapes");
+    }
+
+    private void registerQueryShapes() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = getQueryShapesName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(queryShapes, name);
+        } catch (JMException e) {
+            logger.warn("Unable to register MBean for query shapes", e);
+        }
     }
+
     /**
      * Refresh changes to the current object.
      * 
@@ -337,6 +366,28 @@ public class JPAPersistenceStrategy {
         return q;
     }
 
+    /**
+     * Create TypedQuery for a dynamic query shape that won't commit changes to DB
+     * first (FlushModeType.COMMIT). Each shape is only compiled once.
+     * @param shape the query, with all values as parameters
+     * @param resultClass return type of query
+     * @throws org.apache.roller.weblogger.WebloggerException on any error
+     */
+    public <T> TypedQuery<T> getShapedQuery(String shape, Class<T> resultClass)
+            throws WebloggerException {
+        EntityManager em = getEntityManager(false);
+        TypedQuery<T> q = queryShapes.createQuery(em, shape, resultClass);
+        q.setFlushMode(FlushModeType.COMMIT);
+        return q;
+    }
+
+    /**
+     * Execution counts and latency of the dynamic query shapes.
+     */
+    public QueryShapeCache getQueryShapes() {
+        return queryShapes;
+    }
+
     /**
      * Get named update query with default flush mode (usually FlushModeType.AUTO)
      * FlushModeType.AUTO commits changes to DB prior to running statement
@@ -350,6 +401,15 @@ public class JPAPersistenceStrategy {
     }
 
     public void shutdown() {
+        try {
+            ObjectName name = getQueryShapesName();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.warn("Unable to unregister MBean for query shapes", e);
+        }
         if (emf != null) {
             emf.close();
         }
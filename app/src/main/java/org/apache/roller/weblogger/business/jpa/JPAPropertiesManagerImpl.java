@@ -18,9 +18,16 @@
  */
 package org.apache.roller.weblogger.business.jpa;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -28,6 +35,10 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.InitializationException;
 import org.apache.roller.weblogger.business.PropertiesManager;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.startup.WebloggerStartup;
+import org.apache.roller.weblogger.config.RuntimeConfigSnapshot;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.config.runtime.ConfigDef;
 import org.apache.roller.weblogger.config.runtime.DisplayGroup;
@@ -41,6 +52,10 @@ import org.apache.roller.weblogger.pojos.RuntimeConfigProperty;
  *
  * Created on May 29, 2006, 2:06 PM
  *
+ * Reads go to a RuntimeConfigSnapshot which is replaced whenever properties
+ * are saved.  Every save also stores a new version stamp, and other nodes of
+ * a cluster poll for it every runtimeconfig.refresh.interval seconds, loading
+ * a fresh snapshot once it has moved on.
  */
 @com.google.inject.Singleton
 public class JPAPropertiesManagerImpl implements PropertiesManager {
@@ -49,8 +64,15 @@ public class JPAPropertiesManagerImpl implements PropertiesManager {
     private static Log log = LogFactory.getLog(
         JPAPropertiesManagerImpl.class);
 
+    // property saved with a new version stamp whenever others are saved
+    static final String VERSION_PROPERTY = "runtimeconfig.version";
+
     private final JPAPersistenceStrategy strategy;
     
+    private volatile RuntimeConfigSnapshot snapshot = null;
+    
+    private ScheduledExecutorService refresher = null;
+    
     
     /**
      * Creates a new instance of JPAPropertiesManagerImpl
@@ -84,6 +106,13 @@ public class JPAPropertiesManagerImpl implements PropertiesManager {
             throw new RuntimeException(e);
         }
         
+        startRefresher();
+    }
+    
+    
+    @Override
+    public RuntimeConfigSnapshot getSnapshot() {
+        return snapshot;
     }
     
     
@@ -130,6 +159,10 @@ public class JPAPropertiesManagerImpl implements PropertiesManager {
     public void saveProperty(RuntimeConfigProperty property) 
             throws WebloggerException {
         this.strategy.store(property);
+        
+        Map<String, String> changes = new HashMap<>();
+        changes.put(property.getName(), property.getValue());
+        swapSnapshot(changes);
     }
 
 
@@ -140,8 +173,125 @@ public class JPAPropertiesManagerImpl implements PropertiesManager {
     public void saveProperties(Map<String, RuntimeConfigProperty> properties) throws WebloggerException {
 
         // just go through the list and saveProperties each property
-        for (Object prop : properties.values()) {
+        Map<String, String> changes = new HashMap<>();
+        for (RuntimeConfigProperty prop : properties.values()) {
             this.strategy.store(prop);
+            changes.put(prop.getName(), prop.getValue());
+        }
+        swapSnapshot(changes);
+    }
+    
+    
+    /**
+     * Store a new version stamp and make the changes visible to readers in
+     * one go.  Stamps are times in milliseconds, but always move past the
+     * stored one, which is re-read in this transaction since the clocks of
+     * other nodes may be ahead of ours.
+     */
+    private synchronized void swapSnapshot(Map<String, String> changes) 
+            throws WebloggerException {
+        
+        long version = System.currentTimeMillis();
+        if (snapshot != null) {
+            version = Math.max(version, snapshot.getVersion() + 1);
+        }
+        
+        RuntimeConfigProperty stamp = (RuntimeConfigProperty) strategy
+            .load(RuntimeConfigProperty.class, VERSION_PROPERTY);
+        if (stamp == null) {
+            stamp = new RuntimeConfigProperty(VERSION_PROPERTY, null);
+        } else {
+            // skip the shared cache, another node may have saved since
+            strategy.refresh(stamp);
+            version = Math.max(version, parseVersion(stamp.getValue()) + 1);
+        }
+        stamp.setValue(Long.toString(version));
+        this.strategy.store(stamp);
+        changes.put(VERSION_PROPERTY, stamp.getValue());
+        
+        if (snapshot == null) {
+            snapshot = new RuntimeConfigSnapshot(changes, version);
+        } else {
+            snapshot = snapshot.with(changes, version);
+        }
+    }
+    
+    
+    private static long parseVersion(String value) {
+        try {
+            return value == null ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid runtime properties version " + value);
+            return 0;
+        }
+    }
+    
+    
+    private synchronized void startRefresher() {
+        
+        int interval = WebloggerConfig.getIntProperty("runtimeconfig.refresh.interval", 60);
+        if (interval <= 0 || refresher != null) {
+            return;
+        }
+        
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RuntimeConfigRefresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            // nothing to talk to until Roller is up
+            if (WebloggerFactory.isBootstrapped()) {
+                refresh();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+    
+    
+    /**
+     * Load a new snapshot if the stored version stamp differs from ours,
+     * either because another node has saved properties since ours was made
+     * or because a save of our own was rolled back.  This runs on its own thread, so it uses plain JDBC rather
+     * than a persistence context, which would also hand back cached values.
+     */
+    void refresh() {
+        
+        try (Connection con = WebloggerStartup.getDatabaseProvider().getConnection()) {
+            
+            long version = 0;
+            try (PreparedStatement select = con.prepareStatement(
+                    "select value from roller_properties where name = ?")) {
+                select.setString(1, VERSION_PROPERTY);
+                try (ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) {
+                        version = parseVersion(rs.getString(1));
+                    }
+                }
+            }
+            
+            RuntimeConfigSnapshot current = snapshot;
+            if (current != null && version == current.getVersion()) {
+                return;
+            }
+            
+            Map<String, String> values = new HashMap<>();
+            try (PreparedStatement select = con.prepareStatement(
+                    "select name, value from roller_properties");
+                    ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    values.put(rs.getString(1), rs.getString(2));
+                }
+            }
+            
+            synchronized (this) {
+                if (snapshot == null || version != snapshot.getVersion()) {
+                    log.info("Runtime properties changed, loaded version " + version);
+                    snapshot = new RuntimeConfigSnapshot(values, version);
+                }
+            }
+            
+        } catch (SQLException e) {
+            log.warn("Unable to check for changed runtime properties, will retry", e);
         }
     }
     
@@ -197,5 +347,14 @@ public class JPAPropertiesManagerImpl implements PropertiesManager {
 
     @Override
     public void release() {}
+    
+    
+    @Override
+    public synchronized void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
 
 }
@@ -26,9 +26,7 @@ import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.UserManager;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -41,6 +39,7 @@ import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.UserRole;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogPermission;
+import org.apache.roller.weblogger.util.cache.CacheManager;
 
 
 @com.google.inject.Singleton
@@ -49,14 +48,15 @@ public class JPAUserManagerImpl implements UserManager {
 
     private final JPAPersistenceStrategy strategy;
     
-    // cached mapping of userNames -> userIds
-    private final Map<String, String> userNameToIdMap = Collections.synchronizedMap(new HashMap<>());
+    // cached mapping of userNames -> userIds and permissions -> permissionIds
+    private final EntityLookupCache entityCache;
     
 
     @com.google.inject.Inject
-    protected JPAUserManagerImpl(JPAPersistenceStrategy strat) {
+    protected JPAUserManagerImpl(JPAPersistenceStrategy strat, EntityLookupCache entityCache) {
         log.debug("Instantiating JPA User Manager");
         this.strategy = strat;
+        this.entityCache = entityCache;
     }
 
 
@@ -84,7 +84,7 @@ public class JPAUserManagerImpl implements UserManager {
         this.strategy.remove(user);
 
         // remove entry from cache mapping
-        this.userNameToIdMap.remove(userName);
+        this.entityCache.removeUserId(userName);
     }
 
     
@@ -163,11 +163,11 @@ public class JPAUserManagerImpl implements UserManager {
         
         // check cache first
         // NOTE: if we ever allow changing usernames then this needs updating
-        if(this.userNameToIdMap.containsKey(userName)) {
+        String userId = this.entityCache.getUserId(userName);
+        if(userId != null) {
 
-            User user = this.getUser(
-                    this.userNameToIdMap.get(userName));
-            if (user != null) {
+            User user = this.getUser(userId);
+            if (user != null && userName.equals(user.getUserName())) {
                 // only return the user if the enabled status matches
                 if(enabled == null || enabled.equals(user.getEnabled())) {
                     log.debug("userNameToIdMap CACHE HIT - "+userName);
@@ -175,7 +175,7 @@ public class JPAUserManagerImpl implements UserManager {
                 }
             } else {
                 // mapping hit with lookup miss?  mapping must be old, remove it
-                this.userNameToIdMap.remove(userName);
+                this.entityCache.removeUserId(userName);
             }
         }
 
@@ -204,7 +204,7 @@ public class JPAUserManagerImpl implements UserManager {
         // add mapping to cache
         if(user != null) {
             log.debug("userNameToIdMap CACHE MISS - " + userName);
-            this.userNameToIdMap.put(user.getUserName(), user.getId());
+            this.entityCache.putUserId(user.getUserName(), user.getId());
         }
 
         return user;
@@ -382,15 +382,44 @@ public class JPAUserManagerImpl implements UserManager {
     
     @Override
     public WeblogPermission getWeblogPermission(Weblog weblog, User user) throws WebloggerException {
+
+        // check cache first, only granted permissions are cached so a
+        // permission granted elsewhere is never missed
+        String permId = this.entityCache.getPermissionId(weblog.getHandle(), user.getUserName());
+        if (permId != null) {
+            WeblogPermission perm = (WeblogPermission) this.strategy.load(WeblogPermission.class, permId);
+            if (perm != null && !perm.isPending()
+                    && user.getUserName().equals(perm.getUserName())
+                    && weblog.getHandle().equals(perm.getObjectId())) {
+                return perm;
+            }
+            // mapping hit with lookup miss?  mappings must be old, remove them
+            this.entityCache.removePermissionIds(weblog.getHandle());
+        }
+
         TypedQuery<WeblogPermission> q = strategy.getNamedQuery("WeblogPermission.getByUserName&WeblogId"
                 , WeblogPermission.class);
         q.setParameter(1, user.getUserName());
         q.setParameter(2, weblog.getHandle());
+        WeblogPermission perm;
         try {
-            return q.getSingleResult();
+            perm = q.getSingleResult();
         } catch (NoResultException ignored) {
             return null;
         }
+
+        // add mapping to cache
+        this.entityCache.putPermissionId(weblog.getHandle(), user.getUserName(), perm.getId());
+        return perm;
+    }
+
+    /**
+     * Drop the cached permission lookups of the weblog of a permission which
+     * changed, here and through the cache handlers on other cluster nodes.
+     */
+    private void invalidate(WeblogPermission perm) {
+        this.entityCache.removePermissionIds(perm.getObjectId());
+        CacheManager.invalidate(perm);
     }
 
     @Override
@@ -420,14 +449,16 @@ public class JPAUserManagerImpl implements UserManager {
         } catch (NoResultException ignored) {}
 
         // permission already exists, so add any actions specified in perm argument
+        WeblogPermission perm;
         if (existingPerm != null) {
             existingPerm.addActions(actions);
-            this.strategy.store(existingPerm);
+            perm = existingPerm;
         } else {
             // it's a new permission, so store it
-            WeblogPermission perm = new WeblogPermission(weblog, user, actions);
-            this.strategy.store(perm);
+            perm = new WeblogPermission(weblog, user, actions);
         }
+        this.strategy.store(perm);
+        invalidate(perm);
     }
 
     
@@ -453,6 +484,7 @@ public class JPAUserManagerImpl implements UserManager {
             WeblogPermission perm = new WeblogPermission(weblog, user, actions);
             perm.setPending(true);
             this.strategy.store(perm);
+            invalidate(perm);
         }
     }
 
@@ -475,6 +507,7 @@ public class JPAUserManagerImpl implements UserManager {
         // set pending to false
         existingPerm.setPending(false);
         this.strategy.store(existingPerm);
+        invalidate(existingPerm);
     }
 
     
@@ -494,6 +527,7 @@ public class JPAUserManagerImpl implements UserManager {
         }
         // remove permission
         this.strategy.remove(existingPerm);
+        invalidate(existingPerm);
     }
 
     
@@ -522,6 +556,7 @@ public class JPAUserManagerImpl implements UserManager {
             // otherwise save it
             this.strategy.store(oldperm);
         }
+        invalidate(oldperm);
     }
 
     
@@ -20,6 +20,10 @@ package org.apache.roller.weblogger.business.jpa;
 
 import java.util.*;
 import java.text.SimpleDateFormat;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
@@ -30,25 +34,238 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.apache.roller.util.RollerConstants;
+import org.apache.roller.util.UUIDGenerator;
 import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.business.startup.WebloggerStartup;
 import org.apache.roller.weblogger.pojos.CommentSearchCriteria;
+import org.apache.roller.weblogger.pojos.StatCount;
+import org.apache.roller.weblogger.pojos.StatCountCountComparator;
+import org.apache.roller.weblogger.pojos.TagStat;
+import org.apache.roller.weblogger.pojos.TagStatComparator;
+import org.apache.roller.weblogger.pojos.TagStatCountComparator;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
+import org.apache.roller.weblogger.pojos.WeblogEntryAttribute;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
 import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
+import org.apache.roller.weblogger.pojos.WeblogEntryTag;
+import org.apache.roller.weblogger.pojos.WeblogEntryTagAggregate;
 import org.apache.roller.weblogger.pojos.WeblogHitCount;
-import org.apache.roller.weblogger.pojos.StatCount;
-import org.apache.roller.weblogger.
+import org.apache.roller.util.DateUtil;
+
+
+/**
+ * JPAWeblogEntryManagerImpl.java
+ *
+ * Created on May 31, 2006, 4:08 PM
+ *
+ */
+@com.google.inject.Singleton
+public class JPAWeblogEntryManagerImpl implements WeblogEntryManager {
+
+    private static final Log LOG = LogFactory.getLog(JPAWeblogEntryManagerImpl.class);
+
+    private final Weblogger roller;
+    private final JPAPersistenceStrategy strategy;
+
+    // cached mapping of entryAnchors -> entryIds
+    private final Map<String, String> entryAnchorToIdMap = Collections.synchronizedMap(new HashMap<>());
+
+    private static final Comparator<TagStat> TAG_STAT_NAME_COMPARATOR = new TagStatComparator();
+
+    private static final Comparator<TagStat> TAG_STAT_COUNT_REVERSE_COMPARATOR =
+            Collections.reverseOrder(TagStatCountComparator.getInstance());
+
+    private static final Comparator<StatCount> STAT_COUNT_COUNT_REVERSE_COMPARATOR =
+            Collections.reverseOrder(StatCountCountComparator.getInstance());
+
+
+    @com.google.inject.Inject
+    protected JPAWeblogEntryManagerImpl(Weblogger roller, JPAPersistenceStrategy strategy) {
+        LOG.debug("Instantiating JPA Weblog Manager");
+        this.roller = roller;
+        this.strategy = strategy;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void saveWeblogCategory(WeblogCategory cat) throws WebloggerException {
+        boolean exists = getWeblogCategory(cat.getId()) != null;
+        if (!exists && isDuplicateWeblogCategoryName(cat)) {
+            throw new WebloggerException("Duplicate category name, cannot save category");
+        }
+
+        // update weblog last modified date.  date updated by saveWebsite()
+        roller.getWeblogManager().saveWeblog(cat.getWeblog());
+        this.strategy.store(cat);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void removeWeblogCategory(WeblogCategory cat)
+    throws WebloggerException {
+        if (!cat.retrieveWeblogEntries(false).isEmpty()) {
+            throw new WebloggerException("Cannot remove category with entries");
+        }
+
+        cat.getWeblog().getWeblogCategories().remove(cat);
+
+        // remove cat
+        this.strategy.remove(cat);
+
+        if (cat.equals(cat.getWeblog().getBloggerCategory())) {
+            cat.getWeblog().setBloggerCategory(null);
+            this.strategy.store(cat.getWeblog());
+        }
+
+        // update weblog last modified date.  date updated by saveWebsite()
+        roller.getWeblogManager().saveWeblog(cat.getWeblog());
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void moveWeblogCategoryContents(WeblogCategory srcCat,
+            WeblogCategory destCat)
+            throws WebloggerException {
+
+        // get all entries in category and subcats
+        List<WeblogEntry> results = srcCat.retrieveWeblogEntries(false);
+
+        // Loop through entries in src cat, assign them to dest cat
+        Weblog website = destCat.getWeblog();
+        for (WeblogEntry entry : results) {
+            entry.setCategory(destCat);
+            entry.setWebsite(website);
+            this.strategy.store(entry);
+        }
+
+        // Update Blogger API category if applicable
+        WeblogCategory bloggerCategory = srcCat.getWeblog().getBloggerCategory();
+        if (bloggerCategory != null && bloggerCategory.getId().equals(srcCat.getId())) {
+            srcCat.getWeblog().setBloggerCategory(destCat);
+            this.strategy.store(srcCat.getWeblog());
+        }
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void saveComment(WeblogEntryComment comment) throws WebloggerException {
+        this.strategy.store(comment);
+
+        // update weblog last modified date.  date updated by saveWebsite()
+        roller.getWeblogManager().saveWeblog(comment.getWeblogEntry().getWebsite());
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void removeComment(WeblogEntryComment comment) throws WebloggerException {
+        this.strategy.remove(comment);
+
+        // update weblog last modified date.  date updated by saveWebsite()
+        roller.getWeblogManager().saveWeblog(comment.getWeblogEntry().getWebsite());
+    }
+
+    /**
+     * @inheritDoc
+     */
+    // TODO: perhaps the createAnchor() and queuePings() items should go outside this method?
+    @Override
+    public void saveWeblogEntry(WeblogEntry entry) throws WebloggerException {
+
+        if (entry.getCategory() == null) {
+            // Entry is invalid without category, so use weblog client cat
+            WeblogCategory cat = entry.getWebsite().getBloggerCategory();
+            if (cat == null) {
+                // Sanity check, maybe client category is null
+                cat = entry.getWebsite().getWeblogCategories().iterator().next();
+            }
+            entry.setCategory(cat);
+        }
+
+        // Entry is invalid without locale, if missing use weblog default
+        if (entry.getLocale() == null) {
+            entry.setLocale(entry.getWebsite().getLocale());
+        }
+
+        if (entry.getAnchor() == null || entry.getAnchor().isBlank()) {
+            entry.setAnchor(this.createAnchor(entry));
+        }
+
+        if (entry.isPublished()) {
+            // tag aggregates are updated only when entry published in order for
+            // tag cloud counts to match published entries
+            if (entry.getRefreshAggregates()) {
+                // blog entry wasn't published before, so increment all tag counts
+                for (WeblogEntryTag tag : entry.getTags()) {
+                    updateTagCount(tag.getName(), entry.getWebsite(), 1);
+                }
+                entry.setRefreshAggregates(false);
+            } else {
+                // only new tags need to be incremented
+                for (WeblogEntryTag tag : entry.getAddedTags()) {
+                    updateTagCount(tag.getName(), entry.getWebsite(), 1);
+                }
+            }
+        } else {
+            if (entry.getRefreshAggregates()) {
+                // blog entry no longer published so need to reduce aggregate count
+                for (WeblogEntryTag tag : entry.getTags()) {
+                    updateTagCount(tag.getName(), entry.getWebsite(), -1);
+                }
+                entry.setRefreshAggregates(false);
+            }
+        }
+
+        for (WeblogEntryTag tag : entry.getRemovedTags()) {
+            removeWeblogEntryTag(tag);
+        }
+
+        // if the entry was published to future, set status as SCHEDULED
+        // we only consider an entry future published if it is scheduled
+        // more than 1 minute into the future
+        if (PubStatus.PUBLISHED.equals(entry.getStatus()) &&
+                entry.getPubTime().after(new Date(System.currentTimeMillis() + RollerConstants.MIN_IN_MS))) {
+            entry.setStatus(PubStatus.SCHEDULED);
+        }
+
+        // Store value object (creates new or updates existing)
+        entry.setUpdateTime(new Timestamp(new Date().getTime()));
+
+        this.strategy.store(entry);
+
+        // update weblog last modified date.  date updated by saveWebsite()
+        if(entry.isPublished()) {
+            roller.getWeblogManager().saveWeblog(entry.getWebsite());
+        }
+
+        if(entry.isPublished()) {
+            // Queue applicable pings for this update.
+            roller.getAutopingManager().queueApplicableAutoPings(entry);
         }
     }
-    
+
     /**
      * @inheritDoc
      */
     @Override
     public void removeWeblogEntry(WeblogEntry entry) throws WebloggerException {
         Weblog weblog = entry.getWebsite();
-        
+
         CommentSearchCriteria csc = new CommentSearchCriteria();
         csc.setEntry(entry);
 
@@ -57,14 +274,14 @@ import org.apache.roller.weblogger.
         for (WeblogEntryComment comment : comments) {
             this.strategy.remove(comment);
         }
-        
+
         // remove tag & tag aggregates
         if (entry.getTags() != null) {
             for (WeblogEntryTag tag : entry.getTags()) {
                 removeWeblogEntryTag(tag);
             }
         }
-        
+
         // remove attributes
         if (entry.getEntryAttributes() != null) {
             for (Iterator<WeblogEntryAttribute> it = entry.getEntryAttributes().iterator(); it.hasNext(); ) {
@@ -76,16 +293,16 @@ import org.apache.roller.weblogger.
 
         // remove entry
         this.strategy.remove(entry);
-        
+
         // update weblog last modified date.  date updated by saveWebsite()
         if (entry.isPublished()) {
             roller.getWeblogManager().saveWeblog(weblog);
         }
-        
+
         // remove entry from cache mapping
         this.entryAnchorToIdMap.remove(entry.getWebsite().getHandle()+":"+entry.getAnchor());
     }
-    
+
     private List<WeblogEntry> getNextPrevEntries(WeblogEntry current, String catName,
             String locale, int maxEntries, boolean next)
             throws WebloggerException {
@@ -95,60 +312,44 @@ import org.apache.roller.weblogger.
 			return Collections.emptyList();
 		}
 
-        TypedQuery<WeblogEntry> query;
-        WeblogCategory category;
-        
-        List<Object> params = new ArrayList<>();
-        int size = 0;
-        String queryString = "SELECT e FROM WeblogEntry e WHERE ";
-        StringBuilder whereClause = new StringBuilder();
-
-        params.add(size++, current.getWebsite());
-        whereClause.append("e.website = ?").append(size);
-        
-        params.add(size++, PubStatus.PUBLISHED);
-        whereClause.append(" AND e.status = ?").append(size);
-                
+        DynamicQuery<WeblogEntry> query = new DynamicQuery<>(WeblogEntry.class,
+                "SELECT e FROM WeblogEntry e WHERE ");
+
+        query.append("e.website = ").param(current.getWebsite());
+        query.append(" AND e.status = ").param(PubStatus.PUBLISHED);
+
         if (next) {
-            params.add(size++, current.getPubTime());
-            whereClause.append(" AND e.pubTime > ?").append(size);
+            query.append(" AND e.pubTime > ").param(current.getPubTime());
         } else {
             // pub time null if current article not yet published, in Draft view
             if (current.getPubTime() != null) {
-                params.add(size++, current.getPubTime());
-                whereClause.append(" AND e.pubTime < ?").append(size);
+                query.append(" AND e.pubTime < ").param(current.getPubTime());
             }
         }
-        
+
         if (catName != null) {
-            category = getWeblogCategoryByName(current.getWebsite(), catName);
+            WeblogCategory category = getWeblogCategoryByName(current.getWebsite(), catName);
             if (category != null) {
-                params.add(size++, category);
-                whereClause.append(" AND e.category = ?").append(size);
+                query.append(" AND e.category = ").param(category);
             } else {
                 throw new WebloggerException("Cannot find category: " + catName);
-            } 
+            }
         }
-        
+
         if(locale != null) {
-            params.add(size++, locale + '%');
-            whereClause.append(" AND e.locale like ?").append(size);
+            query.append(" AND e.locale like ").param(locale + '%');
         }
-        
+
         if (next) {
-            whereClause.append(" ORDER BY e.pubTime ASC");
+            query.append(" ORDER BY e.pubTime ASC");
         } else {
-            whereClause.append(" ORDER BY e.pubTime DESC");
+            query.append(" ORDER BY e.pubTime DESC");
         }
-        query = strategy.getDynamicQuery(queryString + whereClause.toString(), WeblogEntry.class);
-        for (int i=0; i<params.size(); i++) {
-            query.setParameter(i+1, params.get(i));
-        }
-        query.setMaxResults(maxEntries);
-        
-        return query.getResultList();
+        query.page(0, maxEntries);
+
+        return query.getResultList(strategy);
     }
-    
+
     /**
      * @inheritDoc
      */
@@ -158,7 +359,7 @@ import org.apache.roller.weblogger.
         if (website == null) {
             throw new WebloggerException("website is null");
         }
-        
+
         TypedQuery<WeblogCategory> q = strategy.getNamedQuery(
                 "WeblogCategory.getByWeblog", WeblogCategory.class);
         q.setParameter(1, website);
@@ -176,339 +377,118 @@ import org.apache.roller.weblogger.
             cat = getWeblogCategoryByName(wesc.getWeblog(), wesc.getCatName());
         }
 
-        List<Object> params = new ArrayList<>();
-        int size = 0;
-        StringBuilder queryString = new StringBuilder();
-        
+        DynamicQuery<WeblogEntry> query;
+
         if (wesc.getTags() == null || wesc.getTags().isEmpty()) {
-            queryString.append("SELECT e FROM WeblogEntry e WHERE ");
+            query = new DynamicQuery<>(WeblogEntry.class, "SELECT e FROM WeblogEntry e WHERE ");
         } else {
-            queryString.append("SELECT e FROM WeblogEntry e JOIN e.tags t WHERE ");
-            queryString.append("(");
+            query = new DynamicQuery<>(WeblogEntry.class, "SELECT e FROM WeblogEntry e JOIN e.tags t WHERE ");
+            query.append("(");
             for (int i = 0; i < wesc.getTags().size(); i++) {
                 if (i != 0) {
-                    queryString.append(" OR ");
+                    query.append(" OR ");
                 }
-                params.add(size++, wesc.getTags().get(i));
-                queryString.append(" t.name = ?").append(size);                
+                query.append(" t.name = ").param(wesc.getTags().get(i));
             }
-            queryString.append(") AND ");
+            query.append(") AND ");
         }
-        
+
         if (wesc.getWeblog() != null) {
-            params.add(size++, wesc.getWeblog().getId());
-            queryString.append("e.website.id = ?").append(size);
+            query.append("e.website.id = ").param(wesc.getWeblog().getId());
         } else {
-            params.add(size++, Boolean.TRUE);
-            queryString.append("e.website.visible = ?").append(size);
+            query.append("e.website.visible = ").param(Boolean.TRUE);
         }
-        
+
         if (wesc.getUser() != null) {
-            params.add(size++, wesc.getUser().getUserName());
-            queryString.append(" AND e.creatorUserName = ?").append(size);
+            query.append(" AND e.creatorUserName = ").param(wesc.getUser().getUserName());
         }
-        
+
         if (wesc.getStartDate() != null) {
             Timestamp start = new Timestamp(wesc.getStartDate().getTime());
-            params.add(size++, start);
-            queryString.append(" AND e.pubTime >= ?").append(size);
+            query.append(" AND e.pubTime >= ").param(start);
         }
-        
+
         if (wesc.getEndDate() != null) {
             Timestamp end = new Timestamp(wesc.getEndDate().getTime());
-            params.add(size++, end);
-            queryString.append(" AND e.pubTime <= ?").append(size);
+            query.append(" AND e.pubTime <= ").param(end);
         }
-        
+
         if (cat != null) {
-            params.add(size++, cat.getId());
-            queryString.append(" AND e.category.id = ?").append(size);
+            query.append(" AND e.category.id = ").param(cat.getId());
         }
-                
+
         if (wesc.getStatus() != null) {
-            params.add(size++, wesc.getStatus());
-            queryString.append(" AND e.status = ?").append(size);
+            query.append(" AND e.status = ").param(wesc.getStatus());
         }
-        
+
         if (wesc.getLocale() != null) {
-            params.add(size++, wesc.getLocale() + '%');
-            queryString.append(" AND e.locale like ?").append(size);
+            query.append(" AND e.locale like ").param(wesc.getLocale() + '%');
         }
-        
+
         if (StringUtils.isNotEmpty(wesc.getText())) {
-            params.add(size++, '%' + wesc.getText() + '%');
-            queryString.append(" AND ( e.text LIKE ?").append(size);
-this.strategy.store(entry);
-        
-        // update weblog last modified date.  date updated by saveWebsite()
-        if(entry.isPublished()) {
-            roller.getWeblogManager().saveWeblog(entry.getWebsite());
-        }
-        
-        if(entry.isPublished()) {
-            // Queue applicable pings for this update.
-            roller.getAutopingManager().queueApplicableAutoPings(entry);
+            query.append(" AND ( e.text LIKE ").param('%' + wesc.getText() + '%');
+            query.append("    OR e.summary LIKE ").sameParam();
+            query.append("    OR e.title LIKE ").sameParam();
+            query.append(") ");
         }
-    }
-    
-    /**
-     * @inheritDoc
-     */
-    @Override
-    public void removeWeblogEntry(WeblogEntry entry) throws WebloggerException {
-        Weblog weblog = entry.getWebsite();
-        
-        CommentSearchCriteria csc = new CommentSearchCriteria();
-        csc.setEntry(entry);
 
-        // remove comments
-        List<WeblogEntryComment> comments = getComments(csc);
-        for (WeblogEntryComment comment : comments) {
-            this.strategy.remove(comment);
-        }
-        
-        // remove tag & tag aggregates
-        if (entry.getTags() != null) {
-            for (WeblogEntryTag tag : entry.getTags()) {
-                removeWeblogEntryTag(tag);
-            }
-        }
-        
-        // remove attributes
-        if (entry.getEntryAttributes() != null) {
-            for (Iterator<WeblogEntryAttribute> it = entry.getEntryAttributes().iterator(); it.hasNext();
-        // but MySQL says "General error, message from server: "You can't
-        // specify target table 'roller_comment' for update in FROM clause"
-        
-        CommentSearchCriteria csc = new CommentSearchCriteria();
-        csc.setWeblog(weblog);
-        csc.setEntry(entry);
-        csc.setSearchText(searchString);
-        csc.setStartDate(startDate);
-        csc.setEndDate(endDate);
-        csc.setStatus(status);
+        String sortField = WeblogEntrySearchCriteria.SortBy.UPDATE_TIME.equals(wesc.getSortBy())
+                ? "e.updateTime" : "e.pubTime";
+        String sortOrder = WeblogEntrySearchCriteria.SortOrder.ASCENDING.equals(wesc.getSortOrder())
+                ? "ASC" : "DESC";
 
-        List<WeblogEntryComment> comments = getComments(csc);
-        int count = 0;
-        for (WeblogEntryComment comment : comments) {
-            removeComment(comment);
-            count++;
+        // seek past the entry the previous page ended with
+        if (wesc.getAfterTime() != null && wesc.getAfterId() != null) {
+            String op = "ASC".equals(sortOrder) ? " > " : " < ";
+            query.append(" AND (").append(sortField).append(op)
+                    .param(new Timestamp(wesc.getAfterTime().getTime()));
+            query.append(" OR (").append(sortField).append(" = ").sameParam();
+            query.append(" AND e.id").append(op).param(wesc.getAfterId()).append(")) ");
         }
-        return count;
+
+        // entries published together still need a stable order to page by
+        query.append(" ORDER BY ").append(sortField).append(" ").append(sortOrder);
+        query.append(", e.id ").append(sortOrder).append(" ");
+        query.page(wesc.getOffset(), wesc.getMaxResults());
+
+        return query.getResultList(strategy);
     }
-    
-    
+
     /**
      * @inheritDoc
      */
     @Override
-    public WeblogCategory getWeblogCategory(String id)
+    public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
     throws WebloggerException {
-        return (WeblogCategory) this.strategy.load(
-                WeblogCategory.class, id);
-    }
-    
-    //--------------------------------------------- WeblogCategory Queries
-    
-    /**
-     * @inheritDoc
-     */
-    @Override
-    public WeblogCategory getWeblogCategoryByName(Weblog weblog,
-            String categoryName) throws WebloggerException {
-        TypedQuery<WeblogCategory> q = strategy.getNamedQuery(
-                "WeblogCategory.getByWeblog&Name", WeblogCategory.class);
-        q.setParameter(1, weblog);
-        q.setParameter(2, categoryName);
-        try {
-            return q.getSingleResult();
-        } catch (NoResultException e) {
-            return null;
+        TypedQuery<WeblogEntry> query = strategy.getNamedQuery(
+                "WeblogEntry.getByPinnedToMain&statusOrderByPubTimeDesc", WeblogEntry.class);
+        query.setParameter(1, Boolean.TRUE);
+        query.setParameter(2, PubStatus.PUBLISHED);
+        if (max != null) {
+            query.setMaxResults(max);
         }
+        return query.getResultList();
     }
 
-    /**
-     * @inheritDoc
-     */
-    @Override
-    public WeblogEntryComment getComment(String id) throws WebloggerException {
-        return (WeblogEntryComment) this.strategy.load(WeblogEntryComment.class, id);
-    }
-    
-    /**
-     * @inheritDoc
-     */
-    @Override
-    public WeblogEntry getWeblogEntry(String id) throws WebloggerException {
-        return (WeblogEntry)strategy.load(WeblogEntry.class, id);
-    }
-    
-    /**
-     * @inheritDoc
-     */
     @Override
-    public Map<Date, List<WeblogEntry>> getWeblogEntryObjectMap(WeblogEntrySearchCriteria wesc) throws WebloggerException {
-        TreeMap<Date, List<WeblogEntry>> map = new TreeMap<>(Collections.reverseOrder());
+    public void removeWeblogEntryAttribute(String name, WeblogEntry entry)
+    throws WebloggerException {
 
-        List<WeblogEntry> entries = getWeblogEntries(wesc);
+        // seems silly, why is this not done in WeblogEntry?
 
-        Calendar cal = Calendar.getInstance();
-        if (wesc.getWeblog() != null) {
-            cal.setTimeZone(wesc.getWeblog().getTimeZoneInstance());
-        }
+        for (Iterator<WeblogEntryAttribute> it = entry.getEntryAttributes().iterator(); it.hasNext();) {
+            WeblogEntryAttribute entryAttribute = it.next();
+            if (entryAttribute.getName().equals(name)) {
 
-        for (WeblogEntry entry : entries) {
-            Date sDate = DateUtil.getNoonOfDay(entry.getPubTime(), cal);
-            List<WeblogEntry> dayEntries = map.computeIfAbsent(sDate, k -> new ArrayList<>());
-            dayEntries.add(entry);
+                //Remove it from database
+                this.strategy.remove(entryAttribute);
+
+                //Remove it from the collection
+                it.remove();
+            }
         }
-        return map;
     }
 
-    /**
-     * @inheritDoc
-     */
-    @Override
-    public Map<Date, String> getWeblogEntryStringMap(WeblogEntrySearchCriteria wesc) throws WebloggerException {
-        TreeMap<Date, String> map = new TreeMap<>(Collections.reverseOrder());
-
-        List<WeblogEntry> entries = getWeblogEntries(wesc);
-
-        Calendar cal = Calendar.getInstance();
-        SimpleDateFormat formatter = DateUtil.get8charDateFormat();
-        if (wesc.getWeblog() != null) {
-            TimeZone tz = wesc.getWeblog().getTimeZoneInstance();
-            cal.setTimeZone(tz);
-            formatter.setTimeZone(tz);
-        }
-
-        for (WeblogEntry entry : entries) {
-            Date sDate = DateUtil.getNoonOfDay(entry.getPubTime(), cal);
-            if (map.get(sDate) == null) {
-                map.put(sDate, formatter.format(sDate));
-            }
-        }
-        return map;
-    }
-
-    /**
-     * @inheritDoc
-     */
-    @Override
-    public List<StatCount> getMostCommentedWeblogEntries(Weblog website,
-            Date startDate, Date endDate, int offset,
-            int length) throws WebloggerException {
-        TypedQuery<WeblogEntryComment> query;
-        List<WeblogEntryComment> queryResults;
-
-        Timestamp end = new Timestamp(endDate != null? endDate.getTime() : new Date().getTime());
-
-        if (website != null) {
-            if (startDate != null) {
-                Timestamp start = new Timestamp(startDate.getTime());
-                query = strategy.getNamedQuery(
-                        "WeblogEntryComment.getMostCommentedWeblogEntryByWebsite&EndDate&StartDate",
-                        WeblogEntryComment.class);
-                query.setParameter(1, website);
-                query.setParameter(2, end);
-                query.setParameter(3, start);
-            } else {
-                query = strategy.getNamedQuery(
-                        "WeblogEntryComment.getMostCommentedWeblogEntryByWebsite&EndDate", WeblogEntryComment.class);
-                query.setParameter(1, website);
-                query.setParameter(2, end);
-            }
-        } else {
-            if (startDate != null) {
-                Timestamp start = new Timestamp(startDate.getTime());
-                query = strategy.getNamedQuery(
-                        "WeblogEntryComment.getMostCommentedWeblogEntryByEndDate&StartDate", WeblogEntryComment.class);
-                query.setParameter(1, end);
-                query.setParameter(2, start);
-            } else {
-                query = strategy.getNamedQuery(
-                        "WeblogEntryComment.getMostCommentedWeblogEntryByEndDate", WeblogEntryComment.class);
-                query.setParameter(1, end);
-            }
-        }
-        setFirstMax( query, offset, length);
-        queryResults = query.getResultList();
-        List<StatCount> results = new ArrayList<>();
-        if (queryResults != null) {
-            for (Object obj : queryResults) {
-                Object[] row = (Object[]) obj;
-                StatCount sc = new StatCount(
-                        (String)row[1],                             // weblog handle
-                        (String)row[2],                             // entry anchor
-                        (String)row[3],                             // entry title
-                        "statCount.weblogEntryCommentCountType",    // stat desc
-                        ((Long)row[0]));                            // count
-                sc.setWeblogHandle((String)row[1]);
-                results.add(sc);
-            }
-        }
-        // Original query ordered by desc count.
-        // JPA QL doesn't allow queries to be ordered by agregates; do it in memory
-        results.sort(STAT_COUNT_COUNT_REVERSE_COMPARATOR);
-        
-        return results;
-    }
-    
-    /**
-     * @inheritDoc
-     */
-    @Override
-    public WeblogEntry getNextEntry(WeblogEntry current,
-            String catName, String locale) throws WebloggerException {
-        WeblogEntry entry = null;
-        List<WeblogEntry> entryList = getNextPrevEntries(current, catName, locale, 1, true);
-        if (entryList != null && !entryList.isEmpty()) {
-            entry = entryList.get(0);
-        }
-        return entry;
-    }
-    
-    /**
-     * @inheritDoc
-     */
-    @Override
-    public WeblogEntry getPreviousEntry(WeblogEntry current,
-            String catName, String locale) throws WebloggerException {
-        WeblogEntry entry = null;
-        List<WeblogEntry> entryList = getNextPrevEntries(current, catName, locale, 1, false);
-        if (entryList != null && !entryList.isEmpty()) {
-            entry = entryList.get(0);
-public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
-    throws WebloggerException {
-        TypedQuery<WeblogEntry> query = strategy.getNamedQuery(
-                "WeblogEntry.getByPinnedToMain&statusOrderByPubTimeDesc", WeblogEntry.class);
-        query.setParameter(1, Boolean.TRUE);
-        query.setParameter(2, PubStatus.PUBLISHED);
-        if (max != null) {
-            query.setMaxResults(max);
-        }
-        return query.getResultList();
-    }
-    
-    @Override
-    public void removeWeblogEntryAttribute(String name, WeblogEntry entry)
-    throws WebloggerException {
-
-        // seems silly, why is this not done in WeblogEntry?
-
-        for (Iterator<WeblogEntryAttribute> it = entry.getEntryAttributes().iterator(); it.hasNext();) {
-            WeblogEntryAttribute entryAttribute = it.next();
-            if (entryAttribute.getName().equals(name)) {
-
-                //Remove it from database
-                this.strategy.remove(entryAttribute);
-
-                //Remove it from the collection
-                it.remove();
-            }
-        }
-    }
-    
     private void removeWeblogEntryTag(WeblogEntryTag tag) throws WebloggerException {
         if (tag.getWeblogEntry().isPublished()) {
             updateTagCount(tag.getName(), tag.getWeblogEntry().getWebsite(), -1);
@@ -530,7 +510,8 @@ public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
         return null; // Not found in cache or cache entry was stale
     }
 
-    private WeblogEntry getWeblogEntryFromDatabase(Weblog website, String anchor, String mappingKey) {
+    private WeblogEntry getWeblogEntryFromDatabase(Weblog website, String anchor, String mappingKey)
+            throws WebloggerException {
         TypedQuery<WeblogEntry> q = strategy.getNamedQuery(
                 "WeblogEntry.getByWebsite&AnchorOrderByPubTimeDesc", WeblogEntry.class);
         q.setParameter(1, website);
@@ -556,28 +537,28 @@ public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
     @Override
     public WeblogEntry getWeblogEntryByAnchor(Weblog website,
             String anchor) throws WebloggerException {
-        
+
         if (website == null) {
             throw new WebloggerException("Website is null");
         }
-        
+
         if (anchor == null) {
             throw new WebloggerException("Anchor is null");
         }
-        
+
         // mapping key is combo of weblog + anchor
         String mappingKey = website.getHandle() + ":" + anchor;
-        
+
         // check cache first
         WeblogEntry entry = getWeblogEntryFromCache(mappingKey);
         if (entry != null) {
             return entry;
         }
-        
+
         // cache failed, do lookup
         return getWeblogEntryFromDatabase(website, anchor, mappingKey);
     }
-    
+
     /**
      * @inheritDoc
      */
@@ -587,18 +568,18 @@ public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
         String base = entry.createAnchorBase();
         String name = base;
         int count = 0;
-        
+
         while (true) {
             if (count > 0) {
                 name = base + count;
             }
-            
+
             TypedQuery<WeblogEntry> q = strategy.getNamedQuery(
                     "WeblogEntry.getByWebsite&Anchor", WeblogEntry.class);
             q.setParameter(1, entry.getWebsite());
             q.setParameter(2, name);
             List<WeblogEntry> results = q.getResultList();
-            
+
             if (results.isEmpty()) {
                 break;
             } else {
@@ -607,7 +588,7 @@ public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
         }
         return name;
     }
-    
+
     /**
      * @inheritDoc
      */
@@ -617,7 +598,7 @@ public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
         return (getWeblogCategoryByName(
                 cat.getWeblog(), cat.getName()) != null);
     }
-    
+
     /**
      * @inheritDoc
      */
@@ -633,92 +614,85 @@ public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
         return entryCount > 0;
     }
 
-    private StringBuilder appendConjuctionToWhereclause(StringBuilder whereClause, String condition) {
-        if (whereClause.length() != 0) {
-            whereClause.append(" AND ");
-        }
-        whereClause.append(condition);
-        return whereClause;
-    }
-
-    private static class QueryBuilderResult {
-        final StringBuilder whereClause;
-        final List<Object> params;
-
-        QueryBuilderResult(StringBuilder whereClause, List<Object> params) {
-            this.whereClause = whereClause;
-            this.params = params;
-        }
-    }
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<WeblogEntryComment> getComments(CommentSearchCriteria csc) throws WebloggerException {
 
-    private QueryBuilderResult buildCommentWhereClause(CommentSearchCriteria csc) {
-        List<Object> params = new ArrayList<>();
-        StringBuilder whereClause = new StringBuilder();
-        int size = 0;
+        DynamicQuery<WeblogEntryComment> query = new DynamicQuery<>(WeblogEntryComment.class,
+                "SELECT c FROM WeblogEntryComment c ");
 
         if (csc.getEntry() != null) {
-            params.add(size++, csc.getEntry());
-            whereClause.append("c.weblogEntry = ?").append(size);
+            query.where("c.weblogEntry = ").param(csc.getEntry());
         } else if (csc.getWeblog() != null) {
-            params.add(size++, csc.getWeblog());
-            whereClause.append("c.weblogEntry.website = ?").append(size);
+            query.where("c.weblogEntry.website = ").param(csc.getWeblog());
         }
-        
+
         if (csc.getSearchText() != null) {
-            params.add(size++, "%" + csc.getSearchText().toUpperCase() + "%");
-            appendConjuctionToWhereclause(whereClause, "upper(c.content) LIKE ?").append(size);
+            query.where("upper(c.content) LIKE ").param("%" + csc.getSearchText().toUpperCase() + "%");
         }
-        
+
         if (csc.getStartDate() != null) {
             Timestamp start = new Timestamp(csc.getStartDate().getTime());
-            params.add(size++, start);
-            appendConjuctionToWhereclause(whereClause, "c.postTime >= ?").append(size);
+            query.where("c.postTime >= ").param(start);
         }
-        
+
         if (csc.getEndDate() != null) {
             Timestamp end = new Timestamp(csc.getEndDate().getTime());
-            params.add(size++, end);
-            appendConjuctionToWhereclause(whereClause, "c.postTime <= ?").append(size);
+            query.where("c.postTime <= ").param(end);
         }
-        
+
         if (csc.getStatus() != null) {
-            params.add(size++, csc.getStatus());
-            appendConjuctionToWhereclause(whereClause, "c.status = ?").append(size);
+            query.where("c.status = ").param(csc.getStatus());
+        }
+
+        if (csc.isReverseChrono()) {
+            query.append(" ORDER BY c.postTime DESC");
+        } else {
+            query.append(" ORDER BY c.postTime ASC");
         }
-        return new QueryBuilderResult(whereClause, params);
+        query.page(csc.getOffset(), csc.getMaxResults());
+
+        return query.getResultList(strategy);
+
     }
 
     /**
      * @inheritDoc
      */
     @Override
-    public List<WeblogEntryComment> getComments(CommentSearchCriteria csc) throws WebloggerException {
-        
-        StringBuilder queryString = new StringBuilder("SELECT c FROM WeblogEntryComment c ");
-        
-        QueryBuilderResult queryParts = buildCommentWhereClause(csc);
-        StringBuilder whereClause = queryParts.whereClause;
-        List<Object> params = queryParts.params;
+    public int removeMatchingComments(
+            Weblog     weblog,
+            WeblogEntry entry,
+            String  searchString,
+            Date    startDate,
+            Date    endDate,
+            ApprovalStatus status) throws WebloggerException {
+
+        // TODO dynamic bulk delete query: I'd MUCH rather use a bulk delete,
+        // but MySQL says "General error, message from server: "You can't
+        // specify target table 'roller_comment' for update in FROM clause"
 
-        if(whereClause.length() != 0) {
-            queryString.append(" WHERE ").append(whereClause);
-        }
-        if (csc.isReverseChrono()) {
-            queryString.append(" ORDER BY c.postTime DESC");
-        } else {
-            queryString.append(" ORDER BY c.postTime ASC");
-        }
-        
-        TypedQuery<WeblogEntryComment> query = strategy.getDynamicQuery(queryString.toString(), WeblogEntryComment.class);
-        setFirstMax( query, csc.getOffset(), csc.getMaxResults());
-        for (int i=0; i<params.size(); i++) {
-            query.setParameter(i+1, params.get(i));
+        CommentSearchCriteria csc = new CommentSearchCriteria();
+        csc.setWeblog(weblog);
+        csc.setEntry(entry);
+        csc.setSearchText(searchString);
+        csc.setStartDate(startDate);
+        csc.setEndDate(endDate);
+        csc.setStatus(status);
+
+        List<WeblogEntryComment> comments = getComments(csc);
+        int count = 0;
+        for (WeblogEntryComment comment : comments) {
+            removeComment(comment);
+            count++;
         }
-        return query.getResultList();
-        
+        return count;
     }
-    
-/**
+
+
+    /**
      * @inheritDoc
      */
     @Override
@@ -727,9 +701,9 @@ public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
         return (WeblogCategory) this.strategy.load(
                 WeblogCategory.class, id);
     }
-    
+
     //--------------------------------------------- WeblogCategory Queries
-    
+
     /**
      * @inheritDoc
      */
@@ -754,63 +728,218 @@ public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
     public WeblogEntryComment getComment(String id) throws WebloggerException {
         return (WeblogEntryComment) this.strategy.load(WeblogEntryComment.class, id);
     }
-    
+
     /**
      * @inheritDoc
      */
     @Override
     public WeblogEntry getWeblogEntry(String id) throws WebloggerException {
-        return (WeblogEntry)strategy.load(WeblogEntry.class,
+        return (WeblogEntry)strategy.load(WeblogEntry.class, id);
+    }
+
     /**
      * @inheritDoc
      */
     @Override
-    public long getEntryCount() throws WebloggerException {
-        TypedQuery<Long> q = strategy.getNamedQuery(
-                "WeblogEntry.getCountDistinctByStatus", Long.class);
-        q.setParameter(1, PubStatus.PUBLISHED);
-        return q.getResultList().get(0);
+    public Map<Date, List<WeblogEntry>> getWeblogEntryObjectMap(WeblogEntrySearchCriteria wesc) throws WebloggerException {
+        TreeMap<Date, List<WeblogEntry>> map = new TreeMap<>(Collections.reverseOrder());
+
+        List<WeblogEntry> entries = getWeblogEntries(wesc);
+
+        Calendar cal = Calendar.getInstance();
+        if (wesc.getWeblog() != null) {
+            cal.setTimeZone(wesc.getWeblog().getTimeZoneInstance());
+        }
+
+        for (WeblogEntry entry : entries) {
+            Date sDate = DateUtil.getNoonOfDay(entry.getPubTime(), cal);
+            List<WeblogEntry> dayEntries = map.computeIfAbsent(sDate, k -> new ArrayList<>());
+            dayEntries.add(entry);
+        }
+        return map;
     }
-    
+
     /**
      * @inheritDoc
      */
     @Override
-    public long getEntryCount(Weblog website) throws WebloggerException {
-        TypedQuery<Long> q = strategy.getNamedQuery(
-                "WeblogEntry.getCountDistinctByStatus&Website", Long.class);
-        q.setParameter(1, PubStatus.PUBLISHED);
-        q.setParameter(2, website);
-        return q.getResultList().get(0);
+    public Map<Date, String> getWeblogEntryStringMap(WeblogEntrySearchCriteria wesc) throws WebloggerException {
+        TreeMap<Date, String> map = new TreeMap<>(Collections.reverseOrder());
+
+        List<WeblogEntry> entries = getWeblogEntries(wesc);
+
+        Calendar cal = Calendar.getInstance();
+        SimpleDateFormat formatter = DateUtil.get8charDateFormat();
+        if (wesc.getWeblog() != null) {
+            TimeZone tz = wesc.getWeblog().getTimeZoneInstance();
+            cal.setTimeZone(tz);
+            formatter.setTimeZone(tz);
+        }
+
+        for (WeblogEntry entry : entries) {
+            Date sDate = DateUtil.getNoonOfDay(entry.getPubTime(), cal);
+            if (map.get(sDate) == null) {
+                map.put(sDate, formatter.format(sDate));
+            }
+        }
+        return map;
     }
 
     /**
-     * Appends given expression to given whereClause. If whereClause already
-     * has other conditions, an " AND " is also appended before appending
-     * the expression
-     * @param whereClause The given where Clauuse
-     * @param expression The given expression
-     * @return the whereClause.
+     * @inheritDoc
      */
-    private static StringBuilder appendConjuctionToWhereclause(StringBuilder whereClause,
-            String expression) {
-        if (whereClause.length() != 0 && expression.length() != 0) {
-            whereClause.append(" AND ");
-        }
-        return whereClause.append(expression);
-    }
-    
-}
+    @Override
+    public List<StatCount> getMostCommentedWeblogEntries(Weblog website,
+            Date startDate, Date endDate, int offset,
+            int length) throws WebloggerException {
+        Query query;
+        List<?> queryResults;
+
+        Timestamp end = new Timestamp(endDate != null? endDate.getTime() : new Date().getTime());
+
+        if (website != null) {
+            if (startDate != null) {
+                Timestamp start = new Timestamp(startDate.getTime());
+                query = strategy.getNamedQuery(
+                        "WeblogEntryComment.getMostCommentedWeblogEntryByWebsite&EndDate&StartDate");
+                query.setParameter(1, website);
+                query.setParameter(2, end);
+                query.setParameter(3, start);
+            } else {
+                query = strategy.getNamedQuery(
+                        "WeblogEntryComment.getMostCommentedWeblogEntryByWebsite&EndDate");
+                query.setParameter(1, website);
+                query.setParameter(2, end);
+            }
+        } else {
+            if (startDate != null) {
+                Timestamp start = new Timestamp(startDate.getTime());
+                query = strategy.getNamedQuery(
+                        "WeblogEntryComment.getMostCommentedWeblogEntryByEndDate&StartDate");
+                query.setParameter(1, end);
+                query.setParameter(2, start);
+            } else {
+                query = strategy.getNamedQuery(
+                        "WeblogEntryComment.getMostCommentedWeblogEntryByEndDate");
+                query.setParameter(1, end);
+            }
+        }
+        setFirstMax( query, offset, length);
+        queryResults = query.getResultList();
+        List<StatCount> results = new ArrayList<>();
+        if (queryResults != null) {
+            for (Object obj : queryResults) {
+                Object[] row = (Object[]) obj;
+                StatCount sc = new StatCount(
+                        (String)row[1],                             // weblog handle
+                        (String)row[2],                             // entry anchor
+                        (String)row[3],                             // entry title
+                        "statCount.weblogEntryCommentCountType",    // stat desc
+                        ((Long)row[0]));                            // count
+                sc.setWeblogHandle((String)row[1]);
+                results.add(sc);
+            }
+        }
+        // Original query ordered by desc count.
+        // JPA QL doesn't allow queries to be ordered by agregates; do it in memory
+        results.sort(STAT_COUNT_COUNT_REVERSE_COMPARATOR);
+
+        return results;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public WeblogEntry getNextEntry(WeblogEntry current,
+            String catName, String locale) throws WebloggerException {
+        WeblogEntry entry = null;
+        List<WeblogEntry> entryList = getNextPrevEntries(current, catName, locale, 1, true);
+        if (entryList != null && !entryList.isEmpty()) {
+            entry = entryList.get(0);
+        }
+        return entry;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public WeblogEntry getPreviousEntry(WeblogEntry current,
+            String catName, String locale) throws WebloggerException {
+        WeblogEntry entry = null;
+        List<WeblogEntry> entryList = getNextPrevEntries(current, catName, locale, 1, false);
+        if (entryList != null && !entryList.isEmpty()) {
+            entry = entryList.get(0);
+        }
+        return entry;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void release() {}
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void applyCommentDefaultsToEntries(Weblog website)
+    throws WebloggerException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("applyCommentDefaults");
+        }
+
+        // TODO: Non-standard JPA bulk update, using parameter values in set clause
+        Query q = strategy.getNamedUpdate(
+                "WeblogEntry.updateAllowComments&CommentDaysByWebsite");
+        q.setParameter(1, website.getDefaultAllowComments());
+        q.setParameter(2, website.getDefaultCommentDays());
+        q.setParameter(3, website);
+        q.executeUpdate();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<TagStat> getPopularTags(Weblog website, Date startDate, int offset, int limit)
+    throws WebloggerException {
+        Query query;
+        List<?> queryResults;
+
+        if (website != null) {
+            if (startDate != null) {
+                Timestamp start = new Timestamp(startDate.getTime());
+                query = strategy.getNamedQuery(
+                        "WeblogEntryTagAggregate.getPopularTagsByWebsite&StartDate");
+                query.setParameter(1, website);
+                query.setParameter(2, start);
+            } else {
+                query = strategy.getNamedQuery(
+                        "WeblogEntryTagAggregate.getPopularTagsByWebsite");
+                query.setParameter(1, website);
+            }
+        } else {
+            if (startDate != null) {
+                Timestamp start = new Timestamp(startDate.getTime());
+                query = strategy.getNamedQuery(
+                        "WeblogEntryTagAggregate.getPopularTagsByWebsiteNull&StartDate");
+                query.setParameter(1, start);
+            } else {
+                query = strategy.getNamedQuery(
+                        "WeblogEntryTagAggregate.getPopularTagsByWebsiteNull");
+            }
+        }
+        setFirstMax( query, offset, limit);
+        queryResults = query.getResultList();
 
-}
-        setFirstMax( query, offset, limit);
-        queryResults = query.getResultList();
-        
         double min = Integer.MAX_VALUE;
         double max = Integer.MIN_VALUE;
-        
+
         List<TagStat> results = new ArrayList<>(limit >= 0 ? limit : 25);
-        
+
         if (queryResults != null) {
             for (Object obj : queryResults) {
                 Object[] row = (Object[]) obj;
@@ -826,54 +955,206 @@ public List<WeblogEntry> getWeblogEntriesPinnedToMain(Integer max)
 
         min = Math.log(1+min);
         max = Math.log(1+max);
-        
+
         double range = Math.max(.01, max - min) * 1.0001;
-        
+
         for (TagStat t : results) {
             t.setIntensity((int) (1 + Math.floor(5 * (Math.log(1+t.getCount()) - min) / range)));
         }
 
         // sort results by name, because query had to sort by total
         results.sort(TAG_STAT_NAME_COMPARATOR);
-interface PersistenceStrategy {
-    <T> TypedQuery<T> getNamedQuery(String queryName, Class<T> resultClass);
-    Query getNamedUpdate(String queryName);
-    void store(Object entity);
-    void remove(Object entity);
-}
 
-class Weblog { /* ... */ }
-class WeblogHitCount {
-    private Weblog weblog;
-    private int dailyHits;
+        return results;
+    }
 
-    public Weblog getWeblog() { return weblog; }
-    public void setWeblog(Weblog weblog) { this.weblog = weblog; }
-    public int getDailyHits() { return dailyHits; }
-    public void setDailyHits(int dailyHits) { this.dailyHits = dailyHits; }
-}
-class WebloggerException extends Exception {
-    public WebloggerException(String message) { super(message); }
-}
-enum ApprovalStatus { APPROVED, PENDING, REJECTED }
-enum PubStatus { PUBLISHED, DRAFT, PENDING }
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<TagStat> getTags(Weblog website, String sortBy,
+            String startsWith, int offset, int limit) throws WebloggerException {
+        Query query;
+        List<?> queryResults;
+        boolean sortByName = sortBy == null || !sortBy.equals("count");
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
-import javax.persistence.NoResultException;
-import javax.persistence.Query;
-import javax.persistence.TypedQuery;
+        List<Object> params = new ArrayList<>();
+        int size = 0;
+        StringBuilder queryString = new StringBuilder();
+        queryString.append("SELECT w.name, SUM(w.total) FROM WeblogEntryTagAggregate w WHERE ");
 
-public class WeblogHitCountService {
+        if (website != null) {
+            params.add(size++, website.getId());
+            queryString.append(" w.weblog.id = ?").append(size);
+        } else {
+            queryString.append(" w.weblog IS NULL");
+        }
 
-    private final PersistenceStrategy strategy;
+        if (StringUtils.isNotEmpty(startsWith)) {
+            params.add(size++, startsWith + '%');
+            queryString.append(" AND w.name LIKE ?").append(size);
+        }
 
-    public WeblogHitCountService(PersistenceStrategy strategy) {
-        this.strategy = strategy;
+        if (sortByName) {
+            queryString.append(" GROUP BY w.name, w.total ORDER BY w.name");
+        } else {
+            queryString.append(" GROUP BY w.name, w.total ORDER BY w.total DESC");
+        }
+
+        query = strategy.getDynamicQuery(queryString.toString());
+        for (int i=0; i<params.size(); i++) {
+            query.setParameter(i+1, params.get(i));
+        }
+        setFirstMax( query, offset, limit);
+        queryResults = query.getResultList();
+
+        List<TagStat> results = new ArrayList<>();
+        if (queryResults != null) {
+            for (Object obj : queryResults) {
+                Object[] row = (Object[]) obj;
+                TagStat ce = new TagStat();
+                ce.setName((String) row[0]);
+                // The JPA query retrieves SUM(w.total) always as long
+                ce.setCount(((Number) row[1]).intValue());
+                results.add(ce);
+            }
+        }
+
+        if (sortByName) {
+            results.sort(TAG_STAT_NAME_COMPARATOR);
+        } else {
+            results.sort(TAG_STAT_COUNT_REVERSE_COMPARATOR);
+        }
+
+        return results;
     }
 
-    public WeblogHitCount getHitCountByWeblog(Weblog weblog) throws WebloggerException {
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public boolean getTagComboExists(List<String> tags, Weblog weblog) throws WebloggerException{
+
+        if (tags == null || tags.isEmpty()) {
+            return false;
+        }
+
+        StringBuilder queryString = new StringBuilder();
+        queryString.append("SELECT DISTINCT w.name ");
+        queryString.append("FROM WeblogEntryTagAggregate w WHERE w.name IN (");
+        // Append tags as parameter markers to avoid potential escaping issues
+        // The IN clause would be of form (?1, ?2, ?3, ..)
+        List<Object> params = new ArrayList<>(tags.size() + 1);
+        final String paramSeparator = ", ";
+        int i;
+        for (i=0; i < tags.size(); i++) {
+            queryString.append('?').append(i+1).append(paramSeparator);
+            params.add(tags.get(i));
+        }
+
+        // Remove the trailing paramSeparator
+        queryString.delete(queryString.length() - paramSeparator.length(),
+                queryString.length());
+        // Close the brace of IN clause
+        queryString.append(')');
+
+        if(weblog != null) {
+            queryString.append(" AND w.weblog = ?").append(i+1);
+            params.add(weblog);
+        } else {
+            queryString.append(" AND w.weblog IS NULL");
+        }
+
+        TypedQuery<String> q = strategy.getDynamicQuery(queryString.toString(), String.class);
+        for (int j=0; j<params.size(); j++) {
+            q.setParameter(j+1, params.get(j));
+        }
+        List<String> results = q.getResultList();
+
+        //TODO: DatamapperPort: Since we are only interested in knowing whether
+        //results.size() == tags.size(). This query can be optimized to just fetch COUNT
+        //instead of objects as done currently
+        return (results != null && results.size() == tags.size());
+    }
+
+    private void updateTagCount(String name, Weblog website, int amount)
+    throws WebloggerException {
+        if (amount == 0) {
+            throw new WebloggerException("Tag increment amount cannot be zero.");
+        }
+
+        if (website == null) {
+            throw new WebloggerException("Website cannot be NULL.");
+        }
+
+        // The reason why add order lastUsed desc is to make sure we keep picking the most recent
+        // one in the case where we have multiple rows (clustered environment)
+        // eventually that second entry will have a very low total (most likely 1) and
+        // won't matter
+        TypedQuery<WeblogEntryTagAggregate> weblogQuery = strategy.getNamedQuery(
+                "WeblogEntryTagAggregate.getByName&WebsiteOrderByLastUsedDesc", WeblogEntryTagAggregate.class);
+        weblogQuery.setParameter(1, name);
+        weblogQuery.setParameter(2, website);
+        weblogQuery.setMaxResults(1);
+        List<WeblogEntryTagAggregate> weblogResults = weblogQuery.getResultList();
+        WeblogEntryTagAggregate weblogTagData = weblogResults.isEmpty() ? null : weblogResults.get(0);
+
+        TypedQuery<WeblogEntryTagAggregate> siteQuery = strategy.getNamedQuery(
+                "WeblogEntryTagAggregate.getByName&WebsiteNullOrderByLastUsedDesc", WeblogEntryTagAggregate.class);
+        siteQuery.setParameter(1, name);
+        siteQuery.setMaxResults(1);
+        List<WeblogEntryTagAggregate> siteResults = siteQuery.getResultList();
+        WeblogEntryTagAggregate siteTagData = siteResults.isEmpty() ? null : siteResults.get(0);
+
+        Timestamp lastUsed = new Timestamp((new Date()).getTime());
+
+        // create it only if we are going to need it.
+        if (weblogTagData == null && amount > 0) {
+            weblogTagData = new WeblogEntryTagAggregate(null, website, name, amount);
+            weblogTagData.setLastUsed(lastUsed);
+            strategy.store(weblogTagData);
+
+        } else if (weblogTagData != null) {
+            weblogTagData.setTotal(weblogTagData.getTotal() + amount);
+            weblogTagData.setLastUsed(lastUsed);
+            strategy.store(weblogTagData);
+        }
+
+        // create it only if we are going to need it.
+        if (siteTagData == null && amount > 0) {
+            siteTagData = new WeblogEntryTagAggregate(null, null, name, amount);
+            siteTagData.setLastUsed(lastUsed);
+            strategy.store(siteTagData);
+
+        } else if (siteTagData != null) {
+            siteTagData.setTotal(siteTagData.getTotal() + amount);
+            siteTagData.setLastUsed(lastUsed);
+            strategy.store(siteTagData);
+        }
+
+        // delete all bad counts
+        Query removeq = strategy.getNamedUpdate(
+                "WeblogEntryTagAggregate.removeByTotalLessEqual");
+        removeq.setParameter(1, 0);
+        removeq.executeUpdate();
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public WeblogHitCount getHitCount(String id) throws WebloggerException {
+
+        // do lookup
+        return (WeblogHitCount) strategy.load(WeblogHitCount.class, id);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public WeblogHitCount getHitCountByWeblog(Weblog weblog)
+    throws WebloggerException {
         TypedQuery<WeblogHitCount> q = strategy.getNamedQuery("WeblogHitCount.getByWeblog", WeblogHitCount.class);
         q.setParameter(1, weblog);
         try {
@@ -883,88 +1164,171 @@ public class WeblogHitCountService {
         }
     }
 
-    public List<WeblogHitCount> getHotWeblogs(int sinceDays, int offset, int length) throws WebloggerException {
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<WeblogHitCount> getHotWeblogs(int sinceDays, int offset, int length)
+    throws WebloggerException {
+
+        // figure out start date
         Date startDate = getStartDateNow(sinceDays);
 
-        TypedQuery<WeblogHitCount> query;
-        query = strategy.getNamedQuery(
+        TypedQuery<WeblogHitCount> query = strategy.getNamedQuery(
                 "WeblogHitCount.getByWeblogEnabledTrueAndActiveTrue&DailyHitsGreaterThenZero&WeblogLastModifiedGreaterOrderByDailyHitsDesc",
                 WeblogHitCount.class);
         query.setParameter(1, startDate);
-        setFirstMax(query, offset, length);
+        setFirstMax( query, offset, length);
         return query.getResultList();
     }
 
-    private void setFirstMax(Query query, int offset, int length) {
-        if (offset != 0) {
-            query.setFirstResult(offset);
-        }
-        if (length != -1) {
-            query.setMaxResults(length);
-        }
-    }
-
-    private Date getStartDateNow(int sinceDays) {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(new Date());
-        cal.add(Calendar.DATE, -1 * sinceDays);
-        return cal.getTime();
-    }
-
+    /**
+     * @inheritDoc
+     */
+    @Override
     public void saveHitCount(WeblogHitCount hitCount) throws WebloggerException {
         this.strategy.store(hitCount);
     }
 
+    /**
+     * @inheritDoc
+     */
+    @Override
     public void removeHitCount(WeblogHitCount hitCount) throws WebloggerException {
         this.strategy.remove(hitCount);
     }
 
-    public void incrementHitCount(Weblog weblog, int amount) throws WebloggerException {
-        if (amount == 0) {
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void incrementHitCount(Weblog weblog, int amount)
+    throws WebloggerException {
+
+        if(amount == 0) {
             throw new WebloggerException("Tag increment amount cannot be zero.");
         }
 
-        if (weblog == null) {
+        if(weblog == null) {
             throw new WebloggerException("Website cannot be NULL.");
         }
 
-        WeblogHitCount hitCount = getHitCountByWeblog(weblog);
-        
-        if (hitCount == null && amount > 0) {
+        TypedQuery<WeblogHitCount> q = strategy.getNamedQuery("WeblogHitCount.getByWeblog", WeblogHitCount.class);
+        q.setParameter(1, weblog);
+        WeblogHitCount hitCount;
+        try {
+            hitCount = q.getSingleResult();
+        } catch (NoResultException e) {
+            hitCount = null;
+        }
+
+        // create it if it doesn't exist
+        if(hitCount == null && amount > 0) {
             hitCount = new WeblogHitCount();
             hitCount.setWeblog(weblog);
             hitCount.setDailyHits(amount);
             strategy.store(hitCount);
-        } else if (hitCount != null) {
+        } else if(hitCount != null) {
             hitCount.setDailyHits(hitCount.getDailyHits() + amount);
             strategy.store(hitCount);
         }
     }
 
-    public void resetAllHitCounts() throws WebloggerException {       
+    /**
+     * Uses plain JDBC so all counts are added with one batch of updates,
+     * each adding to the stored count rather than reading and writing it.
+     */
+    @Override
+    public void incrementHitCounts(Map<String, Long> hits) throws WebloggerException {
+
+        if (hits.isEmpty()) {
+            return;
+        }
+
+        List<String> weblogIds = new ArrayList<>(hits.keySet());
+
+        try (Connection con = WebloggerStartup.getDatabaseProvider().getConnection()) {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                int[] updated;
+                try (PreparedStatement update = con.prepareStatement(
+                        "update roller_hitcounts set dailyhits = dailyhits + ? where websiteid = ?")) {
+                    for (String weblogId : weblogIds) {
+                        update.setLong(1, hits.get(weblogId));
+                        update.setString(2, weblogId);
+                        update.addBatch();
+                    }
+                    updated = update.executeBatch();
+                }
+
+                // weblogs without a count yet, unless they have since gone away
+                try (PreparedStatement exists = con.prepareStatement(
+                        "select id from weblog where id = ?");
+                        PreparedStatement insert = con.prepareStatement(
+                        "insert into roller_hitcounts (id, websiteid, dailyhits) values (?, ?, ?)")) {
+                    for (int i = 0; i < updated.length; i++) {
+                        if (updated[i] != 0) {
+                            continue;
+                        }
+                        exists.setString(1, weblogIds.get(i));
+                        try (ResultSet rs = exists.executeQuery()) {
+                            if (!rs.next()) {
+                                continue;
+                            }
+                        }
+                        insert.setString(1, UUIDGenerator.generateUUID());
+                        insert.setString(2, weblogIds.get(i));
+                        insert.setLong(3, hits.get(weblogIds.get(i)));
+                        insert.executeUpdate();
+                    }
+                }
+
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException | RuntimeException e) {
+            throw new WebloggerException("Unable to increment hit counts", e);
+        }
+
+        // counts cached by the persistence provider are out of date now
+        strategy.getEntityManager(false).getEntityManagerFactory().getCache().evict(WeblogHitCount.class);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public void resetAllHitCounts() throws WebloggerException {
         Query q = strategy.getNamedUpdate("WeblogHitCount.updateDailyHitCountZero");
         q.executeUpdate();
     }
 
+    /**
+     * @inheritDoc
+     */
+    @Override
     public void resetHitCount(Weblog weblog) throws WebloggerException {
-        WeblogHitCount hitCount = getHitCountByWeblog(weblog);
-        if (hitCount != null) {
+        TypedQuery<WeblogHitCount> q = strategy.getNamedQuery("WeblogHitCount.getByWeblog", WeblogHitCount.class);
+        q.setParameter(1, weblog);
+        WeblogHitCount hitCount;
+        try {
+            hitCount = q.getSingleResult();
             hitCount.setDailyHits(0);
             strategy.store(hitCount);
+        } catch (NoResultException e) {
+            // ignore: no hit count for weblog
         }
     }
-}
-
-import javax.persistence.TypedQuery;
-
-public class WeblogCommentService {
-
-    private final PersistenceStrategy strategy;
-
-    public WeblogCommentService(PersistenceStrategy strategy) {
-        this.strategy = strategy;
-    }
 
+    /**
+     * @inheritDoc
+     */
+    @Override
     public long getCommentCount() throws WebloggerException {
         TypedQuery<Long> q = strategy.getNamedQuery(
                 "WeblogEntryComment.getCountAllDistinctByStatus", Long.class);
@@ -972,6 +1336,10 @@ public class WeblogCommentService {
         return q.getResultList().get(0);
     }
 
+    /**
+     * @inheritDoc
+     */
+    @Override
     public long getCommentCount(Weblog website) throws WebloggerException {
         TypedQuery<Long> q = strategy.getNamedQuery(
                 "WeblogEntryComment.getCountDistinctByWebsite&Status", Long.class);
@@ -979,19 +1347,84 @@ public class WeblogCommentService {
         q.setParameter(2, ApprovalStatus.APPROVED);
         return q.getResultList().get(0);
     }
-}
 
-import
-public static StringBuilder appendConjunctionToWhereclause(StringBuilder whereClause,
-            String expression) {
-        if (expression == null || expression.trim().isEmpty()) {
-            return whereClause;
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getEntryCount() throws WebloggerException {
+        TypedQuery<Long> q = strategy.getNamedQuery(
+                "WeblogEntry.getCountDistinctByStatus", Long.class);
+        q.setParameter(1, PubStatus.PUBLISHED);
+        return q.getResultList().get(0);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public long getEntryCount(Weblog website) throws WebloggerException {
+        TypedQuery<Long> q = strategy.getNamedQuery(
+                "WeblogEntry.getCountDistinctByStatus&Website", Long.class);
+        q.setParameter(1, PubStatus.PUBLISHED);
+        q.setParameter(2, website);
+        return q.getResultList().get(0);
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override
+    public List<String> getPublishedEntryIds(Weblog weblog, String afterId, int max)
+            throws WebloggerException {
+
+        List<Object> params = new ArrayList<>();
+        StringBuilder queryString = new StringBuilder(
+                "SELECT e.id FROM WeblogEntry e WHERE e.status = ?1");
+        params.add(PubStatus.PUBLISHED);
+
+        if (weblog != null) {
+            params.add(weblog);
+            queryString.append(" AND e.website = ?").append(params.size());
+        }
+
+        // seek past the last page rather than skipping rows with an offset
+        if (afterId != null) {
+            params.add(afterId);
+            queryString.append(" AND e.id > ?").append(params.size());
         }
+        queryString.append(" ORDER BY e.id");
 
-        if (whereClause.length() > 0) {
-            whereClause.append(" AND ");
+        TypedQuery<String> query = strategy.getDynamicQuery(queryString.toString(), String.class);
+        for (int i = 0; i < params.size(); i++) {
+            query.setParameter(i + 1, params.get(i));
         }
-        return whereClause.append(expression);
+        query.setMaxResults(max);
+
+        return query.getResultList();
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * Returns the date {@code sinceDays} days before now.
+     */
+    public static Date getStartDateNow(int sinceDays) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(new Date());
+        cal.add(Calendar.DATE, -1 * sinceDays);
+        return cal.getTime();
+    }
+
+    /**
+     * Sets the first and max results on the given query, skipping the
+     * defaults (offset 0, length -1).
+     */
+    private static void setFirstMax( Query query, int offset, int length )  {
+        if (offset != 0) {
+            query.setFirstResult(offset);
+        }
+        if (length != -1) {
+            query.setMaxResults(length);
+        }
+    }
+
+}
@@ -34,7 +34,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -80,14 +79,16 @@ public class JPAWeblogManagerImpl implements WeblogManager {
     private final Weblogger roller;
     private final JPAPersistenceStrategy strategy;
     
-    // cached mapping of weblogHandles -> weblogIds
-    private final Map<String, String> weblogHandleToIdMap = Collections.synchronizedMap(new HashMap<>());
+    // cached mapping of weblogHandles -> weblogIds and templates -> templateIds
+    private final EntityLookupCache entityCache;
 
     @com.google.inject.Inject
-    protected JPAWeblogManagerImpl(Weblogger roller, JPAPersistenceStrategy strat) {
+    protected JPAWeblogManagerImpl(Weblogger roller, JPAPersistenceStrategy strat,
+            EntityLookupCache entityCache) {
         log.debug("Instantiating JPA Weblog Manager");
         this.roller = roller;
         this.strategy = strat;
+        this.entityCache = entityCache;
     }
     
     
@@ -112,8 +113,9 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         this.removeWeblogContents(weblog);
         this.strategy.remove(weblog);
         
-        // remove entry from cache mapping
-        this.weblogHandleToIdMap.remove(weblog.getHandle());
+        // remove entries from cache mapping
+        this.entityCache.removeWeblogId(weblog.getHandle());
+        this.entityCache.removeTemplateIds(weblog.getHandle());
     }
     
     /**
@@ -244,6 +246,9 @@ public class JPAWeblogManagerImpl implements WeblogManager {
     public void saveTemplate(WeblogTemplate template) throws WebloggerException {
         this.strategy.store(template);
         
+        // its name, link or action may have changed
+        this.entityCache.removeTemplateIds(template.getWeblog().getHandle());
+        
         // update weblog last modified date.  date updated by saveWeblog()
         roller.getWeblogManager().saveWeblog(template.getWeblog());
     }
@@ -259,6 +264,7 @@ public class JPAWeblogManagerImpl implements WeblogManager {
     @Override
     public void removeTemplate(WeblogTemplate template) throws WebloggerException {
         this.strategy.remove(template);
+        this.entityCache.removeTemplateIds(template.getWeblog().getHandle());
         // update weblog last modified date.  date updated by saveWeblog()
         roller.getWeblogManager().saveWeblog(template.getWeblog());
     }
@@ -372,11 +378,11 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         
         // check cache first
         // NOTE: if we ever allow changing handles then this needs updating
-        String blogID = this.weblogHandleToIdMap.get(handle);
+        String blogID = this.entityCache.getWeblogId(handle);
         if(blogID != null) {
             
             Weblog weblog = this.getWeblog(blogID);
-            if (weblog != null) {
+            if (weblog != null && handle.equals(weblog.getHandle())) {
                 // only return weblog if enabled status matches
                 if(visible == null || visible.equals(weblog.getVisible())) {
                     log.debug("weblogHandleToId CACHE HIT - "+handle);
@@ -384,7 +390,7 @@ public class JPAWeblogManagerImpl implements WeblogManager {
                 }
             } else {
                 // mapping hit with lookup miss?  mapping must be old, remove it
-                this.weblogHandleToIdMap.remove(handle);
+                this.entityCache.removeWeblogId(handle);
             }
         }
         
@@ -400,7 +406,7 @@ public class JPAWeblogManagerImpl implements WeblogManager {
         // add mapping to cache
         if(weblog != null) {
             log.debug("weblogHandleToId CACHE MISS - "+handle);
-            this.weblogHandleToIdMap.put(weblog.getHandle(), weblog.getId());
+            this.entityCache.putWeblogId(weblog.getHandle(), weblog.getId());
         }
         
         if(weblog != null &&
@@ -533,15 +539,7 @@ public class JPAWeblogManagerImpl implements WeblogManager {
             throw new WebloggerException("templateLink is null");
         }
 
-        TypedQuery<WeblogTemplate> query = strategy.getNamedQuery("WeblogTemplate.getByWeblog&Link",
-                WeblogTemplate.class);
-        query.setParameter(1, weblog);
-        query.setParameter(2, templateLink);
-        try {
-            return query.getSingleResult();
-        } catch (NoResultException e) {
-            return null;
-        }
+        return getTemplateBy(weblog, "link", templateLink, "WeblogTemplate.getByWeblog&Link", templateLink);
     }
     
     /**
@@ -559,15 +557,7 @@ public class JPAWeblogManagerImpl implements WeblogManager {
             throw new WebloggerException("Action name is null");
         }
         
-        TypedQuery<WeblogTemplate> query = strategy.getNamedQuery("WeblogTemplate.getByAction",
-                WeblogTemplate.class);
-        query.setParameter(1, weblog);
-        query.setParameter(2, action);
-        try {
-            return query.getSingleResult();
-        } catch (NoResultException e) {
-            return null;
-        }        
+        return getTemplateBy(weblog, "action", action.name(), "WeblogTemplate.getByAction", action);
     }
     
     /**
@@ -585,14 +575,64 @@ public class JPAWeblogManagerImpl implements WeblogManager {
             throw new WebloggerException("Template name is null");
         }
         
-        TypedQuery<WeblogTemplate> query = strategy.getNamedQuery("WeblogTemplate.getByWeblog&Name",
-                WeblogTemplate.class);
+        return getTemplateBy(weblog, "name", templateName, "WeblogTemplate.getByWeblog&Name", templateName);
+    }
+    
+    /**
+     * Lookup a template of a weblog by its link, action or name, checking
+     * the entity cache before running the named query.
+     */
+    private WeblogTemplate getTemplateBy(Weblog weblog, String lookup, String value,
+            String queryName, Object param) throws WebloggerException {
+        
+        // check cache first
+        String templateId = this.entityCache.getTemplateId(weblog.getHandle(), lookup, value);
+        if (templateId != null) {
+            if (EntityLookupCache.NO_TEMPLATE.equals(templateId)) {
+                log.debug("templateToId CACHE HIT - "+lookup+" "+value+" (none)");
+                return null;
+            }
+            
+            WeblogTemplate template = this.getTemplate(templateId);
+            if (template != null && isTemplate(template, weblog, lookup, value)) {
+                log.debug("templateToId CACHE HIT - "+lookup+" "+value);
+                return template;
+            }
+            
+            // mapping hit with lookup miss?  mappings must be old, remove them
+            this.entityCache.removeTemplateIds(weblog.getHandle());
+        }
+        
+        TypedQuery<WeblogTemplate> query = strategy.getNamedQuery(queryName, WeblogTemplate.class);
         query.setParameter(1, weblog);
-        query.setParameter(2, templateName);
+        query.setParameter(2, param);
+        WeblogTemplate template;
         try {
-            return query.getSingleResult();
+            template = query.getSingleResult();
         } catch (NoResultException e) {
-            return null;
+            template = null;
+        }
+        
+        // add mapping to cache, even if there is no such template
+        log.debug("templateToId CACHE MISS - "+lookup+" "+value);
+        this.entityCache.putTemplateId(weblog.getHandle(), lookup, value,
+                template != null ? template.getId() : null);
+        
+        return template;
+    }
+    
+    private static boolean isTemplate(WeblogTemplate template, Weblog weblog, String lookup, String value) {
+        
+        if (template.getWeblog() == null || !weblog.getId().equals(template.getWeblog().getId())) {
+            return false;
+        }
+        switch (lookup) {
+            case "link":
+                return value.equals(template.getLink());
+            case "action":
+                return template.getAction() != null && value.equals(template.getAction().name());
+            default:
+                return value.equals(template.getName());
         }
     }
 
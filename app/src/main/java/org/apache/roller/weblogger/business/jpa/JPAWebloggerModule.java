@@ -65,6 +65,7 @@ public class JPAWebloggerModule implements Module {
         binder.bind(Weblogger.class).to(JPAWebloggerImpl.class);
         
         binder.bind(JPAPersistenceStrategy.class);       
+        binder.bind(EntityLookupCache.class);
         
         binder.bind(AutoPingManager.class).to(     JPAAutoPingManagerImpl.class);   
         binder.bind(BookmarkManager.class).to(     JPABookmarkManagerImpl.class);  
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Compiled dynamic queries, one per query shape.
+ *
+ * A shape is the JPQL of a DynamicQuery, which only depends on the filters
+ * used since all values are bound as parameters.  The first query of a
+ * shape is registered with the EntityManagerFactory as a named query, so
+ * later ones are created from the provider's already parsed query instead
+ * of parsing the JPQL again.  Execution counts and latency are kept per
+ * shape.  Beyond the maximum number of shapes queries are just parsed
+ * each time, as before.
+ */
+public class QueryShapeCache implements QueryShapeCacheMXBean {
+
+    private static final Log log = LogFactory.getLog(QueryShapeCache.class);
+
+    private static final String NAME_PREFIX = "DynamicQuery.";
+
+    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+    private final AtomicInteger shapeCount = new AtomicInteger();
+    private final LongAdder uncached = new LongAdder();
+    private final int maxShapes;
+
+
+    public QueryShapeCache(int maxShapes) {
+        this.maxShapes = maxShapes;
+    }
+
+
+    /**
+     * Create a query of the given shape in the entity manager.
+     */
+    <T> TypedQuery<T> createQuery(EntityManager em, String jpql, Class<T> resultClass) {
+
+        Shape shape = shapes.get(jpql);
+        if (shape != null) {
+            return em.createNamedQuery(shape.name, resultClass);
+        }
+
+        TypedQuery<T> query = em.createQuery(jpql, resultClass);
+
+        int count = shapeCount.get();
+        if (count < maxShapes && shapeCount.compareAndSet(count, count + 1)) {
+            shape = new Shape(NAME_PREFIX + (count + 1), jpql);
+            em.getEntityManagerFactory().addNamedQuery(shape.name, query);
+            if (shapes.putIfAbsent(jpql, shape) == null) {
+                log.debug("Compiled query shape " + shape.name + ": " + jpql);
+            }
+        }
+
+        return query;
+    }
+
+
+    /**
+     * Record an execution of a query of the given shape.
+     */
+    void executed(String jpql, long nanos) {
+
+        Shape shape = shapes.get(jpql);
+        if (shape != null) {
+            shape.executions.increment();
+            shape.totalNanos.add(nanos);
+            shape.maxNanos.accumulate(nanos);
+        } else {
+            uncached.increment();
+        }
+    }
+
+
+    @Override
+    public int getShapeCount() {
+        return shapes.size();
+    }
+
+
+    @Override
+    public int getMaxShapes() {
+        return maxShapes;
+    }
+
+
+    @Override
+    public long getUncachedExecutions() {
+        return uncached.sum();
+    }
+
+
+    /**
+     * Stats of all shapes, the most time consuming first.
+     */
+    @Override
+    public List<QueryShapeStats> getShapes() {
+
+        List<QueryShapeStats> stats = new ArrayList<>(shapes.size());
+        for (Shape shape : shapes.values()) {
+            stats.add(new QueryShapeStats(shape.jpql, shape.executions.sum(),
+                    shape.totalNanos.sum() / 1000000.0, shape.maxNanos.get() / 1000000.0));
+        }
+        stats.sort(Comparator.comparingDouble(QueryShapeStats::getTotalMillis).reversed());
+        return stats;
+    }
+
+
+    private static final class Shape {
+
+        private final String name;
+        private final String jpql;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        Shape(String name, String jpql) {
+            this.name = name;
+            this.jpql = jpql;
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import java.beans.ConstructorProperties;
+
+
+/**
+ * Execution counts and latency of one dynamic query shape.
+ */
+public class QueryShapeStats {
+
+    private final String shape;
+    private final long executions;
+    private final double totalMillis;
+    private final double maxMillis;
+
+
+    @ConstructorProperties({"shape", "executions", "totalMillis", "maxMillis"})
+    public QueryShapeStats(String shape, long executions, double totalMillis, double maxMillis) {
+        this.shape = shape;
+        this.executions = executions;
+        this.totalMillis = totalMillis;
+        this.maxMillis = maxMillis;
+    }
+
+
+    public String getShape() {
+        return shape;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    public double getAverageMillis() {
+        return executions > 0 ? totalMillis / executions : 0;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+}
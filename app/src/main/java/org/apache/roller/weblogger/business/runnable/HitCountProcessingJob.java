@@ -18,8 +18,6 @@
 
 package org.apache.roller.weblogger.business.runnable;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -28,8 +26,6 @@ import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.HitCountQueue;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
-import org.apache.roller.weblogger.business.WeblogManager;
-import org.apache.roller.weblogger.pojos.Weblog;
 
 
 /**
@@ -47,51 +43,31 @@ public class HitCountProcessingJob implements Job {
     /**
      * Execute the job.
      *
-     * We want to extract the currently queued hits from the HitCounter and
-     * then propogate them to the db for persistent storage.
+     * We want to extract the currently counted hits from the HitCounter and
+     * then propogate them to the db for persistent storage.  Hits which
+     * can't be stored are put back to try again next time.
      */
     @Override
     public void execute() {
         
-        WeblogManager wmgr = WebloggerFactory.getWeblogger().getWeblogManager();
-        WeblogEntryManager emgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        if (!WebloggerFactory.isBootstrapped()) {
+            return;
+        }
         
         HitCountQueue hitCounter = HitCountQueue.getInstance();
         
-        // first get the current set of hits
-        List<String> currentHits = hitCounter.getHits();
-        
-        // now reset the queued hits
-        hitCounter.resetHits();
-        
-        // tally the counts, grouped by weblog handle
-        Map<String, Long> hitsTally = new HashMap<>();
-        for (String weblogHandle : currentHits) {
-            Long count = hitsTally.get(weblogHandle);
-            if(count == null) {
-                count = 1L;
-            } else {
-                count = count + 1;
-            }
-            hitsTally.put(weblogHandle, count);
+        // take the hits counted since the last run
+        Map<String, Long> hits = hitCounter.drainHits();
+        if (hits.isEmpty()) {
+            return;
         }
 
-        // iterate over the tallied hits and store them in the db
+        // and store them in the db, all at once
         try {
             long startTime = System.currentTimeMillis();
             
-            Weblog weblog;
-            for (Map.Entry<String, Long> entry : hitsTally.entrySet()) {
-                try {
-                    weblog = wmgr.getWeblogByHandle(entry.getKey());
-                    emgr.incrementHitCount(weblog, entry.getValue().intValue());
-                } catch (WebloggerException ex) {
-                    log.error(ex);
-                }
-            }
-
-            // flush the results to the db
-            WebloggerFactory.getWeblogger().flush();
+            WeblogEntryManager emgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+            emgr.incrementHitCounts(hits);
             
             long endTime = System.currentTimeMillis();
             
@@ -99,6 +75,7 @@ public class HitCountProcessingJob implements Job {
             
         } catch (WebloggerException ex) {
             log.error("Error persisting updated hit counts", ex);
+            hitCounter.restoreHits(hits);
         } finally {
             // release session
             WebloggerFactory.getWeblogger().release();
@@ -18,6 +18,11 @@
 
 package org.apache.roller.weblogger.business.runnable;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.InitializationException;
 import org.apache.roller.weblogger.pojos.TaskLock;
@@ -42,19 +47,35 @@ public interface ThreadManager {
     /**
      * Execute runnable in background (asynchronously).
      * @param runnable
+     * @return Future which completes once the runnable has run.
      * @throws java.lang.InterruptedException
      */
-    void executeInBackground(Runnable runnable)
+    Future<?> executeInBackground(Runnable runnable)
         throws InterruptedException;
     
     
     /**
-     * Execute runnable in foreground (synchronously).
+     * Execute runnable in foreground (synchronously), returning as soon as
+     * it has run.
      */
     void executeInForeground(Runnable runnable)
         throws InterruptedException;
     
     
+    /**
+     * Execute task in foreground (synchronously) and return its result.
+     * 
+     * @param task The task to execute.
+     * @param timeout How long to wait for the result.
+     * @param unit Unit of the timeout.
+     * @return Whatever the task returned.
+     * @throws ExecutionException If the task threw an exception.
+     * @throws TimeoutException If the task took too long, it is cancelled.
+     */
+    <T> T executeInForeground(Callable<T> task, long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException;
+    
+    
     /**
      * Lookup a TaskLock by name.
      * 
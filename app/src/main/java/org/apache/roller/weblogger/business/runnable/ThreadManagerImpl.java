@@ -21,15 +21,17 @@ package org.apache.roller.weblogger.business.runnable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.InitializationException;
 import org.apache.roller.weblogger.config.WebloggerConfig;
@@ -123,9 +125,9 @@ public abstract class ThreadManagerImpl implements ThreadManager {
     
     
     @Override
-    public void executeInBackground(Runnable runnable)
+    public Future<?> executeInBackground(Runnable runnable)
             throws InterruptedException {
-        serviceScheduler.submit(runnable);
+        return serviceScheduler.submit(runnable);
     }
     
     
@@ -134,11 +136,25 @@ public abstract class ThreadManagerImpl implements ThreadManager {
             throws InterruptedException {
         Future<?> task = serviceScheduler.submit(runnable);
         
-        // since this task is really meant to be executed within this calling 
-        // thread, here we can add a little code here to loop until it realizes 
-        // the task is done
-        while(!task.isDone()) {
-            Thread.sleep(RollerConstants.HALF_SEC_IN_MS);
+        // wait for the task to signal completion, rather than polling it
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            LOG.error("Error executing task", e.getCause());
+        }
+    }
+    
+    
+    @Override
+    public <T> T executeInForeground(Callable<T> task, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        Future<T> future = serviceScheduler.submit(task);
+        try {
+            return future.get(timeout, unit);
+        } catch (TimeoutException | InterruptedException e) {
+            // nobody is waiting for the result anymore
+            future.cancel(true);
+            throw e;
         }
     }
     
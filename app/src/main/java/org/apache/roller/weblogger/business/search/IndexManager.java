@@ -17,11 +17,14 @@
 */
 package org.apache.roller.weblogger.business.search;
 
+import java.util.List;
+import java.util.Map;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.InitializationException;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 
 /**
  * Interface to Roller's full-text search facility.
@@ -29,6 +32,13 @@ import org.apache.roller.weblogger.pojos.WeblogEntry;
  */
 public interface IndexManager {
 
+    /** Facets counted by search, which results can be drilled down by */
+    String FACET_CATEGORY = "category";
+    String FACET_TAG = "tag";
+    String FACET_WEBLOG = "weblog";
+    String FACET_YEAR = "year";
+    String FACET_MONTH = "month";
+
     /**
      * Initialize the search system.
      * @throws InitializationException If there is a problem during initialization.
@@ -62,6 +72,19 @@ public interface IndexManager {
     /** Remove entry from index, returns immediately and operates in background */
     void removeEntryIndexOperation(WeblogEntry entry) throws WebloggerException;
 
+    /**
+     * Index a comment which was added or changed status, without touching
+     * its entry.  Returns immediately and operates in background, comments
+     * which are not approved are removed from the index.
+     */
+    void addCommentIndexOperation(WeblogEntryComment comment) throws WebloggerException;
+
+    /** Remove comment from index, returns immediately and operates in background */
+    void removeCommentIndexOperation(WeblogEntryComment comment) throws WebloggerException;
+
+    /** Progress of the running or last index rebuild, null if there was none */
+    IndexRebuildStatus getRebuildStatus();
+
     SearchResultList search(
         String term,
         String weblogHandle,
@@ -71,6 +94,41 @@ public interface IndexManager {
         int entryCount,
         URLStrategy urlStrategy
     ) throws WebloggerException;
+
+    /**
+     * Search for a page of results. Given the cursor of the previous page
+     * (SearchResultList.getNextCursor()) only the page itself has to be
+     * collected, otherwise all the results up to its end are.
+     *
+     * @param drillDowns facet values the results must have, by facet name,
+     *        may be null.
+     * @param after cursor of the previous page, may be null.
+     * @param exactTotalHits count all results, otherwise counting may stop
+     *        once there are more than fit on a few pages.
+     */
+    SearchResultList search(
+        String term,
+        String weblogHandle,
+        String category,
+        String locale,
+        Map<String, String> drillDowns,
+        int pageNum,
+        int entryCount,
+        String after,
+        boolean exactTotalHits,
+        URLStrategy urlStrategy
+    ) throws WebloggerException;
+
+    /**
+     * Suggest entry titles and tags starting with what has been typed so
+     * far, most used first.  Matches may start at any word of a title.
+     *
+     * @param prefix text typed so far.
+     * @param weblogHandle weblog to suggest from, null for all weblogs.
+     * @param count most suggestions to return.
+     */
+    List<SearchSuggestion> suggest(String prefix, String weblogHandle, int count)
+        throws WebloggerException;
 }
 
 
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.roller.util.RollerConstants;
+
+
+/**
+ * Progress of a search index rebuild, for showing in the UI.
+ */
+public class IndexRebuildStatus {
+
+    private final String weblogHandle;
+    private final long total;
+    private final long resumedAt;
+    private final long startTime = System.currentTimeMillis();
+    private volatile long endTime = 0;
+
+    private final LongAdder indexed = new LongAdder();
+
+    // entries and comments changed by other updates while the rebuild was
+    // running, with the last change made to each
+    private final Map<String, IndexUpdateQueue.Action> updated = new ConcurrentHashMap<>();
+
+
+    /**
+     * @param weblogHandle weblog being rebuilt, or null for all weblogs.
+     * @param total        number of entries to index.
+     * @param resumedAt    number of entries indexed before the rebuild was
+     *                     interrupted, 0 if it started over.
+     */
+    public IndexRebuildStatus(String weblogHandle, long total, long resumedAt) {
+        this.weblogHandle = weblogHandle;
+        this.total = total;
+        this.resumedAt = resumedAt;
+    }
+
+
+    public void indexed(int count) {
+        indexed.add(count);
+    }
+
+
+    /**
+     * Note entries and comments which were changed while the rebuild was
+     * running.
+     */
+    public void updated(Map<String, IndexUpdateQueue.Action> changes) {
+        if (isRunning()) {
+            updated.putAll(changes);
+        }
+    }
+
+
+    public void finish() {
+        endTime = System.currentTimeMillis();
+    }
+
+
+    /**
+     * Weblog being rebuilt, or null for all weblogs.
+     */
+    public String getWeblogHandle() {
+        return weblogHandle;
+    }
+
+
+    public boolean isRunning() {
+        return endTime == 0;
+    }
+
+
+    public long getTotal() {
+        return total;
+    }
+
+
+    /**
+     * Entries indexed so far, including any indexed before a resume.
+     */
+    public long getIndexed() {
+        return resumedAt + indexed.sum();
+    }
+
+
+    public int getPercentComplete() {
+        if (total <= 0) {
+            return isRunning() ? 0 : RollerConstants.PERCENT_100;
+        }
+        return (int) Math.min(RollerConstants.PERCENT_100,
+                getIndexed() * RollerConstants.PERCENT_100 / total);
+    }
+
+
+    public Date getStartTime() {
+        return new Date(startTime);
+    }
+
+
+    public long getElapsedSeconds() {
+        long end = isRunning() ? System.currentTimeMillis() : endTime;
+        return (end - startTime) / RollerConstants.SEC_IN_MS;
+    }
+
+
+    /**
+     * Entries indexed per second since this run started.
+     */
+    public long getEntriesPerSecond() {
+        long end = isRunning() ? System.currentTimeMillis() : endTime;
+        long millis = Math.max(end - startTime, 1);
+        return indexed.sum() * RollerConstants.SEC_IN_MS / millis;
+    }
+
+
+    public Map<String, IndexUpdateQueue.Action> getUpdated() {
+        return updated;
+    }
+
+}
@@ -0,0 +1,494 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Queue of pending changes to the search index.
+ *
+ * Changes are keyed by entry or comment id and only the latest change to
+ * each is kept, so an entry which is saved several times while it waits is
+ * indexed just once.  A single worker thread hands the changes to a BatchHandler in
+ * batches, each of which is applied with one commit.  After the first change
+ * arrives the worker waits up to batchDelay for more to collect.
+ *
+ * Once maxPending changes are waiting, callers queueing changes to anything
+ * else block until the worker has made room.
+ *
+ * A batch which fails goes back to the front of the queue and is tried
+ * again after a delay, unless its changes have failed maxAttempts times
+ * already, in which case the handler is told they were dropped.
+ */
+public class IndexUpdateQueue implements IndexUpdateQueueMBean {
+
+    private static final Log log = LogFactory.getLog(IndexUpdateQueue.class);
+
+    /**
+     * What to do with an entry or comment, INDEX and INDEX_COMMENT remove it
+     * if it no longer exists or should not be searchable.
+     */
+    public enum Action { INDEX, REMOVE, INDEX_COMMENT, REMOVE_COMMENT }
+
+    /**
+     * Applies a batch of changes to the index.
+     */
+    public interface BatchHandler {
+
+        /**
+         * Apply the changes, given in the order they were first queued, and
+         * commit them.
+         *
+         * @throws IOException if they could not be applied and should be
+         *                     tried again.
+         */
+        void apply(Map<String, Action> batch) throws IOException;
+
+        /**
+         * Called with changes given up on after failing too many times.
+         */
+        default void dropped(Map<String, Action> changes) {}
+    }
+
+    private final BatchHandler handler;
+    private final int maxPending;
+    private final int batchSize;
+    private final long batchDelay;
+    private final int maxAttempts;
+    private final long retryDelay;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+
+    // guarded by lock, in the order entries were first queued
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+    private int inFlight = 0;
+    private long inFlightSince = 0;
+    private boolean running = false;
+    private Thread worker = null;
+
+    // no batch is taken before this time after one failed
+    private long retryAt = 0;
+
+    // for metrics
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long lastBatchLag = 0;
+
+
+    /**
+     * @param maxPending most entries waiting before callers have to wait.
+     * @param batchSize  most changes applied with one commit.
+     * @param batchDelay milliseconds to wait for more changes to collect.
+     */
+    public IndexUpdateQueue(BatchHandler handler, int maxPending, int batchSize, long batchDelay) {
+        this(handler, maxPending, batchSize, batchDelay, 3, 1000);
+    }
+
+
+    /**
+     * @param maxAttempts most times a change is tried before it is dropped.
+     * @param retryDelay  milliseconds to wait before trying a failed batch
+     *                    again, multiplied by the number of failures.
+     */
+    public IndexUpdateQueue(BatchHandler handler, int maxPending, int batchSize, long batchDelay,
+            int maxAttempts, long retryDelay) {
+        this.handler = handler;
+        this.maxPending = Math.max(maxPending, 1);
+        this.batchSize = Math.max(batchSize, 1);
+        this.batchDelay = Math.max(batchDelay, 0);
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.retryDelay = Math.max(retryDelay, 0);
+    }
+
+
+    /**
+     * Start the worker thread.
+     */
+    public void start() {
+
+        lock.lock();
+        try {
+            if (running) {
+                return;
+            }
+            running = true;
+            worker = new Thread(this::processBatches, "Roller Search Index Updater");
+            worker.setDaemon(true);
+            worker.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Stop taking changes and let the worker apply whatever is still queued.
+     *
+     * @param timeout milliseconds to wait for the worker to finish.
+     */
+    public void shutdown(long timeout) {
+
+        Thread stopping;
+        lock.lock();
+        try {
+            running = false;
+            stopping = worker;
+            worker = null;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        if (stopping != null) {
+            try {
+                stopping.join(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (stopping.isAlive()) {
+                log.warn("Search index updates still pending at shutdown: " + getDepth());
+            }
+        }
+    }
+
+
+    /**
+     * Queue a change to an entry, replacing any change to it still waiting.
+     * Blocks while the queue is full, unless the entry is already queued.
+     */
+    public void enqueue(String entryId, Action action) throws InterruptedException {
+
+        lock.lock();
+        try {
+            while (true) {
+                Pending existing = pending.get(entryId);
+                if (existing != null) {
+                    existing.action = action;
+                    coalesced.increment();
+                    return;
+                }
+                if (!running) {
+                    log.warn("Search index updates are stopped, dropping change to entry " + entryId);
+                    return;
+                }
+                if (pending.size() < maxPending) {
+                    break;
+                }
+                notFull.await();
+            }
+
+            pending.put(entryId, new Pending(action, System.currentTimeMillis()));
+            queued.increment();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Wait until every change queued so far has been applied.
+     *
+     * @return false if that took longer than the timeout in milliseconds.
+     */
+    public boolean flush(long timeout) throws InterruptedException {
+
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!pending.isEmpty() || inFlight > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = drained.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private void processBatches() {
+
+        while (true) {
+            Map<String, Action> batch = new LinkedHashMap<>();
+            Map<String, Pending> taken = new LinkedHashMap<>();
+            long oldest;
+
+            lock.lock();
+            try {
+                while (running && pending.isEmpty()) {
+                    notEmpty.await();
+                }
+                if (pending.isEmpty()) {
+                    // stopped and nothing left to do
+                    return;
+                }
+
+                // give a failed batch a moment before trying it again
+                long backOff = retryAt - System.currentTimeMillis();
+                while (running && backOff > 0) {
+                    notEmpty.await(backOff, TimeUnit.MILLISECONDS);
+                    backOff = retryAt - System.currentTimeMillis();
+                }
+
+                // give a burst of changes a moment to collect
+                oldest = pending.values().iterator().next().queuedAt;
+                long wait = oldest + batchDelay - System.currentTimeMillis();
+                while (running && wait > 0 && pending.size() < batchSize) {
+                    notEmpty.await(wait, TimeUnit.MILLISECONDS);
+                    wait = oldest + batchDelay - System.currentTimeMillis();
+                }
+
+                Iterator<Map.Entry<String, Pending>> it = pending.entrySet().iterator();
+                while (it.hasNext() && batch.size() < batchSize) {
+                    Map.Entry<String, Pending> entry = it.next();
+                    batch.put(entry.getKey(), entry.getValue().action);
+                    taken.put(entry.getKey(), entry.getValue());
+                    it.remove();
+                }
+                inFlight = batch.size();
+                inFlightSince = oldest;
+                notFull.signalAll();
+
+            } catch (InterruptedException e) {
+                log.warn("Search index updater interrupted, " + pending.size() + " changes not applied");
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            boolean failed = false;
+            try {
+                handler.apply(batch);
+                applied.add(batch.size());
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                failures.increment();
+                log.error("Error applying search index updates", e);
+            }
+
+            batches.increment();
+            lastBatchLag = System.currentTimeMillis() - oldest;
+
+            lock.lock();
+            try {
+                inFlight = 0;
+                if (failed) {
+                    retry(taken);
+                }
+                if (pending.isEmpty()) {
+                    drained.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+
+    /**
+     * Put the changes of a failed batch back in front of the queue, keeping
+     * any change queued for the same entry since.  Called holding the lock.
+     */
+    private void retry(Map<String, Pending> failed) {
+
+        LinkedHashMap<String, Pending> retried = new LinkedHashMap<>();
+        Map<String, Action> giveUp = new LinkedHashMap<>();
+        int attempts = 0;
+        for (Map.Entry<String, Pending> entry : failed.entrySet()) {
+            Pending change = entry.getValue();
+            if (pending.containsKey(entry.getKey())) {
+                continue;
+            }
+            change.attempts++;
+            if (change.attempts >= maxAttempts) {
+                giveUp.put(entry.getKey(), change.action);
+            } else {
+                retried.put(entry.getKey(), change);
+                attempts = Math.max(attempts, change.attempts);
+            }
+        }
+
+        if (!retried.isEmpty()) {
+            log.warn("Retrying " + retried.size() + " search index updates");
+            retried.putAll(pending);
+            pending.clear();
+            pending.putAll(retried);
+            retryAt = System.currentTimeMillis() + retryDelay * attempts;
+        }
+
+        if (!giveUp.isEmpty()) {
+            dropped.add(giveUp.size());
+            log.error("Dropping " + giveUp.size() + " search index updates after "
+                    + maxAttempts + " attempts");
+            try {
+                handler.dropped(giveUp);
+            } catch (RuntimeException e) {
+                log.error("Error handling dropped search index updates", e);
+            }
+        }
+    }
+
+
+    /**
+     * Number of entries waiting to be indexed, not counting the batch being
+     * applied.
+     */
+    @Override
+    public int getDepth() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * How long the oldest change which is not in the index yet has been
+     * waiting, in milliseconds.
+     */
+    @Override
+    public long getLagMillis() {
+        lock.lock();
+        try {
+            long oldest;
+            if (inFlight > 0) {
+                oldest = inFlightSince;
+            } else if (!pending.isEmpty()) {
+                oldest = pending.values().iterator().next().queuedAt;
+            } else {
+                return 0;
+            }
+            return System.currentTimeMillis() - oldest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * How long the oldest change of the last batch waited before it was
+     * applied, in milliseconds.
+     */
+    @Override
+    public long getLastBatchLagMillis() {
+        return lastBatchLag;
+    }
+
+
+    @Override
+    public long getQueued() {
+        return queued.sum();
+    }
+
+
+    @Override
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+
+    @Override
+    public long getApplied() {
+        return applied.sum();
+    }
+
+
+    @Override
+    public long getBatches() {
+        return batches.sum();
+    }
+
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+
+    @Override
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+
+    @Override
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("depth", getDepth());
+        stats.put("maxPending", getMaxPending());
+        stats.put("lagMillis", getLagMillis());
+        stats.put("lastBatchLagMillis", getLastBatchLagMillis());
+        stats.put("queued", getQueued());
+        stats.put("coalesced", getCoalesced());
+        stats.put("applied", getApplied());
+        stats.put("batches", getBatches());
+        stats.put("failures", getFailures());
+        stats.put("dropped", getDropped());
+
+        return stats;
+    }
+
+
+    private static final class Pending {
+
+        private Action action;
+        private final long queuedAt;
+
+        // times this change has failed to be applied
+        private int attempts = 0;
+
+        Pending(Action action, long queuedAt) {
+            this.action = action;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+}
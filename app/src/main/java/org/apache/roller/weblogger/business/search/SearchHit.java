@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search;
+
+import java.util.Date;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.URLStrategy;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
+
+/**
+ * A search result made from the fields stored in the search index, so it
+ * can be shown without going to the database.  Templates which need more
+ * than that can get the whole entry, which is loaded on first use.
+ */
+public class SearchHit {
+
+    private static final Log log = LogFactory.getLog(SearchHit.class);
+
+    private final URLStrategy urlStrategy;
+
+    private String id;
+    private String title;
+    private String anchor;
+    private String weblogHandle;
+    private String categoryName;
+    private String summary;
+    private Date pubTime;
+    private Date updateTime;
+
+    private WeblogEntryWrapper entry;
+    private boolean loaded = false;
+
+    public SearchHit(URLStrategy urlStrategy) {
+        this.urlStrategy = urlStrategy;
+    }
+
+    /**
+     * Copy the indexed fields of a hit, leaving its entry to be loaded again.
+     */
+    public SearchHit(SearchHit hit, URLStrategy urlStrategy) {
+        this.urlStrategy = urlStrategy;
+        this.id = hit.id;
+        this.title = hit.title;
+        this.anchor = hit.anchor;
+        this.weblogHandle = hit.weblogHandle;
+        this.categoryName = hit.categoryName;
+        this.summary = hit.summary;
+        this.pubTime = hit.pubTime;
+        this.updateTime = hit.updateTime;
+    }
+
+    /**
+     * Make a hit from an entry which is loaded already.
+     */
+    public SearchHit(WeblogEntry entry, URLStrategy urlStrategy) {
+        this.urlStrategy = urlStrategy;
+        this.id = entry.getId();
+        this.title = entry.getTitle();
+        this.anchor = entry.getAnchor();
+        this.weblogHandle = entry.getWebsite().getHandle();
+        this.categoryName = (entry.getCategory() != null) ? entry.getCategory().getName() : null;
+        this.summary = entry.getSummary();
+        this.pubTime = entry.getPubTime();
+        this.updateTime = entry.getUpdateTime();
+        this.entry = WeblogEntryWrapper.wrap(entry, urlStrategy);
+        this.loaded = true;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getAnchor() {
+        return anchor;
+    }
+
+    public void setAnchor(String anchor) {
+        this.anchor = anchor;
+    }
+
+    public String getWeblogHandle() {
+        return weblogHandle;
+    }
+
+    public void setWeblogHandle(String weblogHandle) {
+        this.weblogHandle = weblogHandle;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public void setCategoryName(String categoryName) {
+        this.categoryName = categoryName;
+    }
+
+    /**
+     * Start of the entry summary, or of its text if it has no summary, with
+     * markup removed.
+     */
+    public String getSummary() {
+        return summary;
+    }
+
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
+    public Date getPubTime() {
+        return pubTime;
+    }
+
+    public void setPubTime(Date pubTime) {
+        this.pubTime = pubTime;
+    }
+
+    public Date getUpdateTime() {
+        return updateTime;
+    }
+
+    public void setUpdateTime(Date updateTime) {
+        this.updateTime = updateTime;
+    }
+
+    /**
+     * Absolute URL of the entry, which only takes the weblog handle.
+     */
+    public String getPermalink() {
+        Weblog weblog = new Weblog();
+        weblog.setHandle(weblogHandle);
+        return urlStrategy.getWeblogEntryURL(weblog, null, anchor, true);
+    }
+
+    /**
+     * The whole entry, loaded from the database the first time it is asked
+     * for.
+     *
+     * @return the entry, or null if it is gone since it was indexed.
+     */
+    public WeblogEntryWrapper getEntry() {
+        if (!loaded) {
+            loaded = true;
+            try {
+                WeblogEntry data = WebloggerFactory.getWeblogger()
+                        .getWeblogEntryManager().getWeblogEntry(id);
+                if (data != null) {
+                    entry = WeblogEntryWrapper.wrap(data, urlStrategy);
+                }
+            } catch (WebloggerException e) {
+                log.error("Error loading entry " + id, e);
+            }
+        }
+        return entry;
+    }
+
+}
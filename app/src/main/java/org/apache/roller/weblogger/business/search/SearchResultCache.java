@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.business.URLStrategy;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.util.cache.Cache;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+
+
+/**
+ * Cache for search results.
+ *
+ * Results are cached as they come out of the index, without the entries
+ * templates may load from them, so every request gets its own copy of the
+ * hits to load entries into.  Keys include the generation of the index the
+ * search ran against, so once the index changes the old results are never
+ * looked up again and just age out of the cache.
+ */
+public final class SearchResultCache {
+
+    private static final Log log = LogFactory.getLog(SearchResultCache.class);
+
+    // a field name in a query, such as title:, which is case sensitive
+    private static final Pattern FIELD_NAME = Pattern.compile("[\\p{L}_][\\p{L}\\p{N}_.]*:");
+
+    // a unique identifier for this cache, this is used as the prefix for
+    // roller config properties that apply to this cache
+    public static final String CACHE_ID = "cache.search";
+
+    private boolean cacheEnabled = true;
+    private Cache contentCache = null;
+
+
+    public SearchResultCache() {
+
+        cacheEnabled = WebloggerConfig.getBooleanProperty(CACHE_ID+".enabled");
+
+        Map<String, String> cacheProps = new HashMap<>();
+        cacheProps.put("id", CACHE_ID);
+
+        Enumeration<Object> allProps = WebloggerConfig.keys();
+        String prop;
+        while(allProps.hasMoreElements()) {
+            prop = (String) allProps.nextElement();
+
+            // we are only interested in props for this cache
+            if(prop.startsWith(CACHE_ID+".")) {
+                cacheProps.put(prop.substring(CACHE_ID.length()+1),
+                        WebloggerConfig.getProperty(prop));
+            }
+        }
+
+        log.info(cacheProps);
+
+        if(cacheEnabled) {
+            contentCache = CacheManager.constructCache(null, cacheProps);
+        } else {
+            log.warn("Caching has been DISABLED");
+        }
+    }
+
+
+    public boolean isEnabled() {
+        return cacheEnabled;
+    }
+
+
+    /**
+     * Lookup cached results, copied for the caller and its URL strategy.
+     */
+    public SearchResultList get(String key, URLStrategy urlStrategy) {
+
+        if (!cacheEnabled) {
+            return null;
+        }
+
+        SearchResultList cached = (SearchResultList) contentCache.get(key);
+        if (cached == null) {
+            log.debug("MISS "+key);
+            return null;
+        }
+        log.debug("HIT "+key);
+
+        return copy(cached, urlStrategy);
+    }
+
+
+    /**
+     * Cache a copy of the results, without any entries loaded from them.
+     */
+    public void put(String key, SearchResultList results) {
+
+        if (!cacheEnabled) {
+            return;
+        }
+
+        contentCache.put(key, copy(results, null));
+        log.debug("PUT "+key);
+    }
+
+
+    public void clear() {
+
+        if (!cacheEnabled) {
+            return;
+        }
+
+        contentCache.clear();
+        log.debug("CLEAR");
+    }
+
+
+    private static SearchResultList copy(SearchResultList results, URLStrategy urlStrategy) {
+
+        List<SearchHit> hits = new ArrayList<>(results.getHits().size());
+        for (SearchHit hit : results.getHits()) {
+            hits.add(new SearchHit(hit, urlStrategy));
+        }
+        return new SearchResultList(hits, results.getCategories(), results.getLimit(),
+                results.getOffset(), results.getTotalHits(), results.isTotalHitsExact(),
+                results.getNextCursor(), results.getFacets());
+    }
+
+
+    /**
+     * Generate a cache key for a search.
+     * This generates a key of the form ...
+     *
+     * <generation>/<handle>/<term>[/cat=category][/locale=locale][/facet=value...]/<page>x<count>[/after=cursor][/exact]
+     *
+     * Every part which comes from the request is URL encoded, so none can
+     * make up separators of its own, and site-wide searches have ~ as handle.
+     */
+    public static String generateKey(long generation, String term, String weblogHandle,
+            String category, String locale, Map<String, String> drillDowns,
+            int pageNum, int entryCount, String after, boolean exactTotalHits) {
+
+        StringBuilder key = new StringBuilder(128);
+
+        key.append(CACHE_ID).append(':');
+        key.append(generation);
+        key.append('/').append((weblogHandle != null) ? encode(weblogHandle) : "~");
+        key.append('/').append(encode(normalizeTerm(term)));
+
+        if (category != null) {
+            key.append("/cat=").append(encode(category.toLowerCase()));
+        }
+
+        if (locale != null) {
+            key.append("/locale=").append(encode(locale.toLowerCase()));
+        }
+
+        if (drillDowns != null) {
+            for (Map.Entry<String, String> drillDown : new TreeMap<>(drillDowns).entrySet()) {
+                key.append('/').append(encode(drillDown.getKey()))
+                        .append('=').append(encode(drillDown.getValue()));
+            }
+        }
+
+        key.append('/').append(pageNum).append('x').append(entryCount);
+
+        if (after != null) {
+            key.append("/after=").append(encode(after));
+        }
+
+        if (exactTotalHits) {
+            key.append("/exact");
+        }
+
+        return key.toString();
+    }
+
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Searches differing only in white space or the case of their words find
+     * the same entries.  Operators are left alone since only upper case ones
+     * are operators, and so are field names since those are case sensitive.
+     */
+    static String normalizeTerm(String term) {
+
+        if (term == null) {
+            return "";
+        }
+
+        StringBuilder normalized = new StringBuilder(term.length());
+        for (String word : term.trim().split("\\s+")) {
+            if (normalized.length() > 0) {
+                normalized.append(' ');
+            }
+            if ("AND".equals(word) || "OR".equals(word) || "NOT".equals(word) || "TO".equals(word)) {
+                normalized.append(word);
+            } else {
+                Matcher field = FIELD_NAME.matcher(word);
+                int start = 0;
+                while (field.find()) {
+                    normalized.append(word.substring(start, field.start()).toLowerCase(Locale.ROOT));
+                    normalized.append(field.group());
+                    start = field.end();
+                }
+                normalized.append(word.substring(start).toLowerCase(Locale.ROOT));
+            }
+        }
+        return normalized.toString();
+    }
+
+}
@@ -20,7 +20,10 @@
 
 package org.apache.roller.weblogger.business.search;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 
@@ -28,13 +31,29 @@ public class SearchResultList {
     int limit;
     int offset;
     Set<String> categories;
+    List<SearchHit> hits;
     List<WeblogEntryWrapper> results;
+    long totalHits;
+    boolean totalHitsExact = true;
+    String nextCursor;
+    Map<String, Map<String, Integer>> facets = Collections.emptyMap();
     public SearchResultList(
-        List<WeblogEntryWrapper> results, Set<String> categories, int limit, int offset) {
-        this.results = results;
+        List<SearchHit> hits, Set<String> categories, int limit, int offset) {
+        this.hits = hits;
         this.categories = categories;
         this.limit = limit;
         this.offset = offset;
+        this.totalHits = hits.size();
+    }
+    public SearchResultList(
+        List<SearchHit> hits, Set<String> categories, int limit, int offset,
+        long totalHits, boolean totalHitsExact, String nextCursor,
+        Map<String, Map<String, Integer>> facets) {
+        this(hits, categories, limit, offset);
+        this.totalHits = totalHits;
+        this.totalHitsExact = totalHitsExact;
+        this.nextCursor = nextCursor;
+        this.facets = facets;
     }
     public int getLimit() {
         return limit;
@@ -42,10 +61,53 @@ public class SearchResultList {
     public int getOffset() {
         return offset;
     }
+    /**
+     * The results as stored in the search index, showing them needs no
+     * database lookups.
+     */
+    public List<SearchHit> getHits() {
+        return hits;
+    }
+    /**
+     * The results as whole entries, loaded on first use. Entries which are
+     * gone since they were indexed are left out.
+     */
     public List<WeblogEntryWrapper> getResults() {
+        if (results == null) {
+            List<WeblogEntryWrapper> entries = new ArrayList<>(hits.size());
+            for (SearchHit hit : hits) {
+                if (hit.getEntry() != null) {
+                    entries.add(hit.getEntry());
+                }
+            }
+            results = entries;
+        }
         return results;
     }
     public Set<String> getCategories() {
         return categories;
     }
+    /**
+     * Number of results on all pages, a lower bound unless isTotalHitsExact().
+     */
+    public long getTotalHits() {
+        return totalHits;
+    }
+    public boolean isTotalHitsExact() {
+        return totalHitsExact;
+    }
+    /**
+     * Number of results with each of the most frequent values of each facet,
+     * by facet name and then value, most frequent first. Counted over all
+     * the results, not just this page.
+     */
+    public Map<String, Map<String, Integer>> getFacets() {
+        return facets;
+    }
+    /**
+     * Cursor for fetching the next page cheaply, null if this is the last.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search;
+
+/**
+ * A completion offered for what has been typed into a search box so far,
+ * either an entry title or a tag.
+ */
+public class SearchSuggestion {
+
+    public static final String TYPE_TITLE = "title";
+    public static final String TYPE_TAG = "tag";
+
+    private final String text;
+    private final String type;
+    private final int count;
+
+    public SearchSuggestion(String text, String type, int count) {
+        this.text = text;
+        this.type = type;
+        this.count = count;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * TYPE_TITLE or TYPE_TAG.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Number of published entries with this title or tag.
+     */
+    public int getCount() {
+        return count;
+    }
+
+}
@@ -27,14 +27,18 @@ package org.apache.roller.weblogger.business.search.lucene;
 public final class FieldConstants {
 
     public static final String ANCHOR = "anchor";
+    public static final String PUB_TIME = "pubtime";
+    public static final String CATEGORY_NAME = "catname";
+    public static final String SUMMARY = "summary";
     public static final String UPDATED = "updated";
     public static final String ID = "id";
     public static final String USERNAME = "username";
     public static final String CATEGORY = "cat";
     public static final String TITLE = "title";
-    public static final String PUBLISHED = "published";
     public static final String CONTENT = "content";
     public static final String CONTENT_STORED = "content_stored";
+    public static final String C_ID = "commentid";
+    public static final String C_ENTRY_ID = "commententry";
     public static final String C_CONTENT = "comment";
     public static final String C_EMAIL = "email";
     public static final String C_NAME = "name";
@@ -43,4 +47,5 @@ public final class FieldConstants {
     public static final String CONSTANT_V = "v";
     public static final String WEBSITE_HANDLE = "handle";
     public static final String LOCALE = "locale";
+    public static final String SUGGEST = "suggest";
 }
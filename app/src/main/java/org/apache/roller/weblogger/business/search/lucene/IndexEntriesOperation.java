@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.business.search.IndexRebuildStatus;
+import org.apache.roller.weblogger.business.search.IndexUpdateQueue;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+
+/**
+ * An operation that applies a batch of queued changes to weblog entries and
+ * comments, all of which become visible to searches with the same commit.
+ */
+public class IndexEntriesOperation extends WriteToIndexOperation {
+
+    // ~ Static fields/initializers
+    // =============================================
+
+    private static Log logger = LogFactory.getFactory().getInstance(
+            IndexEntriesOperation.class);
+
+    // ~ Instance fields
+    // ========================================================
+
+    private final Map<String, IndexUpdateQueue.Action> batch;
+    private final Weblogger roller;
+
+    // ~ Constructors
+    // ===========================================================
+
+    public IndexEntriesOperation(Weblogger roller, LuceneIndexManager mgr,
+            Map<String, IndexUpdateQueue.Action> batch) {
+        super(mgr);
+        this.roller = roller;
+        this.batch = batch;
+    }
+
+    // ~ Methods
+    // ================================================================
+
+    @Override
+    public void doRun() {
+
+        IndexWriter writer = beginWriting();
+        if (writer == null) {
+            return;
+        }
+
+        IndexSearcher searcher = null;
+        try {
+            WeblogEntryManager wMgr = roller.getWeblogEntryManager();
+            searcher = manager.acquireSearcher();
+
+            for (Map.Entry<String, IndexUpdateQueue.Action> change : batch.entrySet()) {
+                String id = change.getKey();
+
+                // entries and comments are looked up now rather than when
+                // queued, so the index gets whatever the last of several
+                // changes left
+                try {
+                    switch (change.getValue()) {
+                        case INDEX:
+                            indexEntry(writer, searcher, wMgr.getWeblogEntry(id), id);
+                            break;
+                        case INDEX_COMMENT:
+                            indexComment(writer, wMgr.getComment(id), id);
+                            break;
+                        case REMOVE_COMMENT:
+                            writer.deleteDocuments(new Term(FieldConstants.C_ID, id));
+                            break;
+                        default:
+                            removeEntry(writer, id);
+                    }
+                } catch (WebloggerException ex) {
+                    logger.error("Error getting object to index: " + id, ex);
+                }
+            }
+
+            logger.debug("Applied " + batch.size() + " index updates");
+
+            // a running rebuild may have read these before the change
+            IndexRebuildStatus status = manager.getRebuildStatus();
+            if (status != null) {
+                status.updated(batch);
+            }
+
+        } catch (IOException e) {
+            // fails the operation, so the queue tries the batch again
+            throw new UncheckedIOException("Problems updating index", e);
+        } finally {
+            if (searcher != null) {
+                manager.releaseSearcher(searcher);
+            }
+            if (roller != null) {
+                roller.release();
+            }
+        }
+    }
+
+    /**
+     * Index an entry, or remove one which is gone.  The entry's comments are
+     * only indexed along with it when the entry is new to the index,
+     * otherwise they are kept up to date on their own.
+     */
+    private void indexEntry(IndexWriter writer, IndexSearcher searcher,
+            WeblogEntry data, String id) throws IOException {
+
+        if (data == null) {
+            removeEntry(writer, id);
+            return;
+        }
+
+        Term term = new Term(FieldConstants.ID, id);
+        boolean indexed = searcher.count(new TermQuery(term)) > 0;
+        writer.updateDocument(term, getDocument(data));
+        if (!indexed) {
+            indexComments(writer, data);
+        }
+    }
+
+    private void removeEntry(IndexWriter writer, String id) throws IOException {
+        writer.deleteDocuments(new Term(FieldConstants.ID, id));
+        writer.deleteDocuments(new Term(FieldConstants.C_ENTRY_ID, id));
+    }
+
+    /**
+     * Index an approved comment, or remove one which is gone or no longer
+     * approved.  Comments of entries which are not in the index never match
+     * a search, and are replaced once the entry is indexed again.
+     */
+    private void indexComment(IndexWriter writer, WeblogEntryComment comment,
+            String id) throws IOException {
+
+        Term term = new Term(FieldConstants.C_ID, id);
+        if (comment != null && isIndexingComments()
+                && WeblogEntryComment.ApprovalStatus.APPROVED.equals(comment.getStatus())) {
+            writer.updateDocument(term, getCommentDocument(comment));
+        } else {
+            writer.deleteDocuments(term);
+        }
+    }
+}
@@ -21,23 +21,32 @@
 package org.apache.roller.weblogger.business.search.lucene;
 
 import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.util.BytesRef;
+import org.apache.roller.weblogger.business.search.IndexManager;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogEntryTag;
+import org.apache.roller.weblogger.util.Utilities;
 
 /**
  * This is the base class for all index operation. These operations include:<br>
@@ -53,10 +62,12 @@ public abstract class IndexOperation implements Runnable {
     private static Log logger = LogFactory.getFactory().getInstance(
             IndexOperation.class);
 
+    // length of the summary stored for showing search results
+    private static final int SUMMARY_LENGTH = 250;
+
     // ~ Instance fields
     // ========================================================
     protected LuceneIndexManager manager;
-    private IndexWriter writer;
 
     // ~ Constructors
     // ===========================================================
@@ -66,49 +77,26 @@ public abstract class IndexOperation implements Runnable {
 
     // ~ Methods
     // ================================================================
-    protected Document getDocument(WeblogEntry data) {
-
-        // Actual comment content is indexed only if search.index.comments
-        // is true or absent from the (static) configuration properties.
-        // If false in the configuration, comments are treated as if empty.
-        boolean indexComments = WebloggerConfig.getBooleanProperty(
-                "search.index.comments", true);
-
-        String commentContent = "";
-        String commentEmail = "";
-        String commentName = "";
-        if (indexComments) {
-            List<WeblogEntryComment> comments = data.getComments();
-            if (comments != null) {
-                StringBuilder commentEmailBld = new StringBuilder();
-                StringBuilder commentContentBld = new StringBuilder();
-                StringBuilder commentNameBld = new StringBuilder();
-                for (WeblogEntryComment comment : comments) {
-                    if (comment.getContent() != null) {
-                        commentContentBld.append(comment.getContent());
-                        commentContentBld.append(",");
-                    }
-                    if (comment.getEmail() != null) {
-                        commentEmailBld.append(comment.getEmail());
-                        commentEmailBld.append(",");
-                    }
-                    if (comment.getName() != null) {
-                        commentNameBld.append(comment.getName());
-                        commentNameBld.append(",");
-                    }
-                }
-                commentEmail = commentEmailBld.toString();
-                commentContent = commentContentBld.toString();
-                commentName = commentNameBld.toString();
-            }
-        }
+    /**
+     * Comment content is indexed only if search.index.comments is true or
+     * absent from the (static) configuration properties.
+     */
+    protected static boolean isIndexingComments() {
+        return WebloggerConfig.getBooleanProperty("search.index.comments", true);
+    }
 
+    protected Document getDocument(WeblogEntry data) throws IOException {
+
+        // comments are documents of their own, see getCommentDocument()
         Document doc = new Document();
 
         // keyword
         doc.add(new StringField(FieldConstants.ID, data.getId(),
                 Field.Store.YES));
 
+        // SearchOperation breaks ties in publication time by id
+        doc.add(new SortedDocValuesField(FieldConstants.ID, new BytesRef(data.getId())));
+
         // keyword
         doc.add(new StringField(FieldConstants.WEBSITE_HANDLE, data
                 .getWebsite().getHandle(), Field.Store.YES));
@@ -137,8 +125,21 @@ public abstract class IndexOperation implements Runnable {
 
         // keyword
         if (data.getPubTime() != null) {
-            // SearchOperation sorts results by date
-            doc.add(new SortedDocValuesField(FieldConstants.PUBLISHED, new BytesRef(data.getPubTime().toString())));
+            // SearchOperation sorts and filters results by date
+            doc.add(new NumericDocValuesField(FieldConstants.PUB_TIME, data.getPubTime().getTime()));
+            doc.add(new StoredField(FieldConstants.PUB_TIME, data.getPubTime().getTime()));
+        }
+
+        // stored only, search results are shown from these without loading
+        // the entry from the database
+        if (data.getAnchor() != null) {
+            doc.add(new StoredField(FieldConstants.ANCHOR, data.getAnchor()));
+        }
+        String summary = StringUtils.isNotEmpty(data.getSummary())
+                ? data.getSummary() : data.getText();
+        if (summary != null) {
+            doc.add(new StoredField(FieldConstants.SUMMARY,
+                    Utilities.truncateText(summary, SUMMARY_LENGTH, SUMMARY_LENGTH, "...")));
         }
 
         // index Category, needs to be in lower case as it is used in a term
@@ -146,57 +147,123 @@ public abstract class IndexOperation implements Runnable {
         if (categorydata != null) {
             doc.add(new StringField(FieldConstants.CATEGORY, categorydata
                     .getName().toLowerCase(), Field.Store.YES));
+
+            // stored only, as the weblog shows it
+            doc.add(new StoredField(FieldConstants.CATEGORY_NAME, categorydata.getName()));
         }
 
-        // index Comments, unstored
-        doc.add(new TextField(FieldConstants.C_CONTENT, commentContent,
-                Field.Store.NO));
+        addFacets(doc, data);
+
+        // keyword, completed by SuggestOperation
+        List<String> tags = new ArrayList<>();
+        if (data.getTags() != null) {
+            for (WeblogEntryTag tag : data.getTags()) {
+                tags.add(tag.getName());
+            }
+        }
+        for (String term : SuggestOperation.getTerms(data.getWebsite().getHandle(), data.getTitle(), tags)) {
+            doc.add(new StringField(FieldConstants.SUGGEST, term, Field.Store.NO));
+        }
+
+        // turns the facet fields into doc values
+        return LuceneIndexManager.getFacetsConfig().build(doc);
+    }
+
+    /**
+     * Get the document for one comment.  Comments are joined to their entry
+     * by the entry id, so approving or deleting a comment only touches its
+     * own document and never the entry's.  Comment documents carry no
+     * publication time, which keeps them out of the entry results.
+     */
+    protected Document getCommentDocument(WeblogEntryComment comment) {
+
+        Document doc = new Document();
 
         // keyword
-        doc.add(new StringField(FieldConstants.C_EMAIL, commentEmail,
-                Field.Store.YES));
+        doc.add(new StringField(FieldConstants.C_ID, comment.getId(), Field.Store.YES));
+
+        // keyword, the doc values are read back when joining to entries
+        String entryId = comment.getWeblogEntry().getId();
+        doc.add(new StringField(FieldConstants.C_ENTRY_ID, entryId, Field.Store.YES));
+        doc.add(new SortedDocValuesField(FieldConstants.C_ENTRY_ID, new BytesRef(entryId)));
+
+        // keyword, so removing a weblog's documents takes its comments too
+        doc.add(new StringField(FieldConstants.WEBSITE_HANDLE,
+                comment.getWeblogEntry().getWebsite().getHandle(), Field.Store.YES));
+
+        // text, unstored
+        doc.add(new TextField(FieldConstants.C_CONTENT,
+                Objects.toString(comment.getContent(), ""), Field.Store.NO));
 
         // keyword
-        doc.add(new StringField(FieldConstants.C_NAME, commentName,
-                Field.Store.YES));
+        doc.add(new StringField(FieldConstants.C_EMAIL,
+                Objects.toString(comment.getEmail(), ""), Field.Store.YES));
+
+        // keyword
+        doc.add(new StringField(FieldConstants.C_NAME,
+                Objects.toString(comment.getName(), ""), Field.Store.YES));
 
         return doc;
     }
 
     /**
-     * Begin writing.
-     * 
-     * @return the index writer
+     * Replace the documents of all comments on an entry with its currently
+     * approved comments.  Only needed when the entry itself is (re)added to
+     * the index, single comments are kept up to date on their own.
      */
-    protected IndexWriter beginWriting() {
-        try {
+    protected void indexComments(IndexWriter writer, WeblogEntry data) throws IOException {
+
+        writer.deleteDocuments(new Term(FieldConstants.C_ENTRY_ID, data.getId()));
+
+        if (isIndexingComments()) {
+            List<WeblogEntryComment> comments = data.getComments();
+            if (comments != null) {
+                for (WeblogEntryComment comment : comments) {
+                    writer.addDocument(getCommentDocument(comment));
+                }
+            }
+        }
+    }
 
-            LimitTokenCountAnalyzer analyzer = new LimitTokenCountAnalyzer(
-                    LuceneIndexManager.getAnalyzer(),
-                    WebloggerConfig.getIntProperty("lucene.analyzer.maxTokenCount"));
+    /**
+     * Add the values search results are counted and drilled down by.
+     */
+    private static void addFacets(Document doc, WeblogEntry data) {
 
-            IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        doc.add(new SortedSetDocValuesFacetField(IndexManager.FACET_WEBLOG,
+                data.getWebsite().getHandle()));
 
-            writer = new IndexWriter(manager.getIndexDirectory(), config);
+        if (data.getCategory() != null && StringUtils.isNotEmpty(data.getCategory().getName())) {
+            doc.add(new SortedSetDocValuesFacetField(IndexManager.FACET_CATEGORY,
+                    data.getCategory().getName()));
+        }
 
-        } catch (IOException e) {
-            logger.error("ERROR creating writer", e);
+        if (data.getTags() != null) {
+            for (WeblogEntryTag tag : data.getTags()) {
+                if (StringUtils.isNotEmpty(tag.getName())) {
+                    doc.add(new SortedSetDocValuesFacetField(IndexManager.FACET_TAG, tag.getName()));
+                }
+            }
         }
 
-        return writer;
+        // year and month as the weblog sees them
+        if (data.getPubTime() != null) {
+            SimpleDateFormat month = new SimpleDateFormat("yyyy-MM");
+            month.setTimeZone(data.getWebsite().getTimeZoneInstance());
+            String yearMonth = month.format(data.getPubTime());
+            doc.add(new SortedSetDocValuesFacetField(IndexManager.FACET_YEAR, yearMonth.substring(0, 4)));
+            doc.add(new SortedSetDocValuesFacetField(IndexManager.FACET_MONTH, yearMonth));
+        }
     }
 
     /**
-     * End writing.
+     * Begin writing. The writer is shared and stays open, changes are
+     * committed once the operation is done.
+     * 
+     * @return the index writer, or null if the index is not open
      */
-    protected void endWriting() {
-        if (writer != null) {
-            try {
-                writer.close();
-            } catch (IOException e) {
-                logger.error("ERROR closing writer", e);
-            }
-        }
+    protected IndexWriter beginWriting() {
+        return manager.getIndexWriter();
     }
 
     /**
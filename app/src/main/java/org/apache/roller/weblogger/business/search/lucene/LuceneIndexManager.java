@@ -20,17 +20,20 @@ package org.apache.roller.weblogger.business.search.lucene;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import org.apache.commons.beanutils.ConstructorUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,39 +41,60 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.InitializationException;
 import org.apache.roller.weblogger.business.URLStrategy;
-import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.Weblogger;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.IndexRebuildStatus;
+import org.apache.roller.weblogger.business.search.IndexUpdateQueue;
+import org.apache.roller.weblogger.business.search.SearchHit;
+import org.apache.roller.weblogger.business.search.SearchResultCache;
 import org.apache.roller.weblogger.business.search.SearchResultList;
+import org.apache.roller.weblogger.business.search.SearchSuggestion;
 import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
-import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 
 /**
  * Lucene implementation of IndexManager. This is the central entry point into
  * the Lucene searching API.
  * 
+ * One IndexWriter stays open for as long as the index manager runs, and
+ * searches get near-real-time searchers from a SearcherManager which is
+ * refreshed whenever a write operation completes. Write operations are
+ * serialized among themselves, but searches never wait for them.
+ * 
+ * Changes to single entries go through an IndexUpdateQueue, which keeps only
+ * the latest change to each entry and applies them in batches.
+ * 
  * @author Mindaugas Idzelis (min@idzelis.com)
  * @author mraible (formatting and making indexDir configurable)
  */
 @com.google.inject.Singleton
 public class LuceneIndexManager implements IndexManager {
 
-    private IndexReader reader;
     private final Weblogger roller;
 
     private final static Log logger = LogFactory.getFactory().getInstance(LuceneIndexManager.class);
@@ -83,7 +107,35 @@ public class LuceneIndexManager implements IndexManager {
 
     private boolean inconsistentAtStartup = false;
 
-    private final ReadWriteLock rwl = new ReentrantReadWriteLock();
+    // set once changes were lost, the marker then stays at shutdown
+    private volatile boolean inconsistent = false;
+
+    // serializes write operations, searches don't need it
+    private final Lock writeLock = new ReentrantLock();
+
+    // rebuilds take turns, they share the checkpoint
+    private final Lock rebuildLock = new ReentrantLock();
+
+    private volatile IndexRebuildStatus rebuildStatus;
+
+    private Directory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+
+    private IndexUpdateQueue updateQueue;
+
+    private SearchResultCache resultCache;
+
+    private static final String QUEUE_MBEAN_NAME =
+            "org.apache.roller.weblogger:type=SearchIndex,name=updateQueue";
+
+    private static final FacetsConfig FACETS_CONFIG = new FacetsConfig();
+    static {
+        FACETS_CONFIG.setMultiValued(FACET_TAG, true);
+    }
+
+    // facet values of the reader last searched, read again once it changes
+    private volatile SortedSetDocValuesReaderState facetsState;
 
 
     /**
@@ -126,7 +178,11 @@ public class LuceneIndexManager implements IndexManager {
         // only initialize the index if search is enabled
         if (this.searchEnabled) {
 
-            // delete index if inconsistency marker exists
+            RebuildCheckpoint checkpoint = RebuildCheckpoint.read(getIndexPath());
+
+            // delete index if inconsistency marker exists, Roller did not shut
+            // down cleanly and whatever was only held in memory, queued
+            // updates as much as a rebuild's progress, is lost
             if (indexConsistencyMarker.exists()) {
                 logger.debug("Index inconsistent: marker exists");
                 inconsistentAtStartup = true;
@@ -148,12 +204,33 @@ public class LuceneIndexManager implements IndexManager {
             if (indexExists()) {
 
                 // test if the index is readable, if the version is outdated or it fails we rebuild.
-                try {
-                    synchronized(this) {
-                        reader = DirectoryReader.open(getIndexDirectory());
+                boolean outdated = false;
+                try (DirectoryReader reader = DirectoryReader.open(getIndexDirectory())) {
+                    logger.debug("Index contains " + reader.numDocs() + " documents");
+
+                    // results are sorted and filtered by numeric publication
+                    // times, and counted by facets, and comments are
+                    // documents of their own rather than part of the entry's
+                    FieldInfos fieldInfos = FieldInfos.getMergedFieldInfos(reader);
+                    FieldInfo pubTime = fieldInfos.fieldInfo(FieldConstants.PUB_TIME);
+                    FieldInfo id = fieldInfos.fieldInfo(FieldConstants.ID);
+                    FieldInfo facets = fieldInfos.fieldInfo(FacetsConfig.DEFAULT_INDEX_FIELD_NAME);
+                    boolean commentsInEntries = fieldInfos.fieldInfo(FieldConstants.C_CONTENT) != null
+                            && fieldInfos.fieldInfo(FieldConstants.C_ENTRY_ID) == null;
+                    if (reader.numDocs() > 0
+                            && (pubTime == null || pubTime.getDocValuesType() != DocValuesType.NUMERIC
+                                || id == null || id.getDocValuesType() != DocValuesType.SORTED
+                                || facets == null || facets.getDocValuesType() != DocValuesType.SORTED_SET
+                                || commentsInEntries
+                                || fieldInfos.fieldInfo(FieldConstants.SUGGEST) == null)) {
+                        logger.info("Search index is outdated, scheduling rebuild.");
+                        outdated = true;
                     }
                 } catch (IOException | IllegalArgumentException ex) {  // IAE for incompatible codecs
                     logger.warn("Failed to open search index, scheduling rebuild.", ex);
+                    outdated = true;
+                }
+                if (outdated) {
                     inconsistentAtStartup = true;
                     deleteIndex();
                 }
@@ -161,9 +238,23 @@ public class LuceneIndexManager implements IndexManager {
                 logger.debug("Creating index");
                 inconsistentAtStartup = true;
                 deleteIndex();
-                createIndex(getIndexDirectory());
             }
 
+            // deleting the index took the checkpoint with it
+            if (inconsistentAtStartup) {
+                checkpoint = null;
+            }
+
+            try {
+                openWriter();
+            } catch (IOException ex) {
+                throw new InitializationException("Unable to open search index", ex);
+            }
+
+            startUpdateQueue();
+
+            resultCache = new SearchResultCache();
+
             if (inconsistentAtStartup) {
                 logger.info("Index was inconsistent. Rebuilding index in the background...");
                 try {
@@ -171,6 +262,9 @@ public class LuceneIndexManager implements IndexManager {
                 } catch (WebloggerException ex) {
                     logger.error("ERROR: scheduling re-index operation", ex);
                 }
+            } else if (checkpoint != null) {
+                logger.info("Index rebuild was interrupted. Resuming it in the background...");
+                scheduleIndexOperation(new RebuildWebsiteIndexOperation(roller, this, checkpoint));
             } else {
                 logger.info("Index initialized and ready for use.");
             }
@@ -180,7 +274,7 @@ public class LuceneIndexManager implements IndexManager {
 
     @Override
     public void rebuildWeblogIndex() throws WebloggerException {
-        scheduleIndexOperation(new RebuildWebsiteIndexOperation(roller, this, null));
+        scheduleIndexOperation(new RebuildWebsiteIndexOperation(roller, this, (Weblog) null));
     }
 
     @Override
@@ -195,17 +289,27 @@ public class LuceneIndexManager implements IndexManager {
 
     @Override
     public void addEntryIndexOperation(WeblogEntry entry) throws WebloggerException {
-        scheduleIndexOperation(new AddEntryOperation(roller, this, entry));
+        queueUpdate(entry.getId(), IndexUpdateQueue.Action.INDEX);
     }
 
     @Override
     public void addEntryReIndexOperation(WeblogEntry entry) throws WebloggerException {
-        scheduleIndexOperation(new ReIndexEntryOperation(roller, this, entry));
+        queueUpdate(entry.getId(), IndexUpdateQueue.Action.INDEX);
     }
 
     @Override
     public void removeEntryIndexOperation(WeblogEntry entry) throws WebloggerException {
-        executeIndexOperationNow(new RemoveEntryOperation(roller, this, entry));
+        queueUpdate(entry.getId(), IndexUpdateQueue.Action.REMOVE);
+    }
+
+    @Override
+    public void addCommentIndexOperation(WeblogEntryComment comment) throws WebloggerException {
+        queueUpdate(comment.getId(), IndexUpdateQueue.Action.INDEX_COMMENT);
+    }
+
+    @Override
+    public void removeCommentIndexOperation(WeblogEntryComment comment) throws WebloggerException {
+        queueUpdate(comment.getId(), IndexUpdateQueue.Action.REMOVE_COMMENT);
     }
 
     @Override
@@ -218,8 +322,46 @@ public class LuceneIndexManager implements IndexManager {
         int entryCount,
         URLStrategy urlStrategy) throws WebloggerException {
 
+        return search(term, weblogHandle, category, locale, null, pageNum, entryCount,
+            null, false, urlStrategy);
+    }
+
+    @Override
+    public SearchResultList search(
+        String term,
+        String weblogHandle,
+        String category,
+        String locale,
+        Map<String, String> drillDowns,
+        int pageNum,
+        int entryCount,
+        String after,
+        boolean exactTotalHits,
+        URLStrategy urlStrategy) throws WebloggerException {
+
+        // results are good for as long as the index stays the same
+        String cacheKey = null;
+        if (resultCache != null && resultCache.isEnabled()) {
+            try {
+                cacheKey = SearchResultCache.generateKey(getIndexGeneration(), term, weblogHandle,
+                    category, locale, drillDowns, pageNum, entryCount, after, exactTotalHits);
+            } catch (IOException e) {
+                throw new WebloggerException(e);
+            }
+            SearchResultList cached = resultCache.get(cacheKey, urlStrategy);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        int offset = Math.max(pageNum, 0) * entryCount;
+
         SearchOperation search = new SearchOperation(this);
         search.setTerm(term);
+        search.setOffset(offset);
+        search.setCount(entryCount);
+        search.setAfter(after);
+        search.setExactTotalHits(exactTotalHits);
         boolean weblogSpecific = !WebloggerRuntimeConfig.isSiteWideWeblog(weblogHandle);
         if (weblogSpecific) {
             search.setWeblogHandle(weblogHandle);
@@ -230,25 +372,116 @@ public class LuceneIndexManager implements IndexManager {
         if (locale != null) {
             search.setLocale(locale);
         }
+        if (drillDowns != null) {
+            for (Map.Entry<String, String> drillDown : drillDowns.entrySet()) {
+                search.addDrillDown(drillDown.getKey(), drillDown.getValue());
+            }
+        }
 
         executeIndexOperationNow(search);
-        if (search.getResultsCount() >= 0) {
-            TopFieldDocs docs = search.getResults();
-            ScoreDoc[] hitsArr = docs.scoreDocs;
-            return convertHitsToEntryList(
-                hitsArr,
-                search,
-                pageNum,
-                entryCount,
-                weblogHandle,
-                weblogSpecific,
-                urlStrategy);
+        try {
+            if (search.getResultsCount() >= 0) {
+                TopFieldDocs docs = search.getResults();
+                ScoreDoc[] hitsArr = docs.scoreDocs;
+                SearchResultList results = convertHitsToEntryList(
+                    hitsArr,
+                    search,
+                    offset,
+                    weblogHandle,
+                    weblogSpecific,
+                    urlStrategy);
+                if (cacheKey != null) {
+                    resultCache.put(cacheKey, results);
+                }
+                return results;
+            }
+            throw new WebloggerException("Error executing search");
+        } finally {
+            // the hits are only good as long as their searcher
+            search.release();
+        }
+    }
+
+    @Override
+    public List<SearchSuggestion> suggest(String prefix, String weblogHandle, int count)
+            throws WebloggerException {
+
+        SuggestOperation suggest = new SuggestOperation(this);
+        suggest.setPrefix(prefix);
+        suggest.setCount(count);
+        if (!WebloggerRuntimeConfig.isSiteWideWeblog(weblogHandle)) {
+            suggest.setWeblogHandle(weblogHandle);
+        }
+        executeIndexOperationNow(suggest);
+        return suggest.getSuggestions();
+    }
+
+    /**
+     * Lock held by write operations while they update the index.
+     */
+    public Lock getWriteLock() {
+        return writeLock;
+    }
+
+    /**
+     * Lock held by rebuild operations while they run.
+     */
+    public Lock getRebuildLock() {
+        return rebuildLock;
+    }
+
+    @Override
+    public IndexRebuildStatus getRebuildStatus() {
+        return rebuildStatus;
+    }
+
+    public void setRebuildStatus(IndexRebuildStatus rebuildStatus) {
+        this.rebuildStatus = rebuildStatus;
+    }
+
+    /**
+     * The IndexWriter shared by all write operations.
+     */
+    public IndexWriter getIndexWriter() {
+        return writer;
+    }
+
+    /**
+     * Get a searcher over the latest refreshed state of the index, which
+     * must be handed back with releaseSearcher() once done with.
+     */
+    public IndexSearcher acquireSearcher() throws IOException {
+        return searcherManager.acquire();
+    }
+
+    public void releaseSearcher(IndexSearcher searcher) {
+        try {
+            searcherManager.release(searcher);
+        } catch (IOException ex) {
+            logger.error("Error releasing searcher", ex);
         }
-        throw new WebloggerException("Error executing search");
     }
 
-    public ReadWriteLock getReadWriteLock() {
-        return rwl;
+    /**
+     * Version of the index new searches see, which changes whenever a
+     * commit changes the index.
+     */
+    long getIndexGeneration() throws IOException {
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            return ((DirectoryReader) searcher.getIndexReader()).getVersion();
+        } finally {
+            releaseSearcher(searcher);
+        }
+    }
+
+    /**
+     * Commit what write operations have done and make it visible to new
+     * searches.
+     */
+    public void commit() throws IOException {
+        writer.commit();
+        searcherManager.maybeRefresh();
     }
 
     @Override
@@ -256,6 +489,30 @@ public class LuceneIndexManager implements IndexManager {
         return inconsistentAtStartup;
     }
 
+    /**
+     * How the facets search results are counted by are indexed.
+     */
+    public static FacetsConfig getFacetsConfig() {
+        return FACETS_CONFIG;
+    }
+
+    /**
+     * Facet values of the documents a searcher sees, null if none of them
+     * has any.
+     */
+    SortedSetDocValuesReaderState getFacetsState(IndexSearcher searcher) throws IOException {
+        IndexReader reader = searcher.getIndexReader();
+        SortedSetDocValuesReaderState state = facetsState;
+        if (state == null || state.getReader() != reader) {
+            if (FieldInfos.getMergedFieldInfos(reader).fieldInfo(FacetsConfig.DEFAULT_INDEX_FIELD_NAME) == null) {
+                return null;
+            }
+            state = new DefaultSortedSetDocValuesReaderState(reader, FACETS_CONFIG);
+            facetsState = state;
+        }
+        return state;
+    }
+
     /**
      * This is the analyzer that will be used to tokenize comment text.
      * 
@@ -297,34 +554,102 @@ public class LuceneIndexManager implements IndexManager {
     }
 
     /**
-     * @param op
+     * Queue a change to an entry or comment, waiting if too many are queued
+     * already.
      */
-    private void executeIndexOperationNow(final IndexOperation op) {
+    private void queueUpdate(String id, IndexUpdateQueue.Action action) {
         try {
             // only if search is enabled
-            if (this.searchEnabled) {
-                logger.debug("Executing index operation now: " + op.getClass().getName());
-                roller.getThreadManager().executeInForeground(op);
+            if (this.searchEnabled && updateQueue != null) {
+                updateQueue.enqueue(id, action);
             }
         } catch (InterruptedException e) {
-            logger.error("Error executing operation", e);
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted queueing index update", e);
         }
     }
 
-    public synchronized void resetSharedReader() {
-        reader = null;
+    /**
+     * Queue of pending changes to single entries, null if search is disabled.
+     */
+    public IndexUpdateQueue getUpdateQueue() {
+        return updateQueue;
     }
 
-    public synchronized IndexReader getSharedIndexReader() {
-        if (reader == null) {
-            try {
-                reader = DirectoryReader.open(getIndexDirectory());
-            } catch (IOException ex) {
-                logger.error("Error opening DirectoryReader", ex);
-                throw new RuntimeException(ex);
+    private void startUpdateQueue() {
+
+        updateQueue = new IndexUpdateQueue(
+                new IndexUpdateQueue.BatchHandler() {
+                    @Override
+                    public void apply(Map<String, IndexUpdateQueue.Action> batch) throws IOException {
+                        IndexEntriesOperation op = new IndexEntriesOperation(roller, LuceneIndexManager.this, batch);
+                        op.run();
+                        if (op.isFailed()) {
+                            throw new IOException("Unable to apply " + batch.size() + " index updates");
+                        }
+                    }
+
+                    @Override
+                    public void dropped(Map<String, IndexUpdateQueue.Action> changes) {
+                        markInconsistent();
+                    }
+                },
+                WebloggerConfig.getIntProperty("search.index.queue.maxPending", 10000),
+                WebloggerConfig.getIntProperty("search.index.queue.batchSize", 500),
+                WebloggerConfig.getIntProperty("search.index.queue.batchDelay", 250));
+        updateQueue.start();
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(QUEUE_MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
             }
+            server.registerMBean(updateQueue, name);
+        } catch (Exception e) {
+            logger.warn("Unable to register MBean for search index queue", e);
+        }
+    }
+
+    private void stopUpdateQueue() {
+
+        if (updateQueue == null) {
+            return;
+        }
+
+        // apply what is still queued while the writer is open
+        updateQueue.shutdown(RollerConstants.GRACEFUL_SHUTDOWN_WAIT_IN_MILLISECONDS);
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(QUEUE_MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            logger.debug("Unable to unregister MBean for search index queue", e);
         }
-        return reader;
+    }
+
+    /**
+     * Run an operation in the calling thread, handing it to another thread
+     * only to wait for it there would just add latency.
+     * 
+     * @param op
+     */
+    private void executeIndexOperationNow(final IndexOperation op) {
+        // only if search is enabled
+        if (this.searchEnabled) {
+            logger.debug("Executing index operation now: " + op.getClass().getName());
+            op.run();
+        }
+    }
+
+    /**
+     * Path of the index directory on disk.
+     */
+    public Path getIndexPath() {
+        return Path.of(indexDir);
     }
 
     /**
@@ -335,6 +660,9 @@ public class LuceneIndexManager implements IndexManager {
      */
     public Directory getIndexDirectory() {
 
+        if (directory != null) {
+            return directory;
+        }
         try {
             return FSDirectory.open(Path.of(indexDir));
         } catch (IOException e) {
@@ -367,27 +695,36 @@ public class LuceneIndexManager implements IndexManager {
 
     }
 
-    private void createIndex(Directory dir) {
-        IndexWriter writer = null;
+    /**
+     * Open the IndexWriter, creating the index if there is none yet, and the
+     * SearcherManager on top of it.
+     */
+    private void openWriter() throws IOException {
 
-        try {
+        LimitTokenCountAnalyzer analyzer = new LimitTokenCountAnalyzer(
+                LuceneIndexManager.getAnalyzer(),
+                WebloggerConfig.getIntProperty("lucene.analyzer.maxTokenCount"));
 
-            IndexWriterConfig config = new IndexWriterConfig(
-                    new LimitTokenCountAnalyzer(
-                            LuceneIndexManager.getAnalyzer(), 128));
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
 
-            writer = new IndexWriter(dir, config);
+        directory = FSDirectory.open(Path.of(indexDir));
+        writer = new IndexWriter(directory, config);
 
-        } catch (IOException e) {
-            logger.error("Error creating index", e);
-        } finally {
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (IOException ex) {
-                    logger.warn("Unable to close IndexWriter.", ex);
-                }
-            }
+        // make sure a new index exists on disk right away
+        writer.commit();
+
+        searcherManager = new SearcherManager(writer, null);
+    }
+
+    /**
+     * Keep the inconsistency marker at shutdown, so the index is rebuilt
+     * the next time Roller starts.
+     */
+    void markInconsistent() {
+        if (!inconsistent) {
+            inconsistent = true;
+            logger.error("Search index is missing changes, it will be rebuilt at the next startup");
         }
     }
 
@@ -398,23 +735,44 @@ public class LuceneIndexManager implements IndexManager {
 
     @Override
     public void shutdown() {
-        
-        indexConsistencyMarker.delete();
 
-        if (reader != null) {
+        stopUpdateQueue();
+
+        if (searcherManager != null) {
+            try {
+                searcherManager.close();
+            } catch (IOException ex) {
+                logger.error("Unable to close searcher manager.", ex);
+            }
+        }
+
+        // closing the writer commits whatever is left
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                logger.error("Unable to close writer.", ex);
+            }
+        }
+
+        if (directory != null) {
             try {
-                reader.close();
+                directory.close();
             } catch (IOException ex) {
-                logger.error("Unable to close reader.", ex);
+                logger.error("Unable to close index directory.", ex);
             }
         }
+
+        if (!inconsistent) {
+            indexConsistencyMarker.delete();
+        }
     }
 
     /**
      * Convert hits to entries.
      *
      * @param hits
-     *            the hits
+     *            the hits on the page
      * @param search
      *            the search
      * @throws WebloggerException
@@ -423,63 +781,70 @@ public class LuceneIndexManager implements IndexManager {
     static SearchResultList convertHitsToEntryList(
         ScoreDoc[] hits,
         SearchOperation search,
-        int pageNum,
-        int entryCount,
+        int offset,
         String weblogHandle,
         boolean websiteSpecificSearch,
         URLStrategy urlStrategy)
         throws WebloggerException {
 
-        List<WeblogEntryWrapper> results = new ArrayList<>();
-
-        // determine offset
-        int offset = pageNum * entryCount;
-        if (offset >= hits.length) {
-            offset = 0;
-        }
-
-        // determine limit
-        int limit = entryCount;
-        if (offset + limit > hits.length) {
-            limit = hits.length - offset;
-        }
+        List<SearchHit> results = new ArrayList<>();
 
         try {
+            // categories across weblogs, counted for all results
             Set<String> categories = new TreeSet<>();
-            TreeSet<String> categorySet = new TreeSet<>();
-            Weblogger roller = WebloggerFactory.getWeblogger();
-            WeblogEntryManager weblogMgr = roller.getWeblogEntryManager();
+            Map<String, Integer> categoryCounts = search.getFacetCounts().get(FACET_CATEGORY);
+            if (!websiteSpecificSearch && categoryCounts != null) {
+                for (String category : categoryCounts.keySet()) {
+                    categories.add(category.toLowerCase());
+                }
+            }
 
-            WeblogEntry entry;
+            SearchHit hit;
             Document doc;
-            String handle;
-            Timestamp now = new Timestamp(new Date().getTime());
-            for (int i = offset; i < offset + limit; i++) {
-                doc = search.getSearcher().doc(hits[i].doc);
-                handle = doc.getField(FieldConstants.WEBSITE_HANDLE).stringValue();
-                entry = weblogMgr.getWeblogEntry(doc.getField(FieldConstants.ID).stringValue());
-
-                if (!(websiteSpecificSearch && handle.equals(weblogHandle))
-                    && doc.getField(FieldConstants.CATEGORY) != null) {
-                    categorySet.add(doc.getField(FieldConstants.CATEGORY).stringValue());
-                }
+            for (int i = 0; i < hits.length; i++) {
+                doc = search.getSearcher().storedFields().document(hits[i].doc);
+                hit = toSearchHit(doc, urlStrategy);
 
                 // maybe null if search result returned inactive user
                 // or entry's user is not the requested user.
-                // but don't return future posts
-                if (entry != null && entry.getPubTime().before(now)) {
-                    results.add(WeblogEntryWrapper.wrap(entry, urlStrategy));
+                if (hit != null) {
+                    results.add(hit);
                 }
             }
 
-            if (!categorySet.isEmpty()) {
-                categories = categorySet;
-            }
-
-            return new SearchResultList(results, categories, limit, offset);
+            return new SearchResultList(results, categories, hits.length, offset,
+                search.getResultsCount(), search.isTotalHitsExact(), search.getNextCursor(),
+                search.getFacetCounts());
 
         } catch (IOException e) {
             throw new WebloggerException(e);
         }
     }
+
+    /**
+     * Make a search hit from the stored fields of a document. Documents
+     * indexed before those fields were stored are looked up in the database.
+     */
+    private static SearchHit toSearchHit(Document doc, URLStrategy urlStrategy)
+        throws WebloggerException {
+
+        String id = doc.get(FieldConstants.ID);
+        IndexableField pubTime = doc.getField(FieldConstants.PUB_TIME);
+        if (pubTime == null || doc.get(FieldConstants.ANCHOR) == null) {
+            WeblogEntry entry = WebloggerFactory.getWeblogger()
+                .getWeblogEntryManager().getWeblogEntry(id);
+            return (entry != null) ? new SearchHit(entry, urlStrategy) : null;
+        }
+
+        SearchHit hit = new SearchHit(urlStrategy);
+        hit.setId(id);
+        hit.setTitle(doc.get(FieldConstants.TITLE));
+        hit.setAnchor(doc.get(FieldConstants.ANCHOR));
+        hit.setWeblogHandle(doc.get(FieldConstants.WEBSITE_HANDLE));
+        hit.setCategoryName(doc.get(FieldConstants.CATEGORY_NAME));
+        hit.setSummary(doc.get(FieldConstants.SUMMARY));
+        hit.setPubTime(new Timestamp(pubTime.numericValue().longValue()));
+        hit.setUpdateTime(Timestamp.valueOf(doc.get(FieldConstants.UPDATED)));
+        return hit;
+    }
 }
@@ -33,14 +33,11 @@ public abstract class ReadFromIndexOperation extends IndexOperation {
     
     @Override
     public final void run() {
+        // reads work on a searcher of their own and need no lock
         try {
-            manager.getReadWriteLock().readLock().lock();
             doRun();
-
         } catch (Exception e) {
-            logger.error("Error acquiring read lock on index", e);
-        } finally {
-            manager.getReadWriteLock().readLock().unlock();
+            logger.error("Error reading from index", e);
         }
     }
     
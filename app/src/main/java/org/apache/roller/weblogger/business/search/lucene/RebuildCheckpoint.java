@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.business.search.IndexUpdateQueue;
+
+
+/**
+ * How far an index rebuild got, kept in the index directory so a rebuild
+ * which was interrupted by a shutdown can carry on from there.  Along with
+ * it go the entries and comments changed while the rebuild ran, which still
+ * need to be applied once more when it is done.
+ */
+final class RebuildCheckpoint {
+
+    private static final Log logger = LogFactory.getLog(RebuildCheckpoint.class);
+
+    static final String FILE_NAME = ".rebuild-checkpoint";
+
+    private static final String UPDATED_PREFIX = "updated.";
+
+    private final String weblogId;
+    private final String lastId;
+    private final long indexed;
+    private final Map<String, IndexUpdateQueue.Action> updated;
+
+
+    RebuildCheckpoint(String weblogId, String lastId, long indexed) {
+        this(weblogId, lastId, indexed, Collections.emptyMap());
+    }
+
+
+    /**
+     * @param weblogId weblog being rebuilt, or null for all weblogs.
+     * @param lastId   id of the last entry which is in the index for sure,
+     *                 or null if none are yet.
+     * @param indexed  number of entries indexed up to lastId.
+     * @param updated  changes made while the rebuild ran.
+     */
+    RebuildCheckpoint(String weblogId, String lastId, long indexed,
+            Map<String, IndexUpdateQueue.Action> updated) {
+        this.weblogId = weblogId;
+        this.lastId = lastId;
+        this.indexed = indexed;
+        this.updated = updated;
+    }
+
+
+    String getWeblogId() {
+        return weblogId;
+    }
+
+
+    String getLastId() {
+        return lastId;
+    }
+
+
+    long getIndexed() {
+        return indexed;
+    }
+
+
+    Map<String, IndexUpdateQueue.Action> getUpdated() {
+        return updated;
+    }
+
+
+    /**
+     * Read the checkpoint from the index directory.
+     *
+     * @return the checkpoint, or null if there is none.
+     */
+    static RebuildCheckpoint read(Path indexDir) {
+
+        Path file = indexDir.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+            Map<String, IndexUpdateQueue.Action> updated = new LinkedHashMap<>();
+            for (String name : props.stringPropertyNames()) {
+                if (name.startsWith(UPDATED_PREFIX)) {
+                    updated.put(name.substring(UPDATED_PREFIX.length()),
+                            IndexUpdateQueue.Action.valueOf(props.getProperty(name)));
+                }
+            }
+            return new RebuildCheckpoint(
+                    props.getProperty("weblogId"),
+                    props.getProperty("lastId"),
+                    Long.parseLong(props.getProperty("indexed", "0")),
+                    updated);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Ignoring unreadable rebuild checkpoint", e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Write the checkpoint, replacing the previous one in a single step.
+     */
+    void write(Path indexDir) throws IOException {
+
+        Properties props = new Properties();
+        if (weblogId != null) {
+            props.setProperty("weblogId", weblogId);
+        }
+        if (lastId != null) {
+            props.setProperty("lastId", lastId);
+        }
+        props.setProperty("indexed", Long.toString(indexed));
+        for (Map.Entry<String, IndexUpdateQueue.Action> change : updated.entrySet()) {
+            props.setProperty(UPDATED_PREFIX + change.getKey(), change.getValue().name());
+        }
+
+        Path temp = indexDir.resolve(FILE_NAME + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            props.store(out, null);
+        }
+        Files.move(temp, indexDir.resolve(FILE_NAME),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    static void delete(Path indexDir) {
+        try {
+            Files.deleteIfExists(indexDir.resolve(FILE_NAME));
+        } catch (IOException e) {
+            logger.warn("Unable to delete rebuild checkpoint", e);
+        }
+    }
+
+}
@@ -19,8 +19,16 @@
 package org.apache.roller.weblogger.business.search.lucene;
 
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -30,17 +38,28 @@ import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.business.search.IndexRebuildStatus;
+import org.apache.roller.weblogger.business.search.IndexUpdateQueue;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
-import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
-import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 
 /**
  * An index operation that rebuilds a given users index (or all indexes).
  * 
+ * Entries are read a page at a time in id order, and each page is indexed
+ * by one of a pool of threads, each of which has its own persistence context
+ * that is cleared after every page. Once a page and all the pages before it
+ * are committed, a checkpoint is written so a rebuild interrupted by a
+ * shutdown can pick up from there.
+ * 
+ * Other updates go on while the rebuild runs, entries they touch are queued
+ * once more at the end in case a page overwrote them with older data.  They
+ * are saved with every checkpoint, so a resumed rebuild still does that.
+ * 
  * @author Mindaugas Idzelis (min@idzelis.com)
  */
-public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
+public class RebuildWebsiteIndexOperation extends IndexOperation {
 
     // ~ Static fields/initializers
     // =============================================
@@ -53,6 +72,12 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
 
     private Weblog website;
     private Weblogger roller;
+    private RebuildCheckpoint resumeFrom;
+
+    private final int pageSize = Math.max(
+            WebloggerConfig.getIntProperty("search.index.rebuild.pageSize", 500), 1);
+    private final int threads = Math.max(
+            WebloggerConfig.getIntProperty("search.index.rebuild.threads", 2), 1);
 
     // ~ Constructors
     // ===========================================================
@@ -70,9 +95,34 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
         this.website = website;
     }
 
+    /**
+     * Create an operation that carries on with an interrupted rebuild.
+     */
+    RebuildWebsiteIndexOperation(Weblogger roller, LuceneIndexManager mgr,
+            RebuildCheckpoint resumeFrom) {
+        this(roller, mgr, (Weblog) null);
+        this.resumeFrom = resumeFrom;
+    }
+
     // ~ Methods
     // ================================================================
 
+    /**
+     * Rebuilds take turns since they share the checkpoint, but they don't
+     * hold up other writes.
+     */
+    @Override
+    public void run() {
+        manager.getRebuildLock().lock();
+        try {
+            doRun();
+        } catch (Exception e) {
+            logger.error("Error rebuilding index", e);
+        } finally {
+            manager.getRebuildLock().unlock();
+        }
+    }
+
     @Override
     public void doRun() {
 
@@ -81,62 +131,95 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
         // since this operation can be run on a separate thread we must treat
         // the weblog object passed in as a detached object which is proned to
         // lazy initialization problems, so requery for the object now
-        if (this.website != null) {
-            logger.debug("Reindexining weblog " + website.getHandle());
+        String weblogId = (website != null) ? website.getId()
+                : (resumeFrom != null) ? resumeFrom.getWeblogId() : null;
+        if (weblogId != null) {
             try {
-                this.website = roller.getWeblogManager().getWeblog(
-                        this.website.getId());
+                this.website = roller.getWeblogManager().getWeblog(weblogId);
             } catch (WebloggerException ex) {
                 logger.error("Error getting website object", ex);
                 return;
             }
+            if (website == null) {
+                logger.info("Weblog to reindex is gone, dropping rebuild checkpoint");
+                RebuildCheckpoint.delete(manager.getIndexPath());
+                return;
+            }
+            logger.debug("Reindexining weblog " + website.getHandle());
         } else {
             logger.debug("Reindexining entire site");
         }
 
         IndexWriter writer = beginWriting();
+        if (writer == null) {
+            return;
+        }
 
+        // a checkpoint only counts for the same weblog
+        boolean resuming = resumeFrom != null
+                && Objects.equals(resumeFrom.getWeblogId(), weblogId);
+        String afterId = resuming ? resumeFrom.getLastId() : null;
+        long done = resuming ? resumeFrom.getIndexed() : 0;
+
+        IndexRebuildStatus status = null;
+        ExecutorService pool = null;
         try {
-            if (writer != null) {
+            WeblogEntryManager weblogManager = roller.getWeblogEntryManager();
+            long total = (website != null) ? weblogManager.getEntryCount(website)
+                    : weblogManager.getEntryCount();
+            status = new IndexRebuildStatus(
+                    (website != null) ? website.getHandle() : null, total, done);
+            manager.setRebuildStatus(status);
 
-                // Delete Doc
-                Term tWebsite = null;
-                if (website != null) {
-                    tWebsite = IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE,
-                            website.getHandle());
-                }
-                if (tWebsite != null) {
-                    writer.deleteDocuments(tWebsite);
-                } else {
-                    Term all = IndexUtil.getTerm(FieldConstants.CONSTANT,
-                            FieldConstants.CONSTANT_V);
-                    writer.deleteDocuments(all);
-                }
+            if (resuming) {
+                logger.info("Resuming index rebuild after " + done + " entries");
+                status.updated(resumeFrom.getUpdated());
+            } else {
+                deleteDocuments(writer);
+                new RebuildCheckpoint(weblogId, null, 0).write(manager.getIndexPath());
+            }
 
-                // Add Doc
-                WeblogEntryManager weblogManager = roller
-                        .getWeblogEntryManager();
-                WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
-                wesc.setWeblog(website);
-                wesc.setStatus(PubStatus.PUBLISHED);
-                List<WeblogEntry> entries = weblogManager.getWeblogEntries(wesc);
+            logger.debug("Entries to index: " + total);
 
-                logger.debug("Entries to index: " + entries.size());
+            pool = Executors.newFixedThreadPool(threads);
+            Deque<Page> pages = new ArrayDeque<>();
+            while (true) {
+                List<String> ids = weblogManager.getPublishedEntryIds(website, afterId, pageSize);
 
-                for (WeblogEntry entry : entries) {
-                    writer.addDocument(getDocument(entry));
-                    logger.debug(MessageFormat.format(
-                            "Indexed entry {0}: {1}",
-                            entry.getPubTime(), entry.getAnchor()));
+                // release the database connection and whatever it loaded
+                roller.release();
+
+                if (ids.isEmpty()) {
+                    break;
                 }
+                afterId = ids.get(ids.size() - 1);
 
-                // release the database connection
-                roller.release();
+                // keep a page waiting for each thread, but no more
+                if (pages.size() >= 2 * threads) {
+                    done = checkpoint(pages.removeFirst(), weblogId, done, status);
+                }
+                IndexRebuildStatus pageStatus = status;
+                pages.addLast(new Page(ids, pool.submit(() -> {
+                    indexPage(writer, ids, pageStatus);
+                    return null;
+                })));
+            }
+            while (!pages.isEmpty()) {
+                done = checkpoint(pages.removeFirst(), weblogId, done, status);
             }
+
+            RebuildCheckpoint.delete(manager.getIndexPath());
+            requeueUpdated(status);
+
         } catch (Exception e) {
-            logger.error("ERROR adding/deleting doc to index", e);
+            logger.error("ERROR adding/deleting doc to index, rebuild can resume from last checkpoint", e);
         } finally {
-            endWriting();
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            if (status != null) {
+                status.finish();
+            }
             if (roller != null) {
                 roller.release();
             }
@@ -153,4 +236,104 @@ public class RebuildWebsiteIndexOperation extends WriteToIndexOperation {
                     + website.getHandle() + "' in '" + length + "' seconds");
         }
     }
+
+    /**
+     * Delete what the index has for the weblog, or everything.
+     */
+    private void deleteDocuments(IndexWriter writer) throws Exception {
+
+        Term tWebsite = null;
+        if (website != null) {
+            tWebsite = IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE,
+                    website.getHandle());
+        }
+
+        manager.getWriteLock().lock();
+        try {
+            if (tWebsite != null) {
+                writer.deleteDocuments(tWebsite);
+            } else {
+                // entry and comment documents alike
+                writer.deleteAll();
+            }
+            manager.commit();
+        } finally {
+            manager.getWriteLock().unlock();
+        }
+    }
+
+    /**
+     * Index a page of entries, runs on one of the pool threads.
+     */
+    private void indexPage(IndexWriter writer, List<String> ids,
+            IndexRebuildStatus status) throws Exception {
+
+        try {
+            WeblogEntryManager weblogManager = roller.getWeblogEntryManager();
+            for (String id : ids) {
+                WeblogEntry entry = weblogManager.getWeblogEntry(id);
+                Term term = new Term(FieldConstants.ID, id);
+
+                // replace rather than add, a resumed page may be there already
+                if (entry != null && entry.isPublished()) {
+                    writer.updateDocument(term, getDocument(entry));
+                    indexComments(writer, entry);
+                    logger.debug(MessageFormat.format(
+                            "Indexed entry {0}: {1}",
+                            entry.getPubTime(), entry.getAnchor()));
+                } else {
+                    writer.deleteDocuments(term);
+                    writer.deleteDocuments(new Term(FieldConstants.C_ENTRY_ID, id));
+                }
+            }
+            status.indexed(ids.size());
+        } finally {
+            // clear this thread's persistence context before the next page
+            roller.release();
+        }
+    }
+
+    /**
+     * Wait for a page, commit it and record how far the rebuild has got.
+     */
+    private long checkpoint(Page page, String weblogId, long done,
+            IndexRebuildStatus status) throws Exception {
+
+        page.result.get();
+        manager.commit();
+
+        // changes recorded by now include any this page may have overwritten
+        long indexed = done + page.ids.size();
+        new RebuildCheckpoint(weblogId, page.ids.get(page.ids.size() - 1), indexed,
+                new LinkedHashMap<>(status.getUpdated()))
+                .write(manager.getIndexPath());
+
+        logger.debug("Index rebuild checkpoint at " + indexed + " entries");
+        return indexed;
+    }
+
+    /**
+     * Apply changes made during the rebuild once more, a page loaded before
+     * the change may have been written after it.
+     */
+    private void requeueUpdated(IndexRebuildStatus status) throws InterruptedException {
+
+        IndexUpdateQueue queue = manager.getUpdateQueue();
+        if (queue != null) {
+            for (Map.Entry<String, IndexUpdateQueue.Action> change : status.getUpdated().entrySet()) {
+                queue.enqueue(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    private static final class Page {
+
+        private final List<String> ids;
+        private final Future<?> result;
+
+        Page(List<String> ids, Future<?> result) {
+            this.ids = ids;
+            this.result = result;
+        }
+    }
 }
@@ -19,22 +19,54 @@
 package org.apache.roller.weblogger.business.search.lucene;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.facet.DrillDownQuery;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsCollectorManager;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollectorManager;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopFieldCollectorManager;
 import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.config.WebloggerConfig;
 
 /**
  * An operation that searches the index.
@@ -51,12 +83,30 @@ public class SearchOperation extends ReadFromIndexOperation {
 
     private static final String[] SEARCH_FIELDS = new String[] {
         FieldConstants.CONTENT,
-        FieldConstants.TITLE,
+        FieldConstants.TITLE
+    };
+
+    // searched in the comment documents, which are joined to their entries
+    private static final String[] COMMENT_SEARCH_FIELDS = new String[] {
         FieldConstants.C_CONTENT
     };
 
-    private static final Sort SORTER = new Sort(new SortField(
-            FieldConstants.PUBLISHED, SortField.Type.STRING, true));
+    // newest first, ties are broken by entry id, which unlike the document
+    // number stays the same when segments are merged
+    private static final Sort SORTER = new Sort(
+            new SortField(FieldConstants.PUB_TIME, SortField.Type.LONG, true),
+            new SortField(FieldConstants.ID, SortField.Type.STRING, true));
+
+    // hits are only counted exactly up to this many, unless asked to
+    private static final int TOTAL_HITS_THRESHOLD = 1000;
+
+    private static final String[] FACETS = new String[] {
+        IndexManager.FACET_CATEGORY,
+        IndexManager.FACET_TAG,
+        IndexManager.FACET_WEBLOG,
+        IndexManager.FACET_YEAR,
+        IndexManager.FACET_MONTH
+    };
 
     // ~ Instance fields
     // ========================================================
@@ -70,6 +120,13 @@ public class SearchOperation extends ReadFromIndexOperation {
     private String locale;
     private String parseError;
 
+    private int offset = 0;
+    private int count = 10;
+    private FieldDoc after;
+    private boolean exactTotalHits = false;
+    private final Map<String, String> drillDowns = new LinkedHashMap<>();
+    private Map<String, Map<String, Integer>> facetCounts = Collections.emptyMap();
+
     // ~ Constructors
     // ===========================================================
 
@@ -96,24 +153,27 @@ public class SearchOperation extends ReadFromIndexOperation {
      */
     @Override
     public void doRun() {
-        final int docLimit = 500;
         searchresults = null;
-        searcher = null;
+        facetCounts = Collections.emptyMap();
+        release();
 
         try {
-            IndexReader reader = manager.getSharedIndexReader();
-            searcher = new IndexSearcher(reader);
-
-            MultiFieldQueryParser multiParser = new MultiFieldQueryParser(
-                    SEARCH_FIELDS, LuceneIndexManager.getAnalyzer());
-
-            // Make it an AND by default. Comment this out for an or (default)
-            multiParser.setDefaultOperator(MultiFieldQueryParser.Operator.AND);
+            // held until release() since the results refer to its documents
+            searcher = manager.acquireSearcher();
 
             // Create a query object out of our term
-            Query query = multiParser.parse(term);
+            Query query = parse(SEARCH_FIELDS);
 
+            // entries match if they or one of their comments do
             Term handleTerm = IndexUtil.getTerm(FieldConstants.WEBSITE_HANDLE, weblogHandle);
+            Set<BytesRef> commented = findCommentedEntries(parse(COMMENT_SEARCH_FIELDS), handleTerm);
+            if (!commented.isEmpty()) {
+                query = new BooleanQuery.Builder()
+                    .add(query, BooleanClause.Occur.SHOULD)
+                    .add(new TermInSetQuery(FieldConstants.ID, commented), BooleanClause.Occur.SHOULD)
+                    .build();
+            }
+
             if (handleTerm != null) {
                 query = new BooleanQuery.Builder()
                     .add(query, BooleanClause.Occur.MUST)
@@ -137,7 +197,40 @@ public class SearchOperation extends ReadFromIndexOperation {
                     .build();
             }
 
-            searchresults = searcher.search(query, docLimit, SORTER);
+            if (!drillDowns.isEmpty()) {
+                DrillDownQuery drillDown = new DrillDownQuery(LuceneIndexManager.getFacetsConfig(), query);
+                for (Map.Entry<String, String> value : drillDowns.entrySet()) {
+                    drillDown.add(value.getKey(), value.getValue());
+                }
+                query = drillDown;
+            }
+
+            // leave out entries which are not published yet
+            query = new BooleanQuery.Builder()
+                .add(query, BooleanClause.Occur.MUST)
+                .add(NumericDocValuesField.newSlowRangeQuery(FieldConstants.PUB_TIME,
+                        Long.MIN_VALUE, System.currentTimeMillis()), BooleanClause.Occur.FILTER)
+                .build();
+
+            // after the last hit of the previous page only the page itself
+            // needs collecting, otherwise everything up to its end does
+            int numHits = (after != null) ? count : offset + count;
+            int threshold = exactTotalHits ? Integer.MAX_VALUE : TOTAL_HITS_THRESHOLD;
+
+            // the page and the facet counts are collected in one go
+            Object[] collected = searcher.search(query, new MultiCollectorManager(
+                    new TopFieldCollectorManager(SORTER, Math.max(numHits, 1), after, threshold),
+                    new FacetsCollectorManager()));
+            TopFieldDocs docs = (TopFieldDocs) collected[0];
+            facetCounts = countFacets((FacetsCollector) collected[1]);
+
+            if (after == null && offset > 0) {
+                ScoreDoc[] page = (offset < docs.scoreDocs.length)
+                        ? Arrays.copyOfRange(docs.scoreDocs, offset, docs.scoreDocs.length)
+                        : new ScoreDoc[0];
+                docs = new TopFieldDocs(docs.totalHits, page, docs.fields);
+            }
+            searchresults = docs;
 
         } catch (IOException e) {
             logger.error("Error searching index", e);
@@ -147,7 +240,96 @@ public class SearchOperation extends ReadFromIndexOperation {
             // who cares?
             parseError = e.getMessage();
         }
-        // don't need to close the reader, since we didn't do any writing!
+    }
+
+    private Query parse(String[] fields) throws ParseException {
+
+        MultiFieldQueryParser multiParser = new MultiFieldQueryParser(
+                fields, LuceneIndexManager.getAnalyzer());
+
+        // Make it an AND by default. Comment this out for an or (default)
+        multiParser.setDefaultOperator(MultiFieldQueryParser.Operator.AND);
+
+        return multiParser.parse(term);
+    }
+
+    /**
+     * Find the ids of the entries which have a comment matching the query,
+     * read from the comment documents' doc values.  Each comment has to
+     * match the whole query on its own.  Every matching comment counts, but
+     * each entry id is only read once per segment however many comments
+     * it has, so a common word costs a pass over the matches rather than a
+     * copy of the id of every comment.
+     */
+    private Set<BytesRef> findCommentedEntries(Query commentQuery, Term handleTerm)
+            throws IOException {
+
+        if (handleTerm != null) {
+            commentQuery = new BooleanQuery.Builder()
+                .add(commentQuery, BooleanClause.Occur.MUST)
+                .add(new TermQuery(handleTerm), BooleanClause.Occur.FILTER)
+                .build();
+        }
+
+        return searcher.search(commentQuery, new CollectorManager<EntryIdCollector, Set<BytesRef>>() {
+            @Override
+            public EntryIdCollector newCollector() {
+                return new EntryIdCollector();
+            }
+
+            @Override
+            public Set<BytesRef> reduce(Collection<EntryIdCollector> collectors) throws IOException {
+                Set<BytesRef> ids = new HashSet<>();
+                for (EntryIdCollector collector : collectors) {
+                    ids.addAll(collector.getIds());
+                }
+                return ids;
+            }
+        });
+    }
+
+    /**
+     * Count the values of each facet among the matching documents.
+     */
+    private Map<String, Map<String, Integer>> countFacets(FacetsCollector collector)
+            throws IOException {
+
+        SortedSetDocValuesReaderState state = manager.getFacetsState(searcher);
+        if (state == null) {
+            return Collections.emptyMap();
+        }
+
+        int maxValues = WebloggerConfig.getIntProperty("search.facets.maxValues", 10);
+        Facets facets = new SortedSetDocValuesFacetCounts(state, collector);
+        Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+        for (String dim : FACETS) {
+            FacetResult result;
+            try {
+                result = facets.getTopChildren(maxValues, dim);
+            } catch (IllegalArgumentException e) {
+                // no document has a value for it
+                result = null;
+            }
+            Map<String, Integer> values = new LinkedHashMap<>();
+            if (result != null) {
+                for (LabelAndValue value : result.labelValues) {
+                    values.put(value.label, value.value.intValue());
+                }
+            }
+            counts.put(dim, values);
+        }
+        return counts;
+    }
+
+    /**
+     * Hand the searcher back to the index manager. Results can no longer be
+     * read afterwards, calling this more than once does no harm.
+     */
+    public void release() {
+        if (searcher != null) {
+            manager.releaseSearcher(searcher);
+            searcher = null;
+        }
     }
 
     /**
@@ -170,7 +352,7 @@ public class SearchOperation extends ReadFromIndexOperation {
     }
 
     /**
-     * Gets the results.
+     * Gets the results, only those on the requested page.
      * 
      * @return the results
      */
@@ -178,6 +360,98 @@ public class SearchOperation extends ReadFromIndexOperation {
         return searchresults;
     }
 
+    /**
+     * Position in the results to start the page at.
+     */
+    public void setOffset(int offset) {
+        this.offset = Math.max(offset, 0);
+    }
+
+    /**
+     * Number of results on the page.
+     */
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    /**
+     * Start the page right after a hit from the previous page, as given by
+     * getNextCursor(), so that the hits before it need not be collected.
+     * The offset is then only used for display. An invalid cursor is
+     * ignored.
+     */
+    public void setAfter(String cursor) {
+        this.after = parseCursor(cursor);
+    }
+
+    /**
+     * Only find documents with the given value of a facet.
+     */
+    public void addDrillDown(String facet, String value) {
+        drillDowns.put(facet, value);
+    }
+
+    /**
+     * Number of matching documents with each of the most frequent values of
+     * each facet, by facet and then value.
+     */
+    public Map<String, Map<String, Integer>> getFacetCounts() {
+        return facetCounts;
+    }
+
+    /**
+     * Count all hits rather than stop counting once there are more than
+     * can be shown on a few pages.
+     */
+    public void setExactTotalHits(boolean exactTotalHits) {
+        this.exactTotalHits = exactTotalHits;
+    }
+
+    /**
+     * Whether getResultsCount() is the exact number of hits, otherwise it
+     * is a lower bound.
+     */
+    public boolean isTotalHitsExact() {
+        return searchresults != null
+                && searchresults.totalHits.relation == TotalHits.Relation.EQUAL_TO;
+    }
+
+    /**
+     * Cursor for the page following this one, null if this is the last.
+     */
+    public String getNextCursor() {
+        if (searchresults == null || searchresults.scoreDocs.length == 0
+                || searchresults.totalHits.value <= offset + searchresults.scoreDocs.length) {
+            return null;
+        }
+        FieldDoc last = (FieldDoc) searchresults.scoreDocs[searchresults.scoreDocs.length - 1];
+        return last.fields[0] + "_" + ((BytesRef) last.fields[1]).utf8ToString();
+    }
+
+    /**
+     * Parse a cursor made by getNextCursor(), null if it is not one.
+     */
+    static FieldDoc parseCursor(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        int split = cursor.indexOf('_');
+        if (split < 1 || split == cursor.length() - 1) {
+            return null;
+        }
+        try {
+            long pubTime = Long.parseLong(cursor.substring(0, split));
+            BytesRef id = new BytesRef(cursor.substring(split + 1));
+
+            // ids are unique, so only the hit the cursor names is equal to
+            // it, and the highest document number leaves that out
+            return new FieldDoc(Integer.MAX_VALUE, Float.NaN, new Object[] { pubTime, id });
+        } catch (NumberFormatException e) {
+            // ignored, bad input
+            return null;
+        }
+    }
+
     /**
      * Gets the results count.
      * 
@@ -229,4 +503,51 @@ public class SearchOperation extends ReadFromIndexOperation {
         this.locale = locale;
     }
 
+    /**
+     * Collects the distinct entry ids of matching comment documents.  The
+     * ordinals of the ids are gathered per segment and only looked up once
+     * the segment is done.
+     */
+    private static final class EntryIdCollector extends SimpleCollector {
+
+        private final Set<BytesRef> ids = new HashSet<>();
+        private SortedDocValues entryIds;
+        private FixedBitSet ords;
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            addIds();
+            entryIds = DocValues.getSorted(context.reader(), FieldConstants.C_ENTRY_ID);
+            ords = new FixedBitSet(entryIds.getValueCount());
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            if (entryIds.advanceExact(doc)) {
+                ords.set(entryIds.ordValue());
+            }
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+
+        Set<BytesRef> getIds() throws IOException {
+            addIds();
+            return ids;
+        }
+
+        private void addIds() throws IOException {
+            if (ords == null) {
+                return;
+            }
+            BitSetIterator it = new BitSetIterator(ords, 0);
+            for (int ord = it.nextDoc(); ord != DocIdSetIterator.NO_MORE_DOCS; ord = it.nextDoc()) {
+                ids.add(BytesRef.deepCopyOf(entryIds.lookupOrd(ord)));
+            }
+            ords = null;
+        }
+    }
+
 }
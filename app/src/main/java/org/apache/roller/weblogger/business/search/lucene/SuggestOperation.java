@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.apache.roller.weblogger.business.search.SearchSuggestion;
+
+/**
+ * An operation that suggests entry titles and tags for what has been typed
+ * into a search box.
+ *
+ * Entry documents carry a keyword term for every tag, and for every word a
+ * title could be typed from, prefixed with the weblog handle (or nothing for
+ * the whole site).  A suggestion is then a seek into the terms dictionary,
+ * which the codec keeps in an FST, followed by a scan of all the terms
+ * starting with the prefix.  The scan only reads the document frequencies
+ * kept in the dictionary, which bound how many entries have each title or
+ * tag, so postings are only read for the most frequent ones.  The terms go
+ * wherever the entries go, so they are kept up to date by the index
+ * operations and rebuilt with the index.
+ */
+public class SuggestOperation extends ReadFromIndexOperation {
+
+    // ~ Static fields/initializers
+    // =============================================
+
+    private static Log logger = LogFactory.getFactory().getInstance(
+            SuggestOperation.class);
+
+    // separates the parts of a term, never part of a handle, title or tag
+    private static final char SEPARATOR = '\u001f';
+
+    // a title can be typed starting from any of this many first words
+    private static final int MAX_TITLE_WORDS = 8;
+
+    // ~ Instance fields
+    // ========================================================
+
+    private String prefix;
+    private String weblogHandle;
+    private int count = 10;
+    private List<SearchSuggestion> suggestions = Collections.emptyList();
+
+    // ~ Constructors
+    // ===========================================================
+
+    public SuggestOperation(LuceneIndexManager mgr) {
+        super(mgr);
+    }
+
+    // ~ Methods
+    // ================================================================
+
+    /**
+     * Get the suggest terms of an entry with the given title and tags, for
+     * its weblog and for the whole site.
+     */
+    static List<String> getTerms(String weblogHandle, String title, Iterable<String> tags) {
+
+        List<String> terms = new ArrayList<>();
+
+        String text = normalize(title);
+        if (!text.isEmpty()) {
+            int start = 0;
+            for (int i = 0; i < MAX_TITLE_WORDS && start < text.length(); i++) {
+                String key = text.substring(start).toLowerCase();
+                terms.add(getTerm(weblogHandle, key, SearchSuggestion.TYPE_TITLE, text));
+                terms.add(getTerm(null, key, SearchSuggestion.TYPE_TITLE, text));
+
+                int space = text.indexOf(' ', start);
+                if (space < 0) {
+                    break;
+                }
+                start = space + 1;
+            }
+        }
+
+        for (String tag : tags) {
+            String name = normalize(tag);
+            if (!name.isEmpty()) {
+                terms.add(getTerm(weblogHandle, name.toLowerCase(), SearchSuggestion.TYPE_TAG, name));
+                terms.add(getTerm(null, name.toLowerCase(), SearchSuggestion.TYPE_TAG, name));
+            }
+        }
+
+        return terms;
+    }
+
+    private static String getTerm(String weblogHandle, String key, String type, String text) {
+        return StringUtils.defaultString(weblogHandle) + SEPARATOR + key
+                + SEPARATOR + type + SEPARATOR + text;
+    }
+
+    private static String normalize(String text) {
+        return StringUtils.normalizeSpace(StringUtils.replaceChars(text, SEPARATOR, ' '));
+    }
+
+    @Override
+    public void doRun() {
+
+        suggestions = Collections.emptyList();
+
+        String typed = normalize(prefix).toLowerCase();
+        if (typed.isEmpty() || count <= 0) {
+            return;
+        }
+        BytesRef start = new BytesRef(StringUtils.defaultString(weblogHandle) + SEPARATOR + typed);
+
+        IndexSearcher searcher = null;
+        try {
+            searcher = manager.acquireSearcher();
+            long now = System.currentTimeMillis();
+
+            // every title or tag starting with the prefix, over all segments
+            List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+            Map<String, Candidate> candidates = new HashMap<>();
+            for (LeafReaderContext leaf : leaves) {
+                collectCandidates(leaf.reader(), start, candidates);
+            }
+
+            // count entries in order of the most there could be, until no
+            // candidate left could make it into the top ones
+            List<Candidate> ranked = new ArrayList<>(candidates.values());
+            ranked.sort(Comparator.comparingInt((Candidate c) -> c.maxEntries).reversed()
+                    .thenComparing(c -> c.suggestion));
+            List<Candidate> found = new ArrayList<>();
+            Comparator<Candidate> byEntries = Comparator.comparingInt((Candidate c) -> c.entries)
+                    .reversed().thenComparing(c -> c.suggestion);
+            for (Candidate candidate : ranked) {
+                if (found.size() >= count && found.get(count - 1).entries >= candidate.maxEntries) {
+                    break;
+                }
+                candidate.entries = countEntries(leaves, candidate.terms, now);
+                if (candidate.entries > 0) {
+                    found.add(candidate);
+                    found.sort(byEntries);
+                }
+            }
+
+            List<SearchSuggestion> result = new ArrayList<>();
+            for (Candidate candidate : found.subList(0, Math.min(count, found.size()))) {
+                // type and text, as in the term
+                String[] parts = StringUtils.split(candidate.suggestion, SEPARATOR);
+                result.add(new SearchSuggestion(parts[1], parts[0], candidate.entries));
+            }
+            suggestions = result;
+
+        } catch (IOException e) {
+            logger.error("Error reading suggestions from index", e);
+        } finally {
+            if (searcher != null) {
+                manager.releaseSearcher(searcher);
+            }
+        }
+    }
+
+    /**
+     * Add the terms of one segment starting with the prefix to the
+     * candidates.  The most entries a title or tag can have in a segment is
+     * the largest document frequency of its terms there, since a title is
+     * only counted once per entry however many of its words match.
+     */
+    private static void collectCandidates(LeafReader reader, BytesRef start,
+            Map<String, Candidate> candidates) throws IOException {
+
+        Terms terms = reader.terms(FieldConstants.SUGGEST);
+        if (terms == null) {
+            return;
+        }
+        TermsEnum termsEnum = terms.iterator();
+        if (termsEnum.seekCeil(start) == TermsEnum.SeekStatus.END) {
+            return;
+        }
+
+        Map<String, Integer> leafMax = new HashMap<>();
+        for (BytesRef term = termsEnum.term();
+                term != null && StringHelper.startsWith(term, start);
+                term = termsEnum.next()) {
+
+            // drop the handle and key, leaving the type and text
+            String value = term.utf8ToString();
+            int key = value.indexOf(SEPARATOR);
+            String suggestion = value.substring(value.indexOf(SEPARATOR, key + 1) + 1);
+
+            candidates.computeIfAbsent(suggestion, Candidate::new).terms.add(BytesRef.deepCopyOf(term));
+            leafMax.merge(suggestion, termsEnum.docFreq(), Math::max);
+        }
+
+        for (Map.Entry<String, Integer> max : leafMax.entrySet()) {
+            candidates.get(max.getKey()).maxEntries += max.getValue();
+        }
+    }
+
+    /**
+     * Count the live, published entries with any of the terms of a title or
+     * tag, taking the largest count of its terms in each segment.
+     */
+    private static int countEntries(List<LeafReaderContext> leaves, Set<BytesRef> suggestTerms, long now)
+            throws IOException {
+
+        int total = 0;
+        for (LeafReaderContext leaf : leaves) {
+            LeafReader reader = leaf.reader();
+            Terms terms = reader.terms(FieldConstants.SUGGEST);
+            if (terms == null) {
+                continue;
+            }
+            TermsEnum termsEnum = terms.iterator();
+            Bits liveDocs = reader.getLiveDocs();
+            PostingsEnum postings = null;
+            int leafEntries = 0;
+            for (BytesRef term : suggestTerms) {
+                if (!termsEnum.seekExact(term)) {
+                    continue;
+                }
+
+                // doc values iterators only go forwards, so one per term
+                NumericDocValues pubTimes = DocValues.getNumeric(reader, FieldConstants.PUB_TIME);
+                postings = termsEnum.postings(postings, PostingsEnum.NONE);
+                int entries = 0;
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    if ((liveDocs == null || liveDocs.get(doc))
+                            && pubTimes.advanceExact(doc) && pubTimes.longValue() <= now) {
+                        entries++;
+                    }
+                }
+                leafEntries = Math.max(leafEntries, entries);
+            }
+            total += leafEntries;
+        }
+        return total;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Suggest from one weblog only, all weblogs if null.
+     */
+    public void setWeblogHandle(String weblogHandle) {
+        this.weblogHandle = weblogHandle;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public List<SearchSuggestion> getSuggestions() {
+        return suggestions;
+    }
+
+    /**
+     * A title or tag which may be suggested.
+     */
+    private static class Candidate {
+
+        private final String suggestion;
+        private final Set<BytesRef> terms = new LinkedHashSet<>();
+
+        // most entries there could be, from the document frequencies
+        private int maxEntries;
+
+        // entries actually there, once counted
+        private int entries;
+
+        Candidate(String suggestion) {
+            this.suggestion = suggestion;
+        }
+    }
+}
@@ -33,21 +33,35 @@ public abstract class WriteToIndexOperation extends IndexOperation {
     
     private static Log logger =
             LogFactory.getFactory().getInstance(WriteToIndexOperation.class);
+
+    private volatile boolean failed = false;
     
     @Override
     public void run() {
+        // only other writes wait for this, searches go on using the last
+        // refreshed searcher until the commit below makes changes visible
+        manager.getWriteLock().lock();
         try {
-            manager.getReadWriteLock().writeLock().lock();
             logger.debug("Starting search index operation");
             doRun();
+            if (manager.getIndexWriter() != null) {
+                manager.commit();
+            }
             logger.debug("Search index operation complete");
 
         } catch (Exception e) {
-            logger.error("Error acquiring write lock on index", e);
+            failed = true;
+            logger.error("Error writing to index", e);
             
         } finally {
-            manager.getReadWriteLock().writeLock().unlock();
+            manager.getWriteLock().unlock();
         }
-        manager.resetSharedReader();
+    }
+
+    /**
+     * Whether the last run failed to write or commit its changes.
+     */
+    public boolean isFailed() {
+        return failed;
     }
 }
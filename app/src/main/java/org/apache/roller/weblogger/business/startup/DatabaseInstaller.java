@@ -196,6 +196,49 @@ public class DatabaseInstaller {
     }
 
 
+    /**
+     * Create a table if it is missing, using its own creation script.  This
+     * is for tables which databases at the current version may lack because
+     * they were added without a new version, and so without an upgrade.
+     *
+     * @param tableName The table to look for.
+     * @param scriptName Name of the script creating it, without extension.
+     * @return true if the table had to be created.
+     */
+    public boolean createTableIfMissing(String tableName, String scriptName) throws StartupException {
+
+        Connection con = null;
+        SQLScriptRunner create = null;
+        try {
+            con = db.getConnection();
+            if (tableExists(con, tableName)) {
+                return false;
+            }
+
+            log.info("Creating missing table " + tableName);
+            String handle = getDatabaseHandle(con);
+            create = new SQLScriptRunner(scripts.getDatabaseScript(handle + "/" + scriptName + ".sql"));
+            create.runScript(con, true);
+            messages.addAll(create.getMessages());
+            return true;
+
+        } catch (Exception e) {
+            if (create != null) {
+                messages.addAll(create.getMessages());
+            }
+            errorMessage("ERROR creating table " + tableName, e);
+            throw new StartupException("Error creating table " + tableName, e);
+
+        } finally {
+            try {
+                if (con != null) {
+                    con.close();
+                }
+            } catch (Exception ignored) {}
+        }
+    }
+
+
     /**
      * Upgrade database if dbVersion is older than desiredVersion.
      */
@@ -250,6 +293,10 @@ public class DatabaseInstaller {
                 upgradeTo610(con, runScripts);
                 dbversion = 610;
             }
+            if(dbversion < 615) {
+                upgradeTo615(con, runScripts);
+                dbversion = 615;
+            }
 
             // make sure the database version is the exact version
             // we are upgrading too.
@@ -736,6 +783,13 @@ public class DatabaseInstaller {
     private void upgradeTo610(Connection con, boolean runScripts) throws StartupException {
         simpleUpgrade(con, 520, 610, runScripts);
     }
+
+    /**
+     * Upgrade database to Roller 6.1.5
+     */
+    private void upgradeTo615(Connection con, boolean runScripts) throws StartupException {
+        simpleUpgrade(con, 610, 615, runScripts);
+    }
     
     /**
      * Simple upgrade using single SQL migration script.
@@ -145,6 +145,18 @@ public final class WebloggerStartup {
     }
     
     
+    /**
+     * Create a table if the database lacks it, for tables which were added
+     * to the schema without a new version.
+     *
+     * @return true if the table had to be created.
+     */
+    public static boolean createTableIfMissing(String tableName, String scriptName)
+            throws StartupException {
+        return getDatabaseInstaller().createTableIfMissing(tableName, scriptName);
+    }
+    
+    
     /**
      * Get a database installer.
      *
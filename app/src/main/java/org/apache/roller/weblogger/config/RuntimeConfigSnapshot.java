@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * An immutable copy of all runtime configuration properties.
+ *
+ * The PropertiesManager holds the current snapshot and replaces it whenever
+ * properties are saved, so reading a property is just a map lookup rather
+ * than a trip to the database.  The version is the stamp saved along with
+ * the properties, which tells other nodes of a cluster that they need to
+ * load a new snapshot.
+ */
+public final class RuntimeConfigSnapshot {
+
+    private static final Log log = LogFactory.getLog(RuntimeConfigSnapshot.class);
+
+    private final Map<String, String> values;
+    private final long version;
+
+
+    public RuntimeConfigSnapshot(Map<String, String> values, long version) {
+        this.values = new HashMap<>(values);
+        this.version = version;
+    }
+
+
+    /**
+     * Get a copy of this snapshot with some properties changed.
+     */
+    public RuntimeConfigSnapshot with(Map<String, String> changes, long newVersion) {
+        Map<String, String> changed = new HashMap<>(values);
+        changed.putAll(changes);
+        return new RuntimeConfigSnapshot(changed, newVersion);
+    }
+
+
+    public long getVersion() {
+        return version;
+    }
+
+
+    /**
+     * Get a property, null if there is no such property.
+     */
+    public String getProperty(String name) {
+        return values.get(name);
+    }
+
+
+    /**
+     * Get a property as a boolean, false if there is no such property.
+     */
+    public boolean getBooleanProperty(String name) {
+        return Boolean.parseBoolean(values.get(name));
+    }
+
+
+    /**
+     * Get a property as an int, -1 if there is no such property or it is
+     * not a number.
+     */
+    public int getIntProperty(String name) {
+
+        String value = values.get(name);
+        if (value == null) {
+            return -1;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            log.warn("Trouble converting to int: " + name, e);
+            return -1;
+        }
+    }
+
+}
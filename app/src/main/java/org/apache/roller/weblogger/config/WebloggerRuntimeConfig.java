@@ -21,6 +21,8 @@ package org.apache.roller.weblogger.config;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -37,6 +39,9 @@ import org.apache.roller.weblogger.pojos.RuntimeConfigProperty;
  * PropertiesManager are just to get the value of a specific property and
  * thus the caller doesn't need the full RuntimeConfigProperty object.
  * 
+ * Values come from the PropertiesManager's RuntimeConfigSnapshot, which
+ * only goes to the database when properties change.
+ * 
  * We also provide some methods for converting to different data types.
  */
 public final class WebloggerRuntimeConfig {
@@ -61,19 +66,12 @@ public final class WebloggerRuntimeConfig {
      **/
     public static String getProperty(String name) {
         
-        String value = null;
+        RuntimeConfigSnapshot snapshot = getSnapshot();
+        String value = (snapshot != null) ? snapshot.getProperty(name) : null;
         
-        try {
-            PropertiesManager pmgr = WebloggerFactory.getWeblogger().getPropertiesManager();
-            RuntimeConfigProperty prop = pmgr.getProperty(name);
-            if(prop != null) {
-                value = prop.getValue();
-            }
-        } catch(Exception e) {
-            log.warn("Trouble accessing property: "+name, e);
+        if (log.isDebugEnabled()) {
+            log.debug("fetched property ["+name+"="+value+"]");
         }
-        
-        log.debug("fetched property ["+name+"="+value+"]");
 
         return value;
     }
@@ -84,14 +82,8 @@ public final class WebloggerRuntimeConfig {
      **/
     public static boolean getBooleanProperty(String name) {
         
-        // get the value first, then convert
-        String value = WebloggerRuntimeConfig.getProperty(name);
-        
-        if (value == null) {
-            return false;
-        }
-
-        return Boolean.valueOf(value);
+        RuntimeConfigSnapshot snapshot = getSnapshot();
+        return snapshot != null && snapshot.getBooleanProperty(name);
     }
     
     
@@ -100,21 +92,34 @@ public final class WebloggerRuntimeConfig {
      **/
     public static int getIntProperty(String name) {
         
-        // get the value first, then convert
-        String value = WebloggerRuntimeConfig.getProperty(name);
-        
-        if (value == null) {
-            return -1;
-        }
+        RuntimeConfigSnapshot snapshot = getSnapshot();
+        return (snapshot != null) ? snapshot.getIntProperty(name) : -1;
+    }
+    
+    
+    /**
+     * Get the current snapshot of all properties ... returns null if there
+     * is an error
+     **/
+    public static RuntimeConfigSnapshot getSnapshot() {
         
-        int intval = -1;
         try {
-            intval = Integer.parseInt(value);
+            PropertiesManager pmgr = WebloggerFactory.getWeblogger().getPropertiesManager();
+            RuntimeConfigSnapshot snapshot = pmgr.getSnapshot();
+            if (snapshot == null) {
+                // properties not initialized yet, so straight from the database
+                Map<String, String> values = new HashMap<>();
+                for (RuntimeConfigProperty prop : pmgr.getProperties().values()) {
+                    values.put(prop.getName(), prop.getValue());
+                }
+                snapshot = new RuntimeConfigSnapshot(values, 0);
+            }
+            return snapshot;
         } catch(Exception e) {
-            log.warn("Trouble converting to int: "+name, e);
+            log.warn("Trouble accessing runtime properties", e);
         }
         
-        return intval;
+        return null;
     }
     
     
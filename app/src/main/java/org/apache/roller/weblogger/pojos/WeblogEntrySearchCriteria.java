@@ -53,6 +53,10 @@ public class WeblogEntrySearchCriteria {
     // Offset into results for paging
     private int offset = 0;
 
+    // Sort date and id of the entry to continue after, for paging by seeking
+    private Date afterTime;
+    private String afterId;
+
     private int maxResults = -1;
 
     public Weblog getWeblog() {
@@ -151,6 +155,28 @@ public class WeblogEntrySearchCriteria {
         this.offset = offset;
     }
 
+    public Date getAfterTime() {
+        return afterTime;
+    }
+
+    public String getAfterId() {
+        return afterId;
+    }
+
+    /**
+     * Only return entries which come after the given one in the sort order,
+     * comparing the sorted date first and then the id, e.g. older entries
+     * when sorting by descending publication time.  Unlike an offset, this
+     * lets the database seek straight to the page in its index.
+     *
+     * @param afterTime sorted date of the entry, null to start at the top
+     * @param afterId   id of the entry
+     */
+    public void setAfter(Date afterTime, String afterId) {
+        this.afterTime = afterTime;
+        this.afterId = afterId;
+    }
+
     public int getMaxResults() {
         return maxResults;
     }
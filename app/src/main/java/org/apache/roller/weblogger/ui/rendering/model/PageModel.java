@@ -299,7 +299,9 @@ public class PageModel implements Model {
                     pageRequest.getWeblogDate(),
                     cat,
                     tags,
-                    pageRequest.getPageNum());
+                    pageRequest.getPageNum(),
+                    pageRequest.getAfter(),
+                    pageRequest.getBefore());
         }
     }
         
@@ -18,7 +18,6 @@
 
 package org.apache.roller.weblogger.ui.rendering.model;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +27,7 @@ import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.SearchHit;
 import org.apache.roller.weblogger.business.search.SearchResultList;
 import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.Weblog;
@@ -39,6 +39,7 @@ import org.apache.roller.weblogger.ui.rendering.pagers.SearchResultsFeedPager;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogRequest;
 import org.apache.roller.weblogger.util.Utilities;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheDependencies;
 
 /**
  * Extends normal page renderer model to represent search results for Atom
@@ -55,7 +56,11 @@ public class SearchResultsFeedModel implements Model {
 	// the pager used by the 3.0+ rendering system
 	private SearchResultsFeedPager pager = null;
 
-	private List<WeblogEntryWrapper> results = new ArrayList<>();
+	// the actual search results, as stored in the index
+	private List<SearchHit> results = Collections.emptyList();
+
+	// the results loaded as whole entries, on first use
+	private SearchResultList searchResult = null;
 
 	private Set<String> categories = Collections.emptySet();
 
@@ -111,10 +116,13 @@ public class SearchResultsFeedModel implements Model {
 
 		int entryCount = WebloggerRuntimeConfig.getIntProperty("site.newsfeeds.defaultEntries");
 
+		// results may come from any weblog
+		CacheDependencies.record(CacheDependencies.ENTRIES);
+
 		// setup the search
 		IndexManager indexMgr = WebloggerFactory.getWeblogger().getIndexManager();
 		try {
-			SearchResultList searchResult = indexMgr.search(
+			searchResult = indexMgr.search(
 				feedRequest.getTerm(),
 				feedRequest.getWeblogHandle(),
 				feedRequest.getWeblogCategoryName(),
@@ -123,10 +131,10 @@ public class SearchResultsFeedModel implements Model {
 				entryCount,
 				urlStrategy
 			);
-			this.hits = searchResult.getResults().size();
+			this.hits = (int) searchResult.getTotalHits();
 			this.offset = searchResult.getOffset();
 			this.limit = searchResult.getLimit();
-			this.results = searchResult.getResults();
+			this.results = searchResult.getHits();
 			this.categories = searchResult.getCategories();
 
 		} catch (WebloggerException we) {
@@ -139,7 +147,7 @@ public class SearchResultsFeedModel implements Model {
 				(hits > (offset + limit)));
 	}
 
-	public Pager<WeblogEntryWrapper> getSearchResultsPager() {
+	public Pager<SearchHit> getSearchResultsPager() {
 		return pager;
 	}
 
@@ -173,7 +181,21 @@ public class SearchResultsFeedModel implements Model {
 		return limit;
 	}
 
+	/**
+	 * Search results as whole entries, loaded from the database on first use.
+	 */
 	public List<WeblogEntryWrapper> getResults() {
+		if (searchResult == null) {
+			return Collections.emptyList();
+		}
+		return searchResult.getResults();
+	}
+
+	/**
+	 * Search results as stored in the index, for templates which can make
+	 * do with titles, links and summaries.
+	 */
+	public List<SearchHit> getSearchHits() {
 		return results;
 	}
 
@@ -18,21 +18,19 @@
 
 package org.apache.roller.weblogger.ui.rendering.model;
 
-import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
 import org.apache.commons.text.StringEscapeUtils;
-import org.apache.roller.util.DateUtil;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.SearchHit;
 import org.apache.roller.weblogger.business.search.SearchResultList;
-import org.apache.roller.weblogger.pojos.WeblogEntryWrapperComparator;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogCategoryWrapper;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 import org.apache.roller.weblogger.ui.rendering.pagers.SearchResultsPager;
@@ -52,8 +50,8 @@ public class SearchResultsModel extends PageModel {
 	WeblogSearchRequest searchRequest = null;
 	private URLStrategy urlStrategy = null;
 
-	// the actual search results mapped by Day -> Set of entries
-    private Map<Date, Set<WeblogEntryWrapper>> results = new TreeMap<>(Collections.reverseOrder());
+	// the actual search results, as stored in the index
+	private List<SearchHit> results = Collections.emptyList();
 
 	// the pager used by the 3.0+ rendering system
 	private SearchResultsPager pager = null;
@@ -62,7 +60,9 @@ public class SearchResultsModel extends PageModel {
 	private int offset = 0;
 	private int limit = 0;
 	private Set<String> categories = new TreeSet<String>();
+	private Map<String, Map<String, Integer>> facets = Collections.emptyMap();
 	private String errorMessage = "";
+	private String nextCursor = null;
 
 	@Override
 	public void init(Map<String, Object> initData) throws WebloggerException {
@@ -84,7 +84,7 @@ public class SearchResultsModel extends PageModel {
 
 		// if there is no query, then we are done
 		if (searchRequest.getQuery() == null) {
-			pager = new SearchResultsPager(urlStrategy, searchRequest, results, false);
+			pager = new SearchResultsPager(urlStrategy, searchRequest, results, null);
 			return;
 		}
 
@@ -96,21 +96,21 @@ public class SearchResultsModel extends PageModel {
 				searchRequest.getWeblogHandle(),
 				searchRequest.getWeblogCategoryName(),
 				searchRequest.getLocale(),
+				searchRequest.getDrillDowns(),
 				searchRequest.getPageNum(),
 				RESULTS_PER_PAGE,
+				searchRequest.getAfter(),
+				true,
 				urlStrategy
 			);
-			hits = searchResultList.getResults().size();
+			hits = (int) searchResultList.getTotalHits();
 			offset = searchResultList.getOffset();
 			limit = searchResultList.getLimit();
 			categories = searchResultList.getCategories();
+			facets = searchResultList.getFacets();
 
-			Timestamp now = new Timestamp(new Date().getTime());
-			for (WeblogEntryWrapper entry : searchResultList.getResults()) {
-				if (entry.getPubTime().before(now)) {
-					addEntryToResults(results, entry);
-				}
-			}
+			results = searchResultList.getHits();
+			nextCursor = searchResultList.getNextCursor();
 
 		} catch (WebloggerException we) {
 			errorMessage = we.getMessage();
@@ -118,25 +118,7 @@ public class SearchResultsModel extends PageModel {
 
 		// search completed, setup pager based on results
 		pager = new SearchResultsPager(
-			urlStrategy, searchRequest, results, (hits > (offset + limit)));
-	}
-
-	private void addEntryToResults(
-		Map<Date, Set<WeblogEntryWrapper>> results,
-		WeblogEntryWrapper entry) {
-
-		// convert entry's each date to midnight (00m 00h 00s)
-		Date midnight = DateUtil.getStartOfDay(entry.getPubTime());
-
-		// ensure we do not get duplicates from Lucene by
-		// using a Set Collection. Entries sorted by pubTime.
-		Set<WeblogEntryWrapper> set = results.get(midnight);
-		if (set == null) {
-			// date is not mapped yet, so we need a new Set
-			set = new TreeSet<>(new WeblogEntryWrapperComparator());
-			results.put(midnight, set);
-		}
-		set.add(entry);
+			urlStrategy, searchRequest, results, nextCursor);
 	}
 
 	/**
@@ -182,7 +164,18 @@ public class SearchResultsModel extends PageModel {
 		return limit;
 	}
 
+	/**
+	 * Search results mapped by Day, loaded as whole entries on first use.
+	 */
 	public Map<Date, Set<WeblogEntryWrapper>> getResults() {
+		return pager.getEntries();
+	}
+
+	/**
+	 * Search results as stored in the index, for templates which can make
+	 * do with titles, links and summaries.
+	 */
+	public List<SearchHit> getSearchHits() {
 		return results;
 	}
 
@@ -190,6 +183,22 @@ public class SearchResultsModel extends PageModel {
 		return categories;
 	}
 
+	/**
+	 * Number of results with each of the most frequent values of each
+	 * facet, by facet name (category, tag, weblog, year and month) and
+	 * then value. The pager has links for drilling down by them.
+	 */
+	public Map<String, Map<String, Integer>> getFacets() {
+		return facets;
+	}
+
+	/**
+	 * Facet values the results are limited to, by facet name.
+	 */
+	public Map<String, String> getDrillDowns() {
+		return searchRequest.getDrillDowns();
+	}
+
 	public String getErrorMessage() {
 		return errorMessage;
 	}
@@ -54,6 +54,7 @@ import org.apache.roller.weblogger.ui.rendering.pagers.WeblogsPager;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogRequest;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheDependencies;
 
 
 /**
@@ -69,6 +70,8 @@ public class SiteModel implements Model {
     private List<String> tags = Collections.emptyList();
     private String pageLink = null;
     private int pageNum = 0;
+    private String after = null;
+    private String before = null;
     
     private URLStrategy urlStrategy = null;
     
@@ -91,6 +94,8 @@ public class SiteModel implements Model {
             ThemeTemplate weblogPage = ((WeblogPageRequest)weblogRequest).getWeblogPage();
             pageLink = (weblogPage != null) ? weblogPage.getLink() : null;
             pageNum = ((WeblogPageRequest)weblogRequest).getPageNum();
+            after = ((WeblogPageRequest)weblogRequest).getAfter();
+            before = ((WeblogPageRequest)weblogRequest).getBefore();
             tags = ((WeblogPageRequest)weblogRequest).getTags();
         } else if (weblogRequest instanceof WeblogFeedRequest) {
             this.feedRequest = (WeblogFeedRequest) weblogRequest;
@@ -137,7 +142,9 @@ public class SiteModel implements Model {
             weblogRequest.getLocale(),
             sinceDays,
             pageNum, 
-            length);
+            length,
+            after,
+            before);
     }
     
        
@@ -194,7 +201,9 @@ public class SiteModel implements Model {
             weblogRequest.getLocale(),
             sinceDays,
             pageNum, 
-            length);
+            length,
+            after,
+            before);
     }    
     
     
@@ -286,6 +295,7 @@ public class SiteModel implements Model {
      * names start with each letter.
      */
     public Map<String, Long> getUserNameLetterMap() {
+        CacheDependencies.record(CacheDependencies.USERS);
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
             UserManager umgr = roller.getUserManager();
@@ -303,6 +313,7 @@ public class SiteModel implements Model {
      * names start with each letter.
      */
     public Map<String, Long> getWeblogHandleLetterMap() {
+        CacheDependencies.record(CacheDependencies.WEBLOGS);
         try {
             return WebloggerFactory.getWeblogger().getWeblogManager().getWeblogHandleLetterMap();
         } catch (Exception e) {
@@ -316,6 +327,8 @@ public class SiteModel implements Model {
      * Return list of weblogs that user belongs to.
      */
     public List<WeblogWrapper> getUsersWeblogs(String userName) {
+        CacheDependencies.record(CacheDependencies.USERS);
+        CacheDependencies.record(CacheDependencies.WEBLOGS);
         List<WeblogWrapper> results = new ArrayList<>();
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -336,6 +349,8 @@ public class SiteModel implements Model {
      * Return list of users that belong to website.
      */
     public List<UserWrapper> getWeblogsUsers(String handle) {
+        CacheDependencies.record(CacheDependencies.USERS);
+        CacheDependencies.record(CacheDependencies.weblog(handle));
         List<UserWrapper> results = new ArrayList<>();
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -355,6 +370,7 @@ public class SiteModel implements Model {
     
     /** Get User object by username */
     public UserWrapper getUser(String username) {
+        CacheDependencies.record(CacheDependencies.USERS);
         UserWrapper wrappedUser = null;
         try {            
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -370,6 +386,7 @@ public class SiteModel implements Model {
     
     /** Get Website object by handle */
     public WeblogWrapper getWeblog(String handle) {
+        CacheDependencies.record(CacheDependencies.weblog(handle));
         WeblogWrapper wrappedWebsite = null;
         try {            
             Weblog website = WebloggerFactory.getWeblogger().getWeblogManager().getWeblogByHandle(handle);
@@ -390,6 +407,7 @@ public class SiteModel implements Model {
      * @param len      Max number of results to return
      */
     public List<WeblogWrapper> getNewWeblogs(int sinceDays, int length) {
+        CacheDependencies.record(CacheDependencies.WEBLOGS);
         List<WeblogWrapper> results = new ArrayList<>();
         Date startDate = JPAWeblogEntryManagerImpl.getStartDateNow(sinceDays);
         try {            
@@ -411,6 +429,7 @@ public class SiteModel implements Model {
      * @param len      Max number of results to return
      */
     public List<UserWrapper> getNewUsers(int sinceDays, int length) {
+        CacheDependencies.record(CacheDependencies.USERS);
         List<UserWrapper> results = new ArrayList<>();
         try {            
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -432,6 +451,7 @@ public class SiteModel implements Model {
      * @param length      Max number of results to return
      */
     public List<StatCount> getHotWeblogs(int sinceDays, int length) {
+        CacheDependencies.record(CacheDependencies.WEBLOGS);
         
         List<StatCount> results = new ArrayList<>();
         try {
@@ -464,6 +484,7 @@ public class SiteModel implements Model {
      * @param length   Max number of results to return
      */
     public List<StatCount> getMostCommentedWeblogs(int sinceDays , int length) {
+        CacheDependencies.record(CacheDependencies.COMMENTS);
         Date startDate = JPAWeblogEntryManagerImpl.getStartDateNow(sinceDays);
         try {
             return WebloggerFactory.getWeblogger().getWeblogManager().getMostCommentedWeblogs(
@@ -483,6 +504,8 @@ public class SiteModel implements Model {
      * @param length      Max number of results to return
      */
     public List<StatCount> getMostCommentedWeblogEntries(List<String> cats, int sinceDays, int length) {
+        CacheDependencies.record(CacheDependencies.ENTRIES);
+        CacheDependencies.record(CacheDependencies.COMMENTS);
         Date startDate = JPAWeblogEntryManagerImpl.getStartDateNow(sinceDays);
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -500,6 +523,7 @@ public class SiteModel implements Model {
      * @param length    Max number of results to return
      */
     public List<WeblogEntryWrapper> getPinnedWeblogEntries(int length) {
+        CacheDependencies.record(CacheDependencies.ENTRIES);
         List<WeblogEntryWrapper> results = new ArrayList<>();
         try {            
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -521,6 +545,7 @@ public class SiteModel implements Model {
      * @return
      */
     public List<TagStat> getPopularTags(int sinceDays, int length) {
+        CacheDependencies.record(CacheDependencies.ENTRIES);
         Date startDate = null;
         if(sinceDays > 0) {
             Calendar cal = Calendar.getInstance();
@@ -541,6 +566,7 @@ public class SiteModel implements Model {
     
     
     public long getCommentCount() {
+        CacheDependencies.record(CacheDependencies.COMMENTS);
         long count = 0;
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -554,6 +580,7 @@ public class SiteModel implements Model {
     
     
     public long getEntryCount() {
+        CacheDependencies.record(CacheDependencies.ENTRIES);
         long count = 0;
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -567,6 +594,7 @@ public class SiteModel implements Model {
     
     
     public long getWeblogCount() {
+        CacheDependencies.record(CacheDependencies.WEBLOGS);
         long count = 0;
         try {
             count = WebloggerFactory.getWeblogger().getWeblogManager().getWeblogCount();            
@@ -578,6 +606,7 @@ public class SiteModel implements Model {
     
     
     public long getUserCount() {
+        CacheDependencies.record(CacheDependencies.USERS);
         long count = 0;
         try {
             Weblogger roller = WebloggerFactory.getWeblogger();
@@ -34,6 +34,7 @@ import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment.ApprovalStatus;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryCommentWrapper;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheDependencies;
 
 
 /**
@@ -82,6 +83,12 @@ public class CommentsPager extends AbstractPager<WeblogEntryCommentWrapper> {
             // calculate offset
             int offset = getPage() * length;
             
+            if (weblog != null) {
+                CacheDependencies.record(weblog);
+            } else {
+                CacheDependencies.record(CacheDependencies.COMMENTS);
+            }
+            
             List<WeblogEntryCommentWrapper> results = new ArrayList<>();
             
             Date startDate = null;
@@ -31,6 +31,7 @@ import org.apache.roller.planet.pojos.PlanetGroup;
 import org.apache.roller.planet.pojos.Subscription;
 import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheDependencies;
 
 
 /**
@@ -80,6 +81,10 @@ public class PlanetEntriesPager extends AbstractPager<SubscriptionEntry> {
             // calculate offset
             int offset = getPage() * length;
             
+            // planet content is refreshed out of band, let it go whenever
+            // local entries change
+            CacheDependencies.record(CacheDependencies.ENTRIES);
+            
             Date startDate = null;
             if(sinceDays > 0) {
                 Calendar cal = Calendar.getInstance();
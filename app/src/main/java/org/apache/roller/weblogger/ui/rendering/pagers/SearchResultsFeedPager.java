@@ -23,8 +23,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import org.apache.roller.weblogger.business.URLStrategy;
+import org.apache.roller.weblogger.business.search.SearchHit;
 import org.apache.roller.weblogger.pojos.Weblog;
-import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.util.I18nMessages;
 import org.apache.roller.weblogger.util.URLUtilities;
@@ -32,13 +32,16 @@ import org.apache.roller.weblogger.util.URLUtilities;
 
 /**
  * Pager for navigating through search results feeds.
+ * 
+ * The items come straight from the search index, a feed template only loads
+ * an entry from the database if it asks a hit for it.
  */
-public class SearchResultsFeedPager extends AbstractPager<WeblogEntryWrapper> {
+public class SearchResultsFeedPager extends AbstractPager<SearchHit> {
     
     // message utils for doing i18n messages
     I18nMessages messageUtils = null;
     
-    private final List<WeblogEntryWrapper> entries;
+    private final List<SearchHit> hits;
     
     private final Weblog weblog;
     private final boolean moreResults;
@@ -49,7 +52,7 @@ public class SearchResultsFeedPager extends AbstractPager<WeblogEntryWrapper> {
     
             
     public SearchResultsFeedPager(URLStrategy strat, String baseUrl, int pageNum,
-            WeblogFeedRequest feedRequest, List<WeblogEntryWrapper> entries, boolean more) {
+            WeblogFeedRequest feedRequest, List<SearchHit> hits, boolean more) {
         
         super(strat, baseUrl, pageNum);
         
@@ -58,7 +61,7 @@ public class SearchResultsFeedPager extends AbstractPager<WeblogEntryWrapper> {
         this.feedRequest = feedRequest;
         
         // store search results
-        this.entries = entries;
+        this.hits = hits;
         
         // data from search request
         this.weblog = feedRequest.getWeblog();
@@ -82,8 +85,8 @@ public class SearchResultsFeedPager extends AbstractPager<WeblogEntryWrapper> {
     }
     
     @Override
-    public List<WeblogEntryWrapper> getItems() {
-        return this.entries;
+    public List<SearchHit> getItems() {
+        return this.hits;
     }
     
     @Override
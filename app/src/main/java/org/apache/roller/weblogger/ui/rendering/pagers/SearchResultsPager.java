@@ -18,18 +18,31 @@
 
 package org.apache.roller.weblogger.ui.rendering.pagers;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.apache.roller.util.DateUtil;
 import org.apache.roller.weblogger.business.URLStrategy;
+import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.SearchHit;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntryWrapperComparator;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogSearchRequest;
 import org.apache.roller.weblogger.util.I18nMessages;
+import org.apache.roller.weblogger.util.URLUtilities;
 
 /**
  * Pager for navigating through search results.
+ * 
+ * The results come straight from the search index, they are only loaded
+ * from the database as whole entries if a template asks for the entries.
  */
 public class SearchResultsPager implements WeblogEntriesPager {
     
@@ -39,32 +52,40 @@ public class SearchResultsPager implements WeblogEntriesPager {
     // url strategy
     final URLStrategy urlStrategy;
     
-    private final Map<Date, Set<WeblogEntryWrapper>> entries;
+    private final List<SearchHit> hits;
+    
+    // hits loaded as entries and mapped by Day, on first use
+    private Map<Date, Set<WeblogEntryWrapper>> entries = null;
     
     private final Weblog weblog;
     private final String locale;
     private final String query;
     private final String category;
+    private final Map<String, String> drillDowns;
     private final int page;
-    private final boolean moreResults;
+    private final String nextCursor;
     
-    public SearchResultsPager(URLStrategy strat, WeblogSearchRequest searchRequest, Map<Date, Set<WeblogEntryWrapper>> entries, boolean more) {
+    /**
+     * @param nextCursor cursor of the last hit, null if there are no more.
+     */
+    public SearchResultsPager(URLStrategy strat, WeblogSearchRequest searchRequest, List<SearchHit> hits, String nextCursor) {
         
         // url strategy for building urls
         this.urlStrategy = strat;
         
         // store search results
-        this.entries = entries;
+        this.hits = hits;
         
         // data from search request
         this.weblog = searchRequest.getWeblog();
         this.query = searchRequest.getQuery();
         this.category = searchRequest.getWeblogCategoryName();
+        this.drillDowns = searchRequest.getDrillDowns();
         this.locale = searchRequest.getLocale();
         this.page = searchRequest.getPageNum();
         
         // does this pager have more results?
-        this.moreResults = more;
+        this.nextCursor = nextCursor;
         
         // get a message utils instance to handle i18n of messages
         Locale viewLocale = null;
@@ -82,8 +103,31 @@ public class SearchResultsPager implements WeblogEntriesPager {
     }
     
     
+    /**
+     * The search results as stored in the index, no database lookups needed.
+     */
+    public List<SearchHit> getHits() {
+        return hits;
+    }
+    
+    
     @Override
     public Map<Date, Set<WeblogEntryWrapper>> getEntries() {
+        if (entries == null) {
+            Map<Date, Set<WeblogEntryWrapper>> map = new TreeMap<>(Collections.reverseOrder());
+            for (SearchHit hit : hits) {
+                WeblogEntryWrapper entry = hit.getEntry();
+                if (entry == null) {
+                    continue;
+                }
+                
+                // ensure we do not get duplicates from Lucene by
+                // using a Set Collection. Entries sorted by pubTime.
+                map.computeIfAbsent(DateUtil.getStartOfDay(hit.getPubTime()),
+                        day -> new TreeSet<>(new WeblogEntryWrapperComparator())).add(entry);
+            }
+            entries = map;
+        }
         return entries;
     }
     
@@ -101,8 +145,9 @@ public class SearchResultsPager implements WeblogEntriesPager {
     
     @Override
     public String getNextLink() {
-        if(moreResults) {
-            return urlStrategy.getWeblogSearchURL(weblog, locale, query, category, page + 1, false);
+        if(nextCursor != null) {
+            // the cursor lets the next page start right after this one
+            return getSearchURL(category, drillDowns, page + 1, nextCursor);
         }
         return null;
     }
@@ -118,7 +163,7 @@ public class SearchResultsPager implements WeblogEntriesPager {
     @Override
     public String getPrevLink() {
         if(page > 0) {
-            return urlStrategy.getWeblogSearchURL(weblog, locale, query, category, page - 1, false);
+            return getSearchURL(category, drillDowns, page - 1, null);
         }
         return null;
     }
@@ -132,6 +177,48 @@ public class SearchResultsPager implements WeblogEntriesPager {
     }
 
     
+    /**
+     * Link to the first page of these results narrowed down to those with
+     * the given value of a facet.
+     */
+    public String getDrillDownLink(String facet, String value) {
+        if (IndexManager.FACET_CATEGORY.equals(facet)) {
+            return getSearchURL(value, drillDowns, 0, null);
+        }
+        Map<String, String> narrowed = new LinkedHashMap<>(drillDowns);
+        narrowed.put(facet, value);
+        return getSearchURL(category, narrowed, 0, null);
+    }
+    
+    /**
+     * Link to the first page of these results no longer narrowed down by
+     * the given facet.
+     */
+    public String getDrillUpLink(String facet) {
+        if (IndexManager.FACET_CATEGORY.equals(facet)) {
+            return getSearchURL(null, drillDowns, 0, null);
+        }
+        Map<String, String> widened = new LinkedHashMap<>(drillDowns);
+        widened.remove(facet);
+        return getSearchURL(category, widened, 0, null);
+    }
+    
+    
+    private String getSearchURL(String cat, Map<String, String> facets, int pageNum, String after) {
+        StringBuilder url = new StringBuilder(
+                urlStrategy.getWeblogSearchURL(weblog, locale, query, cat, pageNum, false));
+        for (Map.Entry<String, String> facet : facets.entrySet()) {
+            url.append(url.indexOf("?") < 0 ? '?' : '&');
+            url.append(facet.getKey()).append('=').append(URLUtilities.encode(facet.getValue()));
+        }
+        if (after != null) {
+            url.append(url.indexOf("?") < 0 ? '?' : '&');
+            url.append("after=").append(URLUtilities.encode(after));
+        }
+        return url.toString();
+    }
+    
+    
     @Override
     public String getNextCollectionLink() {
         return null;
@@ -29,6 +29,7 @@ import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.UserManager;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.wrapper.UserWrapper;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheDependencies;
 
 
 /**
@@ -121,6 +122,8 @@ public class UsersPager extends AbstractPager<UserWrapper> {
             // calculate offset
             int offset = getPage() * length;
             
+            CacheDependencies.record(CacheDependencies.USERS);
+            
             List<UserWrapper> results = new ArrayList<>();
             try {
                 Weblogger roller = WebloggerFactory.getWeblogger();
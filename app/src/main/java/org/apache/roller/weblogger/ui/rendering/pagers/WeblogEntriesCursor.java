@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.pagers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
+import org.apache.roller.weblogger.util.URLUtilities;
+
+
+/**
+ * Pages through weblog entries by seeking from the entry a page ended with,
+ * rather than by skipping an offset's worth of entries.
+ *
+ * Next links carry an "after" cursor naming the last entry on the page and
+ * previous links a "before" cursor naming the first one.  Links keep their
+ * page number as well, and requests without a cursor are paged by offset
+ * as before.  A cursor is the publication time of the entry in milliseconds
+ * and its id, e.g. 1190000000000_8a8b8c...
+ */
+final class WeblogEntriesCursor {
+
+    static final String AFTER = "after";
+    static final String BEFORE = "before";
+
+    private final Date seekTime;
+    private final String seekId;
+
+    // paging towards newer entries, from a "before" cursor
+    private final boolean backwards;
+
+    private boolean more = false;
+    private boolean earlier = false;
+    private WeblogEntry first = null;
+    private WeblogEntry last = null;
+
+
+    WeblogEntriesCursor(String after, String before) {
+
+        String cursor = after;
+        boolean isBefore = false;
+        if (parseTime(after) == null && parseTime(before) != null) {
+            cursor = before;
+            isBefore = true;
+        }
+
+        this.seekTime = parseTime(cursor);
+        this.seekId = seekTime != null ? cursor.substring(cursor.indexOf('_') + 1) : null;
+        this.backwards = seekTime != null && isBefore;
+    }
+
+
+    /**
+     * Fetch a page of entries, newest first, seeking from the cursor if
+     * there is one and skipping the offset otherwise.
+     */
+    List<WeblogEntry> getEntries(WeblogEntrySearchCriteria wesc, int offset, int length)
+            throws WebloggerException {
+
+        if (seekTime != null) {
+            wesc.setAfter(seekTime, seekId);
+            if (backwards) {
+                // the newer entries closest to the cursor come first going up
+                wesc.setSortOrder(WeblogEntrySearchCriteria.SortOrder.ASCENDING);
+            }
+        } else {
+            wesc.setOffset(offset);
+        }
+        wesc.setMaxResults(length + 1);
+
+        List<WeblogEntry> entries = new ArrayList<>(WebloggerFactory.getWeblogger()
+                .getWeblogEntryManager().getWeblogEntries(wesc));
+
+        boolean beyond = entries.size() > length;
+        if (beyond) {
+            entries = new ArrayList<>(entries.subList(0, length));
+        }
+        if (backwards) {
+            Collections.reverse(entries);
+            // the cursor names an entry of the page after this one
+            more = true;
+            earlier = beyond;
+        } else {
+            more = beyond;
+        }
+
+        if (!entries.isEmpty()) {
+            first = entries.get(0);
+            last = entries.get(entries.size() - 1);
+        }
+        return entries;
+    }
+
+
+    boolean hasMore() {
+        return more && last != null;
+    }
+
+
+    /**
+     * Are there newer entries than these?
+     */
+    boolean hasEarlier(int page) {
+        if (first == null) {
+            return false;
+        }
+        return backwards ? earlier : page > 0;
+    }
+
+
+    /**
+     * Add the cursor for the next page to its url.
+     */
+    String getNextURL(String url) {
+        return addParam(url, AFTER, format(last));
+    }
+
+
+    /**
+     * Add the cursor for the previous page to its url, unless the previous
+     * page is the first one, which needs no cursor.
+     */
+    String getPrevURL(String url, int prevPage) {
+        if (prevPage <= 0 && !backwards) {
+            return url;
+        }
+        return addParam(url, BEFORE, format(first));
+    }
+
+
+    static String format(WeblogEntry entry) {
+        return entry.getPubTime().getTime() + "_" + entry.getId();
+    }
+
+
+    /**
+     * Time of a cursor, null if it isn't one.
+     */
+    private static Date parseTime(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        int split = cursor.indexOf('_');
+        if (split <= 0 || split == cursor.length() - 1) {
+            return null;
+        }
+        try {
+            return new Date(Long.parseLong(cursor.substring(0, split)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    private static String addParam(String url, String name, String value) {
+        if (url == null) {
+            return null;
+        }
+        return url + (url.indexOf('?') < 0 ? '?' : '&') + name + '=' + URLUtilities.encode(value);
+    }
+
+}
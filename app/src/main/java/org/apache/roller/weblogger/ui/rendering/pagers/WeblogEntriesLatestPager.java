@@ -19,6 +19,7 @@
 package org.apache.roller.weblogger.ui.rendering.pagers;
 
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -26,8 +27,8 @@ import java.util.Map;
 import java.util.TreeMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.DateUtil;
 import org.apache.roller.weblogger.business.URLStrategy;
-import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
@@ -44,8 +45,8 @@ public class WeblogEntriesLatestPager extends AbstractWeblogEntriesPager {
     // collection for the pager
     private Map<Date, List<WeblogEntryWrapper>> entries = null;
     
-    // are there more pages?
-    private boolean more = false;
+    // where the page starts and what's around it
+    private final WeblogEntriesCursor cursor;
     
     
     public WeblogEntriesLatestPager(
@@ -59,8 +60,31 @@ public class WeblogEntriesLatestPager extends AbstractWeblogEntriesPager {
             List<String>       tags,
             int                page) {
         
+        this(strat, weblog, locale, pageLink, entryAnchor, dateString, catName, tags, page, null, null);
+    }
+    
+    
+    /**
+     * @param after  cursor of the entry the page follows, or null
+     * @param before cursor of the entry the page comes before, or null
+     */
+    public WeblogEntriesLatestPager(
+            URLStrategy        strat,
+            Weblog             weblog,
+            String             locale,
+            String             pageLink,
+            String             entryAnchor,
+            String             dateString,
+            String             catName,
+            List<String>       tags,
+            int                page,
+            String             after,
+            String             before) {
+        
         super(strat, weblog, locale, pageLink, entryAnchor, dateString, catName, tags, page);
         
+        this.cursor = new WeblogEntriesCursor(after, before);
+        
         // initialize the pager collection
         getEntries();
     }
@@ -79,28 +103,14 @@ public class WeblogEntriesLatestPager extends AbstractWeblogEntriesPager {
                 wesc.setTags(tags);
                 wesc.setStatus(WeblogEntry.PubStatus.PUBLISHED);
                 wesc.setLocale(locale);
-                wesc.setOffset(offset);
-                wesc.setMaxResults(length+1);
-                Map<Date, List<WeblogEntry>> mmap = WebloggerFactory.getWeblogger().getWeblogEntryManager().getWeblogEntryObjectMap(wesc);
+                List<WeblogEntry> unwrapped = cursor.getEntries(wesc, offset, length);
 
-                // need to wrap pojos
-                int count = 0;
-                for (Map.Entry<Date, List<WeblogEntry>> entry : mmap.entrySet()) {
-                    // now we need to go through each entry in a day and wrap
-                    List<WeblogEntryWrapper> wrapped = new ArrayList<>();
-                    List<WeblogEntry> unwrapped = entry.getValue();
-                    for (int i=0; i < unwrapped.size(); i++) {
-                        if (count++ < length) {
-                            wrapped.add(i,WeblogEntryWrapper.wrap(unwrapped.get(i), urlStrategy));
-                        } else {
-                            more = true;
-                        }
-                    }
-                    
-                    // done with that day, put it in the map
-                    if (!wrapped.isEmpty()) {
-                        entries.put(entry.getKey(), wrapped);
-                    }
+                // need to wrap pojos, grouped by day
+                Calendar cal = Calendar.getInstance(weblog.getTimeZoneInstance());
+                for (WeblogEntry entry : unwrapped) {
+                    Date day = DateUtil.getNoonOfDay(entry.getPubTime(), cal);
+                    entries.computeIfAbsent(day, k -> new ArrayList<>())
+                            .add(WeblogEntryWrapper.wrap(entry, urlStrategy));
                 }
             } catch (Exception e) {
                 log.error("ERROR: getting entry month map", e);
@@ -113,7 +123,36 @@ public class WeblogEntriesLatestPager extends AbstractWeblogEntriesPager {
     
     @Override
     public boolean hasMoreEntries() {
-        return more;
+        return cursor.hasMore();
+    }
+    
+    
+    @Override
+    public String getNextLink() {
+        if (hasMoreEntries()) {
+            return cursor.getNextURL(
+                    createURL(page, 1, weblog, locale, pageLink, entryAnchor, dateString, catName, tags));
+        }
+        return null;
+    }
+    
+    
+    @Override
+    public String getPrevLink() {
+        if (cursor.hasEarlier(page)) {
+            return cursor.getPrevURL(
+                    createURL(page, -1, weblog, locale, pageLink, entryAnchor, dateString, catName, tags), page - 1);
+        }
+        return null;
+    }
+    
+    
+    @Override
+    public String getPrevName() {
+        if (cursor.hasEarlier(page)) {
+            return messageUtils.getString("weblogEntriesPager.latest.prev");
+        }
+        return null;
     }
     
 }
@@ -23,15 +23,16 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.business.URLStrategy;
-import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntrySearchCriteria;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheDependencies;
 
 
 /**
@@ -53,8 +54,8 @@ public class WeblogEntriesListPager extends AbstractPager<WeblogEntryWrapper> {
     // entries for the pager
     private List<WeblogEntryWrapper> entries;
     
-    // are there more entries?
-    private boolean more = false;
+    // where the page starts and what's around it
+    private final WeblogEntriesCursor cursor;
     
     // most recent update time of current set of entries
     private Date lastUpdated = null;    
@@ -72,8 +73,33 @@ public class WeblogEntriesListPager extends AbstractPager<WeblogEntryWrapper> {
             int            pageNum,
             int            length) {
         
+        this(strat, baseUrl, queryWeblog, queryUser, queryCat, queryTags, locale,
+                sinceDays, pageNum, length, null, null);
+    }
+    
+    
+    /**
+     * @param after  cursor of the entry the page follows, or null
+     * @param before cursor of the entry the page comes before, or null
+     */
+    public WeblogEntriesListPager(
+            URLStrategy    strat,
+            String         baseUrl,
+            Weblog         queryWeblog,
+            User           queryUser,
+            String         queryCat,
+            List<String>   queryTags,
+            String         locale,
+            int            sinceDays,
+            int            pageNum,
+            int            length,
+            String         after,
+            String         before) {
+        
         super(strat, baseUrl, pageNum);
         
+        this.cursor = new WeblogEntriesCursor(after, before);
+        
         // store the data
         this.queryWeblog = queryWeblog;
         this.queryUser = queryUser;
@@ -94,6 +120,12 @@ public class WeblogEntriesListPager extends AbstractPager<WeblogEntryWrapper> {
         if (entries == null) {
             // calculate offset
             int offset = getPage() * length;
+            
+            if (queryWeblog != null) {
+                CacheDependencies.record(queryWeblog);
+            } else {
+                CacheDependencies.record(CacheDependencies.ENTRIES);
+            }
 
             List<WeblogEntryWrapper> results = new ArrayList<>();
             
@@ -114,20 +146,11 @@ public class WeblogEntriesListPager extends AbstractPager<WeblogEntryWrapper> {
                 wesc.setTags(queryTags);
                 wesc.setStatus(WeblogEntry.PubStatus.PUBLISHED);
                 wesc.setLocale(locale);
-                wesc.setOffset(offset);
-                wesc.setMaxResults(length+1);
-                List<WeblogEntry> rawEntries = WebloggerFactory.getWeblogger()
-                        .getWeblogEntryManager().getWeblogEntries(wesc);
+                List<WeblogEntry> rawEntries = cursor.getEntries(wesc, offset, length);
 
                 // wrap the results
-                int count = 0;
                 for (WeblogEntry entry : rawEntries) {
-                    if (count++ < length) {
-                        results.add(WeblogEntryWrapper.wrap(entry, urlStrategy));
-                    }
-                }
-                if (rawEntries.size() > length) {
-                    more = true;
+                    results.add(WeblogEntryWrapper.wrap(entry, urlStrategy));
                 }
                 
             } catch (Exception e) {
@@ -143,7 +166,36 @@ public class WeblogEntriesListPager extends AbstractPager<WeblogEntryWrapper> {
     
     @Override
     public boolean hasMoreItems() {
-        return more;
+        return cursor.hasMore();
+    }
+    
+    
+    @Override
+    public String getNextLink() {
+        if (hasMoreItems()) {
+            int nextPage = getPage() + 1;
+            return cursor.getNextURL(createURL(getUrl(), Map.of("page", ""+nextPage)));
+        }
+        return null;
+    }
+    
+    
+    @Override
+    public String getPrevLink() {
+        if (cursor.hasEarlier(getPage())) {
+            int prevPage = getPage() - 1;
+            return cursor.getPrevURL(createURL(getUrl(), Map.of("page", ""+prevPage)), prevPage);
+        }
+        return null;
+    }
+    
+    
+    @Override
+    public String getPrevName() {
+        if (cursor.hasEarlier(getPage())) {
+            return "Previous";
+        }
+        return null;
     }
 
     /** Get last updated time from items in pager */
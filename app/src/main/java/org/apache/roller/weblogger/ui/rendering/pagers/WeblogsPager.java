@@ -31,6 +31,7 @@ import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.WeblogManager;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogWrapper;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheDependencies;
 
 
 /**
@@ -126,6 +127,8 @@ public class WeblogsPager extends AbstractPager<WeblogWrapper> {
             // calculate offset
             int offset = getPage() * length;
             
+            CacheDependencies.record(CacheDependencies.WEBLOGS);
+            
             List<WeblogWrapper> results = new ArrayList<>();
             Date startDate = null;
             if (sinceDays != -1) {
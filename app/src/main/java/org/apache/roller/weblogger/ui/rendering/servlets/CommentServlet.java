@@ -381,14 +381,8 @@ public class CommentServlet extends HttpServlet {
                         IndexManager manager = WebloggerFactory.getWeblogger()
                                 .getIndexManager();
 
-                        // remove entry before (re)adding it, or in case it
-                        // isn't Published
-                        manager.removeEntryIndexOperation(entry);
-
-                        // if published, index the entry
-                        if (entry.isPublished()) {
-                            manager.addEntryIndexOperation(entry);
-                        }
+                        // index just the comment, the entry is unchanged
+                        manager.addCommentIndexOperation(comment);
 
                         // Clear all caches associated with comment
                         CacheManager.invalidate(comment);
@@ -38,13 +38,18 @@ import org.apache.roller.weblogger.pojos.StaticTemplate;
 import org.apache.roller.weblogger.pojos.Template;
 import org.apache.roller.weblogger.pojos.TemplateRendition.TemplateLanguage;
 import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.ui.rendering.util.ContentEncodingUtil;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogFeedRequest;
 import org.apache.roller.weblogger.util.cache.CachedContent;
+import org.apache.roller.weblogger.util.cache.LazyExpiringCacheEntry;
 import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RendererManager;
+import org.apache.roller.weblogger.ui.rendering.RenderingException;
 import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository;
 import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
 import org.apache.roller.weblogger.ui.rendering.model.SearchResultsFeedModel;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheDependencies;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheMissCoalescer;
 import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideCache;
 import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogFeedCache;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
@@ -59,6 +64,7 @@ public class FeedServlet extends HttpServlet {
 
     private WeblogFeedCache weblogFeedCache = null;
     private SiteWideCache siteWideCache = null;
+    private CacheMissCoalescer coalescer = null;
 
 
     /**
@@ -76,6 +82,9 @@ public class FeedServlet extends HttpServlet {
 
         // get a reference to the site wide cache
         this.siteWideCache = SiteWideCache.getInstance();
+
+        // get a reference to the render coalescer
+        this.coalescer = CacheMissCoalescer.getInstance();
     }
 
 
@@ -121,14 +130,47 @@ public class FeedServlet extends HttpServlet {
             lastModified = weblog.getLastModified().getTime();
         }
 
-        // Respond with 304 Not Modified if it is not modified.
-        if (ModDateHeaderUtil.respondIfNotModified(request, response,
-                lastModified, feedRequest.getDeviceType())) {
+        // generate cache key
+        String cacheKey;
+        if (isSiteWide) {
+            cacheKey = siteWideCache.generateKey(feedRequest);
+        } else {
+            cacheKey = weblogFeedCache.generateKey(feedRequest);
+        }
+
+        // cached content checking
+        CachedContent cachedContent;
+        long contentLastModified = lastModified;
+        if (isSiteWide) {
+            cachedContent = (CachedContent) siteWideCache.get(cacheKey);
+        } else {
+            cachedContent = (CachedContent) weblogFeedCache.get(cacheKey,
+                    lastModified);
+            if (cachedContent == null) {
+                // serve the previous version while a new one is rendered
+                LazyExpiringCacheEntry staleEntry = weblogFeedCache.getStale(
+                        cacheKey, lastModified);
+                if (staleEntry != null) {
+                    log.debug("STALE " + cacheKey);
+                    weblogFeedCache.revalidate(cacheKey,
+                            revalidation(feedRequest, cacheKey));
+                    cachedContent = (CachedContent) staleEntry.getStaleValue();
+                    contentLastModified = staleEntry.getTimeCached();
+                }
+            }
+        }
+
+        // Respond with 304 Not Modified if it is not modified, checking
+        // If-None-Match against the version the client would be sent before
+        // anything gets rendered.  A stale version goes by the date it was
+        // cached, so clients don't think it is the latest one.
+        if (ContentEncodingUtil.respondIfNotModified(request, response,
+                cachedContent, contentLastModified, feedRequest.getDeviceType())) {
             return;
         }
 
         // set last-modified date
-        ModDateHeaderUtil.setLastModifiedHeader(response, lastModified,
+        ModDateHeaderUtil.setLastModifiedHeader(response, contentLastModified,
                 feedRequest.getDeviceType());
 
         // set content type
@@ -149,46 +191,126 @@ public class FeedServlet extends HttpServlet {
             response.setContentType("application/atom+xml; charset=utf-8");
         }
 
-        // generate cache key
-        String cacheKey;
-        if (isSiteWide) {
-            cacheKey = siteWideCache.generateKey(feedRequest);
-        } else {
-            cacheKey = weblogFeedCache.generateKey(feedRequest);
-        }
+        CacheMissCoalescer.Flight flight = null;
+        if (cachedContent == null) {
+            log.debug("MISS " + cacheKey);
 
-        // cached content checking
-        CachedContent cachedContent;
-        if (isSiteWide) {
-            cachedContent = (CachedContent) siteWideCache.get(cacheKey);
-        } else {
-            cachedContent = (CachedContent) weblogFeedCache.get(cacheKey,
-                    lastModified);
+            // only one thread renders a missing feed, the rest wait for it
+            flight = coalescer.join(cacheKey);
+            if (!flight.isLeader()) {
+                cachedContent = flight.await();
+            }
         }
 
         if (cachedContent != null) {
             log.debug("HIT " + cacheKey);
 
-            response.setContentLength(cachedContent.getContent().length);
-            response.getOutputStream().write(cachedContent.getContent());
+            ContentEncodingUtil.writeContent(request, response, cachedContent);
             return;
+        }
 
-        } else {
-            log.debug("MISS " + cacheKey);
+        // site-wide content is cached along with what it was rendered from
+        CacheDependencies dependencies = null;
+        if (isSiteWide) {
+            dependencies = CacheDependencies.start(weblog);
+        }
+
+        CachedContent rendered = null;
+        try {
+            rendered = renderFeed(request, response, feedRequest, weblog,
+                    dependencies, cacheKey);
+        } finally {
+            if (dependencies != null) {
+                dependencies.stop();
+            }
+            flight.complete(rendered);
         }
 
+        log.debug("Exiting");
+    }
+
+
+    /**
+     * Render the requested feed, write it to the response and cache it.
+     *
+     * @return the rendered content, or null if an error was sent instead.
+     */
+    private CachedContent renderFeed(HttpServletRequest request,
+            HttpServletResponse response, WeblogFeedRequest feedRequest,
+            Weblog weblog, CacheDependencies dependencies, String cacheKey)
+            throws IOException {
+
+        boolean isSiteWide = dependencies != null;
+
         // validation. make sure that request input makes sense.
-        boolean invalid = false;
+        if (!isValid(feedRequest, weblog, isSiteWide)) {
+            if (!response.isCommitted()) {
+                response.reset();
+            }
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+
+        // do we need to force a specific locale for the request?
+        if (feedRequest.getLocale() == null && !weblog.isShowAllLangs()) {
+            feedRequest.setLocale(weblog.getLocale());
+        }
+
+        // looks like we need to render content
+        CachedContent rendererOutput;
+        try {
+            rendererOutput = render(feedRequest, weblog);
+        } catch (RenderingException | IOException e) {
+            // no renderer for the template or error during rendering
+
+            if (!response.isCommitted()) {
+                response.reset();
+            }
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        } catch (WebloggerException ex) {
+            log.error("ERROR loading model for page", ex);
+
+            if (!response.isCommitted()) {
+                response.reset();
+            }
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return null;
+        }
+
+        // post rendering process
+
+        // cache rendered content first, so this response can already use
+        // the compressed variant
+        log.debug("PUT " + cacheKey);
+        if (isSiteWide) {
+            siteWideCache.put(cacheKey, rendererOutput, dependencies);
+        } else {
+            weblogFeedCache.put(cacheKey, rendererOutput);
+        }
+
+        // flush rendered content to response
+        log.debug("Flushing response output");
+        ContentEncodingUtil.writeContent(request, response, rendererOutput);
+
+        return rendererOutput;
+    }
+
+
+    /**
+     * Make sure that the request input makes sense.
+     */
+    private boolean isValid(WeblogFeedRequest feedRequest, Weblog weblog,
+            boolean isSiteWide) {
+
         if (feedRequest.getLocale() != null
                 && !feedRequest.getWeblog().isEnableMultiLang()) {
-            invalid = true;
+            return false;
         }
         if (feedRequest.getWeblogCategoryName() != null) {
 
             // category specified. category must exist.
-            if (feedRequest.getWeblogCategory() == null) {
-                invalid = true;
-            }
+            return feedRequest.getWeblogCategory() != null;
 
         } else if (feedRequest.getTags() != null && !feedRequest.getTags().isEmpty()) {
 
@@ -196,113 +318,87 @@ public class FeedServlet extends HttpServlet {
                 // tags specified. make sure they exist.
                 WeblogEntryManager wmgr = WebloggerFactory.getWeblogger()
                         .getWeblogEntryManager();
-                invalid = !wmgr.getTagComboExists(feedRequest.getTags(),
+                return wmgr.getTagComboExists(feedRequest.getTags(),
                         (isSiteWide) ? null : weblog);
             } catch (WebloggerException ex) {
-                invalid = true;
+                return false;
             }
         }
 
-        if (invalid) {
-            if (!response.isCommitted()) {
-                response.reset();
-            }
-            response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
-        }
+        return true;
+    }
 
-        // do we need to force a specific locale for the request?
-        if (feedRequest.getLocale() == null && !weblog.isShowAllLangs()) {
-            feedRequest.setLocale(weblog.getLocale());
-        }
 
-        // looks like we need to render content
+    /**
+     * Render the content of a feed.
+     *
+     * @throws RenderingException if there is no renderer for the feed template
+     *         or rendering fails.
+     * @throws WebloggerException if the models could not be loaded.
+     */
+    private CachedContent render(WeblogFeedRequest feedRequest, Weblog weblog)
+            throws WebloggerException, IOException {
+
         HashMap<String, Object> model = new HashMap<>();
+
+        // determine what template to render with
         String pageId;
-        try {
-            // determine what template to render with
-            boolean siteWide = WebloggerRuntimeConfig.isSiteWideWeblog(weblog
-                    .getHandle());
-            if (siteWide && "entries".equals(feedRequest.getType())
-                    && feedRequest.getTerm() != null) {
-                pageId = "site-search-atom.vm";
-
-            } else if ("entries".equals(feedRequest.getType())
-                    && feedRequest.getTerm() != null) {
-                pageId = "feeds/weblog-search-atom.vm";
-
-            } else if (siteWide) {
-                pageId = "site-" + feedRequest.getType() + "-"
-                        + feedRequest.getFormat() + ".vm";
-
-            } else {
-                pageId = "weblog-" + feedRequest.getType() + "-"
-                        + feedRequest.getFormat() + ".vm";
-            }
+        boolean siteWide = WebloggerRuntimeConfig.isSiteWideWeblog(weblog
+                .getHandle());
+        if (siteWide && "entries".equals(feedRequest.getType())
+                && feedRequest.getTerm() != null) {
+            pageId = "site-search-atom.vm";
 
-            // populate the rendering model
-            Map<String, Object> initData = new HashMap<>();
-            initData.put("parsedRequest", feedRequest);
+        } else if ("entries".equals(feedRequest.getType())
+                && feedRequest.getTerm() != null) {
+            pageId = "feeds/weblog-search-atom.vm";
 
-            // define url strategy
-            initData.put("urlStrategy", WebloggerFactory.getWeblogger()
-                    .getUrlStrategy());
+        } else if (siteWide) {
+            pageId = "site-" + feedRequest.getType() + "-"
+                    + feedRequest.getFormat() + ".vm";
 
-            // Load models for feeds
-            String feedModels = WebloggerConfig
-                    .getProperty("rendering.feedModels");
-            ModelLoader.loadModels(feedModels, model, initData, true);
+        } else {
+            pageId = "weblog-" + feedRequest.getType() + "-"
+                    + feedRequest.getFormat() + ".vm";
+        }
 
-            // Load special models for site-wide blog
+        // populate the rendering model
+        Map<String, Object> initData = new HashMap<>();
+        initData.put("parsedRequest", feedRequest);
 
-            if (siteWide) {
-                String siteModels = WebloggerConfig
-                        .getProperty("rendering.siteModels");
-                ModelLoader.loadModels(siteModels, model, initData, true);
-            }
+        // define url strategy
+        initData.put("urlStrategy", WebloggerFactory.getWeblogger()
+                .getUrlStrategy());
 
-            // Load search models if search feed
-            if ("entries".equals(feedRequest.getType())
-                    && feedRequest.getTerm() != null) {
-                ModelLoader.loadModels(SearchResultsFeedModel.class.getName(),
-                        model, initData, true);
-            }
+        // Load models for feeds
+        String feedModels = WebloggerConfig
+                .getProperty("rendering.feedModels");
+        ModelLoader.loadModels(feedModels, model, initData, true);
 
-        } catch (WebloggerException ex) {
-            log.error("ERROR loading model for page", ex);
+        // Load special models for site-wide blog
 
-            if (!response.isCommitted()) {
-                response.reset();
-            }
-            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            return;
+        if (siteWide) {
+            String siteModels = WebloggerConfig
+                    .getProperty("rendering.siteModels");
+            ModelLoader.loadModels(siteModels, model, initData, true);
         }
 
-        // lookup Renderer we are going to use
-        Renderer renderer;
-        try {
-            log.debug("Looking up renderer");
-            Template template = new StaticTemplate(pageId, TemplateLanguage.VELOCITY);
-            renderer = RendererManager.getRenderer(template,
-                    MobileDeviceRepository.DeviceType.standard);
-        } catch (Exception e) {
-            // nobody wants to render my content :(
+        // Load search models if search feed
+        if ("entries".equals(feedRequest.getType())
+                && feedRequest.getTerm() != null) {
+            ModelLoader.loadModels(SearchResultsFeedModel.class.getName(),
+                    model, initData, true);
+        }
 
-            // TODO: this log message has been disabled because it fills up
-            // the logs with useless errors due to the fact that the way these
-            // template ids are formed comes directly from the request and it
-            // often gets bunk data causing invalid template ids.
-            // at some point we should have better validation on the input so
-            // that we can quickly dispatch invalid feed requests and only
-            // get this far if we expect the template to be found
-            // log.error("Couldn't find renderer for page "+pageId, e);
+        // lookup Renderer we are going to use
 
-            if (!response.isCommitted()) {
-                response.reset();
-            }
-            response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
-        }
+        // NOTE: failures here are not logged because the template ids come
+        // directly from the request and often contain bunk data, which would
+        // fill up the logs with useless errors.
+        log.debug("Looking up renderer");
+        Template template = new StaticTemplate(pageId, TemplateLanguage.VELOCITY);
+        Renderer renderer = RendererManager.getRenderer(template,
+                MobileDeviceRepository.DeviceType.standard);
 
         // render content. use default size of 24K for a standard page
         CachedContent rendererOutput = new CachedContent(RollerConstants.TWENTYFOUR_KB_IN_BYTES);
@@ -313,33 +409,55 @@ public class FeedServlet extends HttpServlet {
             // flush rendered output and close
             rendererOutput.flush();
             rendererOutput.close();
-        } catch (Exception e) {
+        } catch (RenderingException | IOException e) {
             // bummer, error during rendering
             log.error("Error during rendering for page " + pageId, e);
-
-            if (!response.isCommitted()) {
-                response.reset();
-            }
-            response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
+            throw e;
         }
 
-        // post rendering process
+        return rendererOutput;
+    }
 
-        // flush rendered content to response
-        log.debug("Flushing response output");
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
 
-        // cache rendered content. only cache if user is not logged in?
-        log.debug("PUT " + cacheKey);
-        if (isSiteWide) {
-            siteWideCache.put(cacheKey, rendererOutput);
-        } else {
-            weblogFeedCache.put(cacheKey, rendererOutput);
-        }
+    /**
+     * Build the background task which renders a fresh copy of a stale feed
+     * into the cache.
+     *
+     * The task runs after this request is gone, so it works from its own
+     * copy of the lightweight request data and looks up the weblog again.
+     */
+    private Runnable revalidation(WeblogFeedRequest feedRequest, String cacheKey) {
+
+        WeblogFeedRequest copy = new WeblogFeedRequest();
+        copy.setWeblogHandle(feedRequest.getWeblogHandle());
+        copy.setLocale(feedRequest.getLocale());
+        copy.setDeviceType(feedRequest.getDeviceType());
+        copy.setType(feedRequest.getType());
+        copy.setFormat(feedRequest.getFormat());
+        copy.setWeblogCategoryName(feedRequest.getWeblogCategoryName());
+        copy.setTags(feedRequest.getTags());
+        copy.setExcerpts(feedRequest.isExcerpts());
+        copy.setPage(feedRequest.getPage());
+        copy.setTerm(feedRequest.getTerm());
+
+        return () -> {
+            Weblog weblog = copy.getWeblog();
+            if (weblog == null || !isValid(copy, weblog, false)) {
+                weblogFeedCache.remove(cacheKey);
+                return;
+            }
 
-        log.debug("Exiting");
+            if (copy.getLocale() == null && !weblog.isShowAllLangs()) {
+                copy.setLocale(weblog.getLocale());
+            }
+
+            try {
+                weblogFeedCache.put(cacheKey, render(copy, weblog));
+            } catch (WebloggerException | IOException e) {
+                log.debug("Unable to revalidate " + cacheKey, e);
+                weblogFeedCache.remove(cacheKey);
+            }
+        };
     }
 
 }
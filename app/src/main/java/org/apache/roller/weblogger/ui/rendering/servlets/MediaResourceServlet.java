@@ -104,14 +104,17 @@ public class MediaResourceServlet extends HttpServlet {
             return;
         }
 
-        // Respond with 304 Not Modified if it is not modified.
+        // set last-modified date
+        ModDateHeaderUtil.setLastModifiedHeader(response, resourceLastMod,
+                resourceRequest.getDeviceType());
+
+        // Respond with 304 Not Modified if the client has the same bytes or,
+        // lacking an ETag to compare, if it is not modified.
         if (ModDateHeaderUtil.respondIfNotModified(request, response,
+                ModDateHeaderUtil.getFileETag(mediaFile.getLength(), resourceLastMod,
+                        resourceRequest.isThumbnail() ? "thumbnail" : null),
                 resourceLastMod, resourceRequest.getDeviceType())) {
             return;
-        } else {
-            // set last-modified date
-            ModDateHeaderUtil.setLastModifiedHeader(response, resourceLastMod,
-                    resourceRequest.getDeviceType());
         }
 
         // set the content type based on whatever is in our web.xml mime defs
@@ -43,15 +43,19 @@ import org.apache.roller.weblogger.ui.core.RollerContext;
 import org.apache.roller.weblogger.ui.rendering.Renderer;
 import org.apache.roller.weblogger.ui.rendering.RendererManager;
 import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
+import org.apache.roller.weblogger.ui.rendering.util.ContentEncodingUtil;
 import org.apache.roller.weblogger.ui.rendering.util.InvalidRequestException;
 import org.apache.roller.weblogger.ui.rendering.util.ModDateHeaderUtil;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogEntryCommentForm;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheDependencies;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheMissCoalescer;
 import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideCache;
 import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogPageCache;
 import org.apache.roller.weblogger.util.BannedwordslistChecker;
 import org.apache.roller.weblogger.util.I18nMessages;
 import org.apache.roller.weblogger.util.cache.CachedContent;
+import org.apache.roller.weblogger.util.cache.LazyExpiringCacheEntry;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -79,6 +83,7 @@ public class PageServlet extends HttpServlet {
     private boolean excludeOwnerPages = false;
     private WeblogPageCache weblogPageCache = null;
     private SiteWideCache siteWideCache = null;
+    private CacheMissCoalescer coalescer = null;
 
     // Development theme reloading
     Boolean themeReload = false;
@@ -102,6 +107,9 @@ public class PageServlet extends HttpServlet {
         // get a reference to the site wide cache
         this.siteWideCache = SiteWideCache.getInstance();
 
+        // get a reference to the render coalescer
+        this.coalescer = CacheMissCoalescer.getInstance();
+
         // see if built-in referrer spam check is enabled
         this.processReferrers = WebloggerConfig
                 .getBooleanProperty("site.bannedwordslist.enable.referrers");
@@ -185,20 +193,6 @@ public class PageServlet extends HttpServlet {
             lastModified = weblog.getLastModified().getTime();
         }
 
-        // 304 Not Modified handling.
-        // We skip this for logged in users to avoid the scenerio where a user
-        // views their weblog, logs in, then gets a 304 without the 'edit' links
-        if (!pageRequest.isLoggedIn()) {
-            if (ModDateHeaderUtil.respondIfNotModified(request, response,
-                    lastModified, pageRequest.getDeviceType())) {
-                return;
-            } else {
-                // set last-modified date
-                ModDateHeaderUtil.setLastModifiedHeader(response, lastModified,
-                        pageRequest.getDeviceType());
-            }
-        }
-
         // generate cache key
         String cacheKey;
         if (isSiteWide) {
@@ -233,16 +227,67 @@ public class PageServlet extends HttpServlet {
         }
 
         // cached content checking
-        if ((!this.excludeOwnerPages || !pageRequest.isLoggedIn())
+        boolean cacheable = (!this.excludeOwnerPages || !pageRequest.isLoggedIn())
                 && request.getAttribute("skipCache") == null
-                && request.getParameter("skipCache") == null) {
+                && request.getParameter("skipCache") == null;
 
-            CachedContent cachedContent;
+        CachedContent cachedContent = null;
+        LazyExpiringCacheEntry staleEntry = null;
+        if (cacheable) {
             if (isSiteWide) {
                 cachedContent = (CachedContent) siteWideCache.get(cacheKey);
             } else {
                 cachedContent = (CachedContent) weblogPageCache.get(cacheKey,
                         lastModified);
+
+                // a page render needs the live request, so the stale version
+                // is revalidated by whichever request leads the render while
+                // everyone else is served the stale copy in the meantime
+                if (cachedContent == null) {
+                    staleEntry = weblogPageCache.getStale(cacheKey, lastModified);
+                }
+            }
+        }
+
+        // only one thread renders a missing page, the rest wait for it
+        CacheMissCoalescer.Flight flight = null;
+        long contentLastModified = lastModified;
+        if (cacheable && cachedContent == null) {
+            log.debug("MISS " + cacheKey);
+
+            flight = coalescer.join(cacheKey);
+            if (!flight.isLeader() && staleEntry != null) {
+                log.debug("STALE " + cacheKey);
+                cachedContent = (CachedContent) staleEntry.getStaleValue();
+                contentLastModified = staleEntry.getTimeCached();
+            }
+        }
+
+        // 304 Not Modified handling, before anything gets rendered.
+        // If-None-Match is checked against the version this request would be
+        // sent, if the cache has it, and a stale version goes by the date it
+        // was cached so clients don't think it is the latest one.
+        // We skip this for logged in users to avoid the scenerio where a user
+        // views their weblog, logs in, then gets a 304 without the 'edit' links
+        if (!pageRequest.isLoggedIn()) {
+            if (ContentEncodingUtil.respondIfNotModified(request, response,
+                    cachedContent, contentLastModified,
+                    pageRequest.getDeviceType())) {
+                if (flight != null) {
+                    flight.complete(null);
+                }
+                return;
+            } else {
+                // set last-modified date
+                ModDateHeaderUtil.setLastModifiedHeader(response,
+                        contentLastModified, pageRequest.getDeviceType());
+            }
+        }
+
+        if (cacheable) {
+
+            if (cachedContent == null && flight != null && !flight.isLeader()) {
+                cachedContent = flight.await();
             }
 
             if (cachedContent != null) {
@@ -255,15 +300,46 @@ public class PageServlet extends HttpServlet {
                     this.processHit(weblog);
                 }
 
-                response.setContentLength(cachedContent.getContent().length);
                 response.setContentType(cachedContent.getContentType());
-                response.getOutputStream().write(cachedContent.getContent());
+                ContentEncodingUtil.writeContent(request, response, cachedContent);
                 return;
-            } else {
-                log.debug("MISS " + cacheKey);
             }
         }
 
+        // site-wide content is cached along with what it was rendered from
+        CacheDependencies dependencies = null;
+        if (isSiteWide) {
+            dependencies = CacheDependencies.start(weblog);
+        }
+
+        CachedContent rendered = null;
+        try {
+            rendered = renderPage(request, response, pageRequest, weblog,
+                    dependencies, cacheKey);
+        } finally {
+            if (dependencies != null) {
+                dependencies.stop();
+            }
+            if (flight != null) {
+                flight.complete(rendered);
+            }
+        }
+
+        log.debug("Exiting");
+    }
+
+    /**
+     * Render the requested page, write it to the response and cache it.
+     *
+     * @return the rendered content, or null if an error was sent instead.
+     */
+    private CachedContent renderPage(HttpServletRequest request,
+            HttpServletResponse response, WeblogPageRequest pageRequest,
+            Weblog weblog, CacheDependencies dependencies, String cacheKey)
+            throws IOException {
+
+        boolean isSiteWide = dependencies != null;
+
         log.debug("Looking for template to use for rendering");
 
         // figure out what template to use
@@ -296,7 +372,7 @@ public class PageServlet extends HttpServlet {
                     response.reset();
                 }
                 response.sendError(HttpServletResponse.SC_NOT_FOUND);
-                return;
+                return null;
             }
 
             // If request specified tags section index, then look for custom
@@ -317,7 +393,7 @@ public class PageServlet extends HttpServlet {
                     response.reset();
                 }
                 response.sendError(HttpServletResponse.SC_NOT_FOUND);
-                return;
+                return null;
             }
 
             // If this is a permalink then look for a permalink template
@@ -347,7 +423,7 @@ public class PageServlet extends HttpServlet {
                 response.reset();
             }
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
+            return null;
         }
 
         log.debug("page found, dealing with it");
@@ -403,7 +479,7 @@ public class PageServlet extends HttpServlet {
                 response.reset();
             }
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
+            return null;
         }
 
         // do we need to force a specific locale for the request?
@@ -483,7 +559,7 @@ public class PageServlet extends HttpServlet {
                 response.reset();
             }
             response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            return;
+            return null;
         }
 
         // lookup Renderer we are going to use
@@ -500,7 +576,7 @@ public class PageServlet extends HttpServlet {
                 response.reset();
             }
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
+            return null;
         }
 
         // render content
@@ -521,24 +597,19 @@ public class PageServlet extends HttpServlet {
                 response.reset();
             }
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
+            return null;
         }
 
         // post rendering process
-        // flush rendered content to response
-        log.debug("Flushing response output");
-        response.setContentType(contentType);
-        response.setContentLength(rendererOutput.getContent().length);
-        response.getOutputStream().write(rendererOutput.getContent());
-
-        // cache rendered content. only cache if user is not logged in?
+        // cache rendered content first, so this response can already use
+        // the compressed variant. only cache if user is not logged in?
         if ((!this.excludeOwnerPages || !pageRequest.isLoggedIn())
                 && request.getAttribute("skipCache") == null) {
             log.debug("PUT " + cacheKey);
 
             // put it in the right cache
             if (isSiteWide) {
-                siteWideCache.put(cacheKey, rendererOutput);
+                siteWideCache.put(cacheKey, rendererOutput, dependencies);
             } else {
                 weblogPageCache.put(cacheKey, rendererOutput);
             }
@@ -546,7 +617,12 @@ public class PageServlet extends HttpServlet {
             log.debug("SKIPPED " + cacheKey);
         }
 
-        log.debug("Exiting");
+        // flush rendered content to response
+        log.debug("Flushing response output");
+        response.setContentType(contentType);
+        ContentEncodingUtil.writeContent(request, response, rendererOutput);
+
+        return rendererOutput;
     }
 
     /**
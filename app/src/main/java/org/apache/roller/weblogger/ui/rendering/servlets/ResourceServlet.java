@@ -99,6 +99,7 @@ public class ResourceServlet extends HttpServlet {
                 + "]");
 
         long resourceLastMod = 0;
+        long resourceLength = 0;
         InputStream resourceStream = null;
 
         // first see if resource comes from weblog's shared theme
@@ -109,6 +110,7 @@ public class ResourceServlet extends HttpServlet {
                         .getResource(resourceRequest.getResourcePath());
                 if (resource != null) {
                     resourceLastMod = resource.getLastModified();
+                    resourceLength = resource.getLength();
                     resourceStream = resource.getInputStream();
                 }
             }
@@ -132,6 +134,7 @@ public class ResourceServlet extends HttpServlet {
                 MediaFile mf = mmgr.getMediaFileByOriginalPath(weblog,
                         resourceRequest.getResourcePath());
                 resourceLastMod = mf.getLastModified();
+                resourceLength = mf.getLength();
                 resourceStream = mf.getInputStream();
 
             } catch (Exception ex) {
@@ -148,14 +151,17 @@ public class ResourceServlet extends HttpServlet {
             }
         }
 
-        // Respond with 304 Not Modified if it is not modified.
+        // set last-modified date
+        ModDateHeaderUtil.setLastModifiedHeader(response, resourceLastMod,
+                resourceRequest.getDeviceType());
+
+        // Respond with 304 Not Modified if the client has the same bytes or,
+        // lacking an ETag to compare, if it is not modified.
         if (ModDateHeaderUtil.respondIfNotModified(request, response,
+                ModDateHeaderUtil.getFileETag(resourceLength, resourceLastMod, null),
                 resourceLastMod, resourceRequest.getDeviceType())) {
+            resourceStream.close();
             return;
-        } else {
-            // set last-modified date
-            ModDateHeaderUtil.setLastModifiedHeader(response, resourceLastMod,
-                    resourceRequest.getDeviceType());
         }
 
         // set the content type based on whatever is in our web.xml mime defs
@@ -19,6 +19,8 @@
 package org.apache.roller.weblogger.ui.rendering.servlets;
 
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -46,6 +48,7 @@ import org.apache.roller.weblogger.ui.rendering.RendererManager;
 import org.apache.roller.weblogger.ui.rendering.model.ModelLoader;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogSearchRequest;
+import org.apache.roller.weblogger.ui.rendering.util.cache.CacheMissCoalescer;
 import org.apache.roller.weblogger.ui.rendering.util.cache.SiteWideCache;
 import org.apache.roller.weblogger.ui.rendering.util.cache.WeblogPageCache;
 import org.apache.roller.weblogger.util.I18nMessages;
@@ -63,6 +66,8 @@ public class SearchServlet extends HttpServlet {
     // Development theme reloading
     Boolean themeReload = false;
 
+    private CacheMissCoalescer coalescer = null;
+
     /**
      * Init method for this servlet
      */
@@ -73,6 +78,9 @@ public class SearchServlet extends HttpServlet {
 
         log.info("Initializing SearchServlet");
 
+        // get a reference to the render coalescer
+        this.coalescer = CacheMissCoalescer.getInstance();
+
         // Development theme reloading
         themeReload = WebloggerConfig.getBooleanProperty("themes.reload.mode");
     }
@@ -153,6 +161,38 @@ public class SearchServlet extends HttpServlet {
         // set the content type
         response.setContentType("text/html; charset=utf-8");
 
+        // identical searches arriving together are only run once
+        String coalesceKey = generateKey(searchRequest);
+        CacheMissCoalescer.Flight flight = coalescer.join(coalesceKey);
+        if (!flight.isLeader()) {
+            CachedContent searchResults = flight.await();
+            if (searchResults != null) {
+                log.debug("COALESCED " + coalesceKey);
+                response.setContentLength(searchResults.getContent().length);
+                response.getOutputStream().write(searchResults.getContent());
+                return;
+            }
+        }
+
+        CachedContent rendered = null;
+        try {
+            rendered = renderSearch(request, response, searchRequest, weblog, page);
+        } finally {
+            flight.complete(rendered);
+        }
+
+        log.debug("Exiting");
+    }
+
+    /**
+     * Render the search results page and write it to the response.
+     *
+     * @return the rendered content, or null if an error was sent instead.
+     */
+    private CachedContent renderSearch(HttpServletRequest request, HttpServletResponse response,
+            WeblogSearchRequest searchRequest, Weblog weblog, ThemeTemplate page)
+            throws IOException {
+
         // looks like we need to render content
         Map<String, Object> model = new HashMap<>();
         try {
@@ -198,7 +238,7 @@ public class SearchServlet extends HttpServlet {
                 response.reset();
             }
             response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            return;
+            return null;
         }
 
         // lookup Renderer we are going to use
@@ -214,7 +254,7 @@ public class SearchServlet extends HttpServlet {
                 response.reset();
             }
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
+            return null;
         }
 
         // render content
@@ -234,7 +274,7 @@ public class SearchServlet extends HttpServlet {
                 response.reset();
             }
             response.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
+            return null;
         }
 
         // post rendering process
@@ -244,7 +284,51 @@ public class SearchServlet extends HttpServlet {
         response.setContentLength(rendererOutput.getContent().length);
         response.getOutputStream().write(rendererOutput.getContent());
 
-        log.debug("Exiting");
+        return rendererOutput;
+    }
+
+    /**
+     * Generate a key identifying the output of a search request, of the form
+     *
+     * <handle>[/q=query][/category][/locale]/page=<n>[/user]/deviceType=<type>
+     */
+    private String generateKey(WeblogSearchRequest searchRequest) {
+
+        StringBuilder key = new StringBuilder(128);
+
+        key.append("search:");
+        key.append(searchRequest.getWeblogHandle());
+
+        if (searchRequest.getQuery() != null) {
+            key.append("/q=").append(URLEncoder.encode(searchRequest.getQuery(), StandardCharsets.UTF_8));
+        }
+
+        if (searchRequest.getWeblogCategoryName() != null) {
+            key.append('/').append(URLEncoder.encode(searchRequest.getWeblogCategoryName(), StandardCharsets.UTF_8));
+        }
+
+        if (searchRequest.getLocale() != null) {
+            key.append('/').append(searchRequest.getLocale());
+        }
+
+        for (Map.Entry<String, String> drillDown : searchRequest.getDrillDowns().entrySet()) {
+            key.append('/').append(drillDown.getKey()).append('=')
+                    .append(URLEncoder.encode(drillDown.getValue(), StandardCharsets.UTF_8));
+        }
+
+        key.append("/page=").append(searchRequest.getPageNum());
+
+        if (searchRequest.getAfter() != null) {
+            key.append("/after=").append(URLEncoder.encode(searchRequest.getAfter(), StandardCharsets.UTF_8));
+        }
+
+        if (searchRequest.getAuthenticUser() != null) {
+            key.append("/user=").append(searchRequest.getAuthenticUser());
+        }
+
+        key.append("/deviceType=").append(searchRequest.getDeviceType().toString());
+
+        return key.toString();
     }
 
 }
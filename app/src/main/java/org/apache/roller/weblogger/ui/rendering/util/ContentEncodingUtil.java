@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.weblogger.ui.rendering.mobile.MobileDeviceRepository;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+
+/**
+ * Utility class to localize the content-encoding logic for writing cached
+ * content out to a response.
+ */
+public final class ContentEncodingUtil {
+
+    private static final Log log = LogFactory.getLog(ContentEncodingUtil.class);
+
+    private ContentEncodingUtil() {
+    }
+
+    /**
+     * Answer a conditional request with a 304 if the client already has the
+     * variant of the cached content it would be sent, so the servlets can
+     * check before doing any rendering.
+     *
+     * If-None-Match is compared with the ETag of that variant and takes
+     * precedence over If-Modified-Since.  With no content cached yet there
+     * is no ETag to compare with, and only If-Modified-Since can decide.
+     *
+     * @param content the cached content, null if there is none
+     * @return true if a 304 was sent, false otherwise.
+     */
+    public static boolean respondIfNotModified(HttpServletRequest request,
+            HttpServletResponse response, CachedContent content,
+            long lastModified, MobileDeviceRepository.DeviceType deviceType) {
+
+        String eTag = null;
+        if (content != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+            eTag = getETag(content, sendsGzip(request, content));
+        }
+        return ModDateHeaderUtil.respondIfNotModified(request, response, eTag,
+                lastModified, deviceType);
+    }
+
+    /**
+     * Write cached content to the response, using its gzip compressed variant
+     * if there is one and the client accepts it.
+     *
+     * The response always varies by Accept-Encoding so that shared caches
+     * don't hand compressed content to clients which can't read it, and each
+     * variant gets its own strong ETag.
+     */
+    public static void writeContent(HttpServletRequest request,
+            HttpServletResponse response, CachedContent content)
+            throws IOException {
+
+        response.setHeader("Vary", "Accept-Encoding");
+
+        boolean gzip = sendsGzip(request, content);
+        String eTag = getETag(content, gzip);
+        if (eTag != null) {
+            response.setHeader("ETag", eTag);
+        }
+
+        if (gzip) {
+            log.debug("Writing gzip content");
+            byte[] compressed = content.getCompressedContent();
+            response.setHeader("Content-Encoding", "gzip");
+            response.setContentLength(compressed.length);
+            response.getOutputStream().write(compressed);
+        } else {
+            response.setContentLength(content.getContent().length);
+            response.getOutputStream().write(content.getContent());
+        }
+    }
+
+    /**
+     * Check if the client is sent the gzip compressed variant of the content.
+     */
+    private static boolean sendsGzip(HttpServletRequest request,
+            CachedContent content) {
+        return content.getCompressedContent() != null && acceptsGzip(request);
+    }
+
+    /**
+     * The ETag of the variant of the content the client is sent.
+     */
+    private static String getETag(CachedContent content, boolean gzip) {
+        return gzip ? getGzipETag(content.getETag()) : content.getETag();
+    }
+
+    /**
+     * The gzip variant has different bytes, so it needs a different tag.
+     */
+    private static String getGzipETag(String eTag) {
+        if (eTag == null) {
+            return null;
+        }
+        return eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+    }
+
+    /**
+     * Check if the Accept-Encoding headers of the request allow gzip with a
+     * non-zero quality value.  An explicit gzip coding takes precedence over
+     * a "*" wildcard.
+     */
+    public static boolean acceptsGzip(HttpServletRequest request) {
+
+        Enumeration<String> headers = request.getHeaders("Accept-Encoding");
+        if (headers == null) {
+            return false;
+        }
+
+        Boolean gzip = null;
+        Boolean wildcard = null;
+        while (headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                String[] params = coding.split(";");
+                String name = params[0].trim();
+                if ("gzip".equalsIgnoreCase(name)) {
+                    gzip = isAcceptable(params);
+                } else if ("*".equals(name)) {
+                    wildcard = isAcceptable(params);
+                }
+            }
+        }
+
+        return (gzip != null) ? gzip : Boolean.TRUE.equals(wildcard);
+    }
+
+    private static boolean isAcceptable(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) > 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
@@ -163,4 +163,129 @@ public final class ModDateHeaderUtil {
 
 	}
 
+	/**
+	 * Set the ETag header to the given strong entity tag, and set the HTTP
+	 * response status to 304 (NOT MODIFIED) if the request contains an
+	 * If-None-Match header which matches it. Returns true if the response
+	 * status was set, false if not.
+	 * 
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @param eTag
+	 *            the quoted entity tag of the content about to be sent
+	 * 
+	 * @return true if a response status was sent, false otherwise.
+	 */
+	public static boolean respondIfNoneMatch(HttpServletRequest request,
+			HttpServletResponse response, String eTag) {
+
+		if (eTag == null) {
+			return false;
+		}
+
+		response.setHeader("ETag", eTag);
+
+		if (matches(request.getHeader("If-None-Match"), eTag)) {
+
+			if (log.isDebugEnabled()) {
+				log.debug("NOT MODIFIED " + eTag + " " + request.getRequestURL());
+			}
+
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Answer a conditional request with a 304 (NOT MODIFIED) if the client
+	 * already has the content with the given entity tag and modification
+	 * time. Returns true if the response status was set, false if not.
+	 * <p/>
+	 * If-None-Match takes precedence: when the request has one,
+	 * If-Modified-Since is not looked at, as RFC 7232 section 6 requires. The
+	 * ETag header is set whichever of the two decides, so a 304 always
+	 * carries it.
+	 * 
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response
+	 * @param eTag
+	 *            the quoted entity tag of the content, null if there is none
+	 *            yet
+	 * @param lastModifiedTimeMillis
+	 *            the last modified time millis
+	 * @param deviceType
+	 *            the device type. Null to ignore ie no theme device type
+	 *            swithing check.
+	 * 
+	 * @return true if a response status was sent, false otherwise.
+	 */
+	public static boolean respondIfNotModified(HttpServletRequest request,
+			HttpServletResponse response, String eTag,
+			long lastModifiedTimeMillis,
+			MobileDeviceRepository.DeviceType deviceType) {
+
+		if (request.getHeader("If-None-Match") != null) {
+			return respondIfNoneMatch(request, response, eTag);
+		}
+
+		if (eTag != null) {
+			response.setHeader("ETag", eTag);
+		}
+		return respondIfNotModified(request, response, lastModifiedTimeMillis,
+				deviceType);
+	}
+
+	/**
+	 * Build a strong entity tag for a file from its length and modification
+	 * time, which is what changes whenever its bytes do and is a lot cheaper
+	 * than hashing the file on every request.
+	 * 
+	 * @param length
+	 *            the length of the file in bytes
+	 * @param lastModifiedTimeMillis
+	 *            the last modified time millis
+	 * @param variant
+	 *            name of the representation of the file, like a thumbnail.
+	 *            Null for the file itself.
+	 * 
+	 * @return the quoted entity tag
+	 */
+	public static String getFileETag(long length, long lastModifiedTimeMillis,
+			String variant) {
+
+		return "\"" + Long.toHexString(length) + "-"
+				+ Long.toHexString(lastModifiedTimeMillis)
+				+ ((variant != null) ? "-" + variant : "") + "\"";
+	}
+
+	/**
+	 * Check if an If-None-Match header value matches an entity tag, using the
+	 * weak comparison the header calls for, so W/ prefixes are ignored.
+	 */
+	static boolean matches(String ifNoneMatch, String eTag) {
+
+		if (ifNoneMatch == null) {
+			return false;
+		}
+
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if ("*".equals(candidate)) {
+				return true;
+			}
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 }
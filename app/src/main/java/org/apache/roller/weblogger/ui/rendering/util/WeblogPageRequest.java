@@ -60,6 +60,8 @@ public class WeblogPageRequest extends WeblogRequest {
     private String weblogDate = null;
     private List<String> tags = null;
     private int pageNum = 0;
+    private String after = null;
+    private String before = null;
     private Map<String, String[]> customParams = Collections.emptyMap();
 
     // heavyweight attributes
@@ -246,6 +248,14 @@ public class WeblogPageRequest extends WeblogRequest {
             }
         }
 
+        // entry cursors, which page by seeking from an entry of the
+        // neighbouring page rather than by counting pages from the top
+        if (request.getParameter("after") != null && !request.getParameter("after").isBlank()) {
+            this.after = request.getParameter("after");
+        } else if (request.getParameter("before") != null && !request.getParameter("before").isBlank()) {
+            this.before = request.getParameter("before");
+        }
+
         // build customParams Map, we remove built-in params because we only
         // want this map to represent params defined by the template author
         customParams = new HashMap<>(request.getParameterMap());
@@ -254,6 +264,8 @@ public class WeblogPageRequest extends WeblogRequest {
         customParams.remove("date");
         customParams.remove("cat");
         customParams.remove("page");
+        customParams.remove("after");
+        customParams.remove("before");
         customParams.remove("tags");
 
         if (log.isDebugEnabled()) {
@@ -325,6 +337,22 @@ public class WeblogPageRequest extends WeblogRequest {
         this.pageNum = pageNum;
     }
 
+    public String getAfter() {
+        return after;
+    }
+
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
+    public String getBefore() {
+        return before;
+    }
+
+    public void setBefore(String before) {
+        this.before = before;
+    }
+
     public Map<String, String[]> getCustomParams() {
         return customParams;
     }
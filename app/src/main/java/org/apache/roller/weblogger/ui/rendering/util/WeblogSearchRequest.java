@@ -18,12 +18,16 @@
 
 package org.apache.roller.weblogger.ui.rendering.util;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.WebloggerException;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
+import org.apache.roller.weblogger.business.search.IndexManager;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.util.URLUtilities;
 
@@ -37,10 +41,21 @@ public class WeblogSearchRequest extends WeblogRequest {
     
     public static final String SEARCH_SERVLET = "/roller-ui/rendering/search";
     
+    // facets which can be drilled down by, named as their request parameters,
+    // categories are drilled down by with the cat parameter
+    public static final String[] DRILL_DOWN_FACETS = new String[] {
+        IndexManager.FACET_TAG,
+        IndexManager.FACET_WEBLOG,
+        IndexManager.FACET_YEAR,
+        IndexManager.FACET_MONTH
+    };
+    
     // lightweight attributes
     private String query = null;
     private int pageNum = 0;
+    private String after = null;
     private String weblogCategoryName = null;
+    private Map<String, String> drillDowns = new LinkedHashMap<>();
     
     // heavyweight attributes
     private WeblogCategory weblogCategory = null;
@@ -79,7 +94,9 @@ public class WeblogSearchRequest extends WeblogRequest {
          * the only params we currently care about are:
          *   q - specifies the search query
          *   pageNum - specifies what pageNum # to display
+         *   after - cursor of the previous page, saves collecting it again
          *   cat - limit results to a certain weblogCategoryName
+         *   tag, weblog, year, month - limit results to a facet value
          */
         if(request.getParameter("q") != null && !request.getParameter("q").isBlank()) {
             this.query = request.getParameter("q");
@@ -94,10 +111,21 @@ public class WeblogSearchRequest extends WeblogRequest {
             }
         }
         
+        if(request.getParameter("after") != null && !request.getParameter("after").isBlank()) {
+            this.after = request.getParameter("after");
+        }
+        
         if(request.getParameter("cat") != null && !request.getParameter("cat").isBlank()) {
             this.weblogCategoryName =
                     URLUtilities.decode(request.getParameter("cat"));
         }
+        
+        for (String facet : DRILL_DOWN_FACETS) {
+            String value = request.getParameter(facet);
+            if (value != null && !value.isBlank()) {
+                this.drillDowns.put(facet, value);
+            }
+        }
     }
 
     public String getQuery() {
@@ -116,6 +144,29 @@ public class WeblogSearchRequest extends WeblogRequest {
         this.pageNum = pageNum;
     }
 
+    /**
+     * Facet values the results are limited to, by facet name.
+     */
+    public Map<String, String> getDrillDowns() {
+        return Collections.unmodifiableMap(drillDowns);
+    }
+
+    public void setDrillDown(String facet, String value) {
+        if (value == null) {
+            drillDowns.remove(facet);
+        } else {
+            drillDowns.put(facet, value);
+        }
+    }
+
+    public String getAfter() {
+        return after;
+    }
+
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
     public String getWeblogCategoryName() {
         return weblogCategoryName;
     }
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.roller.weblogger.pojos.Weblog;
+
+
+/**
+ * The data a piece of site-wide content was rendered from.
+ *
+ * A servlet starts a recording before it renders site-wide content, and the
+ * models and pagers which fetch data across weblogs record what they fetched
+ * on the rendering thread.  SiteWideCache then only has to evict the content
+ * which depends on whatever changed.  Recording calls made while nothing is
+ * being recorded are ignored.
+ *
+ * Tags and categories are not tracked on their own.  Once an entry changes
+ * there is no telling which tags it used to have, so anything listing entries
+ * across weblogs depends on all of them, and a weblog's categories go with
+ * the weblog.
+ */
+public final class CacheDependencies {
+
+    // entries across all weblogs, and anything derived from them like tags
+    public static final String ENTRIES = "entries";
+
+    // comments across all weblogs
+    public static final String COMMENTS = "comments";
+
+    // the directory of weblogs
+    public static final String WEBLOGS = "weblogs";
+
+    // the directory of users
+    public static final String USERS = "users";
+
+    private static final String WEBLOG_PREFIX = "weblog:";
+
+    private static final ThreadLocal<CacheDependencies> current = new ThreadLocal<>();
+
+    private final Set<String> dependencies = new HashSet<>();
+    private final long started = System.currentTimeMillis();
+
+
+    private CacheDependencies() {
+    }
+
+
+    /**
+     * Start recording the dependencies of content rendered by the current
+     * thread for the given weblog.
+     */
+    public static CacheDependencies start(Weblog weblog) {
+
+        CacheDependencies recording = new CacheDependencies();
+        current.set(recording);
+        record(weblog);
+        return recording;
+    }
+
+
+    /**
+     * Record a dependency of the content currently being rendered.
+     */
+    public static void record(String dependency) {
+
+        CacheDependencies recording = current.get();
+        if (recording != null) {
+            recording.dependencies.add(dependency);
+        }
+    }
+
+
+    /**
+     * Record a dependency on everything in one weblog.
+     */
+    public static void record(Weblog weblog) {
+
+        if (weblog != null) {
+            record(weblog(weblog.getHandle()));
+        }
+    }
+
+
+    /**
+     * The dependency on everything in the weblog with the given handle.
+     */
+    public static String weblog(String handle) {
+        return WEBLOG_PREFIX + handle;
+    }
+
+
+    /**
+     * Stop recording, whatever was recorded stays available.
+     */
+    public void stop() {
+
+        if (current.get() == this) {
+            current.remove();
+        }
+    }
+
+
+    public Set<String> getDependencies() {
+        return Collections.unmodifiableSet(dependencies);
+    }
+
+
+    /**
+     * When the recording started, changes since then may not have made it
+     * into the rendered content.
+     */
+    public long getStarted() {
+        return started;
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+
+
+/**
+ * Makes sure only one thread at a time renders the content for a given
+ * cache key.
+ *
+ * When a popular page drops out of the cache every request for it misses at
+ * the same moment.  Rather than have each of them load models and render the
+ * page, the first thread to {@link #join(String)} a key becomes the leader and
+ * renders it, while the others wait for the leader's output.  Waiting is
+ * bounded by the cache.coalescing.timeout property, after which a follower
+ * gives up and renders the content itself.
+ */
+public final class CacheMissCoalescer {
+
+    private static final Log log = LogFactory.getLog(CacheMissCoalescer.class);
+
+    // prefix for roller config properties that apply to coalescing
+    public static final String CONFIG_ID = "cache.coalescing";
+
+    private final boolean enabled;
+
+    // how long followers wait for the leader, in milliseconds
+    private final long timeout;
+
+    // renders currently in progress, keyed by cache key
+    private final ConcurrentMap<String, Render> renders = new ConcurrentHashMap<>();
+
+    // reference to our singleton instance
+    private static final CacheMissCoalescer singletonInstance = new CacheMissCoalescer();
+
+
+    private CacheMissCoalescer() {
+
+        enabled = WebloggerConfig.getBooleanProperty(CONFIG_ID+".enabled", true);
+        timeout = WebloggerConfig.getIntProperty(CONFIG_ID+".timeout", 5) * (long) RollerConstants.SEC_IN_MS;
+
+        log.info("Cache miss coalescing enabled = "+enabled+", timeout = "+timeout+"ms");
+    }
+
+
+    public static CacheMissCoalescer getInstance() {
+        return singletonInstance;
+    }
+
+
+    /**
+     * Join the render for the given key, becoming its leader if nobody else
+     * is rendering it right now.
+     *
+     * A leader must always call {@link Flight#complete(CachedContent)} when
+     * it is done, even if rendering failed.
+     */
+    public Flight join(String key) {
+
+        Render render = new Render();
+        if (!enabled) {
+            return new Flight(key, render, true);
+        }
+
+        Render current = renders.putIfAbsent(key, render);
+        if (current == null) {
+            log.debug("LEADER "+key);
+            return new Flight(key, render, true);
+        }
+
+        log.debug("FOLLOWER "+key);
+        return new Flight(key, current, false);
+    }
+
+
+    /**
+     * A single thread's part in rendering a cache key.
+     */
+    public final class Flight {
+
+        private final String key;
+        private final Render render;
+        private final boolean leader;
+
+
+        private Flight(String key, Render render, boolean leader) {
+            this.key = key;
+            this.render = render;
+            this.leader = leader;
+        }
+
+
+        public boolean isLeader() {
+            return leader;
+        }
+
+
+        /**
+         * Wait for the leader to finish rendering.
+         *
+         * @return the leader's output, or null if it failed, produced nothing
+         *         cacheable or did not finish in time.
+         */
+        public CachedContent await() {
+
+            if (leader) {
+                throw new IllegalStateException("Leader cannot wait on itself");
+            }
+
+            try {
+                if (render.done.await(timeout, TimeUnit.MILLISECONDS)) {
+                    return render.content;
+                }
+                log.debug("TIMEOUT "+key);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+
+
+        /**
+         * Hand the rendered content over to any followers and end the render.
+         *
+         * @param content the rendered content, or null if there was none.
+         */
+        public void complete(CachedContent content) {
+
+            if (!leader) {
+                return;
+            }
+
+            render.content = content;
+            renders.remove(key, render);
+            render.done.countDown();
+        }
+    }
+
+
+    private static final class Render {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile CachedContent content = null;
+    }
+
+}
@@ -21,15 +21,17 @@ package org.apache.roller.weblogger.ui.rendering.util.cache;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.config.WebloggerConfig;
-import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.WeblogBookmark;
 import org.apache.roller.weblogger.pojos.WeblogEntryComment;
 import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
@@ -44,11 +46,17 @@ import org.apache.roller.weblogger.util.Utilities;
 import org.apache.roller.weblogger.util.cache.Cache;
 import org.apache.roller.weblogger.util.cache.CacheHandler;
 import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
 import org.apache.roller.weblogger.util.cache.ExpiringCacheEntry;
 
 
 /**
  * Cache for site-wide weblog content.
+ *
+ * Content is cached along with the CacheDependencies recorded while it
+ * rendered, and a change only evicts the content depending on it.  Content
+ * put without its dependencies, or loaded back from a disk cache after a
+ * restart, is assumed to depend on everything.
  */
 public final class SiteWideCache implements CacheHandler {
     
@@ -58,12 +66,29 @@ public final class SiteWideCache implements CacheHandler {
     // roller config properties that apply to this cache
     public static final String CACHE_ID = "cache.sitewide";
     
+    // the dependency of content we know nothing about
+    private static final String EVERYTHING = "*";
+    
+    private static final int DEFAULT_MAX_TRACKED = 1000;
+    
     // keep cached content
     private boolean cacheEnabled = true;
     private Cache contentCache = null;
     
     // keep a cached version of last expired time
     private ExpiringCacheEntry lastUpdateTime = null;
+    
+    // cache keys by what they depend on and the other way around, guarded
+    // by the tracking lock along with the content cache updates they match
+    private final Object tracking = new Object();
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+    private final Map<String, Set<String>> dependencies = new HashMap<>();
+    
+    // when each dependency last changed
+    private final Map<String, Long> changes = new HashMap<>();
+    
+    // give up tracking and start over beyond this many keys
+    private int maxTracked = DEFAULT_MAX_TRACKED;
 
     // reference to our singleton instance
     private static final SiteWideCache singletonInstance = new SiteWideCache();
@@ -91,6 +116,14 @@ public final class SiteWideCache implements CacheHandler {
         
         if(cacheEnabled) {
             contentCache = CacheManager.constructCache(this, cacheProps);
+            
+            // keys evicted by the cache itself stay tracked for a while
+            try {
+                maxTracked = Math.max(DEFAULT_MAX_TRACKED,
+                        20 * Integer.parseInt(cacheProps.get("size")));
+            } catch(NumberFormatException e) {
+                // use the default
+            }
         } else {
             log.warn("Caching has been DISABLED");
         }
@@ -114,20 +147,68 @@ public final class SiteWideCache implements CacheHandler {
             log.debug("MISS "+key);
         } else {
             log.debug("HIT "+key);
+            
+            // a disk cache may hand out content from before a restart
+            synchronized (tracking) {
+                if (!dependencies.containsKey(key)) {
+                    track(key, Collections.singleton(EVERYTHING));
+                }
+            }
         }
         
         return entry;
     }
     
     
+    /**
+     * Cache content which could depend on anything.
+     */
     public void put(String key, Object value) {
+        put(key, value, Collections.singleton(EVERYTHING), Long.MAX_VALUE);
+    }
+    
+    
+    /**
+     * Cache content along with what it was rendered from.
+     */
+    public void put(String key, Object value, CacheDependencies recorded) {
+        put(key, value, recorded.getDependencies(), recorded.getStarted());
+    }
+    
+    
+    private void put(String key, Object value, Set<String> dependsOn, long renderStarted) {
         
         if (!cacheEnabled) {
             return;
         }
         
-        contentCache.put(key, value);
-        log.debug("PUT "+key);
+        // compress just once, every gzip capable client then gets these bytes
+        if (value instanceof CachedContent) {
+            ((CachedContent) value).compress();
+        }
+        
+        synchronized (tracking) {
+            // don't cache content which missed a change made while rendering
+            Set<String> changed = new HashSet<>(dependsOn);
+            changed.add(EVERYTHING);
+            for (String dependency : changed) {
+                Long changedAt = changes.get(dependency);
+                if (changedAt != null && changedAt >= renderStarted) {
+                    log.debug("SKIPPED "+key+", "+dependency+" changed");
+                    return;
+                }
+            }
+            
+            if (dependencies.size() >= maxTracked && !dependencies.containsKey(key)) {
+                log.debug("Tracking "+maxTracked+" keys, starting over");
+                clear();
+            }
+            
+            contentCache.put(key, value);
+            untrack(key);
+            track(key, dependsOn);
+        }
+        log.debug("PUT "+key+" "+dependsOn);
     }
 
     
@@ -137,7 +218,10 @@ public final class SiteWideCache implements CacheHandler {
             return;
         }
         
-        contentCache.remove(key);
+        synchronized (tracking) {
+            contentCache.remove(key);
+            untrack(key);
+        }
         log.debug("REMOVE "+key);
     }
     
@@ -148,7 +232,13 @@ public final class SiteWideCache implements CacheHandler {
             return;
         }
         
-        contentCache.clear();
+        synchronized (tracking) {
+            contentCache.clear();
+            dependents.clear();
+            dependencies.clear();
+            changes.clear();
+            changes.put(EVERYTHING, System.currentTimeMillis());
+        }
         this.lastUpdateTime = null;
         log.debug("CLEAR");
     }
@@ -234,6 +324,11 @@ public final class SiteWideCache implements CacheHandler {
         // add page number when applicable
         if(pageRequest.getWeblogAnchor() == null) {
             key.append("/page=").append(pageRequest.getPageNum());
+            if(pageRequest.getAfter() != null) {
+                key.append("/after=").append(pageRequest.getAfter());
+            } else if(pageRequest.getBefore() != null) {
+                key.append("/before=").append(pageRequest.getBefore());
+            }
         }
         
         // add login state
@@ -310,13 +405,8 @@ public final class SiteWideCache implements CacheHandler {
      */
     @Override
     public void invalidate(WeblogEntry entry) {
-        
-        if (!cacheEnabled) {
-            return;
-        }
-        
-        this.contentCache.clear();
-        this.lastUpdateTime = null;
+        evict(CacheDependencies.weblog(entry.getWebsite().getHandle()),
+                CacheDependencies.ENTRIES, CacheDependencies.COMMENTS);
     }
     
     
@@ -325,13 +415,9 @@ public final class SiteWideCache implements CacheHandler {
      */
     @Override
     public void invalidate(Weblog website) {
-        
-        if (!cacheEnabled) {
-            return;
-        }
-        
-        this.contentCache.clear();
-        this.lastUpdateTime = null;
+        evict(CacheDependencies.weblog(website.getHandle()),
+                CacheDependencies.ENTRIES, CacheDependencies.COMMENTS,
+                CacheDependencies.WEBLOGS);
     }
     
     
@@ -340,9 +426,7 @@ public final class SiteWideCache implements CacheHandler {
      */
     @Override
     public void invalidate(WeblogBookmark bookmark) {
-        if(WebloggerRuntimeConfig.isSiteWideWeblog(bookmark.getWebsite().getHandle())) {
-            invalidate(bookmark.getWebsite());
-        }
+        evict(CacheDependencies.weblog(bookmark.getWebsite().getHandle()));
     }
     
     
@@ -351,9 +435,7 @@ public final class SiteWideCache implements CacheHandler {
      */
     @Override
     public void invalidate(WeblogBookmarkFolder folder) {
-        if(WebloggerRuntimeConfig.isSiteWideWeblog(folder.getWeblog().getHandle())) {
-            invalidate(folder.getWeblog());
-        }
+        evict(CacheDependencies.weblog(folder.getWeblog().getHandle()));
     }
     
     
@@ -362,9 +444,8 @@ public final class SiteWideCache implements CacheHandler {
      */
     @Override
     public void invalidate(WeblogEntryComment comment) {
-        if(WebloggerRuntimeConfig.isSiteWideWeblog(comment.getWeblogEntry().getWebsite().getHandle())) {
-            invalidate(comment.getWeblogEntry().getWebsite());
-        }
+        evict(CacheDependencies.weblog(comment.getWeblogEntry().getWebsite().getHandle()),
+                CacheDependencies.COMMENTS);
     }
     
     
@@ -373,7 +454,7 @@ public final class SiteWideCache implements CacheHandler {
      */
     @Override
     public void invalidate(User user) {
-        // ignored
+        evict(CacheDependencies.USERS);
     }
     
     
@@ -382,9 +463,7 @@ public final class SiteWideCache implements CacheHandler {
      */
     @Override
     public void invalidate(WeblogCategory category) {
-        if(WebloggerRuntimeConfig.isSiteWideWeblog(category.getWeblog().getHandle())) {
-            invalidate(category.getWeblog());
-        }
+        evict(CacheDependencies.weblog(category.getWeblog().getHandle()));
     }
     
     
@@ -393,8 +472,66 @@ public final class SiteWideCache implements CacheHandler {
      */
     @Override
     public void invalidate(WeblogTemplate template) {
-        if(WebloggerRuntimeConfig.isSiteWideWeblog(template.getWeblog().getHandle())) {
-            invalidate(template.getWeblog());
+        evict(CacheDependencies.weblog(template.getWeblog().getHandle()));
+    }
+    
+    
+    /**
+     * Evict all content depending on any of the given dependencies, or on
+     * everything.
+     */
+    private void evict(String... changed) {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        int evicted = 0;
+        synchronized (tracking) {
+            long now = System.currentTimeMillis();
+            Set<String> keys = new HashSet<>();
+            for (String dependency : changed) {
+                changes.put(dependency, now);
+                keys.addAll(dependents.getOrDefault(dependency, Collections.emptySet()));
+            }
+            keys.addAll(dependents.getOrDefault(EVERYTHING, Collections.emptySet()));
+            
+            for (String key : keys) {
+                contentCache.remove(key);
+                untrack(key);
+                evicted++;
+            }
+        }
+        this.lastUpdateTime = null;
+        
+        log.debug("EVICTED "+evicted+" for "+Arrays.toString(changed));
+    }
+    
+    
+    // must hold the tracking lock
+    private void track(String key, Set<String> dependsOn) {
+        
+        dependencies.put(key, dependsOn);
+        for (String dependency : dependsOn) {
+            dependents.computeIfAbsent(dependency, k -> new HashSet<>()).add(key);
+        }
+    }
+    
+    
+    // must hold the tracking lock
+    private void untrack(String key) {
+        
+        Set<String> dependsOn = dependencies.remove(key);
+        if (dependsOn != null) {
+            for (String dependency : dependsOn) {
+                Set<String> keys = dependents.get(dependency);
+                if (keys != null) {
+                    keys.remove(key);
+                    if (keys.isEmpty()) {
+                        dependents.remove(dependency);
+                    }
+                }
+            }
         }
     }
     
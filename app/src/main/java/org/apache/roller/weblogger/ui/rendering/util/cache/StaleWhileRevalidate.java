@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.util.cache.LazyExpiringCacheEntry;
+
+
+/**
+ * Stale-while-revalidate policy for the weblog content caches.
+ *
+ * Once a weblog changes all of its cached content is invalid, but with this
+ * policy enabled the old content may still be served for a grace period
+ * after the change while new content is rendered.  The policy is set per
+ * cache with the properties
+ *
+ *   <cache_id>.staleWhileRevalidate=true|false
+ *   <cache_id>.staleGracePeriod=<seconds>
+ */
+final class StaleWhileRevalidate {
+
+    private static final Log log = LogFactory.getLog(StaleWhileRevalidate.class);
+
+    private final boolean enabled;
+
+    // how long after a change stale content may be served, in milliseconds
+    private final long gracePeriod;
+
+    // keys currently being rendered in the background
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+
+    StaleWhileRevalidate(String cacheId) {
+
+        enabled = WebloggerConfig.getBooleanProperty(cacheId+".staleWhileRevalidate", false);
+        gracePeriod = WebloggerConfig.getIntProperty(cacheId+".staleGracePeriod", 60) * (long) RollerConstants.SEC_IN_MS;
+
+        log.info(cacheId+" stale-while-revalidate = "+enabled+", grace period = "+gracePeriod+"ms");
+    }
+
+
+    /**
+     * Check if an entry which was invalidated by a change at lastModified may
+     * still be served.
+     */
+    boolean isServable(LazyExpiringCacheEntry entry, long lastModified) {
+
+        return enabled && entry != null && entry.isInvalid(lastModified)
+                && System.currentTimeMillis() <= lastModified + gracePeriod;
+    }
+
+
+    /**
+     * Run the given rendering task in the background, unless one is already
+     * running for the key.
+     */
+    void revalidate(String key, Runnable task) {
+
+        if (!enabled || !revalidating.add(key)) {
+            return;
+        }
+
+        Runnable revalidation = () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.warn("Error revalidating "+key, e);
+            } finally {
+                revalidating.remove(key);
+                WebloggerFactory.getWeblogger().release();
+            }
+        };
+
+        try {
+            log.debug("REVALIDATE "+key);
+            WebloggerFactory.getWeblogger().getThreadManager().executeInBackground(revalidation);
+        } catch (InterruptedException e) {
+            revalidating.remove(key);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -31,6 +31,7 @@ import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.util.Utilities;
 import org.apache.roller.weblogger.util.cache.Cache;
 import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.CachedContent;
 import org.apache.roller.weblogger.util.cache.LazyExpiringCacheEntry;
 
 
@@ -48,6 +49,7 @@ public final class WeblogPageCache {
     // keep cached content
     private boolean cacheEnabled = true;
     private Cache contentCache = null;
+    private StaleWhileRevalidate staleWhileRevalidate = null;
     
     // reference to our singleton instance
     private static final WeblogPageCache singletonInstance = new WeblogPageCache();
@@ -75,6 +77,7 @@ public final class WeblogPageCache {
         
         if (cacheEnabled) {
             contentCache = CacheManager.constructCache(null, cacheProps);
+            staleWhileRevalidate = new StaleWhileRevalidate(CACHE_ID);
         } else {
             log.warn("Caching has been DISABLED");
         }
@@ -112,12 +115,54 @@ public final class WeblogPageCache {
     }
     
     
+    /**
+     * Lookup an entry which is no longer fresh but may still be served under
+     * the stale-while-revalidate policy for this cache.
+     *
+     * @return the stale entry, or null if there is nothing to serve.
+     */
+    public LazyExpiringCacheEntry getStale(String key, long lastModified) {
+        
+        if (!cacheEnabled) {
+            return null;
+        }
+        
+        LazyExpiringCacheEntry lazyEntry =
+                (LazyExpiringCacheEntry) this.contentCache.get(key);
+        if (staleWhileRevalidate.isServable(lazyEntry, lastModified)) {
+            log.debug("HIT-STALE "+key);
+            return lazyEntry;
+        }
+        
+        return null;
+    }
+    
+    
+    /**
+     * Render fresh content for a stale entry in the background.  The task is
+     * expected to put() the new content when it is done.
+     */
+    public void revalidate(String key, Runnable task) {
+        
+        if (!cacheEnabled) {
+            return;
+        }
+        
+        staleWhileRevalidate.revalidate(key, task);
+    }
+    
+    
     public void put(String key, Object value) {
         
         if (!cacheEnabled) {
             return;
         }
         
+        // compress just once, every gzip capable client then gets these bytes
+        if (value instanceof CachedContent) {
+            ((CachedContent) value).compress();
+        }
+        
         contentCache.put(key, new LazyExpiringCacheEntry(value));
         log.debug("PUT "+key);
     }
@@ -205,6 +250,11 @@ public final class WeblogPageCache {
         // add page number when applicable
         if(pageRequest.getWeblogAnchor() == null) {
             key.append("/page=").append(pageRequest.getPageNum());
+            if(pageRequest.getAfter() != null) {
+                key.append("/after=").append(pageRequest.getAfter());
+            } else if(pageRequest.getBefore() != null) {
+                key.append("/before=").append(pageRequest.getBefore());
+            }
         }
         
         // add login state
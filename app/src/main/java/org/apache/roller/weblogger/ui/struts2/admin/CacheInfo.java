@@ -18,14 +18,25 @@
 
 package org.apache.roller.weblogger.ui.struts2.admin;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.text.StringEscapeUtils;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.search.IndexRebuildStatus;
 import org.apache.roller.weblogger.pojos.GlobalPermission;
 import org.apache.roller.weblogger.ui.struts2.util.UIAction;
 import org.apache.roller.weblogger.util.cache.CacheManager;
 import org.apache.struts2.convention.annotation.AllowedMethods;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 
 /**
  * Action for displaying rendering cache info.
@@ -33,12 +44,17 @@ import org.apache.struts2.convention.annotation.AllowedMethods;
 // TODO: make this work @AllowedMethods({"execute"})
 public class CacheInfo extends UIAction {
     
+    private static final Log log = LogFactory.getLog(CacheInfo.class);
+    
     // map of stats to display
     private Map<String, Map<String, Object>> stats = Collections.emptyMap();
     
     // cache which we would clear when clear() is called
     private String cache = null;
     
+    // stats as json, set when json() is called
+    private InputStream jsonStream = null;
+    
     
     public CacheInfo() {
         this.actionName = "cacheInfo";
@@ -93,6 +109,92 @@ public class CacheInfo extends UIAction {
     }
 
     
+    /**
+     * rebuildIndex action.
+     *
+     * schedules a rebuild of the search index for all weblogs, whose progress
+     * is then shown by getRebuildStatus().
+     */
+    public String rebuildIndex() {
+        
+        try {
+            WebloggerFactory.getWeblogger().getIndexManager().rebuildWeblogIndex();
+            addMessage("cacheInfo.rebuild.scheduled");
+        } catch (Exception ex) {
+            log.error("Error doing index rebuild", ex);
+            addError("cacheInfo.rebuild.failure");
+        }
+        
+        return SUCCESS;
+    }
+    
+    
+    /**
+     * Progress of the running or last search index rebuild, of any weblog or
+     * of the whole site, null if there was none.
+     */
+    public IndexRebuildStatus getRebuildStatus() {
+        return WebloggerFactory.getWeblogger().getIndexManager().getRebuildStatus();
+    }
+
+    
+    /**
+     * json action.
+     *
+     * returns the stats of all caches as a json object keyed by cache id,
+     * for tools which track them over time.
+     */
+    public String json() {
+        jsonStream = new ByteArrayInputStream(toJson(getStats()).getBytes(UTF_8));
+        return "json";
+    }
+    
+    
+    static String toJson(Map<String, Map<String, Object>> stats) {
+        
+        StringBuilder json = new StringBuilder("{");
+        String cacheSeparator = "";
+        for (Map.Entry<String, Map<String, Object>> cacheStats : new TreeMap<>(stats).entrySet()) {
+            json.append(cacheSeparator).append('"')
+                    .append(StringEscapeUtils.escapeJson(cacheStats.getKey())).append("\": {");
+            
+            String statSeparator = "";
+            for (Map.Entry<String, Object> stat : new TreeMap<>(cacheStats.getValue()).entrySet()) {
+                json.append(statSeparator).append('"')
+                        .append(StringEscapeUtils.escapeJson(stat.getKey())).append("\": ");
+                
+                Object value = stat.getValue();
+                if (value instanceof Date) {
+                    value = ((Date) value).getTime();
+                }
+                if (value instanceof Number && !isNonFinite((Number) value)) {
+                    json.append(value);
+                } else if (value == null || value instanceof Number) {
+                    json.append("null");
+                } else {
+                    json.append('"').append(StringEscapeUtils.escapeJson(value.toString())).append('"');
+                }
+                statSeparator = ", ";
+            }
+            
+            json.append('}');
+            cacheSeparator = ", ";
+        }
+        return json.append('}').toString();
+    }
+    
+    
+    private static boolean isNonFinite(Number number) {
+        return (number instanceof Double || number instanceof Float)
+                && !Double.isFinite(number.doubleValue());
+    }
+    
+    
+    public InputStream getJsonStream() {
+        return jsonStream;
+    }
+    
+    
     public Map<String, Map<String, Object>> getStats() {
         return stats;
     }
@@ -22,10 +22,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
@@ -221,28 +219,25 @@ public class Comments extends UIAction {
         try {
             WeblogEntryManager wmgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
 
-            // if search is enabled, we will need to re-index all entries with
-            // comments that have been deleted, so build a list of those entries
-            Set<WeblogEntry> reindexEntries = new HashSet<>();
+            // if search is enabled, we will need to remove all comments that
+            // have been deleted from the index, so build a list of them
+            List<WeblogEntryComment> unindexComments = new ArrayList<>();
             if (WebloggerConfig.getBooleanProperty("search.enabled")) {
 
                 CommentSearchCriteria csc = getCommentSearchCriteria();
 
-                List<WeblogEntryComment> targetted = wmgr.getComments(csc);
-                for (WeblogEntryComment comment : targetted) {
-                    reindexEntries.add(comment.getWeblogEntry());
-                }
+                unindexComments.addAll(wmgr.getComments(csc));
             }
 
             int deleted = wmgr.removeMatchingComments(getActionWeblog(), null,
                     getBean().getSearchString(), getBean().getStartDate(),
                     getBean().getEndDate(), getBean().getStatus());
 
-            // if we've got entries to reindex then do so
-            if (!reindexEntries.isEmpty()) {
+            // if we've got comments to remove from the index then do so
+            if (!unindexComments.isEmpty()) {
                 IndexManager imgr = WebloggerFactory.getWeblogger().getIndexManager();
-                for (WeblogEntry entry : reindexEntries) {
-                    imgr.addEntryReIndexOperation(entry);
+                for (WeblogEntryComment comment : unindexComments) {
+                    imgr.removeCommentIndexOperation(comment);
                 }
             }
 
@@ -272,10 +267,10 @@ public class Comments extends UIAction {
 
             List<WeblogEntryComment> flushList = new ArrayList<>();
 
-            // if search is enabled, we will need to re-index all entries with
-            // comments that have been approved, so build a list of those
-            // entries
-            Set<WeblogEntry> reindexList = new HashSet<>();
+            // if search is enabled, we will need to re-index all comments
+            // that have changed status, so build a list of those comments
+            List<WeblogEntryComment> reindexList = new ArrayList<>();
+            IndexManager imgr = WebloggerFactory.getWeblogger().getIndexManager();
 
             // delete all comments with delete box checked
             List<String> deletes = Arrays.asList(getBean().getDeleteComments());
@@ -290,7 +285,9 @@ public class Comments extends UIAction {
                     if (getActionWeblog().equals(
                             deleteComment.getWeblogEntry().getWebsite())) {
                         flushList.add(deleteComment);
-                        reindexList.add(deleteComment.getWeblogEntry());
+
+                        // queued now, as removing it nulls out the id
+                        imgr.removeCommentIndexOperation(deleteComment);
                         wmgr.removeComment(deleteComment);
                     }
                 }
@@ -334,7 +331,7 @@ public class Comments extends UIAction {
                         wmgr.saveComment(comment);
 
                         flushList.add(comment);
-                        reindexList.add(comment.getWeblogEntry());
+                        reindexList.add(comment);
 
                     } else if (spamIds.contains(ids[i])) {
                         log.debug("Marking as spam - " + comment.getId());
@@ -342,7 +339,7 @@ public class Comments extends UIAction {
                         wmgr.saveComment(comment);
 
                         flushList.add(comment);
-                        reindexList.add(comment.getWeblogEntry());
+                        reindexList.add(comment);
 
                     } else if (!ApprovalStatus.DISAPPROVED.equals(comment
                             .getStatus())) {
@@ -351,7 +348,7 @@ public class Comments extends UIAction {
                         wmgr.saveComment(comment);
 
                         flushList.add(comment);
-                        reindexList.add(comment.getWeblogEntry());
+                        reindexList.add(comment);
                     }
                 }
             }
@@ -370,13 +367,9 @@ public class Comments extends UIAction {
                         resources);
             }
 
-            // if we've got entries to reindex then do so
-            if (!reindexList.isEmpty()) {
-                IndexManager imgr = WebloggerFactory.getWeblogger()
-                        .getIndexManager();
-                for (WeblogEntry entry : reindexList) {
-                    imgr.addEntryReIndexOperation(entry);
-                }
+            // if we've got comments to reindex then do so
+            for (WeblogEntryComment comment : reindexList) {
+                imgr.addCommentIndexOperation(comment);
             }
 
             addMessage("commentManagement.updateSuccess");
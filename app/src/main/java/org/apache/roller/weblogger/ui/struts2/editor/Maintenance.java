@@ -23,6 +23,7 @@ import java.util.Date;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.IndexRebuildStatus;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.pojos.Weblog;
@@ -68,6 +69,18 @@ public class Maintenance extends UIAction {
         return SUCCESS;
     }
 
+    /**
+     * Progress of the running or last search index rebuild of this weblog,
+     * null if the last rebuild was of another weblog or of the whole site.
+     */
+    public IndexRebuildStatus getRebuildStatus() {
+        IndexRebuildStatus status = WebloggerFactory.getWeblogger().getIndexManager().getRebuildStatus();
+        if (status != null && getActionWeblog().getHandle().equals(status.getWeblogHandle())) {
+            return status;
+        }
+        return null;
+    }
+
     /**
      * Flush page cache for weblog.
      */
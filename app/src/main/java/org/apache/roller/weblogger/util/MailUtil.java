@@ -233,240 +233,227 @@ public class MailUtil {
      *
      * @param commentObject      The new comment
      * @param messages           Messages to be included in e-mail (or null). 
-     */
      *                           Errors will be assumed to be "validation errors" 
      *                           and messages will be assumed to be "from the system"
+     * @param resources          Resources used to render the notification
+     * @param notifySubscribers  Whether to also notify other commenters subscribed to the entry
      */
     public static void sendEmailNotification(WeblogEntryComment commentObject,
-import java.text.MessageFormat;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
-
-// Assuming these imports are from the original file and are needed for the types used.
-// The instruction was to keep ALL original imports.
-// The provided block does not contain the actual import statements, but refers to types.
-// I'll assume standard Java types and Roller-specific types are already imported.
-// For example:
-// import org.apache.commons.lang.StringUtils;
-// import org.apache.commons.logging.Log;
-// import org.apache.commons.logging.LogFactory;
-// import org.roller.business.WebloggerFactory;
-// import org.roller.pojos.Weblog;
-// import org.roller.pojos.WeblogEntry;
-// import org.roller.pojos.WeblogEntryComment;
-// import org.roller.pojos.User;
-// import org.roller.util.I18nMessages;
-// import org.roller.util.MailUtil.MailingException;
-// import org.roller.util.RollerMessages;
-// import org.roller.util.RollerMessages.RollerMessage;
-// import org.roller.util.Utilities;
-// import org.roller.util.WebloggerRuntimeConfig;
-// import org.
-
-            // Send email notifications because a new comment has been approved
-            sendEmailNotification(comment, messages, resources, true);
-
-            // Send approval notification to author of approved comment
-            sendEmailApprovalNotification(comment, resources);
-        }
-    }
-    
-    
-    /**
-     * Send message to author of approved comment
-     */
-    public static void sendEmailApprovalNotification(WeblogEntryComment cd, I18nMessages resources)
+                                             RollerMessages messages,
+                                             I18nMessages resources,
+                                             boolean notifySubscribers)
             throws MailingException {
         
-        WeblogEntry entry = cd.getWeblogEntry();
+        WeblogEntry entry = commentObject.getWeblogEntry();
         Weblog weblog = entry.getWebsite();
         User user = entry.getCreator();
         
-        // use either the weblog configured from address or the site configured from address
-        String from = weblog.getEmailAddress();
-        if(StringUtils.isEmpty(from)) {
-            from = user.getEmailAddress();
+        // Only send email if email notificaiton is enabled, or a pending message that needs moderation.
+        if (!commentObject.getPending()) {
+            boolean notify = WebloggerRuntimeConfig.getBooleanProperty("users.comments.emailnotify");
+            if (!notify || !weblog.getEmailComments()) {
+                // notifications disabled, just bail
+                return;
+            } else {
+                log.debug("Comment notification enabled ... preparing email");
+            }
+        } else {
+            log.debug("Pending comment...sending moderation email to blog owner");
         }
         
-        // form the message to be sent
-        String subject = resources.getString("email.comment.commentApproved");
-        
-        StringBuilder msg = new StringBuilder();
-        msg.append(resources.getString("email.comment.commentApproved"));
-        msg.append("\n\n");
-        msg.append(WebloggerFactory.getWeblogger().getUrlStrategy()
-            .getWeblogCommentsURL(weblog, null, entry.getAnchor(), true));
+        // build list of email addresses to send notification to
+        Set<String> subscribers = new TreeSet<>();
         
-        // send message to author of approved comment
-        try {
-            sendTextMessage(from, new String[] {cd.getEmail()}, null, null, subject, msg.toString());
-        } catch (Exception e) {
-            log.warn("Exception sending comment mail: " + e.getMessage());
-            // This will log the stack trace if debug is enabled
-            if (log.isDebugEnabled()) {
-                log.debug(e);
+        // If we are to notify subscribers, then...
+        if (commentObject.getApproved() && notifySubscribers) {
+            log.debug("Sending notification email to all subscribers");
+            
+            // Get all the subscribers to this comment thread
+            List<WeblogEntryComment> comments = entry.getComments(true, true);
+            for (WeblogEntryComment comment : comments) {
+                if (!StringUtils.isEmpty(comment.getEmail())) {
+                    // if user has commented twice, count the most recent notify setting
+                    if (comment.getNotify()) {
+                        // only add those with valid email
+                        if (comment.getEmail().matches(EMAIL_ADDR_REGEXP)) {
+                            log.debug("Add to subscribers list: " + comment.getEmail());
+                            subscribers.add(comment.getEmail());
+                        }
+                    } else {
+                        // remove user who doesn't want to be notified
+                        log.debug("Remove from subscribers list: " + comment.getEmail());
+                        subscribers.remove(comment.getEmail());
+                    }
+                }
             }
+        } else {
+            log.debug("Sending notification email only to weblog owner");
         }
         
-        log.debug("Done sending email message");
-    }
-    
-    
-    // agangolli: Incorporated suggested changes from Ken Blackler.
-    
-    /**
-     * This method is used to send a Message with a pre-defined
-     * mime-type.
-     *
-     * @param from e-mail address of sender
-     * @param to e-mail address(es) of recipients
-     * @param subject subject of e-mail
-     * @param content the body of the e-mail
-     * @param mimeType type of message, i.e. text/plain or text/html
-     * @throws MessagingException the exception to indicate failure
-     */
-    public static void sendMessage(String from, String[] to, String[] cc, String[] bcc, String subject,
-            String content, String mimeType) throws MessagingException {
+        // Form array of commenter addrs
+        String[] commenterAddrs = subscribers.toArray(new String[0]);
         
-        MailProvider mailProvider = WebloggerStartup.getMailProvider();
-        if (mailProvider == null) {
-            return;
-        }
+        //------------------------------------------
+        // Form the messages to be sent -
+        // Build separate owner and commenter (aka subscriber) messages
         
-        Session session = mailProvider.getSession();
-        MimeMessage message = new MimeMessage(session);
+        // Determine with mime type to use for e-mail
+        StringBuilder msg = new StringBuilder();
+        StringBuilder ownermsg = new StringBuilder();
+        boolean escapeHtml = !WebloggerRuntimeConfig.getBooleanProperty("users.comments.htmlenabled");
         
-        // n.b. any default from address is expected to be determined by caller.
-        if (! StringUtils.isEmpty(from)) {
-            InternetAddress sentFrom = new InternetAddress(from);
-            message.setFrom(sentFrom);
-            if (log.isDebugEnabled()) {
-                log.debug("e-mail from: " + sentFrom);
-            }
-        }
+        // first the commenter message
         
-        if (to!=null) {
-            InternetAddress[] sendTo = new InternetAddress[to.length];
-            
-            for (int i = 0; i < to.length; i++) {
-                sendTo[i] = new InternetAddress(to[i]);
-                if (log.isDebugEnabled()) {
-                    log.debug("sending e-mail to: " + to[i]);
-                }
-            }
-            message.setRecipients(Message.RecipientType.TO, sendTo);
+        if (!escapeHtml) {
+            msg.append("<html><body style=\"background: white; ");
+            msg.append(" color: black; font-size: 12px\">");
         }
         
-        if (cc != null) {
-            InternetAddress[] copyTo = new InternetAddress[cc.length];
-            
-            for (int i = 0; i < cc.length; i++) {
-                copyTo[i] = new InternetAddress(cc[i]);
-                if (log.isDebugEnabled()) {
-                    log.debug("copying e-mail to: " + cc[i]);
-                }
-            }
-            message.setRecipients(Message.RecipientType.CC, copyTo);
+        if (!StringUtils.isEmpty(commentObject.getName())) {
+            msg.append(commentObject.getName()).append(" ")
+                    .append(resources.getString("email.comment.wrote")).append(": ");
+        } else {
+            msg.append(resources.getString("email.comment.anonymous")).append(": ");
         }
         
-        if (bcc != null) {
-            InternetAddress[] copyTo = new InternetAddress[bcc.length];
-            
-            for (int i = 0; i < bcc.length; i++) {
-                copyTo[i] = new InternetAddress(bcc[i]);
-                if (log.isDebugEnabled()) {
-                    log.debug("blind copying e-mail to: " + bcc[i]);
-                }
-            }
-            message.setRecipients(Message.RecipientType.BCC, copyTo);
+        msg.append((escapeHtml) ? "\n\n" : "<br /><br />");
+        
+        msg.append((escapeHtml) ? Utilities.escapeHTML(commentObject.getContent())
+            : Utilities.transformToHTMLSubset(Utilities.escapeHTML(commentObject.getContent())));
+        
+        msg.append((escapeHtml) ? "\n\n----\n"
+                : "<br /><br /><hr /><span style=\"font-size: 11px\">");
+        msg.append(resources.getString("email.comment.respond")).append(": ");
+        msg.append((escapeHtml) ? "\n" : "<br />");
+        
+        // Build link back to comment
+        String commentURL = WebloggerFactory.getWeblogger().getUrlStrategy()
+                .getWeblogCommentsURL(weblog, null, entry.getAnchor(), true);
+        
+        if (escapeHtml) {
+            msg.append(commentURL);
+        } else {
+            msg.append("<a href=\"").append(commentURL).append("\">").append(commentURL).append("</a></span>");
         }
-        message.setSubject((subject == null) ? "(no subject)" : subject, "UTF-8");
-        message.setContent(content, mimeType);
-        message.setSentDate(new java.util.Date());
         
-        // First collect all the addresses together.
-        Address[] remainingAddresses = message.getAllRecipients();
-        int nAddresses = remainingAddresses.length;
-        boolean bFailedToSome = false;
+        // next the owner message
         
-        SendFailedException sendex = new SendFailedException("Unable to send message to some recipients");
+        // First, list any messages from the system that were passed in:
+        if (messages.getMessageCount() > 0) {
+            ownermsg.append((escapeHtml) ? "" : "<p>");
+            ownermsg.append(resources.getString("commentServlet.email.thereAreSystemMessages"));
+            ownermsg.append((escapeHtml) ? "\n\n" : "</p>");
+            ownermsg.append((escapeHtml) ? "" : "<ul>");
+        }
+        for (Iterator<RollerMessage> it = messages.getMessages(); it.hasNext();) {
+            RollerMessage rollerMessage = it.next();
+            ownermsg.append((escapeHtml) ? "" : "<li>");
+            ownermsg.append(MessageFormat.format(resources.getString(
+                    rollerMessage.getKey()), (Object[]) rollerMessage.getArgs()));
+            ownermsg.append((escapeHtml) ? "\n\n" : "</li>");
+        }
+        if (messages.getMessageCount() > 0) {
+            ownermsg.append((escapeHtml) ? "\n\n" : "</ul>");
+        }
         
-        Transport transport = mailProvider.getTransport();
+        // Next, list any validation error messages that were passed in:
+        if (messages.getErrorCount() > 0) {
+            ownermsg.append((escapeHtml) ? "" : "<p>");
+            ownermsg.append(resources.getString("commentServlet.email.thereAreErrorMessages"));
+            ownermsg.append((escapeHtml) ? "\n\n" : "</p>");
+            ownermsg.append((escapeHtml) ? "" : "<ul>");
+        }
+        for (Iterator<RollerMessage> it = messages.getErrors(); it.hasNext();) {
+            RollerMessage rollerMessage = it.next();
+            ownermsg.append((escapeHtml) ? "" : "<li>");
+            ownermsg.append(MessageFormat.format(resources.getString(
+                    rollerMessage.getKey()), (Object[]) rollerMessage.getArgs()));
+            ownermsg.append((escapeHtml) ? "\n\n" : "</li>");
+        }
+        if (messages.getErrorCount() > 0) {
+            ownermsg.append((escapeHtml) ? "\n\n" : "</ul>");
+        }
         
-        // Try to send while there remain some potentially good addresses
-        try { 
-            do {
-                // Avoid a loop if we are stuck
-                nAddresses = remainingAddresses.length;
-
-                try {
-                    // Send to the list of remaining addresses, ignoring the addresses attached to the message
-                    transport.sendMessage(message, remainingAddresses);
-                } catch(SendFailedException ex) {
-                    bFailedToSome=true;
-                    sendex.setNextException(ex);
-
-                    // Extract the remaining potentially good addresses
-                    remainingAddresses=ex.getValidUnsentAddresses();
-                }
-            } while (remainingAddresses!=null && remainingAddresses.length>0 
-                    && remainingAddresses.length!=nAddresses);
-            
-        } finally {
-            transport.close();
+        ownermsg.append(msg);
+        
+        // add link to weblog edit page so user can login to manage comments
+        ownermsg.append((escapeHtml) ? "\n\n----\n" :
+            "<br /><br /><hr /><span style=\"font-size: 11px\">");
+        ownermsg.append(resources.getString("email.comment.management.link")).append(": ");
+        ownermsg.append((escapeHtml) ? "\n" : "<br />");
+        
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("bean.entryId", entry.getId());
+        String deleteURL = WebloggerFactory.getWeblogger().getUrlStrategy().getActionURL(
+                "comments", "/roller-ui/authoring", weblog.getHandle(), parameters, true);
+        
+        if (escapeHtml) {
+            ownermsg.append(deleteURL);
+        } else {
+            ownermsg.append("<a href=\"").append(deleteURL).append("\">").append(deleteURL).append("</a></span>");
+            msg.append("</body></html>");
+            ownermsg.append("</body></html>");
         }
         
-        if (bFailedToSome) {
-            throw sendex;
+        String subject;
+        if (commentObject.getPending()) {
+            subject = resources.getString("email.comment.moderate.title") + ": ";
+        } else if ((subscribers.size() > 1) ||
+                (StringUtils.equals(commentObject.getEmail(), user.getEmailAddress()))) {
+            subject = "RE: " + resources.getString("email.comment.title") + ": ";
+        } else {
+            subject = resources.getString("email.comment.title") + ": ";
         }
-    }
-    
-    
-    /**
-     * This method is used to send a Text Message.
-     *
-     * @param from e-mail address of sender
-     * @param to e-mail addresses of recipients
-     * @param cc e-mail address of cc recipients
-     * @param bcc e-mail address of bcc recipients
-     * @param subject subject of e-mail
-     * @param content the body of the e-mail
-     * @throws MessagingException the exception to indicate failure
-     */
-    public static void sendTextMessage(String from, String[] to, String[] cc, String[] bcc,
-                                       String subject, String content) throws MessagingException {
-        sendMessage(from, to, cc, bcc, subject, content, "text/plain; charset=utf-8");
-    }
-
-    /**
-     * This method is used to send a HTML Message
-     *
-     * @param from e-mail address of sender
-     * @param to e-mail address(es) of recipients
-     * @param subject subject of e-mail
-     * @param content the body of the e-mail
-     * @throws MessagingException the exception to indicate failure
-     */
-    public static void sendHTMLMessage(String from, String[] to, String[] cc, String[] bcc, String subject,
-                                       String content) throws MessagingException {
-        sendMessage(from, to, cc, bcc, subject, content, "text/html; charset=utf-8");
-    }
-
-    /**
-     * An exception thrown if there is a problem sending an email.
-     */
-    public class MailingException extends WebloggerException {
-        public MailingException(Throwable t) {
-            super(t);
+        subject += entry.getTitle();
+        
+        // use either the weblog configured from address or the site configured from address
+        String from = weblog.getEmailAddress();
+        if (StringUtils.isEmpty(from)) {
+            from = user.getEmailAddress();
         }
-    }
-}
-
-null,
+        
+        //------------------------------------------
+        // Send the message
+        
+        // send message to email recipients
+        try {
+            boolean isHtml = !escapeHtml;
+            
+            // Send separate messages to owner and commenters
+            if (isHtml) {
+                sendHTMLMessage(
+                        from,
+                        new String[] {user.getEmailAddress()},
+                        null,
+                        null,
+                        subject,
+                        ownermsg.toString());
+            } else {
+                sendTextMessage(
+                        from,
+                        new String[] {user.getEmailAddress()},
+                        null,
+                        null,
+                        subject,
+                        ownermsg.toString());
+            }
+            
+            // now send to subscribers
+            if (notifySubscribers && commenterAddrs.length > 0) {
+                // commenter addrs go in Bcc: so subscribers don't see each other
+                if (isHtml) {
+                    sendHTMLMessage(
+                            from,
+                            null,
+                            null,
+                            commenterAddrs,
+                            subject,
+                            msg.toString());
+                } else {
+                    sendTextMessage(
+                            from,
+                            null,
+                            null,
                             commenterAddrs,
                             subject, 
                             msg.toString());
@@ -675,12 +662,23 @@ null,
     /**
      * This method is used to send a HTML Message
      *
-     * @param from e-mail
-/**
+     * @param from e-mail address of sender
+     * @param to e-mail address(es) of recipients
+     * @param subject subject of e-mail
+     * @param content the body of the e-mail
+     * @throws MessagingException the exception to indicate failure
+     */
+    public static void sendHTMLMessage(String from, String[] to, String[] cc, String[] bcc, String subject,
+                                       String content) throws MessagingException {
+        sendMessage(from, to, cc, bcc, subject, content, "text/html; charset=utf-8");
+    }
+
+    /**
      * An exception thrown if there is a problem sending an email.
      */
     public class MailingException extends WebloggerException {
         public MailingException(Throwable t) {
             super(t);
         }
-    }
\ No newline at end of file
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+
+/**
+ * Exposes the stats of a cache over JMX.
+ *
+ * Every cache implementation reports its own set of stats, so each one
+ * becomes a read-only attribute, and the cache can be cleared through the
+ * clear operation.
+ */
+public class CacheDynamicMBean implements DynamicMBean {
+
+    private final Cache cache;
+
+
+    public CacheDynamicMBean(Cache cache) {
+        this.cache = cache;
+    }
+
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+
+        Map<String, Object> stats = cache.getStats();
+        if (!stats.containsKey(attribute)) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return stats.get(attribute);
+    }
+
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+
+        Map<String, Object> stats = cache.getStats();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (stats.containsKey(attribute)) {
+                list.add(new Attribute(attribute, stats.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("cache stats are read-only");
+    }
+
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+            throws ReflectionException {
+
+        if ("clear".equals(actionName)) {
+            cache.clear();
+            return null;
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Map.Entry<String, Object> stat : new TreeMap<>(cache.getStats()).entrySet()) {
+            String type = (stat.getValue() != null)
+                    ? stat.getValue().getClass().getName() : String.class.getName();
+            attributes.add(new MBeanAttributeInfo(stat.getKey(), type,
+                    stat.getKey(), true, false, false));
+        }
+
+        MBeanOperationInfo clear = new MBeanOperationInfo("clear",
+                "Remove everything from the cache", new MBeanParameterInfo[0],
+                "void", MBeanOperationInfo.ACTION);
+
+        return new MBeanInfo(getClass().getName(), "Cache " + cache.getId(),
+                attributes.toArray(new MBeanAttributeInfo[0]), null,
+                new MBeanOperationInfo[] { clear }, null);
+    }
+
+}
@@ -24,6 +24,7 @@ import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogPermission;
 import org.apache.roller.weblogger.pojos.WeblogTemplate;
 import org.apache.roller.weblogger.pojos.Weblog;
 
@@ -55,4 +56,11 @@ public interface CacheHandler {
 
     default void invalidate(WeblogTemplate template) {}
 
+    default void invalidate(WeblogPermission perm) {}
+
+    /**
+     * Release any resources held, called when Roller shuts down.
+     */
+    default void shutdown() {}
+
 }
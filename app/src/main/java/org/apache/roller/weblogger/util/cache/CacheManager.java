@@ -18,10 +18,17 @@
 
 package org.apache.roller.weblogger.util.cache;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.config.WebloggerConfig;
@@ -32,6 +39,7 @@ import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.pojos.WeblogPermission;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.util.Reflection;
 
@@ -48,6 +56,9 @@ import org.apache.roller.weblogger.util.Reflection;
  * changes in the system we often need to notify all caches that some part of
  * their cached data needs to be invalidated, and the CacheManager makes that
  * process easier.
+ *
+ * Unless cache.jmx.enabled is false every cache is also registered as an
+ * MBean, so its stats can be watched with any JMX console.
  */
 public final class CacheManager {
     
@@ -65,6 +76,11 @@ public final class CacheManager {
     // a map of all registered caches
     private static final Map<String, Cache> caches = new HashMap<>();
     
+    private static final String JMX_DOMAIN = "org.apache.roller.weblogger";
+    
+    private static final boolean jmxEnabled =
+            WebloggerConfig.getBooleanProperty("cache.jmx.enabled", true);
+    
     
     static {
         // lookup what cache factory we want to use
@@ -130,6 +146,9 @@ public final class CacheManager {
      * use for the whole system, but override it in certain places where they
      * see fit.  It also allows users to write their own caching modifications
      * and have them used only by specific caches.
+     *
+     * A "diskDir" property puts a DiskBackedCacheImpl behind the cache, so
+     * that cached content outlives a restart.
      */
     public static Cache constructCache(CacheHandler handler, Map<String, String> properties) {
         
@@ -161,9 +180,18 @@ public final class CacheManager {
             cache = cacheFactory.constructCache(properties);
         }
         
+        if(cache != null && properties != null && properties.get("diskDir") != null
+                && !properties.get("diskDir").isBlank()) {
+            cache = constructDiskBackedCache(cache, properties);
+        }
+        
         if(cache != null) {
             caches.put(cache.getId(), cache);
             
+            if(jmxEnabled) {
+                registerMBean(cache);
+            }
+            
             // register the handler for this new cache
             if(handler != null) {
                 cacheHandlers.add(handler);
@@ -174,6 +202,63 @@ public final class CacheManager {
     }
     
     
+    private static Cache constructDiskBackedCache(Cache cache, Map<String, String> properties) {
+        
+        // default to 256MB on disk, entries live as long as in memory
+        long maxBytes = 268435456L;
+        long timeout = 0;
+        
+        String maxBytesProp = properties.get("diskMaxBytes");
+        if(maxBytesProp != null) {
+            try {
+                maxBytes = Long.parseLong(maxBytesProp);
+            } catch(NumberFormatException e) {
+                log.warn("invalid diskMaxBytes property", e);
+            }
+        }
+        
+        String timeoutProp = properties.get("timeout");
+        if(timeoutProp != null) {
+            try {
+                timeout = Long.parseLong(timeoutProp);
+            } catch(NumberFormatException e) {
+                log.warn("invalid timeout property", e);
+            }
+        }
+        
+        try {
+            return new DiskBackedCacheImpl(cache,
+                    Paths.get(properties.get("diskDir")), maxBytes, timeout);
+        } catch(IOException | InvalidPathException e) {
+            log.error("Unable to use disk cache ["+properties.get("diskDir")+
+                    "] for "+cache.getId()+", caching in memory only", e);
+            return cache;
+        }
+    }
+    
+    
+    private static ObjectName getObjectName(String cacheId) throws JMException {
+        return new ObjectName(JMX_DOMAIN+":type=Cache,name="+ObjectName.quote(cacheId));
+    }
+    
+    
+    private static void registerMBean(Cache cache) {
+        
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = getObjectName(cache.getId());
+            
+            // a cache constructed again replaces the old one
+            if(server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new CacheDynamicMBean(cache), name);
+        } catch(JMException e) {
+            log.warn("Unable to register MBean for cache "+cache.getId(), e);
+        }
+    }
+    
+    
     /**
      * Register a CacheHandler to listen for object invalidations.
      *
@@ -264,6 +349,14 @@ public final class CacheManager {
             handler.invalidate(template);
         }
     }
+    
+    
+    public static void invalidate(WeblogPermission perm) {
+        log.debug("invalidating permission = " + perm.getId());
+        for (CacheHandler handler : cacheHandlers) {
+            handler.invalidate(perm);
+        }
+    }
 
     
     /**
@@ -308,7 +401,26 @@ public final class CacheManager {
      * Place to do any cleanup tasks for cache system.
      */
     public static void shutdown() {
-        // no-op
+        
+        for (CacheHandler handler : cacheHandlers) {
+            handler.shutdown();
+        }
+        
+        if(!jmxEnabled) {
+            return;
+        }
+        
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (String cacheId : caches.keySet()) {
+            try {
+                ObjectName name = getObjectName(cacheId);
+                if(server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch(JMException e) {
+                log.debug("Unable to unregister MBean for cache "+cacheId, e);
+            }
+        }
     }
     
 }
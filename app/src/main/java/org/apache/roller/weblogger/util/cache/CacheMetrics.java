@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.apache.roller.util.RollerConstants;
+
+
+/**
+ * Thread-safe metrics for a cache.
+ *
+ * Besides plain counters this keeps the hit ratio over the last 1, 5 and 15
+ * minutes, the average time a lookup takes, and how old entries were when
+ * they were evicted or expired.  Entries which get evicted young mean the
+ * cache is too small, entries which expire while still being used mean the
+ * timeout is too short.
+ *
+ * The sliding windows are made of one minute buckets which are reused as
+ * time goes on, a few counts may be lost while a bucket gets reused.
+ */
+public class CacheMetrics {
+
+    // one bucket per minute of the longest window
+    private static final int BUCKETS = 15;
+
+    private final LongSupplier clock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder removes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    // total time spent in lookups
+    private final LongAdder getNanos = new LongAdder();
+
+    // total age of evicted and expired entries
+    private final LongAdder removedAge = new LongAdder();
+
+    // minute each bucket currently counts for, and its counts
+    private final AtomicLongArray bucketMinutes = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray bucketHits = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray bucketMisses = new AtomicLongArray(BUCKETS);
+
+    private volatile Date startTime = new Date();
+
+
+    public CacheMetrics() {
+        this(System::currentTimeMillis);
+    }
+
+
+    /**
+     * @param clock source of the current time in milliseconds, which is what
+     *              entry ages and the sliding windows go by.
+     */
+    public CacheMetrics(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+
+    /**
+     * Record a lookup which found an entry.
+     *
+     * @param startNanos System.nanoTime() when the lookup started.
+     */
+    public void hit(long startNanos) {
+        hits.increment();
+        getNanos.add(System.nanoTime() - startNanos);
+        bucketHits.incrementAndGet(bucket());
+    }
+
+
+    /**
+     * Record a lookup which found nothing, or only something expired.
+     *
+     * @param startNanos System.nanoTime() when the lookup started.
+     */
+    public void miss(long startNanos) {
+        misses.increment();
+        getNanos.add(System.nanoTime() - startNanos);
+        bucketMisses.incrementAndGet(bucket());
+    }
+
+
+    public void put() {
+        puts.increment();
+    }
+
+
+    public void remove() {
+        removes.increment();
+    }
+
+
+    /**
+     * Record an entry evicted to make room for others.
+     *
+     * @param timeCached when the entry was cached, in clock time.
+     */
+    public void eviction(long timeCached) {
+        evictions.increment();
+        removedAge.add(Math.max(clock.getAsLong() - timeCached, 0));
+    }
+
+
+    /**
+     * Record an entry dropped because it expired.
+     *
+     * @param timeCached when the entry was cached, in clock time.
+     */
+    public void expiration(long timeCached) {
+        expirations.increment();
+        removedAge.add(Math.max(clock.getAsLong() - timeCached, 0));
+    }
+
+
+    /**
+     * The current time by the clock these metrics go by, for caches to note
+     * when entries were cached.
+     */
+    public long now() {
+        return clock.getAsLong();
+    }
+
+
+    /**
+     * Start over, like when the cache is cleared.
+     */
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        puts.reset();
+        removes.reset();
+        evictions.reset();
+        expirations.reset();
+        getNanos.reset();
+        removedAge.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketMinutes.set(i, 0);
+            bucketHits.set(i, 0);
+            bucketMisses.set(i, 0);
+        }
+        startTime = new Date();
+    }
+
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+
+    /**
+     * Hit ratio in percent over the last given number of minutes, including
+     * the current one, or null if there were no lookups.
+     */
+    public Double getHitRatio(int minutes) {
+
+        long minute = clock.getAsLong() / RollerConstants.MIN_IN_MS;
+        long hitCount = 0;
+        long missCount = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long age = minute - bucketMinutes.get(i);
+            if (age >= 0 && age < minutes) {
+                hitCount += bucketHits.get(i);
+                missCount += bucketMisses.get(i);
+            }
+        }
+        return ratio(hitCount, missCount);
+    }
+
+
+    /**
+     * Add the metrics to a map of cache stats.
+     */
+    public void addTo(Map<String, Object> stats) {
+
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long removed = evictions.sum() + expirations.sum();
+
+        stats.put("startTime", startTime);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("puts", puts.sum());
+        stats.put("removes", removes.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+
+        putIfNotNull(stats, "efficiency", ratio(hitCount, missCount));
+        putIfNotNull(stats, "hitRatio1m", getHitRatio(1));
+        putIfNotNull(stats, "hitRatio5m", getHitRatio(5));
+        putIfNotNull(stats, "hitRatio15m", getHitRatio(BUCKETS));
+
+        if (hitCount + missCount > 0) {
+            stats.put("averageGetMicros",
+                    getNanos.sum() / 1000.0 / (hitCount + missCount));
+        }
+        if (removed > 0) {
+            stats.put("averageRemovedAgeSeconds",
+                    removedAge.sum() / (double) RollerConstants.SEC_IN_MS / removed);
+        }
+    }
+
+
+    private int bucket() {
+
+        long minute = clock.getAsLong() / RollerConstants.MIN_IN_MS;
+        int index = (int) (minute % BUCKETS);
+
+        long current = bucketMinutes.get(index);
+        if (current != minute && bucketMinutes.compareAndSet(index, current, minute)) {
+            // first one in this minute starts the bucket over
+            bucketHits.set(index, 0);
+            bucketMisses.set(index, 0);
+        }
+        return index;
+    }
+
+
+    private static Double ratio(long hitCount, long missCount) {
+        if (hitCount + missCount == 0) {
+            return null;
+        }
+        return (double) hitCount / (hitCount + missCount) * RollerConstants.PERCENT_100;
+    }
+
+
+    private static void putIfNotNull(Map<String, Object> stats, String key, Object value) {
+        if (value != null) {
+            stats.put(key, value);
+        }
+    }
+
+}
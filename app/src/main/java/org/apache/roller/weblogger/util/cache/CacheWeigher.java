@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+
+/**
+ * Estimates how many bytes a cached value holds on to, so that caches can be
+ * bounded by memory as well as by number of entries.
+ *
+ * Only rendered content is weighed, possibly wrapped in one of our expiring
+ * cache entries.  Anything else weighs nothing and is only limited by the
+ * cache size.
+ */
+final class CacheWeigher {
+    
+    // a non-instantiable class
+    private CacheWeigher() {}
+    
+    
+    static long weigh(Object value) {
+        
+        Object unwrapped = value;
+        if (unwrapped instanceof ExpiringCacheEntry) {
+            unwrapped = ((ExpiringCacheEntry) unwrapped).getValue();
+        }
+        if (unwrapped instanceof LazyExpiringCacheEntry) {
+            unwrapped = ((LazyExpiringCacheEntry) unwrapped).getStaleValue();
+        }
+        
+        if (unwrapped instanceof CachedContent) {
+            return ((CachedContent) unwrapped).getSize();
+        }
+        
+        return 0;
+    }
+    
+}
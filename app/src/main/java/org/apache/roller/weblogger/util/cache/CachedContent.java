@@ -6,6 +6,9 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
@@ -19,12 +22,21 @@ public class CachedContent implements AutoCloseable, Serializable {
     
     private static final Log log = LogFactory.getLog(CachedContent.class);
     
+    // content smaller than this is not worth compressing
+    private static final int MIN_COMPRESS_SIZE = RollerConstants.ONE_KB_IN_BYTES;
+    
     // the byte array we use to maintain the cached content
     private byte[] content = new byte[0];
     
+    // gzip compressed copy of the content, only there once compress() is done
+    private volatile byte[] compressedContent = null;
+    
     // content-type of data in byte array
     private final String contentType;
     
+    // strong entity tag for the content, only there once it is closed
+    private volatile String eTag = null;
+    
     // Use a byte array output stream to cached the output bytes
     private transient ByteArrayOutputStream outstream = null;
     
@@ -49,6 +61,17 @@ public class CachedContent implements AutoCloseable, Serializable {
         this.contentType = contentType;
     }
     
+    /**
+     * Construct already closed content, for example when reading it back
+     * from a disk cache.
+     */
+    public CachedContent(byte[] content, byte[] compressedContent, String contentType) {
+        this.content = content;
+        this.compressedContent = compressedContent;
+        this.contentType = contentType;
+        this.eTag = computeETag(content);
+    }
+    
     
     /**
      * Get the content cached in this object as a byte array.  If you convert
@@ -73,6 +96,35 @@ public class CachedContent implements AutoCloseable, Serializable {
     }
     
     
+    /**
+     * Get the gzip compressed variant of the content, or null if there is
+     * none because compress() was not called or compression did not pay off.
+     */
+    public byte[] getCompressedContent() {
+        return this.compressedContent;
+    }
+    
+    
+    /**
+     * Get the number of bytes held by this object, counting both the content
+     * and its compressed variant.
+     */
+    public int getSize() {
+        byte[] compressed = this.compressedContent;
+        return this.content.length + ((compressed != null) ? compressed.length : 0);
+    }
+    
+    
+    /**
+     * Get a strong entity tag for the content, quoted and ready to be used
+     * as an ETag header.  It is a hash of the bytes, so it only changes when
+     * the content does, and is null until the content is closed.
+     */
+    public String getETag() {
+        return this.eTag;
+    }
+    
+    
     public PrintWriter getCachedWriter() {
         return cachedWriter;
     }
@@ -121,9 +173,64 @@ public class CachedContent implements AutoCloseable, Serializable {
             }
             this.outstream.close();
             this.outstream = null;
+            this.eTag = computeETag(this.content);
         }
         
         log.debug("CLOSED");
     }
     
+    
+    /**
+     * Produce the gzip compressed variant of the content.
+     *
+     * This is meant to be done once, when the content goes into a cache, so
+     * that every client accepting gzip can be sent the same compressed bytes.
+     * Small content, or content which does not get any smaller, is left alone.
+     *
+     * @throws IllegalStateException if calling compress() before a close()
+     */
+    public void compress() {
+        
+        if(this.outstream != null) {
+            throw new IllegalStateException("Cannot compress() before close()!");
+        }
+        
+        if(this.compressedContent != null || this.content.length < MIN_COMPRESS_SIZE) {
+            return;
+        }
+        
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.content.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(this.content);
+            }
+            
+            if(bytes.size() < this.content.length) {
+                this.compressedContent = bytes.toByteArray();
+                log.debug("COMPRESSED "+this.content.length+" -> "+this.compressedContent.length);
+            }
+        } catch (IOException e) {
+            // not possible with in-memory streams, just go without
+            log.warn("Unable to compress content", e);
+        }
+    }
+    
+    
+    /**
+     * Hash the content with two different CRCs, which are cheap enough to do
+     * for every piece of cached content since the JVM computes them with
+     * hardware instructions, and together with the length leave no practical
+     * chance of two versions of a page sharing a tag.
+     */
+    private static String computeETag(byte[] content) {
+        
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(content);
+        CRC32 crc32 = new CRC32();
+        crc32.update(content);
+        
+        return "\"" + Integer.toHexString(content.length) + "-"
+                + Long.toHexString(crc32c.getValue() << 32 | crc32.getValue()) + "\"";
+    }
+    
 }
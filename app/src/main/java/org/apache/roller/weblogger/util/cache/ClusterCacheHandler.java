@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.UUIDGenerator;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogPermission;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.util.Reflection;
+
+
+/**
+ * Keeps the caches of all nodes in a cluster in step.
+ *
+ * Registered through the cache.customHandlers property, this handler hears
+ * about every invalidation made on its node and publishes it to the other
+ * nodes through an InvalidationTransport, while invalidations published by
+ * the other nodes are applied to the local CacheManager.
+ *
+ * Invalidations are collected and sent in one batch every interval, with
+ * repeated invalidations of the same object coalesced into one event, so
+ * saving an entry a few times in a row costs the cluster nothing extra.
+ * Events coming in are coalesced the same way before they are applied.
+ */
+public class ClusterCacheHandler implements CacheHandler {
+
+    private static final Log log = LogFactory.getLog(ClusterCacheHandler.class);
+
+    private static final String DEFAULT_TRANSPORT =
+            "org.apache.roller.weblogger.util.cache.JDBCInvalidationTransport";
+
+    // identifies this node, so it can leave out its own events
+    private final String nodeId = UUIDGenerator.generateUUID();
+
+    private final InvalidationTransport transport;
+
+    // runs sync() every interval, null unless constructed from configuration
+    private ScheduledExecutorService executor = null;
+
+    // events waiting for the next batch, guarded by itself
+    private final Set<InvalidationEvent> pending = new LinkedHashSet<>();
+
+    // set while applying events from other nodes, so they don't bounce back
+    private final ThreadLocal<Boolean> applying = new ThreadLocal<>();
+
+
+    public ClusterCacheHandler() throws ReflectiveOperationException {
+
+        this((InvalidationTransport) Reflection.newInstance(WebloggerConfig
+                .getProperty("cache.cluster.transport", DEFAULT_TRANSPORT)));
+
+        int interval = WebloggerConfig.getIntProperty("cache.cluster.interval", 1000);
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ClusterCacheHandler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            // anything escaping would cancel the task for good
+            try {
+                // nothing to talk to until Roller is up
+                if (WebloggerFactory.isBootstrapped()) {
+                    sync();
+                }
+            } catch (RuntimeException e) {
+                log.error("Error synchronizing cache invalidations, will retry", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+
+        log.info("Cluster cache invalidation enabled for node " + nodeId
+                + " using " + transport.getClass().getName());
+    }
+
+
+    ClusterCacheHandler(InvalidationTransport transport) {
+        this.transport = transport;
+    }
+
+
+    @Override
+    public void invalidate(WeblogEntry entry) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.ENTRY,
+                entry.getId(), entry.getWebsite().getHandle()));
+    }
+
+
+    @Override
+    public void invalidate(Weblog website) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.WEBLOG,
+                website.getId(), website.getHandle()));
+    }
+
+
+    @Override
+    public void invalidate(WeblogBookmark bookmark) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.BOOKMARK,
+                bookmark.getId(), bookmark.getWebsite().getHandle()));
+    }
+
+
+    @Override
+    public void invalidate(WeblogBookmarkFolder folder) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.FOLDER,
+                folder.getId(), folder.getWeblog().getHandle()));
+    }
+
+
+    @Override
+    public void invalidate(WeblogEntryComment comment) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.COMMENT,
+                comment.getId(), comment.getWeblogEntry().getWebsite().getHandle()));
+    }
+
+
+    @Override
+    public void invalidate(User user) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.USER,
+                user.getId(), user.getUserName()));
+    }
+
+
+    @Override
+    public void invalidate(WeblogCategory category) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.CATEGORY,
+                category.getId(), category.getWeblog().getHandle()));
+    }
+
+
+    @Override
+    public void invalidate(WeblogTemplate template) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.TEMPLATE,
+                template.getId(), template.getWeblog().getHandle()));
+    }
+
+
+    @Override
+    public void invalidate(WeblogPermission perm) {
+        publish(new InvalidationEvent(InvalidationEvent.Type.PERMISSION,
+                perm.getId(), perm.getObjectId()));
+    }
+
+
+    @Override
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private void publish(InvalidationEvent event) {
+
+        if (applying.get() != null) {
+            return;
+        }
+
+        synchronized (pending) {
+            pending.add(event);
+        }
+    }
+
+
+    /**
+     * Send whatever is pending and apply whatever other nodes have sent.
+     * Called every interval, failures are retried on the next one.
+     */
+    void sync() {
+
+        List<InvalidationEvent> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        if (!batch.isEmpty()) {
+            try {
+                transport.publish(nodeId, batch);
+            } catch (WebloggerException e) {
+                log.warn("Unable to publish " + batch.size()
+                        + " cache invalidations, will retry", e);
+                synchronized (pending) {
+                    pending.addAll(batch);
+                }
+            }
+        }
+
+        Collection<InvalidationEvent> received;
+        try {
+            received = new LinkedHashSet<>(transport.receive(nodeId));
+        } catch (WebloggerException e) {
+            log.warn("Unable to receive cache invalidations, will retry", e);
+            return;
+        }
+
+        applying.set(Boolean.TRUE);
+        try {
+            for (InvalidationEvent event : received) {
+                log.debug("Applying " + event);
+                try {
+                    event.apply();
+                } catch (RuntimeException e) {
+                    log.error("Error applying cache invalidation " + event, e);
+                }
+            }
+        } finally {
+            applying.remove();
+        }
+    }
+
+}
@@ -0,0 +1,484 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+
+/**
+ * A second level for another cache which keeps cached content in a local
+ * directory, so that it survives a restart.
+ *
+ * Only CachedContent, as is or wrapped in a LazyExpiringCacheEntry, goes to
+ * disk, one file per entry named after a digest of its key.  Nothing is loaded
+ * up front; a miss in the wrapped cache looks for the file and puts what it
+ * finds back into the wrapped cache.  Entries keep the time they were first
+ * cached, so a lazily expiring entry is still checked against the last
+ * modified time of its weblog by whoever asked for it.
+ *
+ * Clearing the cache only records when it happened.  Files written before
+ * that are dropped as they are found, or when the directory grows past its
+ * byte budget and the oldest files are swept away.
+ */
+public class DiskBackedCacheImpl implements Cache {
+
+    private static final Log log = LogFactory.getLog(DiskBackedCacheImpl.class);
+
+    // identifies our files, bump when the format changes
+    private static final int MAGIC = 0x524f4c31;
+
+    private static final String SUFFIX = ".cache";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String CLEARED_FILE = "cleared";
+
+    private final Cache cache;
+    private final Path dir;
+    private final long maxBytes;
+    private final long timeout;
+
+    // time of the last clear(), anything cached before it is invalid
+    private volatile long clearedAt;
+
+    // bytes on disk, approximate between sweeps
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    // for metrics
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder diskMisses = new LongAdder();
+    private final LongAdder diskPuts = new LongAdder();
+
+
+    /**
+     * @param cache    the cache to put in front of the disk.
+     * @param dir      directory for the cached files, created if needed.
+     * @param maxBytes byte budget for the directory, no limit if not positive.
+     * @param timeout  time to live of entries on disk in seconds, entries
+     *                 never expire if this is not positive.
+     */
+    protected DiskBackedCacheImpl(Cache cache, Path dir, long maxBytes, long timeout)
+            throws IOException {
+
+        this.cache = cache;
+        this.dir = dir;
+        this.maxBytes = Math.max(maxBytes, 0);
+        this.timeout = (timeout > 0) ? timeout * RollerConstants.SEC_IN_MS : 0;
+
+        Files.createDirectories(dir);
+        this.clearedAt = readClearedAt();
+
+        long total = 0;
+        for (CacheFile file : listFiles()) {
+            total += file.size;
+        }
+        this.bytes.set(total);
+
+        log.info(cache.getId()+" disk cache in "+dir+" holds "+total+" bytes");
+    }
+
+
+    @Override
+    public String getId() {
+        return cache.getId();
+    }
+
+
+    @Override
+    public void put(String key, Object value) {
+
+        cache.put(key, value);
+        store(key, value);
+    }
+
+
+    /**
+     * Retrieve an entry, from disk if the wrapped cache doesn't have it.
+     */
+    @Override
+    public Object get(String key) {
+
+        Object value = cache.get(key);
+        if (value == null) {
+            value = load(key);
+            if (value != null) {
+                cache.put(key, value);
+            }
+        }
+
+        return value;
+    }
+
+
+    @Override
+    public void remove(String key) {
+
+        cache.remove(key);
+        delete(fileFor(key));
+    }
+
+
+    @Override
+    public void clear() {
+
+        cache.clear();
+
+        long now = System.currentTimeMillis();
+        this.clearedAt = now;
+        try {
+            Files.writeString(dir.resolve(CLEARED_FILE), Long.toString(now), UTF_8);
+        } catch (IOException e) {
+            log.warn("Unable to record clear of "+dir, e);
+        }
+
+        // clear metrics
+        diskHits.reset();
+        diskMisses.reset();
+        diskPuts.reset();
+    }
+
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new HashMap<>(cache.getStats());
+        stats.put("diskHits", diskHits.sum());
+        stats.put("diskMisses", diskMisses.sum());
+        stats.put("diskPuts", diskPuts.sum());
+        stats.put("diskBytes", bytes.get());
+        if (maxBytes > 0) {
+            stats.put("diskMaxBytes", maxBytes);
+        }
+
+        return stats;
+    }
+
+
+    /**
+     * Write an entry to disk, if it is content we know how to write.
+     */
+    private void store(String key, Object value) {
+
+        Object unwrapped = value;
+        long timeCached = System.currentTimeMillis();
+        boolean lazy = false;
+        if (value instanceof LazyExpiringCacheEntry) {
+            unwrapped = ((LazyExpiringCacheEntry) value).getStaleValue();
+            timeCached = ((LazyExpiringCacheEntry) value).getTimeCached();
+            lazy = true;
+        }
+        if (!(unwrapped instanceof CachedContent)) {
+            return;
+        }
+        CachedContent content = (CachedContent) unwrapped;
+
+        Path file = fileFor(key);
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), null, TEMP_SUFFIX);
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(key);
+                out.writeLong(timeCached);
+                out.writeBoolean(lazy);
+                out.writeBoolean(content.getContentType() != null);
+                if (content.getContentType() != null) {
+                    out.writeUTF(content.getContentType());
+                }
+                writeBytes(out, content.getContent());
+                writeBytes(out, content.getCompressedContent());
+            }
+
+            long previous = sizeOf(file);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            bytes.addAndGet(sizeOf(file) - previous);
+            diskPuts.increment();
+            log.debug("DISK-PUT "+key);
+
+        } catch (IOException e) {
+            log.warn("Unable to write "+key+" to "+file, e);
+            if (temp != null) {
+                delete(temp);
+            }
+            return;
+        }
+
+        if (maxBytes > 0 && bytes.get() > maxBytes) {
+            sweep();
+        }
+    }
+
+
+    /**
+     * Read an entry from disk, or null if there is no valid one.
+     */
+    private Object load(String key) {
+
+        Path file = fileFor(key);
+        if (!Files.exists(file)) {
+            diskMisses.increment();
+            return null;
+        }
+
+        Object value = null;
+        boolean invalid = false;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+
+            // the key differs only if two keys share a digest
+            if (in.readInt() == MAGIC && key.equals(in.readUTF())) {
+                long timeCached = in.readLong();
+                if (isExpired(timeCached)) {
+                    invalid = true;
+                } else {
+                    boolean lazy = in.readBoolean();
+                    String contentType = in.readBoolean() ? in.readUTF() : null;
+                    byte[] content = readBytes(in);
+                    byte[] compressed = readBytes(in);
+
+                    CachedContent cachedContent = new CachedContent(content, compressed, contentType);
+                    value = lazy ? new LazyExpiringCacheEntry(cachedContent, timeCached) : cachedContent;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // removed in the meantime
+        } catch (IOException e) {
+            log.warn("Unable to read "+key+" from "+file, e);
+            invalid = true;
+        }
+
+        if (invalid) {
+            delete(file);
+        }
+
+        if (value == null) {
+            diskMisses.increment();
+        } else {
+            diskHits.increment();
+            log.debug("DISK-HIT "+key);
+        }
+
+        return value;
+    }
+
+
+    private boolean isExpired(long timeCached) {
+        // content cached in the same millisecond as a clear may predate it
+        return timeCached <= clearedAt
+                || (timeout > 0 && timeCached + timeout <= System.currentTimeMillis());
+    }
+
+
+    /**
+     * Delete the oldest files until the directory is comfortably within its
+     * byte budget again.  Only one thread sweeps at a time.
+     */
+    private void sweep() {
+
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            List<CacheFile> files = listFiles();
+            files.sort(Comparator.comparingLong(file -> file.lastModified));
+
+            long total = 0;
+            for (CacheFile file : files) {
+                total += file.size;
+            }
+
+            // leave some room so we don't sweep again on the very next put
+            long target = maxBytes - maxBytes / 10;
+            int deleted = 0;
+            for (CacheFile file : files) {
+                if (total <= target) {
+                    break;
+                }
+                try {
+                    if (Files.deleteIfExists(file.path)) {
+                        total -= file.size;
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    log.warn("Unable to delete "+file.path, e);
+                }
+            }
+            bytes.set(total);
+
+            log.debug("SWEPT "+deleted+" files from "+dir+", "+total+" bytes left");
+
+        } catch (IOException e) {
+            log.warn("Unable to sweep "+dir, e);
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+
+    /**
+     * List all cached files, deleting any temporary files left behind by a
+     * crash along the way.
+     */
+    private List<CacheFile> listFiles() throws IOException {
+
+        long abandoned = System.currentTimeMillis() - RollerConstants.MIN_IN_MS;
+
+        List<CacheFile> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(dir, 2)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = path.getFileName().toString();
+                if (!name.endsWith(SUFFIX) && !name.endsWith(TEMP_SUFFIX)) {
+                    continue;
+                }
+
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                long lastModified = attrs.lastModifiedTime().toMillis();
+
+                if (name.endsWith(SUFFIX)) {
+                    files.add(new CacheFile(path, attrs.size(), lastModified));
+                } else if (lastModified < abandoned) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+
+        return files;
+    }
+
+
+    private long readClearedAt() {
+
+        Path file = dir.resolve(CLEARED_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        try {
+            return Long.parseLong(Files.readString(file, UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            // safest to assume everything on disk is out of date
+            log.warn("Unable to read "+file+", ignoring cached files", e);
+            return System.currentTimeMillis();
+        }
+    }
+
+
+    private Path fileFor(String key) {
+
+        String name = DigestUtils.sha256Hex(key);
+
+        // spread files over subdirectories to keep directories small
+        return dir.resolve(name.substring(0, 2)).resolve(name + SUFFIX);
+    }
+
+
+    private void delete(Path file) {
+
+        try {
+            long size = sizeOf(file);
+            if (Files.deleteIfExists(file) && file.toString().endsWith(SUFFIX)) {
+                bytes.addAndGet(-size);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to delete "+file, e);
+        }
+    }
+
+
+    private static long sizeOf(Path file) throws IOException {
+
+        try {
+            return Files.size(file);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+
+    private static final class CacheFile {
+
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+
+
+        CacheFile(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+}
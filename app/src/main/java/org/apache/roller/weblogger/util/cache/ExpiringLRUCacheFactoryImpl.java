@@ -57,14 +57,25 @@ public class ExpiringLRUCacheFactoryImpl implements CacheFactory {
             log.warn("invalid timeout property", e);
         }
         
+        // byte budget is optional
+        long maxBytes = 0;
+        String maxBytesProp = (String) properties.get("maxBytes");
+        if(maxBytesProp != null) {
+            try {
+                maxBytes = Long.parseLong(maxBytesProp);
+            } catch(NumberFormatException e) {
+                log.warn("invalid maxBytes property", e);
+            }
+        }
+        
         String cacheId = (String) properties.get("id");
         if(cacheId != null) {
             id = cacheId;
         }
         
-        Cache cache = new ExpiringLRUCacheImpl(id, size, timeout);
+        Cache cache = new ExpiringLRUCacheImpl(id, size, timeout, maxBytes);
         
-        log.debug("new cache constructed. size=" + size + ", timeout=" + timeout);
+        log.debug("new cache constructed. size=" + size + ", timeout=" + timeout + ", maxBytes=" + maxBytes);
         
         return cache;
     }
@@ -42,7 +42,13 @@ public class ExpiringLRUCacheImpl extends LRUCacheImpl {
     
     protected ExpiringLRUCacheImpl(String id, int maxsize, long timeout) {
         
-        super(id, maxsize);
+        this(id, maxsize, timeout, 0);
+    }
+    
+    
+    protected ExpiringLRUCacheImpl(String id, int maxsize, long timeout, long maxBytes) {
+        
+        super(id, maxsize, maxBytes);
         
         // timeout is specified in seconds; only positive values allowed
         if (timeout > 0) {
@@ -72,24 +78,23 @@ public class ExpiringLRUCacheImpl extends LRUCacheImpl {
      * then we return null, just as if the entry wasn't found.
      */
     @Override
-    public synchronized Object get(String key) {
+    public Object get(String key) {
         
-        Object value = null;
         ExpiringCacheEntry entry = (ExpiringCacheEntry) super.get(key);
         
-        if (entry != null) {
-            
-            value = entry.getValue();
-            
-            // if the value is null then that means this entry expired
-            if (value == null) {
-                log.debug("EXPIRED ["+key+"]");
-                hits--;
-                super.remove(key);
-            }
-        }
+        // may still have expired since the check in super.get()
+        return (entry != null) ? entry.getValue() : null;
+    }
+    
+    
+    @Override
+    protected boolean isExpired(Object value) {
         
-        return value;
+        if (((ExpiringCacheEntry) value).hasExpired()) {
+            log.debug("EXPIRED");
+            return true;
+        }
+        return false;
     }
     
 }
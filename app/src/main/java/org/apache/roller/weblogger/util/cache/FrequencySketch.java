@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A count-min sketch of 4-bit counters used to estimate how often a key has
+ * been requested recently.
+ *
+ * Each long in the table holds sixteen counters and every key maps onto four
+ * of them, its estimated frequency being the smallest of the four.  Once the
+ * number of recorded increments reaches the sample size all counters are
+ * halved so that old popularity fades out over time.
+ *
+ * All updates are done with CAS so the sketch can be shared by concurrent
+ * readers without locking.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+        0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean resetting = new AtomicBoolean();
+
+
+    FrequencySketch(int maximumSize) {
+        int length = ceilingPowerOfTwo(Math.max(maximumSize, 16));
+        this.table = new AtomicLongArray(length);
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * Math.max(maximumSize, 1);
+    }
+
+
+    /**
+     * Estimated number of times the given hash has been seen, from 0 to 15.
+     */
+    int frequency(int hash) {
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table.get(index) >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+
+    /**
+     * Record an occurrence of the given hash, aging the sketch if the sample
+     * period has been reached.
+     */
+    void increment(int hash) {
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && size.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+
+    void clear() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, 0L);
+        }
+        size.set(0);
+    }
+
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        while (true) {
+            long current = table.get(index);
+            if ((current & mask) == mask) {
+                // counter is saturated
+                return false;
+            }
+            if (table.compareAndSet(index, current, current + (1L << offset))) {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * Halve every counter.  Only one thread does the aging, anyone else who
+     * crosses the sample size meanwhile simply carries on.
+     */
+    private void reset() {
+        if (!resetting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int odd = 0;
+            for (int i = 0; i < table.length(); i++) {
+                long current;
+                do {
+                    current = table.get(i);
+                } while (!table.compareAndSet(i, current, (current >>> 1) & RESET_MASK));
+                odd += Long.bitCount(current & ONE_MASK);
+            }
+            int current;
+            do {
+                current = size.get();
+            } while (!size.compareAndSet(current, Math.max(0, (current - (odd >>> 2)) >>> 1)));
+        } finally {
+            resetting.set(false);
+        }
+    }
+
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+
+    static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Objects;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogBookmark;
+import org.apache.roller.weblogger.pojos.WeblogBookmarkFolder;
+import org.apache.roller.weblogger.pojos.WeblogCategory;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.pojos.WeblogPermission;
+import org.apache.roller.weblogger.pojos.WeblogTemplate;
+
+
+/**
+ * An object invalidation which happened on some node of a cluster.
+ *
+ * An event only holds what cache handlers look at, the id of the object and
+ * the handle of its weblog, or the user name for users.  Weblog permissions
+ * belong to the weblog they are for.  Applying it passes
+ * a stand-in object carrying just those to the local CacheManager, so the
+ * objects don't have to be loaded again, and may even be gone already.
+ *
+ * Two events for the same object are equal, which is what lets repeated
+ * invalidations be coalesced.
+ */
+public final class InvalidationEvent {
+
+    public enum Type {
+        ENTRY, WEBLOG, BOOKMARK, FOLDER, COMMENT, USER, CATEGORY, TEMPLATE, PERMISSION
+    }
+
+    private final Type type;
+    private final String objectId;
+    private final String handle;
+
+
+    public InvalidationEvent(Type type, String objectId, String handle) {
+        this.type = type;
+        this.objectId = objectId;
+        this.handle = handle;
+    }
+
+
+    public Type getType() {
+        return type;
+    }
+
+
+    public String getObjectId() {
+        return objectId;
+    }
+
+
+    /**
+     * The handle of the weblog the object belongs to, or the user name for
+     * a user.
+     */
+    public String getHandle() {
+        return handle;
+    }
+
+
+    /**
+     * Pass this invalidation on to the handlers of the local CacheManager.
+     */
+    public void apply() {
+
+        switch (type) {
+            case ENTRY:
+                CacheManager.invalidate(newEntry());
+                break;
+            case WEBLOG:
+                CacheManager.invalidate(newWeblog());
+                break;
+            case BOOKMARK:
+                WeblogBookmark bookmark = new WeblogBookmark();
+                bookmark.setId(objectId);
+                bookmark.setFolder(newFolder(null));
+                CacheManager.invalidate(bookmark);
+                break;
+            case FOLDER:
+                CacheManager.invalidate(newFolder(objectId));
+                break;
+            case COMMENT:
+                WeblogEntryComment comment = new WeblogEntryComment();
+                comment.setId(objectId);
+                comment.setWeblogEntry(newEntry());
+                CacheManager.invalidate(comment);
+                break;
+            case USER:
+                User user = new User();
+                user.setId(objectId);
+                user.setUserName(handle);
+                CacheManager.invalidate(user);
+                break;
+            case CATEGORY:
+                WeblogCategory category = new WeblogCategory();
+                category.setId(objectId);
+                category.setWeblog(newWeblog());
+                CacheManager.invalidate(category);
+                break;
+            case TEMPLATE:
+                WeblogTemplate template = new WeblogTemplate();
+                template.setId(objectId);
+                template.setWeblog(newWeblog());
+                CacheManager.invalidate(template);
+                break;
+            case PERMISSION:
+                WeblogPermission perm = new WeblogPermission();
+                perm.setId(objectId);
+                perm.setObjectId(handle);
+                CacheManager.invalidate(perm);
+                break;
+            default:
+                throw new IllegalStateException("unknown event type " + type);
+        }
+    }
+
+
+    private Weblog newWeblog() {
+        Weblog weblog = new Weblog();
+        if (type == Type.WEBLOG) {
+            weblog.setId(objectId);
+        }
+        weblog.setHandle(handle);
+        return weblog;
+    }
+
+
+    private WeblogEntry newEntry() {
+        WeblogEntry entry = new WeblogEntry();
+        if (type == Type.ENTRY) {
+            entry.setId(objectId);
+        }
+        entry.setWebsite(newWeblog());
+        return entry;
+    }
+
+
+    private WeblogBookmarkFolder newFolder(String id) {
+        WeblogBookmarkFolder folder = new WeblogBookmarkFolder();
+        folder.setId(id);
+        folder.setWeblog(newWeblog());
+        return folder;
+    }
+
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (!(other instanceof InvalidationEvent)) {
+            return false;
+        }
+        InvalidationEvent o = (InvalidationEvent) other;
+        return type == o.type && Objects.equals(objectId, o.objectId)
+                && Objects.equals(handle, o.handle);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, objectId, handle);
+    }
+
+
+    @Override
+    public String toString() {
+        return type + "[" + objectId + ", " + handle + "]";
+    }
+
+}
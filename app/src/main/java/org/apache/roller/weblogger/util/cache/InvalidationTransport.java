@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.Collection;
+import java.util.List;
+import org.apache.roller.weblogger.WebloggerException;
+
+
+/**
+ * Carries invalidation events between the nodes of a cluster for the
+ * ClusterCacheHandler.
+ *
+ * Implementations need a public no-arg constructor and are only ever called
+ * from one thread at a time.
+ */
+public interface InvalidationTransport {
+
+    /**
+     * Send a batch of events from the given node to all other nodes.
+     */
+    void publish(String origin, Collection<InvalidationEvent> events)
+            throws WebloggerException;
+
+    /**
+     * Get the events which other nodes have published since the last call,
+     * each one only once, leaving out whatever the given node published.
+     */
+    List<InvalidationEvent> receive(String origin) throws WebloggerException;
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+import org.apache.roller.util.UUIDGenerator;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.startup.StartupException;
+import org.apache.roller.weblogger.business.startup.WebloggerStartup;
+
+
+/**
+ * Carries invalidation events through the roller_cacheinvalidation table of
+ * the Roller database, so a cluster needs nothing it doesn't already have.
+ *
+ * Each batch is inserted in one transaction, and other nodes poll for rows
+ * created since the newest one they saw.  Because the publishers' clocks and
+ * commits don't line up exactly, every poll looks back a little further and
+ * skips the rows it already returned.  Rows are deleted once they are old
+ * enough that no node would still be interested in them.
+ *
+ * The table is created on first use if it is missing, since databases
+ * installed at the current version before it was added never get upgraded.
+ */
+public class JDBCInvalidationTransport implements InvalidationTransport {
+
+    private static final Log log = LogFactory.getLog(JDBCInvalidationTransport.class);
+
+    // how far back every poll looks, to catch rows from slow clocks or commits
+    private static final long OVERLAP = 30 * RollerConstants.SEC_IN_MS;
+
+    // how long rows are kept around
+    private static final long RETENTION = RollerConstants.HOUR_IN_MS;
+
+    private final ConnectionSource connections;
+    private final LongSupplier clock;
+    private final TableCreator tableCreator;
+
+    // whether the table is known to exist
+    private boolean tableReady;
+
+    // creation time of the newest row returned so far
+    private long lastCreated;
+
+    // ids of the rows returned within the overlap, and when they were created
+    private final Map<String, Long> seen = new HashMap<>();
+
+    private long lastPurge;
+
+
+    public JDBCInvalidationTransport() {
+        this(() -> WebloggerStartup.getDatabaseProvider().getConnection(),
+                System::currentTimeMillis,
+                () -> WebloggerStartup.createTableIfMissing("roller_cacheinvalidation", "cacheinvalidation"));
+    }
+
+
+    JDBCInvalidationTransport(ConnectionSource connections, LongSupplier clock,
+            TableCreator tableCreator) {
+        this.connections = connections;
+        this.clock = clock;
+        this.tableCreator = tableCreator;
+        this.lastCreated = clock.getAsLong();
+        this.lastPurge = this.lastCreated;
+    }
+
+
+    @Override
+    public void publish(String origin, Collection<InvalidationEvent> events)
+            throws WebloggerException {
+
+        prepareTable();
+        long now = clock.getAsLong();
+
+        try (Connection con = connections.getConnection()) {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try (PreparedStatement insert = con.prepareStatement(
+                    "insert into roller_cacheinvalidation"
+                    + " (id, origin, eventtype, objectid, handle, created)"
+                    + " values (?, ?, ?, ?, ?, ?)")) {
+
+                for (InvalidationEvent event : events) {
+                    insert.setString(1, UUIDGenerator.generateUUID());
+                    insert.setString(2, origin);
+                    insert.setString(3, event.getType().name());
+                    insert.setString(4, event.getObjectId());
+                    insert.setString(5, event.getHandle());
+                    insert.setTimestamp(6, new Timestamp(now));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+
+                if (now - lastPurge > RollerConstants.MIN_IN_MS) {
+                    // once a minute is plenty, and any node doing it is harmless
+                    try (PreparedStatement purge = con.prepareStatement(
+                            "delete from roller_cacheinvalidation where created < ?")) {
+                        purge.setTimestamp(1, new Timestamp(now - RETENTION));
+                        purge.executeUpdate();
+                    }
+                    lastPurge = now;
+                }
+
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException | RuntimeException e) {
+            throw new WebloggerException("Unable to publish cache invalidations", e);
+        }
+
+        log.debug("Published " + events.size() + " events");
+    }
+
+
+    @Override
+    public List<InvalidationEvent> receive(String origin) throws WebloggerException {
+
+        prepareTable();
+        List<InvalidationEvent> events = new ArrayList<>();
+        long since = lastCreated - OVERLAP;
+
+        try (Connection con = connections.getConnection();
+                PreparedStatement query = con.prepareStatement(
+                    "select id, eventtype, objectid, handle, created"
+                    + " from roller_cacheinvalidation"
+                    + " where created > ? and origin <> ? order by created")) {
+
+            query.setTimestamp(1, new Timestamp(since));
+            query.setString(2, origin);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    long created = rs.getTimestamp(5).getTime();
+                    if (seen.putIfAbsent(rs.getString(1), created) != null) {
+                        continue;
+                    }
+                    lastCreated = Math.max(lastCreated, created);
+
+                    try {
+                        events.add(new InvalidationEvent(
+                                InvalidationEvent.Type.valueOf(rs.getString(2)),
+                                rs.getString(3), rs.getString(4)));
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Skipping unknown cache invalidation " + rs.getString(2));
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            throw new WebloggerException("Unable to receive cache invalidations", e);
+        }
+
+        // the next poll won't return anything older than this anyway
+        long oldest = lastCreated - OVERLAP;
+        seen.values().removeIf(created -> created <= oldest);
+
+        return events;
+    }
+
+
+    private synchronized void prepareTable() throws WebloggerException {
+        if (!tableReady) {
+            try {
+                tableCreator.createTableIfMissing();
+            } catch (StartupException e) {
+                throw new WebloggerException("Unable to create roller_cacheinvalidation", e);
+            }
+            tableReady = true;
+        }
+    }
+
+
+    /**
+     * Where connections come from, the Roller database unless testing.
+     */
+    interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+
+    /**
+     * Creates the table if the database lacks it.
+     */
+    interface TableCreator {
+        boolean createTableIfMissing() throws StartupException;
+    }
+
+}
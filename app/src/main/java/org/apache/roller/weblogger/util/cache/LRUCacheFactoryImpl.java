@@ -49,14 +49,25 @@ public class LRUCacheFactoryImpl implements CacheFactory {
             log.warn("invalide size property", e);
         }
         
+        // byte budget is optional
+        long maxBytes = 0;
+        String maxBytesProp = (String) properties.get("maxBytes");
+        if(maxBytesProp != null) {
+            try {
+                maxBytes = Long.parseLong(maxBytesProp);
+            } catch(NumberFormatException e) {
+                log.warn("invalid maxBytes property", e);
+            }
+        }
+        
         String cacheId = (String) properties.get("id");
         if (cacheId != null) {
             id = cacheId;
         }
         
-        Cache cache = new LRUCacheImpl(id, size);
+        Cache cache = new LRUCacheImpl(id, size, maxBytes);
         
-        log.debug("new cache constructed. size="+size);
+        log.debug("new cache constructed. size="+size+", maxBytes="+maxBytes);
         
         return cache;
     }
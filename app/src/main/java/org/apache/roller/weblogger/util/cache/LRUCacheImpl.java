@@ -18,27 +18,35 @@
 
 package org.apache.roller.weblogger.util.cache;
 
-import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import org.apache.roller.util.RollerConstants;
 
 
 /**
  * A simple LRU Cache.
+ *
+ * Besides the maximum number of entries the cache may be given a maximum
+ * number of bytes, in which case least recently used entries are also
+ * evicted until the weight of the rendered content held fits the budget.
+ *
+ * Subclasses which wrap values in something that can expire override
+ * isExpired(), so that expired entries count as misses.
  */
 public class LRUCacheImpl implements Cache {
     
     private final String id;
-    private final Map<String, Object> cache;
+    private final Map<String, WeightedValue> cache;
+    
+    // byte budget for the cache, no limit if 0
+    private final long maxBytes;
+    
+    // bytes held by the cached values
+    private long bytes = 0;
     
     // for metrics
-    protected double hits = 0;
-    protected double misses = 0;
-    protected double puts = 0;
-    protected double removes = 0;
-    protected Date startTime = new Date();
+    protected final CacheMetrics metrics = new CacheMetrics();
     
     
     protected LRUCacheImpl(String id) {
@@ -49,8 +57,15 @@ public class LRUCacheImpl implements Cache {
     
     protected LRUCacheImpl(String id, int maxsize) {
         
+        this(id, maxsize, 0);
+    }
+    
+    
+    protected LRUCacheImpl(String id, int maxsize, long maxBytes) {
+        
         this.id = id;
-        this.cache = new LRULinkedHashMap<>(maxsize);
+        this.cache = new LRULinkedHashMap(maxsize);
+        this.maxBytes = Math.max(maxBytes, 0);
     }
     
     
@@ -62,12 +77,33 @@ public class LRUCacheImpl implements Cache {
     
     /**
      * Store an entry in the cache.
+     *
+     * With a byte budget, values which alone weigh more than the whole
+     * budget are not cached at all.
      */
     @Override
     public synchronized void put(String key, Object value) {
         
-        this.cache.put(key, value);
-        puts++;
+        long weight = CacheWeigher.weigh(value);
+        if(maxBytes > 0 && weight > maxBytes) {
+            release(this.cache.remove(key));
+            return;
+        }
+        
+        release(this.cache.put(key, new WeightedValue(value, weight, metrics.now())));
+        bytes += weight;
+        metrics.put();
+        
+        // the new entry is the most recently used, so it goes last
+        if(maxBytes > 0) {
+            Iterator<WeightedValue> lru = this.cache.values().iterator();
+            while(bytes > maxBytes && lru.hasNext()) {
+                WeightedValue eldest = lru.next();
+                bytes -= eldest.weight;
+                lru.remove();
+                metrics.eviction(eldest.timeCached);
+            }
+        }
     }
     
     
@@ -75,26 +111,46 @@ public class LRUCacheImpl implements Cache {
      * Retrieve an entry from the cache.
      */
     @Override
-    public synchronized Object get(String key) {
+    public Object get(String key) {
         
-        Object obj = this.cache.get(key);
+        // lookup time includes waiting for the lock
+        long start = System.nanoTime();
         
-        // for metrics
-        if(obj == null) {
-            misses++;
-        } else {
-            hits++;
+        synchronized(this) {
+            WeightedValue entry = this.cache.get(key);
+            
+            if(entry != null && isExpired(entry.value)) {
+                release(this.cache.remove(key));
+                metrics.expiration(entry.timeCached);
+                entry = null;
+            }
+            
+            // for metrics
+            if(entry == null) {
+                metrics.miss(start);
+                return null;
+            }
+            metrics.hit(start);
+            
+            return entry.value;
         }
-        
-        return obj;
+    }
+    
+    
+    /**
+     * Check if a value stored in the cache has expired, so that it must
+     * be dropped instead of returned.
+     */
+    protected boolean isExpired(Object value) {
+        return false;
     }
     
     
     @Override
     public synchronized void remove(String key) {
         
-        this.cache.remove(key);
-        removes++;
+        release(this.cache.remove(key));
+        metrics.remove();
     }
     
     
@@ -102,38 +158,50 @@ public class LRUCacheImpl implements Cache {
     public synchronized void clear() {
         
         this.cache.clear();
+        bytes = 0;
         
         // clear metrics
-        hits = 0;
-        misses = 0;
-        puts = 0;
-        removes = 0;
-        startTime = new Date();
+        metrics.reset();
     }
     
     
     @Override
-    public Map<String, Object> getStats() {
+    public synchronized Map<String, Object> getStats() {
         
         Map<String, Object> stats = new HashMap<>();
-        stats.put("startTime", this.startTime);
-        stats.put("hits", this.hits);
-        stats.put("misses", this.misses);
-        stats.put("puts", this.puts);
-        stats.put("removes", this.removes);
-        
-        // calculate efficiency
-        if((misses - removes) > 0) {
-            double efficiency = hits / (misses + hits);
-            stats.put("efficiency", efficiency * RollerConstants.PERCENT_100);
+        metrics.addTo(stats);
+        stats.put("size", this.cache.size());
+        stats.put("bytes", this.bytes);
+        if(maxBytes > 0) {
+            stats.put("maxBytes", this.maxBytes);
         }
         
         return stats;
     }
     
     
+    private void release(WeightedValue entry) {
+        if(entry != null) {
+            bytes -= entry.weight;
+        }
+    }
+    
+    
+    private static final class WeightedValue {
+        private final Object value;
+        private final long weight;
+        private final long timeCached;
+        
+        WeightedValue(Object value, long weight, long timeCached) {
+            this.value = value;
+            this.weight = weight;
+            this.timeCached = timeCached;
+        }
+    }
+    
+    
     // David Flanaghan: http://www.davidflanagan.com/blog/000014.html
-    private static class LRULinkedHashMap<K, V> extends LinkedHashMap<K, V> {
+    private class LRULinkedHashMap extends LinkedHashMap<String, WeightedValue> {
         protected int maxsize;
         
         public LRULinkedHashMap(int maxsize) {
@@ -142,8 +210,13 @@ public class LRUCacheImpl implements Cache {
         }
         
         @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-            return this.size() > this.maxsize;
+        protected boolean removeEldestEntry(Map.Entry<String, WeightedValue> eldest) {
+            if(this.size() > this.maxsize) {
+                bytes -= eldest.getValue().weight;
+                metrics.eviction(eldest.getValue().timeCached);
+                return true;
+            }
+            return false;
         }
     }
     
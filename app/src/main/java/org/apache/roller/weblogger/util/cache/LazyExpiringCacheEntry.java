@@ -49,8 +49,16 @@ public class LazyExpiringCacheEntry implements Serializable {
     
     
     public LazyExpiringCacheEntry(Object item) {
+        this(item, System.currentTimeMillis());
+    }
+    
+    
+    /**
+     * Restore an entry which was originally cached at the given time.
+     */
+    public LazyExpiringCacheEntry(Object item, long timeCached) {
         this.value = item;
-        this.timeCached = System.currentTimeMillis();
+        this.timeCached = timeCached;
     }
     
     
@@ -68,6 +76,15 @@ public class LazyExpiringCacheEntry implements Serializable {
     }
     
     
+    /**
+     * Retrieve the value of this cache entry whether or not it is still
+     * "fresh".
+     */
+    public Object getStaleValue() {
+        return this.value;
+    }
+    
+    
     /**
      * Determine if this cache entry has expired.
      */
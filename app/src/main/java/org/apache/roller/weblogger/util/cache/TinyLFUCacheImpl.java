@@ -0,0 +1,443 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.roller.util.RollerConstants;
+
+
+/**
+ * A concurrent, frequency-aware cache.
+ *
+ * Entries are spread across a number of segments, each backed by its own
+ * ConcurrentHashMap, so reads never take a lock.  Writes lock only the
+ * segment they touch.  Eviction within a segment follows the CLOCK algorithm
+ * (a hit just sets a flag on the entry, which buys it one more trip around
+ * the queue), and a full segment only admits a new entry if the
+ * {@link FrequencySketch} says it is requested more often than the entry it
+ * would replace.  This keeps one-off requests, such as a crawler walking
+ * through every archive page, from pushing popular pages out of the cache.
+ *
+ * Every entry carries its own expiration time; expired entries are dropped
+ * lazily when they are read or when their segment needs room.
+ *
+ * With a byte budget each segment gets an equal share of it, and new entries
+ * have to win admission against as many victims as it takes to make room.
+ */
+public class TinyLFUCacheImpl implements Cache {
+
+    private static final Log log = LogFactory.getLog(TinyLFUCacheImpl.class);
+
+    // smallest number of entries we are willing to give each segment
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+
+    private final String id;
+    private final int maxSize;
+    private final long timeout;
+    private final long maxBytes;
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final FrequencySketch sketch;
+    private final LongSupplier clock;
+
+    // for metrics
+    private final CacheMetrics metrics;
+    private final LongAdder rejections = new LongAdder();
+
+
+    protected TinyLFUCacheImpl(String id, int maxsize, long timeout) {
+        this(id, maxsize, timeout, 0);
+    }
+
+
+    protected TinyLFUCacheImpl(String id, int maxsize, long timeout, long maxBytes) {
+        this(id, maxsize, timeout, maxBytes, System::currentTimeMillis);
+    }
+
+
+    TinyLFUCacheImpl(String id, int maxsize, long timeout, LongSupplier clock) {
+        this(id, maxsize, timeout, 0, clock);
+    }
+
+
+    /**
+     * @param timeout  default time to live of entries in seconds, entries
+     *                 never expire if this is not positive.
+     * @param maxBytes byte budget for the cache, no limit if not positive.
+     * @param clock    source of the current time in milliseconds.
+     */
+    TinyLFUCacheImpl(String id, int maxsize, long timeout, long maxBytes, LongSupplier clock) {
+
+        this.id = id;
+        this.maxSize = Math.max(maxsize, 1);
+        this.maxBytes = Math.max(maxBytes, 0);
+        this.timeout = (timeout > 0) ? timeout * RollerConstants.SEC_IN_MS : 0;
+        this.clock = clock;
+        this.metrics = new CacheMetrics(clock);
+        this.sketch = new FrequencySketch(this.maxSize);
+
+        // one segment per core, but never so many that segments get tiny
+        int count = Math.min(
+                FrequencySketch.ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors()),
+                Integer.highestOneBit(Math.max(this.maxSize / MIN_SEGMENT_CAPACITY, 1)));
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+        this.segments = new Segment[count];
+        int capacity = (this.maxSize + count - 1) / count;
+        long byteCapacity = (this.maxBytes + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacity, byteCapacity);
+        }
+    }
+
+
+    @Override
+    public String getId() {
+        return this.id;
+    }
+
+
+    /**
+     * Store an entry in the cache using the default time to live.
+     */
+    @Override
+    public void put(String key, Object value) {
+        put(key, value, this.timeout);
+    }
+
+
+    /**
+     * Store an entry in the cache with its own time to live.
+     *
+     * @param timeToLive time to live in milliseconds, the entry never expires
+     *                   if this is not positive.
+     */
+    public void put(String key, Object value, long timeToLive) {
+
+        int hash = spread(key.hashCode());
+        sketch.increment(hash);
+
+        long now = clock.getAsLong();
+        long expiresAt = (timeToLive > 0) ? now + timeToLive : 0;
+        Node node = new Node(key, value, now, expiresAt, CacheWeigher.weigh(value));
+
+        Segment segment = segmentFor(hash);
+        segment.lock.lock();
+        try {
+            // replacing an entry never needs admission
+            boolean replacing = segment.release(segment.map.remove(key));
+
+            if (segment.byteCapacity > 0 && node.weight > segment.byteCapacity) {
+                rejections.increment();
+                log.debug("TOO BIG ["+key+"]");
+                return;
+            }
+
+            // pick every victim needed before evicting any of them
+            List<Node> victims = new ArrayList<>();
+            long victimBytes = 0;
+            int victimFrequency = 0;
+            while (segment.needsRoomFor(node, victims.size(), victimBytes)) {
+                Node victim = segment.findVictim();
+                if (victim == null) {
+                    if (segment.queue.isEmpty()) {
+                        break;
+                    }
+                    // an expired entry made some room
+                    continue;
+                }
+                victims.add(victim);
+                victimBytes += victim.weight;
+                victimFrequency = Math.max(victimFrequency,
+                        sketch.frequency(spread(victim.key.hashCode())));
+            }
+
+            if (!replacing && !victims.isEmpty() && sketch.frequency(hash) <= victimFrequency) {
+                // candidate is less popular than what it would replace
+                for (int i = victims.size() - 1; i >= 0; i--) {
+                    segment.queue.addFirst(victims.get(i));
+                }
+                rejections.increment();
+                log.debug("REJECTED ["+key+"]");
+                return;
+            }
+
+            for (Node victim : victims) {
+                if (segment.map.remove(victim.key, victim)) {
+                    segment.release(victim);
+                    metrics.eviction(victim.timeCached);
+                }
+            }
+
+            segment.map.put(key, node);
+            segment.bytes.addAndGet(node.weight);
+            segment.queue.addLast(node);
+            segment.compact();
+            metrics.put();
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+
+    /**
+     * Retrieve an entry from the cache.
+     *
+     * Expired entries are removed and reported as a miss.
+     */
+    @Override
+    public Object get(String key) {
+
+        long start = System.nanoTime();
+        int hash = spread(key.hashCode());
+        sketch.increment(hash);
+
+        Segment segment = segmentFor(hash);
+        Node node = segment.map.get(key);
+
+        if (node == null) {
+            metrics.miss(start);
+            return null;
+        }
+
+        if (node.isExpired(clock.getAsLong())) {
+            log.debug("EXPIRED ["+key+"]");
+            if (segment.map.remove(key, node)) {
+                segment.release(node);
+                metrics.expiration(node.timeCached);
+            }
+            metrics.miss(start);
+            return null;
+        }
+
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        metrics.hit(start);
+
+        return node.value;
+    }
+
+
+    @Override
+    public void remove(String key) {
+
+        Segment segment = segmentFor(spread(key.hashCode()));
+
+        // queue entries for removed keys are skipped and compacted later
+        segment.release(segment.map.remove(key));
+        metrics.remove();
+    }
+
+
+    @Override
+    public void clear() {
+
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.map.clear();
+                segment.queue.clear();
+                segment.bytes.set(0);
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        sketch.clear();
+
+        // clear metrics
+        metrics.reset();
+        rejections.reset();
+    }
+
+
+    /**
+     * Number of entries currently held, including any which have expired but
+     * not been cleaned up yet.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.map.size();
+        }
+        return size;
+    }
+
+
+    @Override
+    public Map<String, Object> getStats() {
+
+        Map<String, Object> stats = new HashMap<>();
+        metrics.addTo(stats);
+        stats.put("rejections", rejections.sum());
+        stats.put("size", size());
+        stats.put("maxSize", this.maxSize);
+
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes.get();
+        }
+        stats.put("bytes", bytes);
+        if (this.maxBytes > 0) {
+            stats.put("maxBytes", this.maxBytes);
+        }
+
+        return stats;
+    }
+
+
+    private Segment segmentFor(int hash) {
+        // the sketch uses the low bits, so pick segments from the high ones
+        return (segmentShift == 32) ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+
+    private static int spread(int hashCode) {
+        int h = hashCode * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+
+    private final class Segment {
+
+        private final ConcurrentHashMap<String, Node> map = new ConcurrentHashMap<>();
+
+        // CLOCK queue, guarded by lock, may hold nodes which are no longer mapped
+        private final ArrayDeque<Node> queue = new ArrayDeque<>();
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+
+        // byte budget for this segment, no limit if 0
+        private final long byteCapacity;
+
+        // bytes held by the mapped nodes, updated by lock free reads too
+        private final AtomicLong bytes = new AtomicLong();
+
+
+        Segment(int capacity, long byteCapacity) {
+            this.capacity = capacity;
+            this.byteCapacity = byteCapacity;
+        }
+
+
+        /**
+         * Whether adding the node needs more room than evicting the given
+         * number of entries and bytes would make.
+         */
+        boolean needsRoomFor(Node node, int victims, long victimBytes) {
+            return map.size() - victims >= capacity
+                    || (byteCapacity > 0 && bytes.get() - victimBytes + node.weight > byteCapacity);
+        }
+
+
+        /**
+         * Account for a node no longer being mapped.
+         *
+         * @return true if there was a node.
+         */
+        boolean release(Node node) {
+            if (node == null) {
+                return false;
+            }
+            bytes.addAndGet(-node.weight);
+            return true;
+        }
+
+
+        /**
+         * Find the entry to evict, taken off the queue.  Returns null if room
+         * was made by dropping an expired entry instead.
+         */
+        Node findVictim() {
+            long now = clock.getAsLong();
+
+            // two trips around the queue are enough to clear every flag
+            int budget = 2 * queue.size();
+            Node node;
+            while ((node = queue.pollFirst()) != null) {
+                if (map.get(node.key) != node) {
+                    continue;
+                }
+                if (node.isExpired(now)) {
+                    if (map.remove(node.key, node)) {
+                        release(node);
+                        metrics.expiration(node.timeCached);
+                    }
+                    return null;
+                }
+                if (node.referenced && budget-- > 0) {
+                    node.referenced = false;
+                    queue.addLast(node);
+                    continue;
+                }
+                return node;
+            }
+            return null;
+        }
+
+
+        /**
+         * Drop queue entries for keys which have been replaced or removed.
+         */
+        void compact() {
+            if (queue.size() > 2 * capacity) {
+                queue.removeIf(node -> map.get(node.key) != node);
+            }
+        }
+    }
+
+
+    private static final class Node {
+
+        private final String key;
+        private final Object value;
+        private final long timeCached;
+        private final long expiresAt;
+        private final long weight;
+
+        // set on every hit, cleared as the CLOCK hand passes
+        private volatile boolean referenced;
+
+
+        Node(String key, Object value, long timeCached, long expiresAt, long weight) {
+            this.key = key;
+            this.value = value;
+            this.timeCached = timeCached;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+
+
+        boolean isExpired(long now) {
+            return expiresAt > 0 && expiresAt <= now;
+        }
+    }
+
+}
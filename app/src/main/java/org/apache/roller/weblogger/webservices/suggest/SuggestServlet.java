@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.webservices.suggest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.List;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.text.StringEscapeUtils;
+import org.apache.roller.weblogger.WebloggerException;
+import org.apache.roller.weblogger.business.Weblogger;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.search.SearchSuggestion;
+import org.apache.roller.weblogger.config.WebloggerConfig;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.util.Utilities;
+
+
+/**
+ * Return search-as-you-type suggestions in JSON format, taken from the
+ * titles and tags of published entries in the search index.
+ * These URLs are supported:
+ * <ul>
+ * <li>/roller-services/suggest?q=[prefix] - suggestions from the entire site</li>
+ * <li>/roller-services/suggest/weblog/[handle]?q=[prefix] - suggestions from a specific weblog</li>
+ * </ul>
+ * An optional count parameter asks for fewer than the configured maximum.
+ */
+public class SuggestServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 4218639571024872713L;
+
+    private static final int MAX = WebloggerConfig.getIntProperty("search.suggest.max", 10);
+
+
+    @Override
+    public void doGet(
+            HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        String[] pathInfo = new String[0];
+
+        if (request.getPathInfo() != null) {
+            pathInfo = Utilities.stringToStringArray(request.getPathInfo(),"/");
+        }
+
+        String handle;
+        if (pathInfo.length == 0) {
+            handle = null;
+        } else if (pathInfo.length == 2 && "weblog".equals(pathInfo[0]) && StringUtils.isAlphanumeric(pathInfo[1])) {
+            handle = pathInfo[1];
+        } else {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed URL");
+            return;
+        }
+
+        String prefix = StringUtils.defaultString(request.getParameter("q"));
+
+        int count = MAX;
+        if (request.getParameter("count") != null) {
+            try {
+                count = Math.min(Integer.parseInt(request.getParameter("count")), MAX);
+            } catch (NumberFormatException notIgnored) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed URL");
+                return;
+            }
+        }
+
+        if (!WebloggerConfig.getBooleanProperty("search.enabled")) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Search is disabled");
+            return;
+        }
+
+        Weblogger roller = WebloggerFactory.getWeblogger();
+        List<SearchSuggestion> suggestions;
+        try {
+            if (handle != null) {
+                Weblog weblog = roller.getWeblogManager().getWeblogByHandle(handle);
+                if (weblog == null) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Weblog not found");
+                    return;
+                }
+            }
+            suggestions = roller.getIndexManager().suggest(prefix, handle, count);
+
+        } catch (WebloggerException we) {
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "ERROR fetching suggestions");
+            return;
+        }
+
+        response.setContentType("application/json; charset=utf-8");
+        PrintWriter pw = response.getWriter();
+        pw.println("{ \"prefix\": \"" + StringEscapeUtils.escapeJson(prefix) + "\",");
+        pw.println("  \"weblog\": \"" + StringUtils.defaultString(handle) + "\",");
+        pw.println("  \"suggestions\": [" );
+        for (Iterator<SearchSuggestion> it = suggestions.iterator(); it.hasNext();) {
+            SearchSuggestion suggestion = it.next();
+            pw.print("    { \"text\" : \"");
+            pw.print(StringEscapeUtils.escapeJson(suggestion.getText()));
+            pw.print("\", \"type\" : \"");
+            pw.print(suggestion.getType());
+            pw.print("\", \"count\" : ");
+            pw.print(suggestion.getCount());
+            pw.print(" }");
+            if (it.hasNext()) {
+                pw.println(", ");
+            }
+        }
+        pw.println("\n  ]\n}");
+        response.flushBuffer();
+    }
+}
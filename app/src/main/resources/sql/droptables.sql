@@ -27,6 +27,7 @@ drop table newsfeed;
 drop table roller_properties;
 drop table roller_audit_log;
 drop table roller_tasklock;
+drop table roller_cacheinvalidation;
 
 -- supplemental services tables
 drop table pingqueueentry;
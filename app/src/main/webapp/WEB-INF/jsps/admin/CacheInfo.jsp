@@ -19,6 +19,41 @@
 
 <p class="subtitle"><s:text name="cacheInfo.subtitle" />
 <p><s:text name="cacheInfo.prompt" />
+<s:url action="cacheInfo!json" var="cacheInfoJson" />
+<p><a href="<s:property value="cacheInfoJson" />"><s:text name="cacheInfo.json" /></a></p>
+
+<s:if test="getBooleanProp('search.enabled')">
+    <s:form action="cacheInfo!rebuildIndex">
+        <s:hidden name="salt" />
+        <p><s:text name="cacheInfo.rebuild.prompt" /></p>
+        <s:submit value="%{getText('cacheInfo.rebuild.button')}" cssClass="btn btn-default" />
+    </s:form>
+
+    <s:if test="rebuildStatus != null">
+        <p>
+            <s:if test="rebuildStatus.running">
+                <s:text name="cacheInfo.rebuild.running" />
+            </s:if>
+            <s:else>
+                <s:text name="cacheInfo.rebuild.finished" />
+            </s:else>
+            <s:if test="rebuildStatus.weblogHandle != null">
+                <s:property value="rebuildStatus.weblogHandle" />
+            </s:if>
+            <s:else>
+                <s:text name="cacheInfo.rebuild.allWeblogs" />
+            </s:else>
+            <br />
+            <s:text name="cacheInfo.rebuild.progress">
+                <s:param value="rebuildStatus.indexed" />
+                <s:param value="rebuildStatus.total" />
+                <s:param value="rebuildStatus.percentComplete" />
+                <s:param value="rebuildStatus.entriesPerSecond" />
+                <s:param value="rebuildStatus.elapsedSeconds" />
+            </s:text>
+        </p>
+    </s:if>
+</s:if>
 
 <s:iterator var="cache" value="stats">
     <s:if test="#cache != null && !#cache.value.isEmpty">
@@ -29,6 +29,25 @@
     <s:if test="getBooleanProp('search.enabled')">
         <p><s:text name="maintenance.prompt.index" /></p>
         <s:submit value="%{getText('maintenance.button.index')}" action="maintenance!index" cssClass="btn" />
+
+        <s:if test="rebuildStatus != null">
+            <p>
+                <s:if test="rebuildStatus.running">
+                    <s:text name="maintenance.rebuild.running" />
+                </s:if>
+                <s:else>
+                    <s:text name="maintenance.rebuild.finished" />
+                </s:else>
+                <br />
+                <s:text name="maintenance.rebuild.progress">
+                    <s:param value="rebuildStatus.indexed" />
+                    <s:param value="rebuildStatus.total" />
+                    <s:param value="rebuildStatus.percentComplete" />
+                    <s:param value="rebuildStatus.entriesPerSecond" />
+                    <s:param value="rebuildStatus.elapsedSeconds" />
+                </s:text>
+            </p>
+        </s:if>
     </s:if>
 
     <p><s:text name="maintenance.prompt.reset" /></p>
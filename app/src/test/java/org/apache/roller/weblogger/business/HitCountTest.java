@@ -21,6 +21,7 @@ package org.apache.roller.weblogger.business;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.runnable.HitCountProcessingJob;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogHitCount;
@@ -28,8 +29,10 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -199,6 +202,67 @@ public class HitCountTest  {
         assertNull(hitCount);
     }
     
+    @Test
+    public void testIncrementHitCounts() throws Exception {
+        
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        
+        testUser = TestUtils.getManagedUser(testUser);
+        Weblog blog1 = TestUtils.setupWeblog("hitCntTest1", testUser);
+        Weblog blog2 = TestUtils.setupWeblog("hitCntTest2", testUser);
+        WeblogHitCount cnt1 = TestUtils.setupHitCount(blog1, 10);
+        TestUtils.endSession(true);
+        
+        WeblogHitCount cnt2 = null;
+        try {
+            // load the count so it is cached before being incremented
+            assertEquals(10, mgr.getHitCount(cnt1.getId()).getDailyHits());
+            TestUtils.endSession(true);
+            
+            // one weblog with a count, one without and one gone
+            Map<String, Long> hits = new HashMap<>();
+            hits.put(blog1.getId(), 5L);
+            hits.put(blog2.getId(), 3L);
+            hits.put("no-such-weblog", 7L);
+            mgr.incrementHitCounts(hits);
+            TestUtils.endSession(true);
+            
+            assertEquals(15, mgr.getHitCount(cnt1.getId()).getDailyHits());
+            cnt2 = mgr.getHitCountByWeblog(TestUtils.getManagedWebsite(blog2));
+            assertNotNull(cnt2);
+            assertEquals(3, cnt2.getDailyHits());
+            TestUtils.endSession(true);
+            
+            // hits counted by the queue get to the db the same way
+            HitCountQueue queue = HitCountQueue.getInstance();
+            queue.drainHits();
+            queue.processHit(blog1);
+            queue.processHit(blog1);
+            queue.processHit(blog2);
+            Map<String, Long> drained = queue.drainHits();
+            assertEquals(Long.valueOf(2), drained.get(blog1.getId()));
+            assertEquals(Long.valueOf(1), drained.get(blog2.getId()));
+            assertTrue(queue.drainHits().isEmpty());
+            
+            queue.restoreHits(drained);
+            new HitCountProcessingJob().execute();
+            assertTrue(queue.drainHits().isEmpty());
+            
+            assertEquals(17, mgr.getHitCount(cnt1.getId()).getDailyHits());
+            assertEquals(4, mgr.getHitCount(cnt2.getId()).getDailyHits());
+            TestUtils.endSession(true);
+        
+        } finally {
+            // cleanup
+            TestUtils.teardownHitCount(cnt1.getId());
+            if (cnt2 != null) {
+                TestUtils.teardownHitCount(cnt2.getId());
+            }
+            TestUtils.teardownWeblog(blog1.getId());
+            TestUtils.teardownWeblog(blog2.getId());
+        }
+    }
+    
     @Test
     public void testResetHitCounts() throws Exception {
         WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
@@ -20,9 +20,12 @@ package org.apache.roller.weblogger.business;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.jpa.EntityLookupCache;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogPermission;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.InvalidationEvent;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -230,6 +233,74 @@ public class PermissionTest  {
     }
 
 
+    /**
+     * Test that cached permission lookups go away whenever the permission
+     * changes, here or on another node of a cluster.
+     */
+    @Test
+    public void testCachedPermissions() throws Exception {
+        
+        User user = TestUtils.setupUser("testCachedPermissions");
+        TestUtils.endSession(true);
+
+        UserManager mgr = WebloggerFactory.getWeblogger().getUserManager();
+        List<String> actions = Collections.singletonList(WeblogPermission.POST);
+
+        // an invitation is not a permission yet
+        mgr.grantWeblogPermissionPending(TestUtils.getManagedWebsite(testWeblog),
+                TestUtils.getManagedUser(user), actions);
+        TestUtils.endSession(true);
+        assertNull(getPermission(mgr, user));
+        mgr.confirmWeblogPermission(TestUtils.getManagedWebsite(testWeblog),
+                TestUtils.getManagedUser(user));
+        TestUtils.endSession(true);
+        assertNotNull(getPermission(mgr, user));
+        
+        // a later session gets it from the cache
+        assertTrue(getPermission(mgr, user).hasAction(WeblogPermission.POST));
+        assertEquals(1, lookupHits);
+
+        // granting more is seen right away
+        mgr.grantWeblogPermission(TestUtils.getManagedWebsite(testWeblog),
+                TestUtils.getManagedUser(user), Collections.singletonList(WeblogPermission.ADMIN));
+        TestUtils.endSession(true);
+        assertTrue(getPermission(mgr, user).hasAction(WeblogPermission.ADMIN));
+        assertEquals(0, lookupHits);
+
+        // as ClusterCacheHandler applies a permission changed on another node
+        new InvalidationEvent(InvalidationEvent.Type.PERMISSION, "otherNodePermission",
+                testWeblog.getHandle()).apply();
+        assertNotNull(getPermission(mgr, user));
+        assertEquals(0, lookupHits);
+
+        // revoking is seen right away too
+        mgr.revokeWeblogPermission(TestUtils.getManagedWebsite(testWeblog),
+                TestUtils.getManagedUser(user), WeblogPermission.ALL_ACTIONS);
+        TestUtils.endSession(true);
+        assertNull(getPermission(mgr, user));
+
+        TestUtils.teardownUser(user.getUserName());
+        TestUtils.endSession(true);
+    }
+
+    // entity cache hits of the last getPermission() lookup
+    private long lookupHits;
+
+    private WeblogPermission getPermission(UserManager mgr, User user) throws Exception {
+        Weblog weblog = TestUtils.getManagedWebsite(testWeblog);
+        User managedUser = TestUtils.getManagedUser(user);
+        long hits = getCacheHits();
+        WeblogPermission perm = mgr.getWeblogPermission(weblog, managedUser);
+        lookupHits = getCacheHits() - hits;
+        TestUtils.endSession(true);
+        return perm;
+    }
+
+    private static long getCacheHits() {
+        return (Long) CacheManager.getStats().get(EntityLookupCache.CACHE_ID).get("hits");
+    }
+
+
     /**
      * Tests weblog invitation process.
      */
@@ -21,6 +21,8 @@ package org.apache.roller.weblogger.business;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.config.RuntimeConfigSnapshot;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
 import org.apache.roller.weblogger.pojos.RuntimeConfigProperty;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -91,5 +93,31 @@ public class PropertiesTest  {
         assertEquals("foofoo", props.get("site.name").getValue());
         assertEquals("blahblah", props.get("site.description").getValue());
     }
+
+
+    @Test
+    public void testSnapshot() throws Exception {
+
+        PropertiesManager mgr = WebloggerFactory.getWeblogger().getPropertiesManager();
+        RuntimeConfigSnapshot before = mgr.getSnapshot();
+        assertNotNull(before);
+
+        RuntimeConfigProperty prop = mgr.getProperty("site.name");
+        prop.setValue("snapshot");
+        mgr.saveProperty(prop);
+        TestUtils.endSession(true);
+
+        // saving swaps in a new snapshot, leaving the old one as it was
+        assertEquals("snapshot", WebloggerRuntimeConfig.getProperty("site.name"));
+        assertNotEquals("snapshot", before.getProperty("site.name"));
+        assertTrue(mgr.getSnapshot().getVersion() > before.getVersion());
+
+        // typed values
+        RuntimeConfigSnapshot snapshot = mgr.getSnapshot();
+        assertEquals(snapshot.getIntProperty("site.pages.maxEntries"),
+                WebloggerRuntimeConfig.getIntProperty("site.pages.maxEntries"));
+        assertEquals(-1, snapshot.getIntProperty("no.such.property"));
+        assertFalse(snapshot.getBooleanProperty("no.such.property"));
+    }
     
 }
@@ -29,6 +29,7 @@ import org.junit.jupiter.api.Test;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -100,6 +101,24 @@ public class SQLScriptRunnerTest  {
         assertFalse(tableExists(con, "testrolleruser"));
         assertFalse(tableExists(con, "testuserrole"));
     }
+
+    @Test
+    public void testCreateTableIfMissing() throws Exception {
+        try (Connection con = WebloggerStartup.getDatabaseProvider().getConnection()) {
+
+            // as on a database installed before the table was added
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate("drop table roller_cacheinvalidation");
+            }
+            assertFalse(tableExists(con, "roller_cacheinvalidation"));
+
+            assertTrue(WebloggerStartup.createTableIfMissing("roller_cacheinvalidation", "cacheinvalidation"));
+            assertTrue(tableExists(con, "roller_cacheinvalidation"));
+
+            // nothing to do once it is there
+            assertFalse(WebloggerStartup.createTableIfMissing("roller_cacheinvalidation", "cacheinvalidation"));
+        }
+    }
         
     public static boolean tableExists(Connection con, String tableName) throws SQLException {
         ResultSet rs = con.getMetaData().getTables(null, null, "%", null);
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.runnable.ThreadManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test foreground and background execution in ThreadManager.
+ */
+public class ThreadManagerTest {
+
+    private ThreadManager mgr;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // setup weblogger
+        TestUtils.setupWeblogger();
+        mgr = WebloggerFactory.getWeblogger().getThreadManager();
+    }
+
+    @Test
+    public void testForegroundReturnsWhenDone() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+
+        long start = System.nanoTime();
+        mgr.executeInForeground(() -> ran.set(true));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(ran.get());
+        assertTrue(millis < 400, "took " + millis + "ms");
+
+        assertEquals("done", mgr.executeInForeground(() -> "done", 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testForegroundFailureAndTimeout() throws Exception {
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> mgr.executeInForeground(() -> {
+                    throw new IllegalStateException("broken");
+                }, 5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+
+        CountDownLatch interrupted = new CountDownLatch(1);
+        assertThrows(TimeoutException.class,
+                () -> mgr.executeInForeground(() -> {
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return null;
+                }, 50, TimeUnit.MILLISECONDS));
+
+        // the task is cancelled once nobody waits for it
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBackgroundFuture() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> task = mgr.executeInBackground(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+                // shutting down
+            }
+        });
+        assertFalse(task.isDone());
+
+        release.countDown();
+        task.get(5, TimeUnit.SECONDS);
+        assertTrue(task.isDone());
+    }
+
+}
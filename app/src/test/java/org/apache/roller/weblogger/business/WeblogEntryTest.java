@@ -21,6 +21,8 @@ package org.apache.roller.weblogger.business;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.jpa.QueryShapeCacheMXBean;
+import org.apache.roller.weblogger.business.jpa.QueryShapeStats;
 import org.apache.roller.weblogger.pojos.*;
 import org.apache.roller.weblogger.pojos.WeblogEntry.PubStatus;
 import org.junit.jupiter.api.AfterEach;
@@ -28,9 +30,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.io.StringWriter;
 import java.sql.Timestamp;
 import java.util.*;
+import javax.management.JMX;
+import javax.management.ObjectName;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -307,6 +312,108 @@ public class WeblogEntryTest  {
         TestUtils.endSession(true);
     }
 
+    /**
+     * Test paging entries by seeking from the last entry of a page.
+     */
+    @Test
+    public void testSeekPaging() throws Exception {
+        
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        
+        // five entries, three of them published at the same time
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        testUser = TestUtils.getManagedUser(testUser);
+        long now = System.currentTimeMillis();
+        long[] pubTimes = {now - 3000, now - 1000, now - 1000, now - 1000, now - 2000};
+        for (int i = 0; i < pubTimes.length; i++) {
+            WeblogEntry entry = TestUtils.setupWeblogEntry("seek" + i, testWeblog, testUser);
+            entry.setPubTime(new Timestamp(pubTimes[i]));
+            mgr.saveWeblogEntry(entry);
+        }
+        TestUtils.endSession(true);
+        
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        wesc.setWeblog(testWeblog);
+        List<WeblogEntry> all = mgr.getWeblogEntries(wesc);
+        assertEquals(5, all.size());
+        
+        // seeking page by page gives the same entries as offsets
+        List<WeblogEntry> seeked = new ArrayList<>();
+        WeblogEntry last = null;
+        for (int page = 0; page < 3; page++) {
+            wesc = new WeblogEntrySearchCriteria();
+            wesc.setWeblog(testWeblog);
+            if (last != null) {
+                wesc.setAfter(last.getPubTime(), last.getId());
+            }
+            wesc.setMaxResults(2);
+            List<WeblogEntry> entries = mgr.getWeblogEntries(wesc);
+            
+            wesc.setAfter(null, null);
+            wesc.setOffset(page * 2);
+            assertEquals(mgr.getWeblogEntries(wesc), entries);
+            
+            seeked.addAll(entries);
+            last = entries.get(entries.size() - 1);
+        }
+        assertEquals(all, seeked);
+        
+        // and seeking the other way goes back up
+        wesc = new WeblogEntrySearchCriteria();
+        wesc.setWeblog(testWeblog);
+        wesc.setAfter(all.get(3).getPubTime(), all.get(3).getId());
+        wesc.setSortOrder(WeblogEntrySearchCriteria.SortOrder.ASCENDING);
+        wesc.setMaxResults(2);
+        List<WeblogEntry> entries = mgr.getWeblogEntries(wesc);
+        assertEquals(2, entries.size());
+        assertEquals(all.get(2), entries.get(0));
+        assertEquals(all.get(1), entries.get(1));
+    }
+    
+    
+    /**
+     * Test that searches of the same shape share one compiled query.
+     */
+    @Test
+    public void testQueryShapes() throws Exception {
+        
+        WeblogEntryManager mgr = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        QueryShapeCacheMXBean shapes = JMX.newMXBeanProxy(
+                ManagementFactory.getPlatformMBeanServer(),
+                new ObjectName("org.apache.roller.weblogger:type=QueryShapes"),
+                QueryShapeCacheMXBean.class);
+        
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        WeblogEntrySearchCriteria wesc = new WeblogEntrySearchCriteria();
+        wesc.setWeblog(testWeblog);
+        wesc.setText("shape");
+        mgr.getWeblogEntries(wesc);
+        int count = shapes.getShapeCount();
+        long executions = getExecutions(shapes);
+        
+        // different values, same shape
+        wesc.setText("other shape");
+        wesc.setMaxResults(5);
+        mgr.getWeblogEntries(wesc);
+        assertEquals(count, shapes.getShapeCount());
+        assertEquals(executions + 1, getExecutions(shapes));
+        
+        // another filter is another shape
+        wesc.setLocale("en");
+        mgr.getWeblogEntries(wesc);
+        assertEquals(count + 1, shapes.getShapeCount());
+    }
+    
+    private static long getExecutions(QueryShapeCacheMXBean shapes) {
+        long executions = 0;
+        for (QueryShapeStats stats : shapes.getShapes()) {
+            executions += stats.getExecutions();
+        }
+        return executions;
+    }
+    
+    
     /**
      * Test that the createAnchor() method actually ensures unique anchors.
      */
@@ -21,10 +21,13 @@ package org.apache.roller.weblogger.business;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.jpa.EntityLookupCache;
 import org.apache.roller.weblogger.pojos.ThemeTemplate.ComponentType;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogTemplate;
+import org.apache.roller.weblogger.util.cache.CacheManager;
+import org.apache.roller.weblogger.util.cache.InvalidationEvent;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -170,4 +173,92 @@ public class WeblogPageTest  {
         TestUtils.endSession(true);
     }
     
+    
+    /**
+     * Test that template lookups are cached across sessions, including
+     * lookups of templates which don't exist, and that saves invalidate them.
+     */
+    @Test
+    public void testCachedLookups() throws Exception {
+        
+        WeblogManager mgr = WebloggerFactory.getWeblogger().getWeblogManager();
+        
+        // nothing there yet, and remembered as such
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        assertNull(mgr.getTemplateByName(testWeblog, testPage.getName()));
+        long hits = getCacheHits();
+        assertNull(mgr.getTemplateByName(testWeblog, testPage.getName()));
+        assertEquals(hits + 1, getCacheHits());
+        TestUtils.endSession(true);
+        
+        // creating the template makes it visible right away
+        testPage.setWeblog(TestUtils.getManagedWebsite(testWeblog));
+        mgr.saveTemplate(testPage);
+        TestUtils.endSession(true);
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        WeblogTemplate page = mgr.getTemplateByName(testWeblog, testPage.getName());
+        assertNotNull(page);
+        TestUtils.endSession(true);
+        
+        // a later session gets it from the cache
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        hits = getCacheHits();
+        page = mgr.getTemplateByName(testWeblog, testPage.getName());
+        assertNotNull(page);
+        assertEquals(testPage.getId(), page.getId());
+        assertEquals(hits + 1, getCacheHits());
+        
+        // renaming it invalidates the old name
+        page.setName("renamedTemplate");
+        mgr.saveTemplate(page);
+        TestUtils.endSession(true);
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        assertNull(mgr.getTemplateByName(testWeblog, testPage.getName()));
+        page = mgr.getTemplateByName(testWeblog, "renamedTemplate");
+        assertNotNull(page);
+        
+        mgr.removeTemplate(page);
+        TestUtils.endSession(true);
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        assertNull(mgr.getTemplateByName(testWeblog, "renamedTemplate"));
+    }
+    
+    
+    /**
+     * Test that template and weblog events from other nodes of a cluster,
+     * which only carry the weblog handle, invalidate template lookups.
+     */
+    @Test
+    public void testClusterInvalidation() throws Exception {
+        
+        WeblogManager mgr = WebloggerFactory.getWeblogger().getWeblogManager();
+        String handle = testWeblog.getHandle();
+        
+        // remembered as missing
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        assertNull(mgr.getTemplateByName(testWeblog, testPage.getName()));
+        TestUtils.endSession(true);
+        
+        // as ClusterCacheHandler applies a template saved on another node
+        new InvalidationEvent(InvalidationEvent.Type.TEMPLATE, "otherNodeTemplate", handle).apply();
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        long hits = getCacheHits();
+        assertNull(mgr.getTemplateByName(testWeblog, testPage.getName()));
+        assertEquals(hits, getCacheHits());
+        TestUtils.endSession(true);
+        
+        // and a weblog saved on another node
+        new InvalidationEvent(InvalidationEvent.Type.WEBLOG, "otherNodeWeblog", handle).apply();
+        testWeblog = TestUtils.getManagedWebsite(testWeblog);
+        hits = getCacheHits();
+        assertNull(mgr.getTemplateByName(testWeblog, testPage.getName()));
+        assertEquals(hits, getCacheHits());
+        TestUtils.endSession(true);
+    }
+    
+    
+    private static long getCacheHits() {
+        return (Long) CacheManager.getStats().get(EntityLookupCache.CACHE_ID).get("hits");
+    }
+    
 }
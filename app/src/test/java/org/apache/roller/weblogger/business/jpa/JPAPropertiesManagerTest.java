@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.jpa;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.startup.WebloggerStartup;
+import org.apache.roller.weblogger.config.RuntimeConfigSnapshot;
+import org.apache.roller.weblogger.config.WebloggerRuntimeConfig;
+import org.apache.roller.weblogger.pojos.RuntimeConfigProperty;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test loading runtime properties saved by another node.
+ */
+public class JPAPropertiesManagerTest {
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        TestUtils.setupWeblogger();
+        TestUtils.endSession(true);
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        JPAPropertiesManagerImpl pmgr = (JPAPropertiesManagerImpl)
+            WebloggerFactory.getWeblogger().getPropertiesManager();
+        RuntimeConfigSnapshot before = pmgr.getSnapshot();
+
+        // nothing changed
+        pmgr.refresh();
+        assertSame(before, pmgr.getSnapshot());
+
+        // another node saves a property along with a newer version stamp
+        long version = before.getVersion() + 1000;
+        try (Connection con = WebloggerStartup.getDatabaseProvider().getConnection();
+                PreparedStatement update = con.prepareStatement(
+                    "update roller_properties set value = ? where name = ?")) {
+            update.setString(1, "from another node");
+            update.setString(2, "site.description");
+            update.executeUpdate();
+            update.setString(1, Long.toString(version));
+            update.setString(2, JPAPropertiesManagerImpl.VERSION_PROPERTY);
+            update.executeUpdate();
+        }
+
+        pmgr.refresh();
+        assertEquals(version, pmgr.getSnapshot().getVersion());
+        assertEquals("from another node", WebloggerRuntimeConfig.getProperty("site.description"));
+    }
+
+    @Test
+    public void testSaveMovesPastStoredVersion() throws Exception {
+        JPAPropertiesManagerImpl pmgr = (JPAPropertiesManagerImpl)
+            WebloggerFactory.getWeblogger().getPropertiesManager();
+
+        // another node with a clock far ahead of ours saves first
+        long stored = System.currentTimeMillis() + 3600000;
+        setStoredVersion(stored);
+
+        RuntimeConfigProperty prop = pmgr.getProperty("site.description");
+        prop.setValue("saved here");
+        pmgr.saveProperty(prop);
+        TestUtils.endSession(true);
+        assertTrue(pmgr.getSnapshot().getVersion() > stored);
+
+        // our save is newest, so nothing to load
+        RuntimeConfigSnapshot saved = pmgr.getSnapshot();
+        pmgr.refresh();
+        assertSame(saved, pmgr.getSnapshot());
+    }
+
+    @Test
+    public void testRefreshOnOlderVersion() throws Exception {
+        JPAPropertiesManagerImpl pmgr = (JPAPropertiesManagerImpl)
+            WebloggerFactory.getWeblogger().getPropertiesManager();
+
+        // a stamp behind ours still means the stored properties differ
+        long version = pmgr.getSnapshot().getVersion() - 1;
+        setStoredVersion(version);
+
+        pmgr.refresh();
+        assertEquals(version, pmgr.getSnapshot().getVersion());
+    }
+
+    private static void setStoredVersion(long version) throws Exception {
+        try (Connection con = WebloggerStartup.getDatabaseProvider().getConnection();
+                PreparedStatement update = con.prepareStatement(
+                    "update roller_properties set value = ? where name = ?")) {
+            update.setString(1, Long.toString(version));
+            update.setString(2, JPAPropertiesManagerImpl.VERSION_PROPERTY);
+            update.executeUpdate();
+        }
+    }
+
+}
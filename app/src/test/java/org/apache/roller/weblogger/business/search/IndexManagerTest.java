@@ -20,16 +20,22 @@ package org.apache.roller.weblogger.business.search;
 import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.roller.util.RollerConstants;
 import org.apache.roller.weblogger.TestUtils;
+import org.apache.roller.weblogger.business.URLStrategy;
 import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
+import org.apache.roller.weblogger.business.search.lucene.LuceneIndexManager;
+import org.apache.roller.weblogger.business.search.lucene.RebuildWebsiteIndexOperation;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogCategory;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.pojos.WeblogEntryComment;
+import org.apache.roller.weblogger.util.cache.CacheManager;
 import org.instancio.Instancio;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -37,6 +43,10 @@ import org.junit.jupiter.api.Test;
 
 import static org.apache.roller.weblogger.ui.rendering.model.SearchResultsModel.RESULTS_PER_PAGE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test Search Manager business layer operations.
@@ -97,6 +107,311 @@ public class IndexManagerTest {
                 WebloggerFactory.getWeblogger().getUrlStrategy());
             assertEquals(1, result.getResults().size());
 
+            // hits are read from the index without loading the entry
+            SearchHit hit = result.getHits().get(0);
+            assertEquals(entries.get(0).getId(), hit.getId());
+            assertEquals("The Tholian Web", hit.getTitle());
+            assertEquals("General", hit.getCategoryName());
+            assertEquals(entries.get(0).getPubTime().getTime(), hit.getPubTime().getTime());
+            assertNotNull(hit.getSummary());
+            assertTrue(hit.getPermalink().contains(testWeblog.getHandle()));
+            assertEquals(entries.get(0).getAnchor(), hit.getAnchor());
+
+        } finally {
+            for (WeblogEntry entry : entries) {
+                indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
+            }
+            indexManager.removeWeblogIndex(testWeblog);
+        }
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        URLStrategy urlStrategy = WebloggerFactory.getWeblogger().getUrlStrategy();
+
+        List<WeblogEntry> entries = createWeblogEntries(testWeblog, indexManager, entryManager);
+
+        try {
+            // newest first
+            SearchResultList first = indexManager.search("Enterprise", testWeblog.getHandle(),
+                null, testWeblog.getLocale(), null, 0, 1, null, true, urlStrategy);
+            assertEquals(2, first.getTotalHits());
+            assertTrue(first.isTotalHitsExact());
+            assertEquals(1, first.getHits().size());
+            assertEquals(entries.get(1).getId(), first.getHits().get(0).getId());
+            assertNotNull(first.getNextCursor());
+
+            // the cursor names the entry, not a document number which
+            // changes as segments are merged
+            assertTrue(first.getNextCursor().endsWith("_" + entries.get(1).getId()));
+
+            // continuing from the cursor
+            SearchResultList second = indexManager.search("Enterprise", testWeblog.getHandle(),
+                null, testWeblog.getLocale(), null, 1, 1, first.getNextCursor(), true, urlStrategy);
+            assertEquals(1, second.getOffset());
+            assertEquals(1, second.getHits().size());
+            assertEquals(entries.get(0).getId(), second.getHits().get(0).getId());
+            assertNull(second.getNextCursor());
+
+            // or from the page number alone
+            second = indexManager.search("Enterprise", testWeblog.getHandle(),
+                null, testWeblog.getLocale(), 1, 1, urlStrategy);
+            assertEquals(entries.get(0).getId(), second.getHits().get(0).getId());
+
+            // past the last page there is nothing, rather than the first page again
+            SearchResultList third = indexManager.search("Enterprise", testWeblog.getHandle(),
+                null, testWeblog.getLocale(), 2, 1, urlStrategy);
+            assertEquals(0, third.getHits().size());
+            assertEquals(2, third.getTotalHits());
+
+        } finally {
+            for (WeblogEntry entry : entries) {
+                indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
+            }
+            indexManager.removeWeblogIndex(testWeblog);
+        }
+    }
+
+    @Test
+    public void testFacets() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        URLStrategy urlStrategy = WebloggerFactory.getWeblogger().getUrlStrategy();
+
+        List<WeblogEntry> entries = createWeblogEntries(testWeblog, indexManager, entryManager);
+
+        try {
+            SearchResultList result = indexManager.search("Enterprise", testWeblog.getHandle(),
+                null, testWeblog.getLocale(), null, 0, 1, null, true, urlStrategy);
+            assertEquals(1, result.getHits().size());
+
+            // counted over all results, not just the page
+            Map<String, Map<String, Integer>> facets = result.getFacets();
+            assertEquals(Integer.valueOf(2), facets.get(IndexManager.FACET_CATEGORY).get("General"));
+            assertEquals(Integer.valueOf(2), facets.get(IndexManager.FACET_WEBLOG).get(testWeblog.getHandle()));
+            assertTrue(facets.get(IndexManager.FACET_TAG).isEmpty());
+            assertEquals(1, facets.get(IndexManager.FACET_YEAR).size());
+
+            String year = facets.get(IndexManager.FACET_YEAR).keySet().iterator().next();
+            result = indexManager.search("Enterprise", testWeblog.getHandle(), null,
+                testWeblog.getLocale(), Map.of(IndexManager.FACET_YEAR, year), 0, 10, null, true, urlStrategy);
+            assertEquals(2, result.getTotalHits());
+
+            result = indexManager.search("Enterprise", testWeblog.getHandle(), null,
+                testWeblog.getLocale(), Map.of(IndexManager.FACET_TAG, "tholian"), 0, 10, null, true, urlStrategy);
+            assertEquals(0, result.getTotalHits());
+
+        } finally {
+            for (WeblogEntry entry : entries) {
+                indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
+            }
+            indexManager.removeWeblogIndex(testWeblog);
+        }
+    }
+
+    @Test
+    public void testCachedSearch() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        URLStrategy urlStrategy = WebloggerFactory.getWeblogger().getUrlStrategy();
+
+        List<WeblogEntry> entries = createWeblogEntries(testWeblog, indexManager, entryManager);
+
+        try {
+            SearchResultList result = indexManager.search("Tholian", testWeblog.getHandle(),
+                null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE, urlStrategy);
+            assertEquals(1, result.getHits().size());
+            long hits = cacheHits();
+
+            // same search but for case and spacing
+            SearchResultList cached = indexManager.search("  tholian ", testWeblog.getHandle(),
+                null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE, urlStrategy);
+            assertEquals(hits + 1, cacheHits());
+            assertEquals(1, cached.getHits().size());
+            assertEquals(result.getHits().get(0).getId(), cached.getHits().get(0).getId());
+            assertEquals(1, cached.getResults().size());
+
+            // a changed index is searched again
+            indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entries.get(0)));
+            Thread.sleep(RollerConstants.SEC_IN_MS);
+            result = indexManager.search("Tholian", testWeblog.getHandle(),
+                null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE, urlStrategy);
+            assertEquals(0, result.getHits().size());
+
+        } finally {
+            for (WeblogEntry entry : entries) {
+                indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
+            }
+            indexManager.removeWeblogIndex(testWeblog);
+        }
+    }
+
+    @Test
+    public void testCommentSearch() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+        URLStrategy urlStrategy = WebloggerFactory.getWeblogger().getUrlStrategy();
+
+        List<WeblogEntry> entries = createWeblogEntries(testWeblog, indexManager, entryManager);
+
+        try {
+            WeblogEntryComment comment = TestUtils.setupComment("", entries.get(0));
+            comment.setContent("Fascinating, said the Vulcan.");
+            entryManager.saveComment(comment);
+            TestUtils.endSession(true);
+
+            // the entry is found by its comment's text
+            indexManager.addCommentIndexOperation(comment);
+            Thread.sleep(RollerConstants.SEC_IN_MS);
+            SearchResultList result = indexManager.search("Vulcan", testWeblog.getHandle(),
+                null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE, urlStrategy);
+            assertEquals(1, result.getHits().size());
+            assertEquals(entries.get(0).getId(), result.getHits().get(0).getId());
+
+            // re-indexing the entry leaves its comments alone
+            indexManager.addEntryReIndexOperation(TestUtils.getManagedWeblogEntry(entries.get(0)));
+            Thread.sleep(RollerConstants.SEC_IN_MS);
+            result = indexManager.search("Vulcan", testWeblog.getHandle(),
+                null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE, urlStrategy);
+            assertEquals(1, result.getHits().size());
+
+            indexManager.removeCommentIndexOperation(comment);
+            TestUtils.teardownComment(comment.getId());
+            TestUtils.endSession(true);
+            Thread.sleep(RollerConstants.SEC_IN_MS);
+            result = indexManager.search("Vulcan", testWeblog.getHandle(),
+                null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE, urlStrategy);
+            assertEquals(0, result.getHits().size());
+
+        } finally {
+            for (WeblogEntry entry : entries) {
+                indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
+            }
+            indexManager.removeWeblogIndex(testWeblog);
+        }
+    }
+
+    @Test
+    public void testSuggest() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        List<WeblogEntry> entries = createWeblogEntries(testWeblog, indexManager, entryManager);
+
+        try {
+            List<SearchSuggestion> suggestions = indexManager.suggest("thol", testWeblog.getHandle(), 5);
+            assertEquals(1, suggestions.size());
+            assertEquals("The Tholian Web", suggestions.get(0).getText());
+            assertEquals(SearchSuggestion.TYPE_TITLE, suggestions.get(0).getType());
+            assertEquals(1, suggestions.get(0).getCount());
+
+            // from any word of the title, for the whole site too
+            assertEquals("The Tholian Web", indexManager.suggest("  WEB", null, 5).get(0).getText());
+
+            // but only from the weblog asked for
+            assertTrue(indexManager.suggest("thol", "nosuchweblog", 5).isEmpty());
+            assertTrue(indexManager.suggest("", testWeblog.getHandle(), 5).isEmpty());
+
+            // the most frequent come first, not the alphabetically first
+            String[] titles = { "Tribal Alert", "The Trouble with Tribbles", "The Trouble with Tribbles" };
+            for (int i = 0; i < titles.length; i++) {
+                WeblogEntry entry = TestUtils.getManagedWeblogEntry(entries.get(i + 2));
+                entry.setTitle(titles[i]);
+                entry.setPubTime(new Timestamp(System.currentTimeMillis()));
+                entryManager.saveWeblogEntry(entry);
+                TestUtils.endSession(true);
+                indexManager.addEntryReIndexOperation(entry);
+            }
+            Thread.sleep(RollerConstants.SEC_IN_MS);
+
+            suggestions = indexManager.suggest("trib", testWeblog.getHandle(), 1);
+            assertEquals(1, suggestions.size());
+            assertEquals("The Trouble with Tribbles", suggestions.get(0).getText());
+            assertEquals(2, suggestions.get(0).getCount());
+            assertEquals(2, indexManager.suggest("trib", testWeblog.getHandle(), 5).size());
+
+        } finally {
+            for (WeblogEntry entry : entries) {
+                indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
+            }
+            indexManager.removeWeblogIndex(testWeblog);
+        }
+    }
+
+    private static long cacheHits() {
+        return (Long) CacheManager.getStats().get(SearchResultCache.CACHE_ID).get("hits");
+    }
+
+    @Test
+    public void testReIndexReplacesEntry() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        List<WeblogEntry> entries = createWeblogEntries(testWeblog, indexManager, entryManager);
+
+        try {
+            WeblogEntry entry = TestUtils.getManagedWeblogEntry(entries.get(0));
+            entry.setText("The Enterprise is caught in the Tholian web.");
+            entryManager.saveWeblogEntry(entry);
+            TestUtils.endSession(true);
+
+            // the old document is replaced, not added to
+            indexManager.addEntryReIndexOperation(entry);
+            Thread.sleep(RollerConstants.SEC_IN_MS);
+
+            SearchResultList result = indexManager.search("Spock",
+                testWeblog.getHandle(), null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE,
+                WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(0, result.getResults().size());
+
+            result = indexManager.search("Enterprise",
+                testWeblog.getHandle(), null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE,
+                WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(2, result.getResults().size());
+
+        } finally {
+            for (WeblogEntry entry : entries) {
+                indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
+            }
+            indexManager.removeWeblogIndex(testWeblog);
+        }
+    }
+
+    @Test
+    public void testRebuildWeblogIndex() throws Exception {
+
+        IndexManager indexManager = WebloggerFactory.getWeblogger().getIndexManager();
+        WeblogEntryManager entryManager = WebloggerFactory.getWeblogger().getWeblogEntryManager();
+
+        List<WeblogEntry> entries = createWeblogEntries(testWeblog, indexManager, entryManager);
+
+        try {
+            new RebuildWebsiteIndexOperation(WebloggerFactory.getWeblogger(),
+                (LuceneIndexManager) indexManager, testWeblog).run();
+
+            long published = entryManager.getEntryCount(TestUtils.getManagedWebsite(testWeblog));
+            IndexRebuildStatus status = indexManager.getRebuildStatus();
+            assertFalse(status.isRunning());
+            assertEquals(testWeblog.getHandle(), status.getWeblogHandle());
+            assertEquals(published, status.getTotal());
+            assertEquals(published, status.getIndexed());
+
+            // only published entries make it into a rebuilt index
+            long expected = entries.subList(0, 2).stream()
+                .filter(entry -> entry.getStatus() == WeblogEntry.PubStatus.PUBLISHED).count();
+            SearchResultList result = indexManager.search("Enterprise",
+                testWeblog.getHandle(), null, testWeblog.getLocale(), 0, RESULTS_PER_PAGE,
+                WebloggerFactory.getWeblogger().getUrlStrategy());
+            assertEquals(expected, result.getResults().size());
+
         } finally {
             for (WeblogEntry entry : entries) {
                 indexManager.removeEntryIndexOperation(TestUtils.getManagedWeblogEntry(entry));
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.business.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.roller.weblogger.business.search.IndexUpdateQueue.Action;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test IndexUpdateQueue.
+ */
+public class IndexUpdateQueueTest {
+
+    private final List<Map<String, Action>> applied =
+            Collections.synchronizedList(new ArrayList<>());
+
+    private IndexUpdateQueue queue;
+
+    @AfterEach
+    public void tearDown() {
+        if (queue != null) {
+            queue.shutdown(1000);
+        }
+    }
+
+    @Test
+    public void testCoalescesChangesToAnEntry() throws Exception {
+        queue = new IndexUpdateQueue(applied::add, 100, 100, 200);
+        queue.start();
+
+        // a burst of comments on one entry, and a deleted entry
+        for (int i = 0; i < 20; i++) {
+            queue.enqueue("hot", Action.REMOVE);
+            queue.enqueue("hot", Action.INDEX);
+        }
+        queue.enqueue("other", Action.INDEX);
+        queue.enqueue("other", Action.REMOVE);
+
+        assertTrue(queue.flush(5000));
+        assertEquals(1, applied.size());
+        assertEquals(Map.of("hot", Action.INDEX, "other", Action.REMOVE), applied.get(0));
+        assertEquals(42L, queue.getQueued() + queue.getCoalesced());
+        assertEquals(2L, queue.getApplied());
+        assertEquals(0, queue.getDepth());
+        assertEquals(0L, queue.getLagMillis());
+    }
+
+    @Test
+    public void testAppliesInBatches() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue = new IndexUpdateQueue(batch -> {
+            applied.add(batch);
+            blocked.countDown();
+            await(release);
+        }, 100, 4, 0);
+        queue.start();
+
+        // the rest collect while the first batch is being applied
+        queue.enqueue("first", Action.INDEX);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            queue.enqueue("entry" + i, Action.INDEX);
+        }
+        assertEquals(10, queue.getDepth());
+        release.countDown();
+
+        assertTrue(queue.flush(5000));
+        assertEquals(4, applied.size());
+        assertEquals(1, applied.get(0).size());
+        assertEquals(4, applied.get(1).size());
+        assertEquals(4, applied.get(2).size());
+        assertEquals(2, applied.get(3).size());
+        assertEquals(4L, queue.getBatches());
+    }
+
+    @Test
+    public void testBlocksWhenFull() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue = new IndexUpdateQueue(batch -> {
+            applied.add(batch);
+            blocked.countDown();
+            await(release);
+        }, 2, 10, 0);
+        queue.start();
+
+        queue.enqueue("first", Action.INDEX);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        queue.enqueue("second", Action.INDEX);
+        queue.enqueue("third", Action.INDEX);
+
+        Thread producer = new Thread(() -> {
+            try {
+                queue.enqueue("fourth", Action.INDEX);
+            } catch (InterruptedException ignored) {
+                // test failed anyway
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive(), "enqueue should wait while the queue is full");
+
+        // changes to queued entries never wait
+        queue.enqueue("second", Action.REMOVE);
+        assertTrue(queue.getLagMillis() > 0);
+
+        release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+
+        assertTrue(queue.flush(5000));
+        assertEquals(Action.REMOVE, applied.get(1).get("second"));
+        assertEquals(4L, queue.getApplied());
+    }
+
+    @Test
+    public void testRetriesFailedBatches() throws Exception {
+        AtomicInteger failing = new AtomicInteger(1);
+        queue = new IndexUpdateQueue(batch -> {
+            if (failing.getAndDecrement() > 0) {
+                throw new IOException("disk full");
+            }
+            applied.add(batch);
+        }, 100, 100, 0, 3, 10);
+        queue.start();
+
+        queue.enqueue("entry", Action.INDEX);
+        assertTrue(queue.flush(5000));
+        assertEquals(List.of(Map.of("entry", Action.INDEX)), applied);
+        assertEquals(1L, queue.getFailures());
+        assertEquals(1L, queue.getApplied());
+        assertEquals(0L, queue.getDropped());
+    }
+
+    @Test
+    public void testDropsAfterMaxAttempts() throws Exception {
+        CountDownLatch droppedLatch = new CountDownLatch(1);
+        queue = new IndexUpdateQueue(new IndexUpdateQueue.BatchHandler() {
+            @Override
+            public void apply(Map<String, Action> batch) throws IOException {
+                throw new IOException("disk gone");
+            }
+
+            @Override
+            public void dropped(Map<String, Action> changes) {
+                applied.add(changes);
+                droppedLatch.countDown();
+            }
+        }, 100, 100, 0, 3, 10);
+        queue.start();
+
+        queue.enqueue("entry", Action.REMOVE);
+        assertTrue(droppedLatch.await(5, TimeUnit.SECONDS));
+        assertTrue(queue.flush(5000));
+        assertEquals(List.of(Map.of("entry", Action.REMOVE)), applied);
+        assertEquals(3L, queue.getFailures());
+        assertEquals(1L, queue.getDropped());
+        assertEquals(0L, queue.getApplied());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test SearchResultCache keys.
+ */
+public class SearchResultCacheTest {
+
+    @Test
+    public void testNormalizeTerm() {
+        assertEquals("roller AND java", SearchResultCache.normalizeTerm("  Roller   AND JAVA "));
+        assertEquals("Title:java (TAGS:blog OR weblog)",
+                SearchResultCache.normalizeTerm("Title:Java (TAGS:Blog OR Weblog)"));
+    }
+
+    @Test
+    public void testKeysDoNotCollide() {
+        String term = SearchResultCache.generateKey(1, "java/cat=news", "blog",
+                null, null, null, 0, 10, null, false);
+        String category = SearchResultCache.generateKey(1, "java", "blog",
+                "news", null, null, 0, 10, null, false);
+        assertNotEquals(term, category);
+
+        String value = SearchResultCache.generateKey(1, "java", "blog",
+                null, null, Map.of("tag", "x/weblog=y"), 0, 10, null, false);
+        String drillDowns = SearchResultCache.generateKey(1, "java", "blog",
+                null, null, Map.of("tag", "x", "weblog", "y"), 0, 10, null, false);
+        assertNotEquals(value, drillDowns);
+
+        // searches differing only in case share a key
+        assertEquals(category, SearchResultCache.generateKey(1, "JAVA", "blog",
+                "News", null, null, 0, 10, null, false));
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.business.search.lucene;
+
+import java.nio.file.Path;
+import java.util.Map;
+import org.apache.roller.weblogger.business.search.IndexUpdateQueue.Action;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test RebuildCheckpoint.
+ */
+public class RebuildCheckpointTest {
+
+    @TempDir
+    Path indexDir;
+
+    @Test
+    public void testKeepsChangesMadeDuringRebuild() throws Exception {
+        assertNull(RebuildCheckpoint.read(indexDir));
+
+        new RebuildCheckpoint("weblog", "entry9", 10,
+                Map.of("entry3", Action.INDEX, "comment1", Action.REMOVE_COMMENT))
+                .write(indexDir);
+
+        RebuildCheckpoint checkpoint = RebuildCheckpoint.read(indexDir);
+        assertNotNull(checkpoint);
+        assertEquals("weblog", checkpoint.getWeblogId());
+        assertEquals("entry9", checkpoint.getLastId());
+        assertEquals(10, checkpoint.getIndexed());
+        assertEquals(Map.of("entry3", Action.INDEX, "comment1", Action.REMOVE_COMMENT),
+                checkpoint.getUpdated());
+
+        RebuildCheckpoint.delete(indexDir);
+        assertNull(RebuildCheckpoint.read(indexDir));
+    }
+
+}
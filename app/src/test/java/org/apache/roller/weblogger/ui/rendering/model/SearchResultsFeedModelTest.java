@@ -32,6 +32,7 @@ import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.search.IndexManagerTest;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.SearchHit;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
@@ -43,6 +44,7 @@ import org.junit.jupiter.api.Test;
 import static org.apache.roller.weblogger.business.search.IndexManagerTest.createWeblogEntries;
 import static org.apache.roller.weblogger.ui.rendering.util.WeblogSearchRequest.SEARCH_SERVLET;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -87,6 +89,12 @@ class SearchResultsFeedModelTest {
 
         try {
             SearchResultsFeedModel model = executeSearch("Enterprise");
+            assertEquals(2, model.getSearchHits().size());
+            assertEquals(model.getSearchHits(), model.getSearchResultsPager().getItems());
+            for (SearchHit hit : model.getSearchHits()) {
+                assertNotNull(hit.getTitle());
+                assertNotNull(hit.getPermalink());
+            }
             assertEquals(2, model.getResults().size());
 
             model = executeSearch("Tholian");
@@ -34,10 +34,12 @@ import org.apache.roller.weblogger.business.WeblogEntryManager;
 import org.apache.roller.weblogger.business.WebloggerFactory;
 import org.apache.roller.weblogger.business.search.IndexManagerTest;
 import org.apache.roller.weblogger.business.search.IndexManager;
+import org.apache.roller.weblogger.business.search.SearchHit;
 import org.apache.roller.weblogger.pojos.User;
 import org.apache.roller.weblogger.pojos.Weblog;
 import org.apache.roller.weblogger.pojos.WeblogEntry;
 import org.apache.roller.weblogger.pojos.wrapper.WeblogEntryWrapper;
+import org.apache.roller.weblogger.ui.rendering.pagers.SearchResultsPager;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogPageRequest;
 import org.apache.roller.weblogger.ui.rendering.util.WeblogSearchRequest;
 import org.junit.jupiter.api.AfterEach;
@@ -47,6 +49,7 @@ import org.junit.jupiter.api.Test;
 import static org.apache.roller.weblogger.business.search.IndexManagerTest.createWeblogEntries;
 import static org.apache.roller.weblogger.ui.rendering.util.WeblogSearchRequest.SEARCH_SERVLET;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -90,6 +93,13 @@ class SearchResultsModelTest {
 
         try {
             SearchResultsModel model = executeSearch("Enterprise");
+            assertEquals(2, model.getSearchHits().size());
+            assertEquals(model.getSearchHits(),
+                    ((SearchResultsPager) model.getWeblogEntriesPager()).getHits());
+            for (SearchHit hit : model.getSearchHits()) {
+                assertNotNull(hit.getTitle());
+                assertNotNull(hit.getPermalink());
+            }
             assertEquals(1, model.getResults().size());
             int count = 0;
             for (Date midnight : model.getResults().keySet()) {
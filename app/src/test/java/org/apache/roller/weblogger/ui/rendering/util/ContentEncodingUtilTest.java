@@ -0,0 +1,173 @@
+package org.apache.roller.weblogger.ui.rendering.util;
+
+import org.apache.roller.weblogger.util.cache.CachedContent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ContentEncodingUtilTest {
+
+    @Mock
+    private HttpServletRequest request;
+
+    @Mock
+    private HttpServletResponse response;
+
+    @Mock
+    private ServletOutputStream outputStream;
+
+    private AutoCloseable mocks;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        mocks = MockitoAnnotations.openMocks(this);
+        when(response.getOutputStream()).thenReturn(outputStream);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(acceptsGzip("gzip, deflate, br"));
+        assertTrue(acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(acceptsGzip("*"));
+        assertFalse(acceptsGzip("deflate, br"));
+        assertFalse(acceptsGzip("gzip;q=0"));
+        assertFalse(acceptsGzip("gzip;q=0, *"));
+        assertFalse(acceptsGzip(null));
+    }
+
+    @Test
+    public void testWritesCompressedVariant() throws IOException {
+        CachedContent content = newContent();
+        content.compress();
+        byte[] compressed = content.getCompressedContent();
+        assertNotNull(compressed);
+        assertEquals(content.getContent().length + compressed.length, content.getSize());
+
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(content.getContent(), gzip.readAllBytes());
+        }
+
+        when(request.getHeaders("Accept-Encoding"))
+                .thenReturn(Collections.enumeration(Collections.singletonList("gzip")));
+        ContentEncodingUtil.writeContent(request, response, content);
+
+        verify(response).setHeader("Vary", "Accept-Encoding");
+        verify(response).setHeader("Content-Encoding", "gzip");
+        verify(response).setContentLength(compressed.length);
+        verify(outputStream).write(compressed);
+    }
+
+    @Test
+    public void testWritesRawContent() throws IOException {
+        CachedContent content = newContent();
+        content.compress();
+
+        when(request.getHeaders("Accept-Encoding"))
+                .thenReturn(Collections.enumeration(Collections.singletonList("identity")));
+        ContentEncodingUtil.writeContent(request, response, content);
+
+        verify(response).setHeader("Vary", "Accept-Encoding");
+        verify(response).setHeader("ETag", content.getETag());
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+        verify(response).setContentLength(content.getContent().length);
+        verify(outputStream).write(content.getContent());
+    }
+
+    @Test
+    public void testRespondsIfNoneMatch() throws IOException {
+        CachedContent content = newContent();
+        content.compress();
+        String eTag = content.getETag();
+        assertNotNull(eTag);
+        assertEquals(eTag, newContent().getETag());
+
+        when(request.getHeaders("Accept-Encoding"))
+                .thenReturn(Collections.enumeration(Collections.singletonList("identity")));
+        when(request.getHeader("If-None-Match")).thenReturn("\"other\", W/" + eTag);
+        assertTrue(ContentEncodingUtil.respondIfNotModified(request, response,
+                content, 0, null));
+
+        verify(response).setHeader("ETag", eTag);
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+
+        // the gzip variant is a different representation
+        when(request.getHeaders("Accept-Encoding"))
+                .thenReturn(Collections.enumeration(Collections.singletonList("gzip")));
+        assertFalse(ContentEncodingUtil.respondIfNotModified(request, response,
+                content, 0, null));
+
+        verify(response).setHeader(eq("ETag"), argThat(tag -> !tag.equals(eTag)));
+        verify(response, never()).getOutputStream();
+    }
+
+    @Test
+    public void testIfNoneMatchTakesPrecedence() throws IOException {
+        CachedContent content = newContent();
+        long lastModified = 1000000L;
+
+        // a client with another version is sent it, however recent its date
+        when(request.getHeader("If-None-Match")).thenReturn("\"other\"");
+        when(request.getDateHeader("If-Modified-Since")).thenReturn(lastModified);
+        assertFalse(ContentEncodingUtil.respondIfNotModified(request, response,
+                content, lastModified, null));
+        verify(response, never()).setStatus(anyInt());
+
+        // without an ETag to compare only the date decides, and the 304
+        // still carries the ETag
+        when(request.getHeader("If-None-Match")).thenReturn(null);
+        assertTrue(ContentEncodingUtil.respondIfNotModified(request, response,
+                content, lastModified, null));
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(response, times(2)).setHeader("ETag", content.getETag());
+
+        // nothing cached yet, so there is no ETag to match
+        when(request.getHeader("If-None-Match")).thenReturn(content.getETag());
+        assertFalse(ContentEncodingUtil.respondIfNotModified(request, response,
+                null, lastModified, null));
+    }
+
+    @Test
+    public void testMatchesIfNoneMatch() {
+        assertTrue(ModDateHeaderUtil.matches("\"a\"", "\"a\""));
+        assertTrue(ModDateHeaderUtil.matches("\"b\", \"a\"", "\"a\""));
+        assertTrue(ModDateHeaderUtil.matches("W/\"a\"", "\"a\""));
+        assertTrue(ModDateHeaderUtil.matches("*", "\"a\""));
+        assertFalse(ModDateHeaderUtil.matches("\"b\"", "\"a\""));
+        assertFalse(ModDateHeaderUtil.matches(null, "\"a\""));
+    }
+
+    private boolean acceptsGzip(String header) {
+        when(request.getHeaders("Accept-Encoding")).thenReturn(header == null
+                ? Collections.emptyEnumeration()
+                : Collections.enumeration(Collections.singletonList(header)));
+        return ContentEncodingUtil.acceptsGzip(request);
+    }
+
+    private static CachedContent newContent() throws IOException {
+        CachedContent content = new CachedContent(0, "text/html; charset=utf-8");
+        for (int i = 0; i < 200; i++) {
+            content.getCachedWriter().println("<p>Some repetitive weblog content</p>");
+        }
+        content.close();
+        return content;
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test CacheMissCoalescer.
+ */
+public class CacheMissCoalescerTest {
+
+    @Test
+    public void testFollowerGetsLeaderContent() throws Exception {
+        CacheMissCoalescer coalescer = CacheMissCoalescer.getInstance();
+
+        CacheMissCoalescer.Flight leader = coalescer.join("test:shared");
+        assertTrue(leader.isLeader());
+
+        CacheMissCoalescer.Flight follower = coalescer.join("test:shared");
+        assertFalse(follower.isLeader());
+
+        // unrelated keys are not held up
+        CacheMissCoalescer.Flight other = coalescer.join("test:other");
+        assertTrue(other.isLeader());
+        other.complete(null);
+
+        CachedContent content = new CachedContent(16);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<CachedContent> waiting = executor.submit(follower::await);
+            leader.complete(content);
+            assertSame(content, waiting.get());
+        } finally {
+            executor.shutdown();
+        }
+
+        // once complete the next request leads a new render
+        CacheMissCoalescer.Flight next = coalescer.join("test:shared");
+        assertTrue(next.isLeader());
+        next.complete(null);
+    }
+
+    @Test
+    public void testFailedLeaderReleasesFollowers() {
+        CacheMissCoalescer coalescer = CacheMissCoalescer.getInstance();
+
+        CacheMissCoalescer.Flight leader = coalescer.join("test:failed");
+        CacheMissCoalescer.Flight follower = coalescer.join("test:failed");
+
+        leader.complete(null);
+        assertNull(follower.await());
+    }
+
+}
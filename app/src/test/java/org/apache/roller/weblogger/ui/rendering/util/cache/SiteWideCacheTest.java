@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.ui.rendering.util.cache;
+
+import java.io.IOException;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.apache.roller.weblogger.util.cache.CachedContent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test dependency tracking in SiteWideCache.
+ */
+public class SiteWideCacheTest {
+
+    private final SiteWideCache cache = SiteWideCache.getInstance();
+
+    private final Weblog site = newWeblog("site");
+    private final Weblog other = newWeblog("other");
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        cache.clear();
+
+        // renders start after the clear
+        Thread.sleep(5);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cache.clear();
+    }
+
+    @Test
+    public void testEvictsOnlyDependentContent() throws Exception {
+        cache.put("permalink", newContent(), render(site));
+        cache.put("front", newContent(), render(site, CacheDependencies.ENTRIES));
+        cache.put("directory", newContent(), render(site, CacheDependencies.USERS));
+        cache.put("untracked", newContent());
+
+        // a post on another weblog changes the site's list of entries
+        cache.invalidate(newEntry(other));
+        assertNotNull(cache.get("permalink"));
+        assertNull(cache.get("front"));
+        assertNotNull(cache.get("directory"));
+        assertNull(cache.get("untracked"));
+
+        cache.invalidate(new User());
+        assertNotNull(cache.get("permalink"));
+        assertNull(cache.get("directory"));
+
+        cache.invalidate(newEntry(site));
+        assertNull(cache.get("permalink"));
+    }
+
+    @Test
+    public void testSkipsContentRenderedDuringChange() throws Exception {
+        CacheDependencies recording = render(site, CacheDependencies.ENTRIES);
+        Thread.sleep(5);
+
+        cache.invalidate(newEntry(other));
+        cache.put("front", newContent(), recording);
+        assertNull(cache.get("front"));
+
+        Thread.sleep(5);
+        cache.put("front", newContent(), render(site, CacheDependencies.ENTRIES));
+        assertNotNull(cache.get("front"));
+    }
+
+    @Test
+    public void testRecordsOnlyWhileRendering() {
+        CacheDependencies.record(CacheDependencies.COMMENTS);
+
+        CacheDependencies recording = CacheDependencies.start(site);
+        CacheDependencies.record(other);
+        recording.stop();
+        CacheDependencies.record(CacheDependencies.COMMENTS);
+
+        assertEquals(2, recording.getDependencies().size());
+        assertTrue(recording.getDependencies().contains(CacheDependencies.weblog("site")));
+        assertTrue(recording.getDependencies().contains(CacheDependencies.weblog("other")));
+    }
+
+    private static CacheDependencies render(Weblog weblog, String... dependencies) {
+        CacheDependencies recording = CacheDependencies.start(weblog);
+        for (String dependency : dependencies) {
+            CacheDependencies.record(dependency);
+        }
+        recording.stop();
+        return recording;
+    }
+
+    private static CachedContent newContent() throws IOException {
+        CachedContent content = new CachedContent(16);
+        content.close();
+        return content;
+    }
+
+    private static Weblog newWeblog(String handle) {
+        Weblog weblog = new Weblog();
+        weblog.setHandle(handle);
+        return weblog;
+    }
+
+    private static WeblogEntry newEntry(Weblog weblog) {
+        WeblogEntry entry = new WeblogEntry();
+        entry.setWebsite(weblog);
+        return entry;
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import org.apache.roller.util.RollerConstants;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test CacheMetrics and CacheDynamicMBean.
+ */
+public class CacheMetricsTest {
+
+    @Test
+    public void testSlidingWindows() {
+        AtomicLong time = new AtomicLong(RollerConstants.HOUR_IN_MS);
+        CacheMetrics metrics = new CacheMetrics(time::get);
+
+        metrics.miss(System.nanoTime());
+        metrics.miss(System.nanoTime());
+
+        // three minutes later everything hits
+        time.addAndGet(3 * RollerConstants.MIN_IN_MS);
+        metrics.hit(System.nanoTime());
+        metrics.hit(System.nanoTime());
+
+        assertEquals(100.0, metrics.getHitRatio(1));
+        assertEquals(50.0, metrics.getHitRatio(5));
+
+        // the misses fall out of the longest window too
+        time.addAndGet(13 * RollerConstants.MIN_IN_MS);
+        assertEquals(100.0, metrics.getHitRatio(15));
+        time.addAndGet(3 * RollerConstants.MIN_IN_MS);
+        assertNull(metrics.getHitRatio(15));
+
+        Map<String, Object> stats = new HashMap<>();
+        metrics.addTo(stats);
+        assertEquals(2L, stats.get("hits"));
+        assertEquals(2L, stats.get("misses"));
+        assertEquals(50.0, stats.get("efficiency"));
+        assertTrue(stats.containsKey("averageGetMicros"));
+        assertFalse(stats.containsKey("hitRatio15m"));
+    }
+
+    @Test
+    public void testRemovedAges() {
+        AtomicLong time = new AtomicLong();
+        TinyLFUCacheImpl cache = new TinyLFUCacheImpl("test", 10, 30, time::get);
+
+        cache.put("key1", "value1");
+        time.set(10000);
+        cache.put("key2", "value2");
+
+        // key1 expired after 30 seconds, key2 after 20 more
+        time.set(40000);
+        assertNull(cache.get("key1"));
+        assertNull(cache.get("key2"));
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(2L, stats.get("expirations"));
+        assertEquals(35.0, stats.get("averageRemovedAgeSeconds"));
+        assertEquals(0.0, stats.get("hitRatio1m"));
+    }
+
+    @Test
+    public void testMBeanExposesStats() throws Exception {
+        LRUCacheImpl cache = new LRUCacheImpl("test", 10);
+        cache.put("key1", "value1");
+        cache.get("key1");
+
+        CacheDynamicMBean mbean = new CacheDynamicMBean(cache);
+        assertEquals(1L, mbean.getAttribute("hits"));
+        assertThrows(AttributeNotFoundException.class, () -> mbean.getAttribute("nothing"));
+
+        boolean found = false;
+        for (MBeanAttributeInfo attribute : mbean.getMBeanInfo().getAttributes()) {
+            found |= "evictions".equals(attribute.getName());
+        }
+        assertTrue(found);
+
+        mbean.invoke("clear", null, null);
+        assertNull(cache.get("key1"));
+    }
+
+}
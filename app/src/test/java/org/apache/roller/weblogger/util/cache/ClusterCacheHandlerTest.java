@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.roller.weblogger.pojos.User;
+import org.apache.roller.weblogger.pojos.Weblog;
+import org.apache.roller.weblogger.pojos.WeblogEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test two ClusterCacheHandler nodes sharing one database.
+ */
+public class ClusterCacheHandlerTest {
+
+    private static final String URL = "jdbc:derby:memory:clustercache;create=true";
+
+    // what the local CacheManager of node b was told
+    private static final List<String> applied = new ArrayList<>();
+
+    // node b, as the local CacheManager would call it
+    private static CacheHandler echo;
+
+    private ClusterCacheHandler nodeA;
+    private ClusterCacheHandler nodeB;
+
+    @BeforeAll
+    public static void setUpDatabase() throws SQLException {
+        System.setProperty("derby.stream.error.file",
+                System.getProperty("project.build.directory", "target") + "/derby.log");
+
+        try (Connection con = DriverManager.getConnection(URL);
+                Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("create table roller_cacheinvalidation ("
+                    + " id varchar(48) not null primary key,"
+                    + " origin varchar(48) not null,"
+                    + " eventtype varchar(20) not null,"
+                    + " objectid varchar(48),"
+                    + " handle varchar(255),"
+                    + " created timestamp not null)");
+        }
+
+        CacheManager.registerHandler(new CacheHandler() {
+            @Override
+            public void invalidate(WeblogEntry entry) {
+                applied.add("entry " + entry.getId() + " " + entry.getWebsite().getHandle());
+                if (echo != null) {
+                    echo.invalidate(entry);
+                }
+            }
+
+            @Override
+            public void invalidate(User user) {
+                applied.add("user " + user.getUserName());
+            }
+        });
+    }
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        execute("delete from roller_cacheinvalidation");
+        applied.clear();
+
+        nodeA = newNode();
+        nodeB = newNode();
+        echo = nodeB;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        echo = null;
+    }
+
+    @Test
+    public void testAppliesEventsFromOtherNodes() throws SQLException {
+        WeblogEntry entry = newEntry("entry1", "site");
+        nodeA.invalidate(entry);
+        nodeA.invalidate(entry);
+        User user = new User();
+        user.setUserName("bob");
+        nodeA.invalidate(user);
+
+        // repeated invalidations go out as one event
+        nodeA.sync();
+        assertEquals(2, count());
+
+        nodeB.sync();
+        assertEquals(2, applied.size());
+        assertTrue(applied.contains("entry entry1 site"));
+        assertTrue(applied.contains("user bob"));
+
+        // each event is only applied once, and never published again
+        nodeB.sync();
+        assertEquals(2, applied.size());
+        assertEquals(2, count());
+
+        // nodes don't receive their own events
+        applied.clear();
+        nodeA.sync();
+        assertTrue(applied.isEmpty());
+    }
+
+    @Test
+    public void testRetriesFailedPublish() throws SQLException {
+        execute("rename table roller_cacheinvalidation to roller_cacheinvalidation_off");
+        try {
+            nodeA.invalidate(newEntry("entry2", "site"));
+            nodeA.sync();
+        } finally {
+            execute("rename table roller_cacheinvalidation_off to roller_cacheinvalidation");
+        }
+
+        nodeA.sync();
+        nodeB.sync();
+        assertEquals(1, applied.size());
+        assertEquals("entry entry2 site", applied.get(0));
+    }
+
+    private static ClusterCacheHandler newNode() {
+        return new ClusterCacheHandler(new JDBCInvalidationTransport(
+                () -> DriverManager.getConnection(URL), System::currentTimeMillis, () -> false));
+    }
+
+    private static WeblogEntry newEntry(String id, String handle) {
+        Weblog weblog = new Weblog();
+        weblog.setHandle(handle);
+        WeblogEntry entry = new WeblogEntry();
+        entry.setId(id);
+        entry.setWebsite(weblog);
+        return entry;
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection con = DriverManager.getConnection(URL);
+                Statement stmt = con.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    private static int count() throws SQLException {
+        try (Connection con = DriverManager.getConnection(URL);
+                Statement stmt = con.createStatement();
+                ResultSet rs = stmt.executeQuery("select count(*) from roller_cacheinvalidation")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.apache.roller.weblogger.util.cache.TinyLFUCacheImplTest.newContent;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test DiskBackedCacheImpl.
+ */
+public class DiskBackedCacheImplTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testSurvivesRestart() throws IOException {
+        DiskBackedCacheImpl cache = newCache(0);
+
+        CachedContent content = newContent(2000);
+        content.compress();
+        LazyExpiringCacheEntry entry = new LazyExpiringCacheEntry(content, 1000);
+        cache.put("page", entry);
+        cache.put("other", "not written to disk");
+
+        // a new instance starts with an empty memory cache
+        DiskBackedCacheImpl restarted = newCache(0);
+        assertNull(restarted.get("other"));
+        assertNull(restarted.get("missing"));
+
+        LazyExpiringCacheEntry loaded = (LazyExpiringCacheEntry) restarted.get("page");
+        assertNotNull(loaded);
+        assertEquals(1000, loaded.getTimeCached());
+        assertNull(loaded.getValue(2000));
+
+        CachedContent loadedContent = (CachedContent) loaded.getValue(1000);
+        assertArrayEquals(content.getContent(), loadedContent.getContent());
+        assertArrayEquals(content.getCompressedContent(), loadedContent.getCompressedContent());
+        assertEquals(1L, restarted.getStats().get("diskHits"));
+
+        // now served from memory
+        assertSame(loaded, restarted.get("page"));
+        assertEquals(1L, restarted.getStats().get("diskHits"));
+    }
+
+    @Test
+    public void testClearSurvivesRestart() throws Exception {
+        DiskBackedCacheImpl cache = newCache(0);
+
+        cache.put("page", newContent(100));
+        cache.clear();
+        assertNull(newCache(0).get("page"));
+
+        Thread.sleep(10);
+        cache.put("page", newContent(100));
+        assertNotNull(newCache(0).get("page"));
+
+        cache.remove("page");
+        assertNull(newCache(0).get("page"));
+        assertEquals(0L, newCache(0).getStats().get("diskBytes"));
+    }
+
+    @Test
+    public void testByteBudget() throws IOException {
+        DiskBackedCacheImpl cache = newCache(5000);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("page" + i, newContent(1000));
+        }
+
+        long bytes = (Long) cache.getStats().get("diskBytes");
+        assertTrue(bytes > 0 && bytes <= 5000, "disk bytes " + bytes);
+        assertNotNull(newCache(5000).get("page9"));
+    }
+
+    private DiskBackedCacheImpl newCache(long maxBytes) throws IOException {
+        return new DiskBackedCacheImpl(new LRUCacheImpl("test", 100), dir, maxBytes, 0);
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.IOException;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.apache.roller.weblogger.util.cache.TinyLFUCacheImplTest.newContent;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test LRUCacheImpl.
+ */
+public class LRUCacheImplTest {
+
+    @Test
+    public void testByteBudget() throws IOException {
+        // Create cache with 10 item limit, room for 3 entries of 100 bytes
+        LRUCacheImpl cache = new LRUCacheImpl("test", 10, 300);
+
+        cache.put("big", newContent(400));
+        assertNull(cache.get("big"));
+
+        cache.put("key1", newContent(100));
+        cache.put("key2", newContent(100));
+        cache.put("key3", newContent(100));
+        assertNotNull(cache.get("key1"));
+
+        // least recently used entries make room for the new one
+        cache.put("key4", newContent(150));
+        assertNotNull(cache.get("key1"));
+        assertNull(cache.get("key2"));
+        assertNull(cache.get("key3"));
+        assertNotNull(cache.get("key4"));
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(250L, stats.get("bytes"));
+        assertEquals(300L, stats.get("maxBytes"));
+        assertEquals(2L, stats.get("evictions"));
+
+        // replacing an entry releases the bytes of the old one
+        cache.put("key4", newContent(50));
+        cache.remove("key1");
+        assertEquals(50L, cache.getStats().get("bytes"));
+    }
+
+    @Test
+    public void testExpiringEntriesAreWeighed() throws IOException {
+        ExpiringLRUCacheImpl cache = new ExpiringLRUCacheImpl("test", 10, 60, 300);
+
+        cache.put("key1", newContent(200));
+        cache.put("key2", newContent(200));
+        assertNull(cache.get("key1"));
+        assertNotNull(cache.get("key2"));
+        assertEquals(200L, cache.getStats().get("bytes"));
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ */
+
+package org.apache.roller.weblogger.util.cache;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test TinyLFUCacheImpl.
+ */
+public class TinyLFUCacheImplTest {
+
+    @Test
+    public void testTimeout() {
+        // Create cache with 100 item limit and 15 second timeout
+        AtomicLong time = new AtomicLong(1000);
+        TinyLFUCacheImpl cache = new TinyLFUCacheImpl("test", 100, 15, time::get);
+
+        cache.put("key1", "string1");
+        cache.put("key2", "string2", 30000);
+        assertNotNull(cache.get("key1"));
+        assertNotNull(cache.get("key2"));
+
+        time.set(16000);
+        assertNull(cache.get("key1"));
+        assertNotNull(cache.get("key2"));
+
+        time.set(31000);
+        assertNull(cache.get("key2"));
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(2L, stats.get("expirations"));
+        assertEquals(0, stats.get("size"));
+    }
+
+    @Test
+    public void testFrequentEntriesSurviveScan() {
+        // Create cache with 3 item limit and no timeout
+        TinyLFUCacheImpl cache = new TinyLFUCacheImpl("test", 3, 0, () -> 0L);
+
+        cache.put("key1", "string1");
+        cache.put("key2", "string2");
+        cache.put("key3", "string3");
+        for (int i = 0; i < 5; i++) {
+            cache.get("key1");
+            cache.get("key2");
+            cache.get("key3");
+        }
+
+        // a scan of one-off keys should not displace any of the hot entries
+        for (int i = 0; i < 10; i++) {
+            cache.put("scan" + i, "value" + i);
+        }
+        assertNotNull(cache.get("key1"));
+        assertNotNull(cache.get("key2"));
+        assertNotNull(cache.get("key3"));
+        assertEquals(3, cache.size());
+        assertEquals(10L, cache.getStats().get("rejections"));
+
+        // but a key which keeps being asked for eventually gets in
+        for (int i = 0; i < 10; i++) {
+            cache.get("popular");
+        }
+        cache.put("popular", "value");
+        assertNotNull(cache.get("popular"));
+        assertEquals(3, cache.size());
+        assertEquals(1L, cache.getStats().get("evictions"));
+    }
+
+    @Test
+    public void testByteBudget() throws IOException {
+        // Create cache with 10 item limit, room for 3 entries of 100 bytes
+        TinyLFUCacheImpl cache = new TinyLFUCacheImpl("test", 10, 0, 300, () -> 0L);
+
+        cache.put("big", newContent(400));
+        assertNull(cache.get("big"));
+
+        for (int i = 1; i <= 3; i++) {
+            cache.put("key" + i, newContent(100));
+            cache.get("key" + i);
+            cache.get("key" + i);
+        }
+        assertEquals(300L, cache.getStats().get("bytes"));
+
+        // a new entry takes the place of two if it is popular enough
+        for (int i = 0; i < 5; i++) {
+            cache.get("popular");
+        }
+        cache.put("popular", newContent(150));
+        assertNotNull(cache.get("popular"));
+        assertEquals(2, cache.size());
+        assertEquals(250L, cache.getStats().get("bytes"));
+        assertEquals(300L, cache.getStats().get("maxBytes"));
+
+        cache.remove("popular");
+        assertEquals(100L, cache.getStats().get("bytes"));
+    }
+
+    @Test
+    public void testRejectionKeepsAllVictims() throws IOException {
+        // Create cache with 10 item limit, room for 3 entries of 100 bytes
+        TinyLFUCacheImpl cache = new TinyLFUCacheImpl("test", 10, 0, 300, () -> 0L);
+
+        cache.put("key1", newContent(100));
+        for (int i = 2; i <= 3; i++) {
+            cache.put("key" + i, newContent(100));
+            for (int j = 0; j < 5; j++) {
+                cache.get("key" + i);
+            }
+        }
+
+        // needs key1 and key2 gone, and is less popular than key2
+        for (int i = 0; i < 3; i++) {
+            cache.get("candidate");
+        }
+        cache.put("candidate", newContent(150));
+        assertNull(cache.get("candidate"));
+        assertEquals(3, cache.size());
+        assertEquals(300L, cache.getStats().get("bytes"));
+        assertEquals(0L, cache.getStats().get("evictions"));
+        assertEquals(1L, cache.getStats().get("rejections"));
+    }
+
+    @Test
+    public void testStats() {
+        TinyLFUCacheImpl cache = new TinyLFUCacheImpl("test", 100, 0, () -> 0L);
+
+        cache.put("key1", "string1");
+        cache.put("key1", "string1b");
+        assertEquals("string1b", cache.get("key1"));
+        assertNull(cache.get("key2"));
+        cache.remove("key1");
+        assertNull(cache.get("key1"));
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(2L, stats.get("misses"));
+        assertEquals(2L, stats.get("puts"));
+        assertEquals(1L, stats.get("removes"));
+        assertEquals(0, stats.get("size"));
+
+        cache.clear();
+        assertEquals(0L, cache.getStats().get("hits"));
+    }
+
+    static CachedContent newContent(int size) throws IOException {
+        CachedContent content = new CachedContent(size);
+        for (int i = 0; i < size; i++) {
+            content.getCachedWriter().print('x');
+        }
+        content.close();
+        return content;
+    }
+
+}